@@ -0,0 +1,61 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of message buffers, each of Transport.MAX_MESSAGE bytes, for the transports to receive into and for
+ * text to be encoded into before it is sent. A buffer is taken with acquire and handed back with
+ * Transport.Message.close once whoever holds it is done with it: the Scheduler releases a request after
+ * handling it and sending the reply, a drone or fire reporter after reading the reply. A buffer that is never
+ * released is simply collected, so releasing is what saves the allocation, never what keeps things correct.
+ *
+ * The pool keeps at most a fixed number of free buffers, so a burst does not pin its high-water mark
+ * of memory for good. Taking and returning a buffer never allocates.
+ */
+public final class BufferPool {
+    /** The pool the transports share, of -Dtransport.pool.size buffers (default 1024). */
+    static final BufferPool SHARED = new BufferPool(Integer.getInteger("transport.pool.size", 1024));
+
+    private final ArrayBlockingQueue<Transport.Message> free;
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    /**
+     * @param capacity the most free buffers kept for reuse
+     */
+    public BufferPool(int capacity) {
+        free = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    /**
+     * @return an empty buffer, from the pool if it has one
+     */
+    public Transport.Message acquire() {
+        Transport.Message message = free.poll();
+        if (message == null) {
+            allocated.increment();
+            return new Transport.Message(this);
+        }
+        reused.increment();
+        message.reset();
+        return message;
+    }
+
+    void release(Transport.Message message) {
+        free.offer(message); // dropped if the pool is full
+    }
+
+    /**
+     * @return the number of buffers that had to be allocated
+     */
+    public long getAllocated() { return allocated.sum(); }
+
+    /**
+     * @return the number of buffers handed out again after being released
+     */
+    public long getReused() { return reused.sum(); }
+
+    /**
+     * @return the number of free buffers waiting in the pool
+     */
+    public int getFree() { return free.size(); }
+}
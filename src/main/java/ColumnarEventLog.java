@@ -0,0 +1,537 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * The binary form of the event log, written by MetricsLogger to files ending in .evlog and read by LogAnalyzer.
+ * Events are stored in blocks of up to BLOCK_ROWS rows, each column of a block stored on its own:
+ *
+ *   file    "EVLOG" 0 0 1, then blocks
+ *   block   header of HEADER_SIZE bytes: length of the block after its first field (int), rows (int),
+ *           min and max timestamp (long nanoseconds since the epoch), min and max value (double),
+ *           length of the dictionary section and of each of the COLUMN_COUNT columns (int)
+ *           dictionary: the number of strings first used in this block (varint), then each as a varint
+ *           length and its UTF-8 bytes, numbered on from the strings of the previous blocks
+ *           timestamps: zigzag varint deltas, starting from the block's min timestamp
+ *           entities, codes, details: varint string number + 1, or 0 and an inline varint-prefixed string
+ *           values: 8-byte doubles
+ *
+ * A reader only reads the columns it asks for, and skips whole blocks whose min and max timestamps fall
+ * outside the time range it asks for. Strings are kept in a dictionary, so the entity, code and details
+ * of an event, which are the same on most lines of the text log, cost a byte or two each.
+ *
+ * Usage: java ColumnarEventLog <binary log> [text log], converts a binary log to the text format
+ * (to standard output if no text log is given).
+ */
+public final class ColumnarEventLog {
+    public static final int TIMESTAMPS = 1, ENTITIES = 2, CODES = 4, VALUES = 8, DETAILS = 16;
+    public static final int ALL_COLUMNS = TIMESTAMPS | ENTITIES | CODES | VALUES | DETAILS;
+    static final int BLOCK_ROWS = 4096;
+    private static final byte[] MAGIC = {'E', 'V', 'L', 'O', 'G', 0, 0, 1};
+    private static final int COLUMN_COUNT = 5;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 8 + 4 + 4 * COLUMN_COUNT;
+
+    private ColumnarEventLog() {
+    }
+
+    /**
+     * @return true if the file starts like a binary event log
+     */
+    public static boolean isColumnar(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(MAGIC.length);
+            while (start.hasRemaining() && channel.read(start) > 0) { }
+            return !start.hasRemaining() && Arrays.equals(start.array(), MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes events to a binary log, a block at a time. The strings of an event are passed as numbers in a
+     * dictionary the caller keeps, and the dictionary is handed over whenever a block is written, so adding an
+     * event only copies primitives. Not thread safe, MetricsLogger only writes from its daemon thread.
+     */
+    public static final class BlockWriter implements Closeable {
+        private final FileChannel channel;
+        private final int blockRows;
+        private final long[] timestamps;
+        private final int[] entities, codes, details;
+        private final double[] values;
+        private final String[] rawEntities, rawCodes, rawDetails;
+        private ByteBuffer block;
+        private int rows = 0;
+        private int symbolsWritten = 0;
+
+        /**
+         * Creates the log, replacing any file already there.
+         *
+         * @param blockRows the most rows in a block
+         */
+        public BlockWriter(Path file, int blockRows) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.blockRows = blockRows;
+            timestamps = new long[blockRows];
+            entities = new int[blockRows];
+            codes = new int[blockRows];
+            details = new int[blockRows];
+            values = new double[blockRows];
+            rawEntities = new String[blockRows];
+            rawCodes = new String[blockRows];
+            rawDetails = new String[blockRows];
+            block = ByteBuffer.allocate(blockRows * 40 + HEADER_SIZE);
+            writeFully(ByteBuffer.wrap(MAGIC));
+        }
+
+        /**
+         * Adds an event to the current block, which must not be full. A string that is not in the dictionary,
+         * because it is full, has the number -1 and is stored as is.
+         *
+         * @param entity the dictionary number of the entity, or -1 to store rawEntity
+         * @param code the dictionary number of the code, or -1 to store rawCode
+         * @param detailsSymbol the dictionary number of the details, or -1 to store rawDetails
+         */
+        public void add(long timestampNanos, int entity, String rawEntity, int code, String rawCode, double value,
+                        int detailsSymbol, String rawDetails) {
+            timestamps[rows] = timestampNanos;
+            entities[rows] = entity;
+            rawEntities[rows] = entity < 0 ? rawEntity : null;
+            codes[rows] = code;
+            rawCodes[rows] = code < 0 ? rawCode : null;
+            values[rows] = value;
+            details[rows] = detailsSymbol;
+            this.rawDetails[rows] = detailsSymbol < 0 ? rawDetails : null;
+            rows++;
+        }
+
+        public boolean isFull() { return rows == blockRows; }
+
+        /**
+         * @return the number of events added since the last block was written
+         */
+        public int getPendingRows() { return rows; }
+
+        /**
+         * Writes the events added so far as a block, with the dictionary strings they are the first to use.
+         *
+         * @param symbols the dictionary, symbols[n] holding the UTF-8 bytes of string n
+         */
+        public void writeBlock(byte[][] symbols) throws IOException {
+            if (rows == 0) return;
+            int lastSymbol = symbolsWritten - 1;
+            long minTimestamp = Long.MAX_VALUE, maxTimestamp = Long.MIN_VALUE;
+            double minValue = Double.POSITIVE_INFINITY, maxValue = Double.NEGATIVE_INFINITY;
+            int rawBytes = 0;
+            for (int i = 0; i < rows; i++) {
+                lastSymbol = Math.max(lastSymbol, Math.max(entities[i], Math.max(codes[i], details[i])));
+                minTimestamp = Math.min(minTimestamp, timestamps[i]);
+                maxTimestamp = Math.max(maxTimestamp, timestamps[i]);
+                minValue = Math.min(minValue, values[i]);
+                maxValue = Math.max(maxValue, values[i]);
+                rawBytes += rawSize(rawEntities[i]) + rawSize(rawCodes[i]) + rawSize(rawDetails[i]);
+            }
+            int symbolBytes = 5;
+            for (int s = symbolsWritten; s <= lastSymbol; s++) {
+                symbolBytes += symbols[s].length + 5;
+            }
+            int needed = HEADER_SIZE + symbolBytes + rows * 40 + rawBytes;
+            if (block.capacity() < needed) block = ByteBuffer.allocate(needed);
+
+            block.clear();
+            block.position(HEADER_SIZE);
+            int start = block.position();
+            putVarint(lastSymbol + 1 - symbolsWritten);
+            for (int s = symbolsWritten; s <= lastSymbol; s++) {
+                putVarint(symbols[s].length);
+                block.put(symbols[s]);
+            }
+            int[] lengths = new int[COLUMN_COUNT + 1];
+            lengths[0] = block.position() - start;
+
+            start = block.position();
+            long previous = minTimestamp;
+            for (int i = 0; i < rows; i++) {
+                long delta = timestamps[i] - previous;
+                putVarint((delta << 1) ^ (delta >> 63));
+                previous = timestamps[i];
+            }
+            lengths[1] = block.position() - start;
+            lengths[2] = putSymbols(entities, rawEntities);
+            lengths[3] = putSymbols(codes, rawCodes);
+            start = block.position();
+            for (int i = 0; i < rows; i++) {
+                block.putDouble(values[i]);
+            }
+            lengths[4] = block.position() - start;
+            lengths[5] = putSymbols(details, rawDetails);
+
+            int end = block.position();
+            block.position(0);
+            block.putInt(end - 4).putInt(rows).putLong(minTimestamp).putLong(maxTimestamp)
+                    .putDouble(minValue).putDouble(maxValue);
+            for (int length : lengths) {
+                block.putInt(length);
+            }
+            block.position(end).flip();
+            writeFully(block);
+
+            symbolsWritten = Math.max(symbolsWritten, lastSymbol + 1);
+            Arrays.fill(rawEntities, 0, rows, null);
+            Arrays.fill(rawCodes, 0, rows, null);
+            Arrays.fill(rawDetails, 0, rows, null);
+            rows = 0;
+        }
+
+        /**
+         * @return the most bytes a string stored as is takes, with its marker and length
+         */
+        private static int rawSize(String raw) {
+            return raw == null ? 0 : raw.length() * 3 + 10;
+        }
+
+        private int putSymbols(int[] column, String[] raw) {
+            int start = block.position();
+            for (int i = 0; i < rows; i++) {
+                if (column[i] >= 0) {
+                    putVarint(column[i] + 1L);
+                    continue;
+                }
+                byte[] bytes = raw[i] != null ? raw[i].getBytes(StandardCharsets.UTF_8) : new byte[0];
+                putVarint(0);
+                putVarint(bytes.length);
+                block.put(bytes);
+            }
+            return block.position() - start;
+        }
+
+        private void putVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                block.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            block.put((byte) value);
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        /**
+         * Closes the log. Events not yet written as a block are lost, call writeBlock first.
+         */
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads a binary log an event at a time, decoding only the columns it was asked for. The getters of
+     * the other columns return 0, -1 or null.
+     */
+    public static final class Reader implements Closeable {
+        private final FileChannel channel;
+        private final int columns;
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private long position = MAGIC.length;
+        private long fromNanos = Long.MIN_VALUE, toNanos = Long.MAX_VALUE;
+
+        private byte[][] symbolBytes = new byte[256][];
+        private String[] symbolNames = new String[256];
+        private int symbolCount = 0;
+
+        private long[] timestamps = new long[0];
+        private int[] entities = new int[0], codes = new int[0], details = new int[0];
+        private double[] values = new double[0];
+        private String[] rawEntities = new String[0], rawCodes = new String[0], rawDetails = new String[0];
+        private int rows = 0;
+        private int row = -1;
+        private long blocksRead = 0, blocksSkipped = 0;
+
+        /**
+         * @param columns the columns to read, a combination of TIMESTAMPS, ENTITIES, CODES, VALUES and DETAILS
+         * @throws IOException if the file cannot be read or is not a binary event log
+         */
+        public Reader(Path file, int columns) throws IOException {
+            if (!isColumnar(file)) throw new IOException(file + " is not a binary event log");
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.columns = columns;
+        }
+
+        /**
+         * Skips blocks holding no event logged between the two times, inclusive. Events of the blocks
+         * that are read are not filtered one by one.
+         */
+        public void setTimeRange(long fromNanos, long toNanos) {
+            this.fromNanos = fromNanos;
+            this.toNanos = toNanos;
+        }
+
+        /**
+         * Moves to the next event.
+         *
+         * @return false at the end of the log, or at a block cut short by a writer that has not finished it
+         */
+        public boolean next() throws IOException {
+            while (++row >= rows) {
+                if (!readBlock()) return false;
+            }
+            return true;
+        }
+
+        private boolean readBlock() throws IOException {
+            row = -1;
+            rows = 0;
+            header.clear();
+            if (!readFully(header, position)) return false;
+            header.flip();
+            int length = header.getInt();
+            if (position + 4 + length > channel.size()) return false;
+            int blockRows = header.getInt();
+            long minTimestamp = header.getLong();
+            long maxTimestamp = header.getLong();
+            header.getDouble();
+            header.getDouble();
+            int[] lengths = new int[COLUMN_COUNT + 1];
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] = header.getInt();
+            }
+
+            // the dictionary is always read, later blocks number their strings on from it
+            long offset = position + HEADER_SIZE;
+            readSymbols(read(offset, lengths[0]));
+            offset += lengths[0];
+            position += 4 + length;
+            if (maxTimestamp < fromNanos || minTimestamp > toNanos) {
+                blocksSkipped++;
+                return true;
+            }
+
+            ensureCapacity(blockRows);
+            if ((columns & TIMESTAMPS) != 0) {
+                ByteBuffer column = read(offset, lengths[1]);
+                long previous = minTimestamp;
+                for (int i = 0; i < blockRows; i++) {
+                    long zigzag = getVarint(column);
+                    previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                    timestamps[i] = previous;
+                }
+            }
+            offset += lengths[1];
+            if ((columns & ENTITIES) != 0) readSymbols(read(offset, lengths[2]), entities, rawEntities, blockRows);
+            offset += lengths[2];
+            if ((columns & CODES) != 0) readSymbols(read(offset, lengths[3]), codes, rawCodes, blockRows);
+            offset += lengths[3];
+            if ((columns & VALUES) != 0) {
+                ByteBuffer column = read(offset, lengths[4]);
+                for (int i = 0; i < blockRows; i++) {
+                    values[i] = column.getDouble();
+                }
+            }
+            offset += lengths[4];
+            if ((columns & DETAILS) != 0) readSymbols(read(offset, lengths[5]), details, rawDetails, blockRows);
+
+            rows = blockRows;
+            blocksRead++;
+            return true;
+        }
+
+        private void readSymbols(ByteBuffer section) {
+            int count = (int) getVarint(section);
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[(int) getVarint(section)];
+                section.get(bytes);
+                if (symbolCount == symbolBytes.length) {
+                    symbolBytes = Arrays.copyOf(symbolBytes, symbolCount * 2);
+                    symbolNames = Arrays.copyOf(symbolNames, symbolCount * 2);
+                }
+                symbolBytes[symbolCount] = bytes;
+                symbolNames[symbolCount] = new String(bytes, StandardCharsets.UTF_8);
+                symbolCount++;
+            }
+        }
+
+        private void readSymbols(ByteBuffer column, int[] symbols, String[] raw, int count) {
+            for (int i = 0; i < count; i++) {
+                int symbol = (int) getVarint(column) - 1;
+                symbols[i] = symbol;
+                if (symbol >= 0) {
+                    if (raw != null) raw[i] = null;
+                    continue;
+                }
+                byte[] bytes = new byte[(int) getVarint(column)];
+                column.get(bytes);
+                if (raw != null) raw[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        private void ensureCapacity(int count) {
+            if (timestamps.length >= count) return;
+            timestamps = new long[count];
+            entities = new int[count];
+            codes = new int[count];
+            details = new int[count];
+            values = new double[count];
+            rawEntities = new String[count];
+            rawCodes = new String[count];
+            rawDetails = new String[count];
+        }
+
+        private ByteBuffer read(long offset, int length) throws IOException {
+            if (buffer.capacity() < length) buffer = ByteBuffer.allocate(length);
+            buffer.clear().limit(length);
+            if (!readFully(buffer, offset)) throw new IOException("Event log block cut short at " + offset);
+            return buffer.flip();
+        }
+
+        private boolean readFully(ByteBuffer target, long offset) throws IOException {
+            while (target.hasRemaining()) {
+                int read = channel.read(target, offset);
+                if (read < 0) return false;
+                offset += read;
+            }
+            return true;
+        }
+
+        private static long getVarint(ByteBuffer in) {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return value;
+            }
+        }
+
+        public long getTimestampNanos() { return (columns & TIMESTAMPS) != 0 ? timestamps[row] : 0; }
+
+        /**
+         * @return the dictionary number of the event's entity, or -1 if it was not read or is not in the dictionary
+         */
+        public int getEntity() { return (columns & ENTITIES) != 0 ? entities[row] : -1; }
+
+        /**
+         * @return the event's entity, or null if it was not read
+         */
+        public String getEntityName() {
+            if ((columns & ENTITIES) == 0) return null;
+            return entities[row] >= 0 ? symbolNames[entities[row]] : rawEntities[row];
+        }
+
+        /**
+         * @return the dictionary number of the event's code, or -1 if it was not read or is not in the dictionary
+         */
+        public int getCode() { return (columns & CODES) != 0 ? codes[row] : -1; }
+
+        /**
+         * @return the event's code, or null if it was not read
+         */
+        public String getCodeName() {
+            if ((columns & CODES) == 0) return null;
+            return codes[row] >= 0 ? symbolNames[codes[row]] : rawCodes[row];
+        }
+
+        public double getValue() { return (columns & VALUES) != 0 ? values[row] : 0; }
+
+        /**
+         * @return the event's details, or null if they were not read
+         */
+        public String getDetails() {
+            if ((columns & DETAILS) == 0) return null;
+            return details[row] >= 0 ? symbolNames[details[row]] : rawDetails[row];
+        }
+
+        /**
+         * @return the string with a dictionary number, or null for -1
+         */
+        public String symbol(int symbol) { return symbol >= 0 ? symbolNames[symbol] : null; }
+
+        /**
+         * @return the UTF-8 bytes of the string with a dictionary number, empty for -1
+         */
+        public byte[] symbolBytes(int symbol) { return symbol >= 0 ? symbolBytes[symbol] : new byte[0]; }
+
+        /**
+         * @return the number of strings in the dictionary so far
+         */
+        public int getSymbolCount() { return symbolCount; }
+
+        public long getBlocksRead() { return blocksRead; }
+
+        public long getBlocksSkipped() { return blocksSkipped; }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes a binary log in the text format, "HH:mm:ss.SSS, entity, code, value, details" per line in the
+     * local time zone, as MetricsLogger writes it to a text log.
+     *
+     * @return the number of events written
+     */
+    public static long toText(Path binaryLog, Writer out) throws IOException {
+        long events = 0;
+        StringBuilder line = new StringBuilder(256);
+        TimeZone zone = TimeZone.getDefault();
+        try (Reader reader = new Reader(binaryLog, ALL_COLUMNS)) {
+            while (reader.next()) {
+                long millis = Math.floorDiv(reader.getTimestampNanos(), 1_000_000L);
+                long millisOfDay = Math.floorMod(millis + zone.getOffset(millis), 86_400_000L);
+                line.setLength(0);
+                pad(line, millisOfDay / 3_600_000L, 2).append(':');
+                pad(line, millisOfDay / 60_000L % 60, 2).append(':');
+                pad(line, millisOfDay / 1000L % 60, 2).append('.');
+                pad(line, millisOfDay % 1000L, 3);
+                line.append(", ").append(reader.getEntityName())
+                        .append(", ").append(reader.getCodeName())
+                        .append(", ").append(reader.getValue())
+                        .append(", ").append(reader.getDetails()).append('\n');
+                out.append(line);
+                events++;
+            }
+        }
+        out.flush();
+        return events;
+    }
+
+    private static StringBuilder pad(StringBuilder line, long value, int width) {
+        String digits = Long.toString(value);
+        for (int i = digits.length(); i < width; i++) {
+            line.append('0');
+        }
+        return line.append(digits);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java ColumnarEventLog <binary log> [text log]");
+            System.exit(2);
+        }
+        Path binaryLog = Paths.get(args[0]);
+        if (args.length > 1) {
+            try (Writer out = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+                long events = toText(binaryLog, out);
+                System.out.println("Converted " + events + " events to " + args[1]);
+            }
+        } else {
+            toText(binaryLog, new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        }
+    }
+}
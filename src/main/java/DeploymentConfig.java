@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Where the subsystems of a deployment listen and how they reach each other: the Scheduler's host and port,
+ * the address endpoints bind to, the port ranges of drones and fire reports, and the transport. Settings are
+ * read from a properties file, -Ddeployment.config or deployment.properties in the working directory if there
+ * is one, and each can be overridden by a system property of the same name:
+ *
+ *   scheduler.host   the host the Scheduler runs on (default: this host)
+ *   scheduler.port   the port the Scheduler receives on (default 7000)
+ *   bind.address     the local address endpoints bind to (default: every interface)
+ *   drone.port.base  drone N receives on this port + N (default 6000)
+ *   fire.port.base   fire N is reported from this port + N (default 8000)
+ *   transport        udp or shm (default udp)
+ *   discovery.group  the multicast group drones are announced to over UDP, e.g. 239.255.70.1 (default none:
+ *                    drones are announced to the Scheduler's port)
+ *   discovery.port   the port of the discovery group (default 7001)
+ *   discovery.interval  seconds between announcements of a host's drones (default 30, 0 to announce once)
+ *
+ * Host names are resolved once, when the configuration is loaded, never per message.
+ */
+public final class DeploymentConfig {
+    private static volatile DeploymentConfig current;
+
+    private final InetAddress schedulerHost;
+    private final int schedulerPort;
+    private final InetAddress bindAddress;
+    private final int dronePortBase;
+    private final int firePortBase;
+    private final String transport;
+    private final InetAddress discoveryGroup;
+    private final int discoveryPort;
+    private final int discoveryIntervalSeconds;
+
+    /**
+     * @param settings the settings, any missing one takes its default
+     * @throws IllegalArgumentException if a setting is not valid or a host cannot be resolved
+     */
+    public DeploymentConfig(Properties settings) {
+        String host = settings.getProperty("scheduler.host");
+        schedulerHost = host == null ? localHost() : resolve("scheduler.host", host);
+        String bind = settings.getProperty("bind.address");
+        bindAddress = bind == null ? null : resolve("bind.address", bind);
+        schedulerPort = port(settings, "scheduler.port", 7000);
+        dronePortBase = port(settings, "drone.port.base", 6000);
+        firePortBase = port(settings, "fire.port.base", 8000);
+        transport = settings.getProperty("transport", "udp").trim().toLowerCase();
+        if (!transport.equals("udp") && !transport.equals("shm")) {
+            throw new IllegalArgumentException("Unknown transport " + transport + ", expected udp or shm");
+        }
+        String group = settings.getProperty("discovery.group", "").trim();
+        discoveryGroup = group.isEmpty() || group.equalsIgnoreCase("none") ? null : resolve("discovery.group", group);
+        if (discoveryGroup != null && !discoveryGroup.isMulticastAddress()) {
+            throw new IllegalArgumentException("discovery.group " + group + " is not a multicast address");
+        }
+        discoveryPort = port(settings, "discovery.port", 7001);
+        try {
+            discoveryIntervalSeconds = Integer.parseInt(settings.getProperty("discovery.interval", "30").trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("discovery.interval must be a number of seconds", e);
+        }
+    }
+
+    /**
+     * @return the configuration of this process, loaded the first time it is asked for
+     */
+    public static DeploymentConfig get() {
+        DeploymentConfig config = current;
+        if (config == null) {
+            synchronized (DeploymentConfig.class) {
+                if (current == null) current = load();
+                config = current;
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Reads the configuration file, if there is one, with system properties taking precedence.
+     */
+    static DeploymentConfig load() {
+        Properties settings = new Properties();
+        String configured = System.getProperty("deployment.config");
+        Path file = Paths.get(configured != null ? configured : "deployment.properties");
+        if (configured != null || Files.isRegularFile(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                settings.load(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read deployment configuration " + file, e);
+            }
+        }
+        for (String name : System.getProperties().stringPropertyNames()) {
+            settings.setProperty(name, System.getProperty(name));
+        }
+        return new DeploymentConfig(settings);
+    }
+
+    /**
+     * @return the address of the host the Scheduler runs on
+     */
+    public InetAddress getSchedulerHost() { return schedulerHost; }
+
+    public int getSchedulerPort() { return schedulerPort; }
+
+    /**
+     * @return the local address endpoints bind to, or null for every interface
+     */
+    public InetAddress getBindAddress() { return bindAddress; }
+
+    public int getDronePortBase() { return dronePortBase; }
+
+    public int getFirePortBase() { return firePortBase; }
+
+    /**
+     * @return true if drones are announced to the discovery group rather than to the Scheduler's port
+     */
+    public boolean isMulticastDiscovery() { return discoveryGroup != null && transport.equals("udp"); }
+
+    /**
+     * @return the multicast group drones are announced to, or null if there is none
+     */
+    public InetAddress getDiscoveryGroup() { return discoveryGroup; }
+
+    public int getDiscoveryPort() { return discoveryPort; }
+
+    /**
+     * @return the seconds between announcements, 0 or less to announce only at start-up
+     */
+    public int getDiscoveryIntervalSeconds() { return discoveryIntervalSeconds; }
+
+    /**
+     * @return opens endpoints of the configured transport
+     * @throws IOException if the shared memory directory cannot be created
+     */
+    public Transport.Factory getTransports() throws IOException {
+        return transport.equals("shm") ? new SharedMemoryTransport.Network() : Transport.UDP;
+    }
+
+    private static int port(Properties settings, String name, int defaultPort) {
+        String value = settings.getProperty(name);
+        if (value == null) return defaultPort;
+        try {
+            int port = Integer.parseInt(value.trim());
+            if (port > 0 && port <= 65535) return port;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException(name + " must be a port number, not " + value);
+    }
+
+    private static InetAddress resolve(String name, String host) {
+        try {
+            return InetAddress.getByName(host.trim());
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(name + " " + host + " cannot be resolved", e);
+        }
+    }
+
+    private static InetAddress localHost() {
+        try {
+            return InetAddress.getLocalHost();
+        } catch (UnknownHostException e) {
+            return InetAddress.getLoopbackAddress();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drone discovery. Instead of each drone becoming known to the Scheduler through its first READY, a host of
+ * drones announces all of them at start-up in registration frames of up to DRONES_PER_FRAME drones each,
+ * and the Scheduler registers a whole frame with one FleetStore.registerAll. Frames are multicast to
+ * discovery.group when the transport is UDP and a group is configured, so drone hosts do not need to know
+ * where the Scheduler runs, and are otherwise sent to the Scheduler's port. Hosts announce again every
+ * discovery.interval seconds, so a Scheduler started after them, or restarted, still learns the fleet.
+ *
+ * A frame either only makes its drones known, as UNKNOWN until each checks in with READY, or says they are
+ * waiting for a fire. A waiting drone stands in for its first READY: the Scheduler registers it IDLE and sends
+ * it a fire as it would in reply to that READY, and the drone listens for the fire without sending one. So a
+ * fleet starting up sends a handful of frames rather than one READY per drone.
+ *
+ * A frame is binary, starting with a NUL so it can never be mistaken for a text message:
+ *
+ *   0x00 'R' 'E' 'G' | flags (u8, WAITING if the drones wait for a fire) | drone count (u16)
+ *   | per drone: ID (int), port (u16), control port (u16, 0 if none)
+ */
+public class DroneDiscovery {
+    private static final byte[] MAGIC = {0, 'R', 'E', 'G'};
+    private static final int WAITING = 1;
+    private static final int HEADER = MAGIC.length + 3;
+    private static final int ENTRY = 8;
+    static final int DRONES_PER_FRAME = (Transport.MAX_MESSAGE - HEADER) / ENTRY;
+
+    /**
+     * Takes the drones of a registration frame.
+     */
+    @FunctionalInterface
+    interface Registrar {
+        /**
+         * @param count the number of drones in the arrays
+         * @param waiting true if the drones are waiting for a fire, without a READY of their own
+         * @param from the host the frame came from, or null if the transport has only the one host
+         */
+        void register(int count, int[] ids, int[] ports, int[] controlPorts, boolean waiting, InetAddress from);
+    }
+
+    @FunctionalInterface
+    private interface FrameSender {
+        void send(byte[] frame, int length) throws IOException;
+    }
+
+    /**
+     * @return true if the message is a registration frame rather than text
+     */
+    public static boolean isFrame(byte[] data, int length) {
+        if (length < HEADER) return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes up to DRONES_PER_FRAME drones, starting at an offset, into a frame.
+     *
+     * @param waiting true if the drones are waiting for a fire
+     * @param frame the buffer to write to, of at least Transport.MAX_MESSAGE bytes
+     * @return the length of the frame
+     */
+    static int encode(int[] ids, int[] ports, int[] controlPorts, int offset, int count, boolean waiting, byte[] frame) {
+        count = Math.min(count, DRONES_PER_FRAME);
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        buffer.put(MAGIC).put((byte) (waiting ? WAITING : 0)).putShort((short) count);
+        for (int i = offset; i < offset + count; i++) {
+            buffer.putInt(ids[i]).putShort((short) ports[i]).putShort((short) controlPorts[i]);
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Reads the drones of a frame into the arrays, which must hold DRONES_PER_FRAME drones.
+     *
+     * @return the number of drones read, 0 if the frame is cut short
+     */
+    static int decode(byte[] frame, int length, int[] ids, int[] ports, int[] controlPorts) {
+        ByteBuffer buffer = ByteBuffer.wrap(frame, 0, length);
+        buffer.position(MAGIC.length + 1);
+        int count = Math.min(buffer.getShort() & 0xFFFF, DRONES_PER_FRAME);
+        if (buffer.remaining() < count * ENTRY) return 0;
+        for (int i = 0; i < count; i++) {
+            ids[i] = buffer.getInt();
+            ports[i] = buffer.getShort() & 0xFFFF;
+            controlPorts[i] = buffer.getShort() & 0xFFFF;
+        }
+        return count;
+    }
+
+    /**
+     * @return true if the drones of a frame are waiting for a fire
+     */
+    static boolean isWaiting(byte[] frame) {
+        return (frame[MAGIC.length] & WAITING) != 0;
+    }
+
+    /**
+     * Registers the drones of a frame.
+     *
+     * @return the number of drones in the frame
+     */
+    static int accept(byte[] frame, int length, InetAddress from, Registrar registrar) {
+        int[] ids = new int[DRONES_PER_FRAME];
+        int[] ports = new int[DRONES_PER_FRAME];
+        int[] controlPorts = new int[DRONES_PER_FRAME];
+        int count = decode(frame, length, ids, ports, controlPorts);
+        if (count > 0) registrar.register(count, ids, ports, controlPorts, isWaiting(frame), from);
+        return count;
+    }
+
+    /**
+     * Announces drones to the Scheduler's port through a transport.
+     *
+     * @param waiting true if the drones are waiting for a fire and will not send a READY for it
+     * @return the number of frames sent
+     */
+    public static int announce(int[] ids, int[] ports, int[] controlPorts, boolean waiting, Transport transport,
+                               int schedulerPort) throws IOException {
+        return sendFrames(ids, ports, controlPorts, waiting, (frame, length) -> transport.send(frame, length, schedulerPort));
+    }
+
+    /**
+     * Announces drones to the discovery group.
+     *
+     * @param waiting true if the drones are waiting for a fire and will not send a READY for it
+     * @return the number of frames sent
+     */
+    public static int multicast(int[] ids, int[] ports, int[] controlPorts, boolean waiting, DeploymentConfig config) throws IOException {
+        try (MulticastSocket socket = new MulticastSocket()) {
+            DatagramPacket packet = new DatagramPacket(new byte[0], 0, config.getDiscoveryGroup(), config.getDiscoveryPort());
+            return sendFrames(ids, ports, controlPorts, waiting, (frame, length) -> {
+                packet.setData(frame, 0, length);
+                socket.send(packet);
+            });
+        }
+    }
+
+    private static int sendFrames(int[] ids, int[] ports, int[] controlPorts, boolean waiting, FrameSender sender) throws IOException {
+        try (Transport.Message buffer = BufferPool.SHARED.acquire()) {
+            int frames = 0;
+            for (int offset = 0; offset < ids.length; offset += DRONES_PER_FRAME) {
+                int length = encode(ids, ports, controlPorts, offset, ids.length - offset, waiting, buffer.getData());
+                sender.send(buffer.getData(), length);
+                frames++;
+            }
+            return frames;
+        }
+    }
+
+    /**
+     * Announces a host's drones now, the way the configuration says, and then again every
+     * discovery.interval seconds from a daemon thread. Must be called before the drones' threads start. When
+     * announcements repeat, every drone is announced as waiting for a fire and listens for it without sending
+     * a READY, and the drones still waiting for their first fire are announced as waiting again each time, so
+     * a Scheduler that missed an announcement, or restarted, still sends them fires. When they do not, the
+     * drones are only made known and check in with READY, as a lost announcement would otherwise strand them.
+     *
+     * @param transports opens the endpoint announcements go through when they are not multicast
+     */
+    public static void startAnnouncing(List<DroneSubsystem> drones, Transport.Factory transports, DeploymentConfig config) {
+        long intervalMillis = TimeUnit.SECONDS.toMillis(config.getDiscoveryIntervalSeconds());
+        for (DroneSubsystem drone : drones) {
+            drone.setAnnounced(intervalMillis > 0);
+        }
+        Runnable announcement = () -> {
+            List<DroneSubsystem> waiting = new ArrayList<>();
+            List<DroneSubsystem> known = new ArrayList<>();
+            for (DroneSubsystem drone : drones) {
+                (drone.isAnnounced() ? waiting : known).add(drone);
+            }
+            try {
+                if (config.isMulticastDiscovery()) {
+                    multicast(waiting, true, config);
+                    multicast(known, false, config);
+                } else {
+                    try (Transport transport = transports.open(0)) {
+                        announce(waiting, true, transport, config.getSchedulerPort());
+                        announce(known, false, transport, config.getSchedulerPort());
+                    }
+                }
+            } catch (IOException e) {
+                Log.warn(() -> "[DISCOVERY] Could not announce " + drones.size() + " drones: " + e.getMessage());
+            }
+        };
+        announcement.run();
+
+        if (intervalMillis <= 0) return;
+        Thread announcer = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                announcement.run();
+            }
+        }, "DISCOVERY ANNOUNCER");
+        announcer.setDaemon(true);
+        announcer.start();
+    }
+
+    private static void announce(List<DroneSubsystem> drones, boolean waiting, Transport transport, int schedulerPort) throws IOException {
+        if (drones.isEmpty()) return;
+        int[][] fields = fieldsOf(drones);
+        announce(fields[0], fields[1], fields[2], waiting, transport, schedulerPort);
+    }
+
+    private static void multicast(List<DroneSubsystem> drones, boolean waiting, DeploymentConfig config) throws IOException {
+        if (drones.isEmpty()) return;
+        int[][] fields = fieldsOf(drones);
+        multicast(fields[0], fields[1], fields[2], waiting, config);
+    }
+
+    /**
+     * @return the IDs, ports and control ports of the drones
+     */
+    private static int[][] fieldsOf(List<DroneSubsystem> drones) {
+        int[][] fields = new int[3][drones.size()];
+        for (int i = 0; i < drones.size(); i++) {
+            fields[0][i] = drones.get(i).getDroneID();
+            fields[1][i] = drones.get(i).getPort();
+            fields[2][i] = drones.get(i).getControlPort();
+        }
+        return fields;
+    }
+
+    /**
+     * Starts a daemon thread that joins the discovery group and registers the drones of every frame it receives.
+     *
+     * @return the listening thread
+     * @throws IOException if the group cannot be joined
+     */
+    public static Thread listen(DeploymentConfig config, Registrar registrar) throws IOException {
+        MulticastSocket socket = new MulticastSocket(config.getDiscoveryPort());
+        try {
+            socket.joinGroup(new InetSocketAddress(config.getDiscoveryGroup(), 0), null);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        Thread listener = new Thread(() -> {
+            byte[] frame = new byte[Transport.MAX_MESSAGE];
+            DatagramPacket packet = new DatagramPacket(frame, frame.length);
+            while (true) {
+                try {
+                    packet.setData(frame);
+                    socket.receive(packet);
+                    if (isFrame(frame, packet.getLength())) {
+                        accept(frame, packet.getLength(), packet.getAddress(), registrar);
+                    }
+                } catch (SocketException e) {
+                    return;
+                } catch (IOException e) {
+                    Log.warn(() -> "[DISCOVERY] " + e.getMessage());
+                }
+            }
+        }, "DISCOVERY LISTENER");
+        listener.setDaemon(true);
+        listener.start();
+        return listener;
+    }
+}
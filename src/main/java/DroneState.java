@@ -0,0 +1,45 @@
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The states of a drone, along with the states each one may transition to.
+ */
+public enum DroneState {
+    IDLE,
+    EN_ROUTE,
+    DROPPING_AGENT,
+    REFILLING,
+    COMPLETE,
+    FAULTED;
+
+    /** The number of states, for tables indexed by ordinal. */
+    static final int COUNT = values().length;
+
+    private static final Map<DroneState, Set<DroneState>> TRANSITIONS = new EnumMap<>(DroneState.class);
+
+    static {
+        TRANSITIONS.put(IDLE, EnumSet.of(REFILLING, EN_ROUTE));
+        TRANSITIONS.put(EN_ROUTE, EnumSet.of(DROPPING_AGENT));
+        TRANSITIONS.put(DROPPING_AGENT, EnumSet.of(COMPLETE, REFILLING, FAULTED));
+        TRANSITIONS.put(REFILLING, EnumSet.of(EN_ROUTE, IDLE));
+        TRANSITIONS.put(COMPLETE, EnumSet.of(IDLE));
+        TRANSITIONS.put(FAULTED, EnumSet.noneOf(DroneState.class));
+    }
+
+    /**
+     * @param next the state to move to
+     * @return true if a drone in this state may move to the next state
+     */
+    boolean canTransitionTo(DroneState next) {
+        return TRANSITIONS.get(this).contains(next);
+    }
+
+    /**
+     * @return true if a drone in this state is working on a fire rather than waiting for one
+     */
+    boolean isBusy() {
+        return this != IDLE;
+    }
+}
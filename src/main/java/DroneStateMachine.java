@@ -1,10 +1,10 @@
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Map;
 
 /**
- *Interface representing a state in the DroneStateMachine
+ * Interface representing the behaviour of a state in the DroneStateMachine
  **/
-interface DroneState {
+interface StateHandler {
     /**
      * Handles the logic of the current state and determines the next state.
      *
@@ -16,27 +16,27 @@ interface DroneState {
 /**
  * State representing the idle mode of the drone.
  */
-class Idle implements DroneState {
+class Idle implements StateHandler {
     @Override
     public void handle(DroneStateMachine context) {
         DroneSubsystem drone = context.getDrone();
         if (drone.isAgentEmpty()){
-            context.setState("REFILLING");
+            context.setState(DroneState.REFILLING);
         }
         
         else if (drone.getCurrentFireEvent() != null){
-            context.setState("EN_ROUTE");
+            context.setState(DroneState.EN_ROUTE);
         }
         else {
             FireEvent fireEvent = context.getDrone().fetchFireTask();
             if (fireEvent != null) {
                 if (fireEvent.toString().contains("HANDOFF")) {
-                    Print.yellow(drone + " Picking up previously faulted fire: " + drone.getCurrentFireEvent() + ".");
+                    Log.warn(() -> drone + " Picking up previously faulted fire: " + drone.getCurrentFireEvent() + ".");
                 }
 
-                System.out.println(drone + " Extinguishing Starting for:  " + drone.getCurrentFireEvent() + ". " +
+                Log.info(() -> drone + " Extinguishing Starting for:  " + drone.getCurrentFireEvent() + ". " +
                         drone.getCurrentFireEvent().getRemainingWaterNeeded() + "L remaining to extinguish.");
-                context.setState("EN_ROUTE");
+                context.setState(DroneState.EN_ROUTE);
             }
         }
     }
@@ -45,41 +45,48 @@ class Idle implements DroneState {
 /**
  * State representing the drone travelling to the fire incident location.
  */
-class EnRoute implements DroneState {
+class EnRoute implements StateHandler {
     @Override
     public void handle(DroneStateMachine context) {
         DroneSubsystem drone = context.getDrone();
         drone.simulateDroneTravel(drone.getNextDestination());
-        context.setState("DROPPING_AGENT");
+        if (drone.applyRetask()) {
+            // Re-tasked mid-flight: stay en route, now to the new fire
+            return;
+        }
+        context.setState(DroneState.DROPPING_AGENT);
     }
 }
 
 /**
  * State representing the drone dropping fire-suppressing agent at the fire location.
  */
-class DroppingAgent implements DroneState {
+class DroppingAgent implements StateHandler {
     @Override
     public void handle(DroneStateMachine context){
         // Handle faults
         if (context.getDrone().getCurrentFireEvent().getFailureFlag()){
-            Print.red("FAULTED: " + context.getDrone().toString());
-            context.setState("FAULTED");
+            Log.error(() -> "FAULTED: " + context.getDrone().toString());
+            context.setState(DroneState.FAULTED);
             return;
         }
 
         DroneSubsystem drone = context.getDrone();
+        long start = Tracer.now();
         int waterToDrop = Math.min(drone.getAgentLevel(), drone.getCurrentFireEvent().getRemainingWaterNeeded());
-        System.out.println(drone + " Dropping: " + waterToDrop + "L of agent.");
+        Log.info(() -> drone + " Dropping: " + waterToDrop + "L of agent.");
         drone.dropAgent(waterToDrop);
         drone.getCurrentFireEvent().extinguish(waterToDrop);
-        System.out.println(drone + " Dropped: " + waterToDrop + "L of agent. " + drone.getAgentLevel() + "L left.");
+        drone.traceSpan("drop " + waterToDrop + "L", start);
+        Log.info(() -> drone + " Dropped: " + waterToDrop + "L of agent. " + drone.getAgentLevel() + "L left.");
 
         if (drone.currentFireExtinguished()) {
-            context.setState("COMPLETE");
+            context.setState(DroneState.COMPLETE);
         }
         else if (drone.isAgentEmpty()) {
-            System.out.println(drone + " Not enough agent to complete the task. Going to refill...");
-            context.setState("REFILLING");
+            Log.info(() -> drone + " Not enough agent to complete the task. Going to refill...");
+            drone.reportPartial(waterToDrop);
+            context.setState(DroneState.REFILLING);
         }
     }
 }
@@ -87,18 +94,20 @@ class DroppingAgent implements DroneState {
 /**
  * State representing the drone refilling its fire-suppressing agent.
  */
-class Refilling implements DroneState {
+class Refilling implements StateHandler {
     @Override
     public void handle(DroneStateMachine context){
         DroneSubsystem drone = context.getDrone();
+        long start = Tracer.now();
         drone.simulateDroneTravel(DroneSubsystem.BASE_ZONE);
         drone.refillAgent();
+        drone.traceSpan("refill", start);
 
         if (drone.getCurrentFireEvent() != null){
-            context.setState("EN_ROUTE");
+            context.setState(DroneState.EN_ROUTE);
         }
         else{
-            context.setState("IDLE");
+            context.setState(DroneState.IDLE);
         }
     }
 }
@@ -106,18 +115,18 @@ class Refilling implements DroneState {
 /**
  * State representing a drone that has completed extinguishing a fire
  */
-class Complete implements DroneState{
+class Complete implements StateHandler {
     @Override
     public void handle(DroneStateMachine context){
         context.getDrone().returnFireCompleted();
-        context.setState("IDLE");
+        context.setState(DroneState.IDLE);
     }
 }
 
 /**
  * State representing a fault or error in the drone's operation.
  */
-class Faulted implements DroneState {
+class Faulted implements StateHandler {
     @Override
     public void handle(DroneStateMachine context){
         context.getDrone().returnFailure();
@@ -126,28 +135,36 @@ class Faulted implements DroneState {
 
 /**
  * The DroneStateMachine manages the drone's states and transitions between them.
+ * Transitions are checked against the transition table of DroneState, and the time spent in each
+ * state and the number of transitions are recorded for the drone and for the fleet (DroneStateMetrics).
  */
 public class DroneStateMachine {
-    private final Map<String, DroneState> states;
+    private static final Map<DroneState, StateHandler> HANDLERS = new EnumMap<>(DroneState.class);
+
+    static {
+        HANDLERS.put(DroneState.IDLE, new Idle());
+        HANDLERS.put(DroneState.EN_ROUTE, new EnRoute());
+        HANDLERS.put(DroneState.DROPPING_AGENT, new DroppingAgent());
+        HANDLERS.put(DroneState.REFILLING, new Refilling());
+        HANDLERS.put(DroneState.FAULTED, new Faulted());
+        HANDLERS.put(DroneState.COMPLETE, new Complete());
+    }
+
     private DroneState currentState;
+    private long enteredAt;
+    private final long[] dwellNanos = new long[DroneState.COUNT];
+    private long transitionCount;
     private DroneSubsystem drone;
 
     /**
-     * Initializes the DroneStateMachine with predefined states.
+     * Initializes the DroneStateMachine in the IDLE state.
      *
      * @param drone The DroneSubsystem instance controlling the drone.
      */
     public DroneStateMachine(DroneSubsystem drone){
         this.drone = drone;
-        states = new HashMap<>();
-        states.put("IDLE", new Idle());
-        states.put("EN_ROUTE", new EnRoute());
-        states.put("DROPPING_AGENT", new DroppingAgent());
-        states.put("REFILLING", new Refilling());
-        states.put("FAULTED", new Faulted());
-        states.put("COMPLETE", new Complete());
-
-        currentState = states.get("IDLE");
+        this.currentState = DroneState.IDLE;
+        this.enteredAt = System.nanoTime();
     }
 
 
@@ -157,20 +174,70 @@ public class DroneStateMachine {
      * @throws InterruptedException If thread execution is interrupted.
      */
     public void handleState() throws InterruptedException{
-        currentState.handle(this);
+        HANDLERS.get(currentState).handle(this);
     }
 
     /**
      * Transitions the state machine to a new state.
      *
-     * @param stateName The name of the new state.
+     * @param next The new state.
+     * @throws IllegalStateException if the current state may not move to the new state
+     */
+    public void setState(DroneState next){
+        setState(next, System.nanoTime());
+    }
+
+    /**
+     * Transitions the state machine to a new state at a given time, which lets simulations step
+     * drones on their own clock.
+     *
+     * @param next The new state.
+     * @param nowNanos The time of the transition, on the same clock as previous transitions.
+     * @throws IllegalStateException if the current state may not move to the new state
+     */
+    public void setState(DroneState next, long nowNanos){
+        if (!currentState.canTransitionTo(next)) {
+            throw new IllegalStateException("Invalid drone transition " + currentState + " -> " + next);
+        }
+        long dwell = nowNanos - enteredAt;
+        dwellNanos[currentState.ordinal()] += dwell;
+        transitionCount++;
+        DroneStateMetrics.recordTransition(currentState, next, dwell);
+        currentState = next;
+        enteredAt = nowNanos;
+    }
+
+    /**
+     * @return The current state.
      */
-    public void setState(String stateName){
-        this.currentState = states.get(stateName);
+    public DroneState getState(){
+        return currentState;
     }
 
-    public String getState(){
-        return currentState.getClass().getSimpleName();
+    /**
+     * @param state A state.
+     * @return The total time this drone has spent in the state, not counting the current visit.
+     */
+    public long getDwellNanos(DroneState state){
+        return dwellNanos[state.ordinal()];
+    }
+
+    /**
+     * @return The number of transitions this drone has made.
+     */
+    public long getTransitionCount(){
+        return transitionCount;
+    }
+
+    /**
+     * @return The fraction of completed state visits this drone spent busy rather than idle, from 0 to 1.
+     */
+    public double getUtilization(){
+        long total = 0;
+        for (long nanos : dwellNanos) {
+            total += nanos;
+        }
+        return total == 0 ? 0 : 1.0 - (double) dwellNanos[DroneState.IDLE.ordinal()] / total;
     }
 
     /**
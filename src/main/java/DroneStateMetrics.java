@@ -0,0 +1,93 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fleet-wide drone state metrics: the time drones spend in each state and the number of transitions
+ * between each pair of states, recorded by every DroneStateMachine in the process. Recording is
+ * lock-free, so any number of drones can step concurrently.
+ */
+public class DroneStateMetrics {
+    private static final LongAdder[] transitions = new LongAdder[DroneState.COUNT * DroneState.COUNT];
+    private static final LongAdder[] dwellNanos = new LongAdder[DroneState.COUNT];
+    private static final LatencyHistogram[] dwellTimes = new LatencyHistogram[DroneState.COUNT];
+
+    static {
+        for (int i = 0; i < transitions.length; i++) {
+            transitions[i] = new LongAdder();
+        }
+        for (int i = 0; i < DroneState.COUNT; i++) {
+            dwellNanos[i] = new LongAdder();
+            dwellTimes[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records a drone leaving a state.
+     *
+     * @param from the state the drone left
+     * @param to the state the drone moved to
+     * @param dwell the time the drone spent in the state it left, in nanoseconds
+     */
+    static void recordTransition(DroneState from, DroneState to, long dwell) {
+        transitions[from.ordinal() * DroneState.COUNT + to.ordinal()].increment();
+        dwellNanos[from.ordinal()].add(dwell);
+        dwellTimes[from.ordinal()].record(dwell);
+    }
+
+    /**
+     * @return the number of transitions between two states
+     */
+    public static long getTransitions(DroneState from, DroneState to) {
+        return transitions[from.ordinal() * DroneState.COUNT + to.ordinal()].sum();
+    }
+
+    /**
+     * @return the total number of transitions made by all drones
+     */
+    public static long getTotalTransitions() {
+        long total = 0;
+        for (LongAdder count : transitions) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @return a histogram of the time drones spent in a state per visit, in nanoseconds
+     */
+    public static LatencyHistogram getDwellTimes(DroneState state) {
+        return dwellTimes[state.ordinal()].copy();
+    }
+
+    /**
+     * @return the fraction of drone time spent busy rather than idle, over all completed state visits
+     */
+    public static double getFleetUtilization() {
+        long total = 0;
+        for (LongAdder nanos : dwellNanos) {
+            total += nanos.sum();
+        }
+        return total == 0 ? 0 : 1.0 - (double) dwellNanos[DroneState.IDLE.ordinal()].sum() / total;
+    }
+
+    /**
+     * Formats the fleet utilization, the mean and p99 dwell time of each visited state, and the transition counts.
+     *
+     * @return the summary on one line
+     */
+    public static String summarize() {
+        StringBuilder summary = new StringBuilder(String.format("utilization=%.1f%%", getFleetUtilization() * 100));
+        for (DroneState state : DroneState.values()) {
+            LatencyHistogram dwell = dwellTimes[state.ordinal()];
+            if (dwell.getCount() == 0) continue;
+            summary.append(String.format(" %s(n=%d mean=%.1fms p99=%.1fms)", state, dwell.getCount(),
+                    dwell.getMean() / 1e6, dwell.getValueAtPercentile(99) / 1e6));
+        }
+        for (DroneState from : DroneState.values()) {
+            for (DroneState to : DroneState.values()) {
+                long count = getTransitions(from, to);
+                if (count > 0) summary.append(' ').append(from).append("->").append(to).append('=').append(count);
+            }
+        }
+        return summary.toString();
+    }
+}
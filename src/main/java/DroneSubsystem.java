@@ -1,6 +1,8 @@
 import java.io.IOException;
-import java.net.*;
-import java.util.regex.*;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * The subsystem for a single drone, that sends requests from the scheduler for fire incidents
@@ -10,13 +12,14 @@ public class DroneSubsystem implements Runnable {
     private int droneID;
     //private final DroneStateMachine stateMachine;
     private int agentLevel;
-    private FireEvent currentFireEvent;
+    private volatile FireEvent currentFireEvent;
     public FireEvent lastFireEvent;
-    private static final int MAX_AGENT_CAP = 15; // Max payload is 15kg
-    private static final int SPEED = 10;
-    private DatagramSocket sendSocket, receiveSocket;
-    private static final int BASE_PORT = 6000;
-    private static final int SCHEDULER_PORT = 7000;
+    static final int MAX_AGENT_CAP = 15; // Max payload is 15kg
+    static final int SPEED = 10;
+    private Transport sendTransport, receiveTransport, controlTransport;
+    private final int SCHEDULER_PORT = DeploymentConfig.get().getSchedulerPort();
+    private static final Pattern REPOSITION_PATTERN = Pattern.compile("REPOSITION: x=(\\S+) y=(\\S+)");
+    private static final long HEARTBEAT_INTERVAL_MILLIS = Long.getLong("drone.heartbeat.interval", 1000);
     private int DRONE_PORT;
     private double droneX;
     private double droneY;
@@ -24,6 +27,12 @@ public class DroneSubsystem implements Runnable {
     private Zone nextDestination;
     public static final Zone BASE_ZONE = new Zone(0, 0, 0, 0, 0);
     private final DroneStateMachine stateMachine = new DroneStateMachine(this);
+    private final Object travelLock = new Object(); // guards travellingThread, retaskFire and the reposition flight
+    private Thread travellingThread; // the thread flying the drone to a fire, null when not flying to one
+    private FireEvent retaskFire;    // the fire the Scheduler re-tasked the drone to, not yet taken up
+    private double[] reposition;     // {from x, from y, to x, to y} of the idle drone's staging flight, null if none
+    private long repositionStart;    // when the staging flight started, from System.nanoTime()
+    private volatile boolean announced; // announced as waiting by DroneDiscovery, so no READY until its first fire
 
     /**
      * Constructs a DroneSubsystem with a reference to the Scheduler.
@@ -32,20 +41,31 @@ public class DroneSubsystem implements Runnable {
      * @param droneID the ID of the drone
      */
     public DroneSubsystem(int droneID) {
+        this(droneID, Transport.UDP);
+    }
+
+    /**
+     * Constructs a DroneSubsystem that talks to the Scheduler through the given transport.
+     *
+     * @param droneID the ID of the drone
+     * @param transports opens the drone's endpoints, UDP or in-memory
+     */
+    public DroneSubsystem(int droneID, Transport.Factory transports) {
         this.droneID = droneID;
         //this.stateMachine = new DroneStateMachine(this);
         this.agentLevel = MAX_AGENT_CAP; // Start with full agent
-        this.DRONE_PORT = BASE_PORT + droneID;
+        this.DRONE_PORT = DeploymentConfig.get().getDronePortBase() + droneID;
         this.currentFireEvent = null;
         this.lastFireEvent = null;
         this.nextDestination = null;
         this.currentZone = BASE_ZONE;
 
         try {
-            sendSocket      = new DatagramSocket();
-            receiveSocket   = new DatagramSocket(DRONE_PORT);
+            sendTransport       = transports.open(0);
+            receiveTransport    = transports.open(DRONE_PORT);
+            controlTransport    = transports.open(0); // For RETASK and REPOSITION requests from the Scheduler
 
-        } catch (SocketException ignored) {
+        } catch (IOException ignored) {
             System.exit(1);
         }
     }
@@ -56,6 +76,8 @@ public class DroneSubsystem implements Runnable {
      */
     @Override
     public void run() {
+        startHeartbeat();
+        startControlListener();
         // handle events for state machine
         while(true) {
             try {
@@ -69,39 +91,53 @@ public class DroneSubsystem implements Runnable {
     /**
      * Sends a request to the scheduler to be assigned a fire incident and receives it.
      *
-     * @param requestPacket the packet that is sent to the scheduler to request for a fire event
-     * @param receivePacket the packet that is received from the scheduler
-     * @return the received packet from the scheduler after the request
+     * @param sendData the request sent to the scheduler
+     * @return the reply from the scheduler, or an empty string if the exchange failed
      */
-    public synchronized DatagramPacket rpc_send(DatagramPacket requestPacket, DatagramPacket receivePacket){
+    public synchronized String rpc_send(String sendData){
+       String receiveData = "";
        try{
-           double startTime = System.currentTimeMillis();
+           long startTime = System.nanoTime();
 
            // STEP 1: Send a request to scheduler for any new fires / register to drone to the schedulers knowledge
-           String sendData            = new String(requestPacket.getData(), 0, requestPacket.getLength());
            if (sendData.contains("FAULTED")) {
-               Print.red("[Drone -> Scheduler]" + this + " Sending Drone request: " + sendData);
+               Log.error(() -> "[Drone -> Scheduler]" + this + " Sending Drone request: " + sendData);
            } else {
-               System.out.println("[Drone -> Scheduler]" + this + " Sending Drone request: " + sendData);
+               Log.info(() -> "[Drone -> Scheduler]" + this + " Sending Drone request: " + sendData);
            }
 
-           sendSocket.send(requestPacket);
+           sendTransport.send(sendData, SCHEDULER_PORT);
 
            // STEP 2: Wait to receive reply from host with new data
-           receiveSocket.receive(receivePacket);
-           String receiveData            = new String(receivePacket.getData(), 0, receivePacket.getLength());
-           System.out.println("[Drone <- Scheduler]" + this + " Drone received: " + receiveData);
+           String reply = receiveTransport.receiveText();
+           receiveData = reply;
+           Log.info(() -> "[Drone <- Scheduler]" + this + " Drone received: " + reply);
 
-           double endTime = System.currentTimeMillis();
-           double responseTime = endTime - startTime;
+           long responseTime = System.nanoTime() - startTime;
 
-           MetricsLogger.logEvent("DRONE " + this.droneID, "DRONE_RESPONSE", responseTime, "Response time of DroneSubsystem (ms)");
+           MetricsLogger.logLatency("DRONE " + this.droneID, MetricCode.DRONE_RESPONSE, responseTime, "Response time of DroneSubsystem (ms)");
        }
        catch (IOException e){
            e.printStackTrace();
        }
 
-        return receivePacket;
+        return receiveData;
+    }
+
+    /**
+     * Waits for the fire the Scheduler sends a drone that a discovery frame announced as waiting.
+     *
+     * @return the fire request, or an empty string if the receive failed
+     */
+    public synchronized String awaitFire() {
+        try {
+            String reply = receiveTransport.receiveText();
+            Log.info(() -> "[Drone <- Scheduler]" + this + " Drone received: " + reply);
+            return reply;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "";
+        }
     }
 
     /**
@@ -111,60 +147,183 @@ public class DroneSubsystem implements Runnable {
      * @return The fire event task assigned to the drone.
      */
     public FireEvent fetchFireTask() {
-        System.out.println(this + " Ready to service any new fires");
+        Log.info(() -> this + " Ready to service any new fires");
 
         if (currentFireEvent == null){
-            // Initial Request Packet
-            String requestData              = this + " READY: Ready to service any new fires";
-            byte[] requestBuffer            = requestData.getBytes();
-            DatagramPacket requestPacket    = null;
-            try {
-                requestPacket = new DatagramPacket(requestBuffer, requestBuffer.length,
-                        InetAddress.getLocalHost(), SCHEDULER_PORT);
-            } catch (UnknownHostException e) {
-                throw new RuntimeException(e);
-            }
-
-            // Response packet with any new fire from the Scheduler
-            byte[] receiveBuffer           = new byte[1000];
-            DatagramPacket receivePacket   = new DatagramPacket(receiveBuffer, receiveBuffer.length);
-
-            // Send packet and BLOCK on reception for data (new fire event)
-            DatagramPacket dataPacket = rpc_send(requestPacket, receivePacket);
+            // Initial Request
+            String requestData              = this + "[CTRL: " + controlTransport.getLocalPort() + "] READY: Ready to service any new fires";
 
-            // Handle the client request and send ack back to Scheduler
-            String data = new String(dataPacket.getData(), 0, dataPacket.getLength());
-            System.out.println(this + " Received: " + data + " from Scheduler(" + dataPacket.getAddress() + ":" + dataPacket.getPort() + ")");
+            // Send request and BLOCK on reception for data (new fire event). A drone announced as waiting
+            // has been registered by its host's discovery frame, which stands in for its first READY
+            String data = announced ? awaitFire() : rpc_send(requestData);
+            announced = false;
+            Log.info(() -> this + " Received: " + data + " from Scheduler");
 
             // Process the request returned from the scheduler and return the fire event
             currentFireEvent        = parseDataToFireEvent(data);
+            int share               = FireLedger.parseShare(data);
+            if (share >= 0) {
+                // Sent a share of a fire that other drones are fighting too
+                currentFireEvent.setRemainingWaterNeeded(share);
+            }
             this.nextDestination    = Scheduler.getZone(currentFireEvent.getZoneId());
+            Tracer.instant(currentFireEvent.getTraceId(), currentFireEvent.getFireID(), "DRONE " + droneID, "assigned");
 
             }
         return currentFireEvent;
     }
 
+    /**
+     * Starts a thread that tells the Scheduler this drone is alive while it works on a fire, so the Scheduler
+     * only hands the fire off if the drone stops responding. The interval is set with -Ddrone.heartbeat.interval
+     * (milliseconds, 0 to disable).
+     */
+    private void startHeartbeat() {
+        if (HEARTBEAT_INTERVAL_MILLIS <= 0) return;
+        Thread heartbeat = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(HEARTBEAT_INTERVAL_MILLIS);
+                    FireEvent fire = currentFireEvent;
+                    if (fire == null || stateMachine.getState() == DroneState.FAULTED) continue;
+                    sendTransport.send(this + " HEARTBEAT: fire=" + fire.getFireID(), SCHEDULER_PORT);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    Log.warn(() -> this + " Could not send heartbeat: " + e.getMessage());
+                }
+            }
+        }, "DRONE " + droneID + " HEARTBEAT");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+    }
+
+    /**
+     * Starts a thread that answers RETASK and REPOSITION requests from the Scheduler. A drone flying to a fire
+     * accepts a RETASK, stops where it is and heads to the new fire; an idle drone accepts a REPOSITION and flies
+     * to the staging point. Any other drone rejects the request.
+     */
+    private void startControlListener() {
+        Thread listener = new Thread(() -> {
+            while (true) {
+                try {
+                    String data;
+                    InetAddress fromAddress;
+                    int fromPort;
+                    try (Transport.Message request = controlTransport.receive()) {
+                        data = request.text();
+                        fromAddress = request.getFromAddress();
+                        fromPort = request.getFromPort();
+                    }
+                    String reply;
+                    if (data.startsWith("RETASK:")) {
+                        FireEvent fire = FireEvent.parse(data);
+                        reply = fire != null && retask(fire)
+                                ? this + " RETASK ACCEPTED"
+                                : this + " RETASK REJECTED";
+                    } else if (data.startsWith("REPOSITION:")) {
+                        Matcher matcher = REPOSITION_PATTERN.matcher(data);
+                        reply = matcher.find() && reposition(Double.parseDouble(matcher.group(1)), Double.parseDouble(matcher.group(2)))
+                                ? this + " REPOSITION ACCEPTED"
+                                : this + " REPOSITION REJECTED";
+                    } else {
+                        continue;
+                    }
+                    Log.info(() -> "[Drone <- Scheduler]" + this + " " + data + " -> " + reply);
+                    controlTransport.send(reply, fromAddress, fromPort);
+                } catch (IOException e) {
+                    if (controlTransport.isClosed()) return;
+                    Log.warn(() -> this + " Control channel error: " + e.getMessage());
+                }
+            }
+        }, "DRONE " + droneID + " CONTROL");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    /**
+     * Re-tasks the drone to a new fire if it is flying to a fire, interrupting its travel
+     * @param fire the new fire
+     * @return true if the drone accepted and will head to the new fire, dropping its current one
+     */
+    boolean retask(FireEvent fire) {
+        synchronized (travelLock) {
+            if (travellingThread == null || retaskFire != null || Scheduler.getZone(fire.getZoneId()) == null) {
+                return false;
+            }
+            retaskFire = fire;
+            travellingThread.interrupt();
+            return true;
+        }
+    }
+
+    /**
+     * Sends an idle drone to a staging point. The flight happens while the drone waits for a fire, so its
+     * position is worked out from the time flown when it next travels
+     * @param x the x position of the staging point
+     * @param y the y position of the staging point
+     * @return true if the drone is idle and accepted
+     */
+    boolean reposition(double x, double y) {
+        synchronized (travelLock) {
+            if (stateMachine.getState() != DroneState.IDLE || currentFireEvent != null || travellingThread != null) {
+                return false;
+            }
+            settlePosition();
+            reposition = new double[]{droneX, droneY, x, y};
+            repositionStart = System.nanoTime();
+            currentZone = new Zone(-1, droneX, droneY, droneX, droneY);
+            return true;
+        }
+    }
+
+    /**
+     * Moves the drone to where its staging flight has got it to, ending the flight if it has landed
+     */
+    private void settlePosition() {
+        synchronized (travelLock) {
+            if (reposition == null) return;
+            double length = Math.hypot(reposition[2] - reposition[0], reposition[3] - reposition[1]);
+            double fraction = Math.min(1.0, (System.nanoTime() - repositionStart) / 1e9 * SPEED / Math.max(1e-9, length));
+            droneX = reposition[0] + (reposition[2] - reposition[0]) * fraction;
+            droneY = reposition[1] + (reposition[3] - reposition[1]) * fraction;
+            currentZone = new Zone(-1, droneX, droneY, droneX, droneY);
+            if (fraction >= 1.0) reposition = null;
+        }
+    }
+
+    /**
+     * Takes up the fire the drone was re-tasked to, if any, in place of its current fire
+     * @return true if the drone now has a new fire to fly to
+     */
+    public boolean applyRetask() {
+        FireEvent fire;
+        synchronized (travelLock) {
+            fire = retaskFire;
+            retaskFire = null;
+        }
+        if (fire == null) return false;
+        FireEvent displaced = currentFireEvent;
+        Log.warn(() -> this + " Re-tasked from " + displaced + " to " + fire);
+        if (displaced != null) {
+            Tracer.instant(displaced.getTraceId(), displaced.getFireID(), "DRONE " + droneID, "retasked away");
+        }
+        currentFireEvent = fire;
+        nextDestination = Scheduler.getZone(fire.getZoneId());
+        Tracer.instant(fire.getTraceId(), fire.getFireID(), "DRONE " + droneID, "assigned (retask)");
+        return true;
+    }
+
     /**
      * Parses the fire event from a string and extracts the information to create a fire event.
      * @param data The fire event data from the packet as a string
      * @return the fire event that was created from the extracted data
      */
     public FireEvent parseDataToFireEvent(String data) {
-        // Updated regex pattern to correctly extract values, including failure
-        String pattern = "NEW FIRE: FireEvent\\{'ID=(\\d+)', time='([^']+)', zoneId=(\\d+), eventType='([^']+)', severity='([^']+)', state='[^']+', failure='([^']+)'\\}";
-        Pattern regex = Pattern.compile(pattern);
-        Matcher matcher = regex.matcher(data);
-
-        if (matcher.find()) {
-            int fireID = Integer.parseInt(matcher.group(1));
-            String time = matcher.group(2);
-            int zoneId = Integer.parseInt(matcher.group(3));
-            String eventType = matcher.group(4);
-            String severity = matcher.group(5);
-            String failure = matcher.group(6);
-            return new FireEvent(fireID, time, zoneId, eventType, severity, failure);
+        if (!data.contains("NEW FIRE: FireEvent{")) {
+            return null; // No match found
         }
-        return null; // No match found
+        return FireEvent.parse(data);
     }
 
 
@@ -173,32 +332,18 @@ public class DroneSubsystem implements Runnable {
      * If a response is received, it prints the data from the Scheduler.
      *
      * @param ack The acknowledgment message to be sent.
+     * @return The reply from the Scheduler.
      */
-    public void sendAck(String ack){
-        // Initial Request Packet
-        byte[] requestBuffer            = ack.getBytes();
-        try {
-            DatagramPacket requestPacket = new DatagramPacket(requestBuffer, requestBuffer.length,
-                                                              InetAddress.getLocalHost(), SCHEDULER_PORT);
-
-            // Response packet with any new fire from the Scheduler
-            byte[] receiveBuffer           = new byte[200];
-            DatagramPacket receivePacket   = new DatagramPacket(receiveBuffer, receiveBuffer.length);
-
-            // Send packet and BLOCK on reception for data (new fire event)
-            DatagramPacket dataPacket = rpc_send(requestPacket, receivePacket);
-
-            // Handle the client request and send ack back to Scheduler
-            String data = new String(dataPacket.getData(), 0, dataPacket.getLength());
-
-            if (this.stateMachine.getState().equalsIgnoreCase("COMPLETE")){
-                Print.green(this + " Received: " + data + " from Scheduler(" + dataPacket.getAddress() + ":" + dataPacket.getPort() + ")");
-            } else {
-                System.out.println(this + " Received: " + data + " from Scheduler(" + dataPacket.getAddress() + ":" + dataPacket.getPort() + ")");
-            }
-        } catch (UnknownHostException e) {
-            throw new RuntimeException(e);
+    public String sendAck(String ack){
+        // Send the acknowledgment and BLOCK on reception of the reply
+        String data = rpc_send(ack);
+
+        if (this.stateMachine.getState() == DroneState.COMPLETE){
+            Log.info(Log.Color.GREEN, () -> this + " Received: " + data + " from Scheduler");
+        } else {
+            Log.info(() -> this + " Received: " + data + " from Scheduler");
         }
+        return data;
     }
 
     /**
@@ -206,8 +351,10 @@ public class DroneSubsystem implements Runnable {
      * indicating that the fire has been extinguished, along with details of the last fire event.
      */
     public void returnFireCompleted(){
+        long start = Tracer.now();
         String ack = this + " COMPLETED: Fire has been extinguished " + lastFireEvent;
         sendAck(ack);
+        traceSpan("complete", start);
     }
 
     /**
@@ -215,15 +362,36 @@ public class DroneSubsystem implements Runnable {
      */
     public void returnFailure(){
         String fail = this + " FAULT: This Fire has failed with " + currentFireEvent;
+        Tracer.instant(currentFireEvent.getTraceId(), currentFireEvent.getFireID(), "DRONE " + droneID, "fault");
         sendAck(fail);
     }
 
+    /**
+     * Reports the water delivered to the current fire before running out of agent. The Scheduler either lets the
+     * drone keep the fire, to finish after refilling, or releases it and hands the rest to another drone.
+     *
+     * @param delivered the water dropped on the fire in this visit
+     * @return true if the drone was released from the fire
+     */
+    public boolean reportPartial(int delivered) {
+        String partial = this + " PARTIAL: delivered=" + delivered + " remaining="
+                + currentFireEvent.getRemainingWaterNeeded() + " " + currentFireEvent;
+        long start = Tracer.now();
+        String reply = sendAck(partial);
+        traceSpan("report partial", start);
+        if (!reply.contains("RELEASE")) return false;
+        Log.warn(() -> this + " Released from " + currentFireEvent + ", another drone delivers the rest");
+        lastFireEvent = currentFireEvent;
+        currentFireEvent = null;
+        return true;
+    }
+
     /**
      * Refills the agent to its maximum capacity
      * and simulates the drone's travel back to the base zone.
      */
     public void refillAgent() {
-        System.out.println(this + " Refilling agent... ");
+        Log.info(() -> this + " Refilling agent... ");
         this.agentLevel = MAX_AGENT_CAP;
     }
 
@@ -232,40 +400,92 @@ public class DroneSubsystem implements Runnable {
      * @param zone The zone of the fire event
      */
     public void simulateDroneTravel(Zone zone) {
+        synchronized (travelLock) {
+            settlePosition();
+            reposition = null; // the drone leaves its staging flight for this one
+        }
         if (this.currentZone.equals(zone)){
-            System.out.println(this + " Already at ZONE " + zone.getID());
+            Log.info(() -> this + " Already at ZONE " + zone.getID());
             return;
         }
         // Calculate the center of the target zone
         double centerX = (zone.getStartX() + zone.getEndX()) / 2.0;
         double centerY = (zone.getStartY() + zone.getEndY()) / 2.0;
 
-        // Calculate the distance to the center
-        double distance = Math.sqrt(Math.pow(centerX - droneX, 2) + Math.pow(centerY - droneY, 2));
+        // Calculate the distance to the center, from the shared matrix when the drone is at a zone's center
+        double distance = Scheduler.getDistances().distance(currentZone, zone);
 
-        MetricsLogger.logEvent("[DRONE " + this.droneID + " -> ZONE " + zone.getID() +"]", "DRONE_TRAVELS", Double.parseDouble(String.format("%.2f", distance)), "Required distance to reach target fire (m)");
+        MetricsLogger.logMetric("[DRONE " + this.droneID + " -> ZONE " + zone.getID() +"]", MetricCode.DRONE_TRAVELS, Math.round(distance * 100) / 100.0, "Required distance to reach target fire (m)");
 
         // Assume a fixed speed (units per second)
 
         // Calculate travel time in milliseconds
         long travelTimeMillis = (long) ((distance / SPEED) * 1000);
 
+        long start = Tracer.now();
+        long departed = System.nanoTime();
+        boolean toFire = stateMachine.getState() == DroneState.EN_ROUTE;
+        boolean retasked = false;
+        if (toFire) {
+            synchronized (travelLock) {
+                travellingThread = Thread.currentThread();
+            }
+        }
+        Log.info(() -> this + " Traveling to: ZONE " + zone.getID() + " (" + centerX + ", " + centerY + "), ETA: " + travelTimeMillis/1000 + "s");
         try {
-            System.out.println(this + " Traveling to: ZONE " + zone.getID() + " (" + centerX + ", " + centerY + "), ETA: " + travelTimeMillis/1000 + "s");
-
             // Simulate time travelling by sleeping
             Thread.sleep(travelTimeMillis);
+        } catch (InterruptedException e) {
+            synchronized (travelLock) {
+                retasked = retaskFire != null;
+            }
+            if (!retasked) {
+                Thread.currentThread().interrupt();
+                Log.error(() -> this + " Travel interrupted!");
+                return;
+            }
+        } finally {
+            if (toFire) {
+                synchronized (travelLock) {
+                    travellingThread = null;
+                }
+            }
+        }
+        synchronized (travelLock) {
+            // A re-task that arrived just as the drone landed leaves the interrupt flag set
+            if (retaskFire != null) Thread.interrupted();
+        }
 
-            // Update the drones position once its reached its destination
-            this.droneX = centerX;
-            this.droneY = centerY;
+        if (retasked) {
+            // Stop where the drone is, between its start and the zone
+            double fraction = Math.min(1.0, (System.nanoTime() - departed) / 1e6 / Math.max(1, travelTimeMillis));
+            this.droneX += (centerX - droneX) * fraction;
+            this.droneY += (centerY - droneY) * fraction;
+            this.currentZone = new Zone(-1, droneX, droneY, droneX, droneY);
+            Log.info(() -> this + " stopped at (" + droneX + ", " + droneY + ") on the way to ZONE " + zone.getID());
+            traceSpan("travel towards ZONE " + zone.getID() + " (retasked)", start);
+            return;
+        }
 
-            System.out.println(this + " arrived at destination.");
-            this.currentZone = zone;
+        // Update the drones position once its reached its destination
+        this.droneX = centerX;
+        this.droneY = centerY;
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println(this + " Travel interrupted!");
+        Log.info(() -> this + " arrived at destination.");
+        this.currentZone = zone;
+        traceSpan(zone.getID() == BASE_ZONE.getID() ? "return to base" : "travel to ZONE " + zone.getID(), start);
+    }
+
+    /**
+     * Records a stage of the fire the drone is working on, or of the fire it just completed.
+     *
+     * @param name the name of the stage
+     * @param startMicros the start of the stage, from Tracer.now()
+     */
+    public void traceSpan(String name, long startMicros) {
+        FireEvent fire = currentFireEvent != null ? currentFireEvent : lastFireEvent;
+        if (fire != null) {
+            Tracer.span(fire.getTraceId(), fire.getFireID(), "DRONE " + droneID, name, startMicros, Tracer.now());
         }
     }
 
@@ -279,6 +499,13 @@ public class DroneSubsystem implements Runnable {
     }
 
 
+    /**
+     * @return the state machine driving this drone, with its dwell times and utilization
+     */
+    public DroneStateMachine getStateMachine(){
+        return this.stateMachine;
+    }
+
     public Zone getNextDestination(){
         return this.nextDestination;
     }
@@ -309,26 +536,68 @@ public class DroneSubsystem implements Runnable {
         return false;
     }
 
+    int getDroneID() {
+        return droneID;
+    }
+
+    /**
+     * @param announced true if the drone's host announces it as waiting for a fire, so it waits for its first
+     *                  fire without sending a READY
+     */
+    void setAnnounced(boolean announced) {
+        this.announced = announced;
+    }
+
+    /**
+     * @return true if the drone is announced as waiting and has not been sent its first fire yet
+     */
+    boolean isAnnounced() {
+        return announced;
+    }
+
+    /**
+     * @return the port the drone receives the Scheduler's replies on
+     */
+    int getPort() {
+        return DRONE_PORT;
+    }
+
+    /**
+     * @return the port the drone listens for RETASK and REPOSITION requests on
+     */
+    int getControlPort() {
+        return controlTransport.getLocalPort();
+    }
+
     @Override
     public String toString() {
-        return "[DRONE: " + this.droneID + "]" + "[PORT: " + this.DRONE_PORT + "]" + "[STATE: " + this.stateMachine.getState().toUpperCase() + "]";
+        return "[DRONE: " + this.droneID + "]" + "[PORT: " + this.DRONE_PORT + "]" + "[STATE: " + this.stateMachine.getState() + "]";
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         // Start logging daemon
         MetricsLogger.startDaemon();
+        LatencyMetrics.startIntervalReporterIfConfigured();
+        LiveMetrics.startIfConfigured();
+        Tracer.startIfConfigured("drones");
 
         // Initialize DroneSubsystems
-        DroneSubsystem droneSubsystem1 = new DroneSubsystem(100);
-        DroneSubsystem droneSubsystem2 = new DroneSubsystem(200);
-        DroneSubsystem droneSubsystem3 = new DroneSubsystem(300);
-        DroneSubsystem droneSubsystem4 = new DroneSubsystem(400);
-        DroneSubsystem droneSubsystem5 = new DroneSubsystem(500);
-        DroneSubsystem droneSubsystem6 = new DroneSubsystem(600);
-        DroneSubsystem droneSubsystem7 = new DroneSubsystem(700);
-        DroneSubsystem droneSubsystem8 = new DroneSubsystem(800);
-        DroneSubsystem droneSubsystem9 = new DroneSubsystem(900);
-        DroneSubsystem droneSubsystem999 = new DroneSubsystem(999);
+        Transport.Factory transports = DeploymentConfig.get().getTransports();
+        DroneSubsystem droneSubsystem1 = new DroneSubsystem(100, transports);
+        DroneSubsystem droneSubsystem2 = new DroneSubsystem(200, transports);
+        DroneSubsystem droneSubsystem3 = new DroneSubsystem(300, transports);
+        DroneSubsystem droneSubsystem4 = new DroneSubsystem(400, transports);
+        DroneSubsystem droneSubsystem5 = new DroneSubsystem(500, transports);
+        DroneSubsystem droneSubsystem6 = new DroneSubsystem(600, transports);
+        DroneSubsystem droneSubsystem7 = new DroneSubsystem(700, transports);
+        DroneSubsystem droneSubsystem8 = new DroneSubsystem(800, transports);
+        DroneSubsystem droneSubsystem9 = new DroneSubsystem(900, transports);
+        DroneSubsystem droneSubsystem999 = new DroneSubsystem(999, transports);
+
+        // Announce the whole fleet in one frame before any drone checks in, and again periodically
+        DroneDiscovery.startAnnouncing(List.of(droneSubsystem1, droneSubsystem2, droneSubsystem3, droneSubsystem4,
+                droneSubsystem5, droneSubsystem6, droneSubsystem7, droneSubsystem8, droneSubsystem9, droneSubsystem999),
+                transports, DeploymentConfig.get());
 
         // Start threads
         Thread droneThread1 = new Thread(droneSubsystem1, "DRONE 1");
@@ -1,20 +1,108 @@
-import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Represents a fire event occurring in a specific zone.
  * This event includes details such as the time of occurrence,
  * zone ID, event type, severity level, and the amount of water needed to extinguish the fire.
+ *
+ * The fields are kept compact: the time as seconds of the day, and the event type, severity, failure
+ * and state as enums. A value that has no enum constant, or a time in another format, is kept as the
+ * original string so the fire is always written back exactly as it was read.
  */
 public class FireEvent {
-    private final String time;       // Event timestamp
+    /**
+     * The type of a fire event.
+     */
+    public enum Type {
+        FIRE_DETECTED, DRONE_REQUEST, OTHER;
+
+        static Type parse(String value) {
+            if ("FIRE_DETECTED".equals(value)) return FIRE_DETECTED;
+            if ("DRONE_REQUEST".equals(value)) return DRONE_REQUEST;
+            return OTHER;
+        }
+    }
+
+    /**
+     * The severity of a fire, which decides the water needed to extinguish it.
+     */
+    public enum Severity {
+        HIGH("High", 30), MODERATE("Moderate", 20), LOW("Low", 10), OTHER(null, 0);
+
+        private final String label;
+        private final int waterRequired;
+
+        Severity(String label, int waterRequired) {
+            this.label = label;
+            this.waterRequired = waterRequired;
+        }
+
+        /**
+         * @return the water needed to extinguish a fire of this severity, in litres
+         */
+        public int getWaterRequired() { return waterRequired; }
+
+        /**
+         * @return the rank of the severity when sorting fires, the most severe first
+         */
+        public int getRank() { return ordinal(); }
+
+        static Severity parse(String value) {
+            if (value == null) return OTHER;
+            for (Severity severity : values()) {
+                if (severity.label != null && severity.label.equalsIgnoreCase(value)) return severity;
+            }
+            return OTHER;
+        }
+    }
+
+    /**
+     * The failure injected into a fire, if any.
+     */
+    public enum Failure {
+        NONE("None"), FAULT("FAULT"), HANDOFF("HANDOFF"), OTHER(null);
+
+        private final String label;
+
+        Failure(String label) {
+            this.label = label;
+        }
+
+        static Failure parse(String value) {
+            for (Failure failure : values()) {
+                if (failure.label != null && failure.label.equals(value)) return failure;
+            }
+            return OTHER;
+        }
+    }
+
+    /**
+     * The state of a fire.
+     */
+    public enum State { ACTIVE, EXTINGUISHED }
+
+    /** The time formats a time of day can be parsed from and written back in. */
+    static final byte TIME_RAW = 0, TIME_HH_MM = 1, TIME_HH_MM_SS = 2;
+
+    // Indexes of the original strings kept for values that have no compact form
+    private static final int RAW_TIME = 0, RAW_TYPE = 1, RAW_SEVERITY = 2, RAW_FAILURE = 3, RAW_TRACE = 4;
+
+    /** Matches a serialized FireEvent, as written by toString. */
+    static final Pattern FIRE_EVENT_PATTERN = Pattern.compile("FireEvent\\{'ID=(\\d+)', time='([^']+)', zoneId=(\\d+), eventType='([^']+)', severity='([^']+)', state='[^']+', failure='([^']+)'(?:, trace='([^']+)')?\\}");
+
+    private final int fireID;
     private final int zoneId;        // Fire zone ID
-    private final String eventType;  // Type of event (FIRE_DETECTED or DRONE_REQUEST)
-    private final String severity;   // Severity level (High, Moderate, Low)
+    private final int secondsOfDay;  // Event time, or -1 if the time is only kept as a string
+    private final byte timeFormat;
+    private final Type eventType;    // Type of event (FIRE_DETECTED or DRONE_REQUEST)
+    private final Severity severity; // Severity level (High, Moderate, Low)
+    private final Failure failure;   // indicates if there will be a failure drone.
+    private State state;
     private int remainingWaterNeeded;
-    private final int fireID;
-    private String failure;    // incidates if there will be a failure drone. 
-    private String state;
-    private int port;
+    private long traceId;            // Correlates the fire's messages and spans across subsystems
+    private boolean traced;
+    private String[] raw;            // Original strings of values with no compact form, null if there are none
 
 
     /**
@@ -27,14 +115,102 @@ public class FireEvent {
      * @param failure   The failure marker of the fire
      */
     public FireEvent(int fireID, String time, int zoneId, String eventType, String severity, String failure) {
-        this.failure = failure;
         this.fireID = fireID;
-        this.time = time;
         this.zoneId = zoneId;
+        this.secondsOfDay = parseSecondsOfDay(time);
+        this.timeFormat = secondsOfDay < 0 ? TIME_RAW : time.length() == 5 ? TIME_HH_MM : TIME_HH_MM_SS;
+        this.eventType = Type.parse(eventType);
+        this.severity = Severity.parse(severity);
+        this.failure = Failure.parse(failure);
+        this.state = State.ACTIVE;
+
+        if (timeFormat == TIME_RAW) keepRaw(RAW_TIME, time);
+        if (this.eventType == Type.OTHER) keepRaw(RAW_TYPE, eventType);
+        if (this.severity == Severity.OTHER || !this.severity.label.equals(severity)) keepRaw(RAW_SEVERITY, severity);
+        if (this.failure == Failure.OTHER) keepRaw(RAW_FAILURE, failure);
+        this.remainingWaterNeeded = getWaterRequired();
+    }
+
+    /**
+     * Constructs a fire event from its compact fields, as kept in a FireEventStore.
+     */
+    FireEvent(int fireID, int zoneId, int secondsOfDay, byte timeFormat, Type eventType, Severity severity,
+              Failure failure, State state, int remainingWaterNeeded, boolean traced, long traceId, String[] raw) {
+        this.fireID = fireID;
+        this.zoneId = zoneId;
+        this.secondsOfDay = secondsOfDay;
+        this.timeFormat = timeFormat;
         this.eventType = eventType;
         this.severity = severity;
-        this.remainingWaterNeeded = getWaterRequired();
-        this.state = "ACTIVE";
+        this.failure = failure;
+        this.state = state;
+        this.remainingWaterNeeded = remainingWaterNeeded;
+        this.traced = traced;
+        this.traceId = traceId;
+        this.raw = raw == null ? null : raw.clone();
+    }
+
+    /**
+     * Parses a fire event from the format written by toString, as carried in the subsystems' messages.
+     *
+     * @param data a message containing a serialized FireEvent
+     * @return the fire event, or null if the message does not contain one
+     */
+    public static FireEvent parse(String data) {
+        Matcher matcher = FIRE_EVENT_PATTERN.matcher(data);
+        if (!matcher.find()) return null;
+
+        FireEvent fireEvent = new FireEvent(Integer.parseInt(matcher.group(1)), matcher.group(2),
+                Integer.parseInt(matcher.group(3)), matcher.group(4), matcher.group(5), matcher.group(6));
+        fireEvent.setTraceId(matcher.group(7));
+        return fireEvent;
+    }
+
+    private void keepRaw(int index, String value) {
+        if (raw == null) raw = new String[RAW_TRACE + 1];
+        raw[index] = value;
+    }
+
+    private String rawValue(int index) {
+        return raw == null ? null : raw[index];
+    }
+
+    /**
+     * Parses a "HH:mm" or "HH:mm:ss" time of day.
+     *
+     * @return the seconds since midnight, or -1 if the time is in another format
+     */
+    static int parseSecondsOfDay(String time) {
+        if (time == null || (time.length() != 5 && time.length() != 8)) return -1;
+        int seconds = 0;
+        for (int field = 0; field * 3 < time.length(); field++) {
+            int position = field * 3;
+            char high = time.charAt(position);
+            char low = time.charAt(position + 1);
+            if (high < '0' || high > '9' || low < '0' || low > '9') return -1;
+            if (position + 2 < time.length() && time.charAt(position + 2) != ':') return -1;
+            int value = (high - '0') * 10 + (low - '0');
+            if (value >= (field == 0 ? 24 : 60)) return -1;
+            seconds = seconds * 60 + value;
+        }
+        return time.length() == 5 ? seconds * 60 : seconds;
+    }
+
+    /**
+     * Formats a time of day in the format it was parsed from.
+     */
+    static String formatTime(int secondsOfDay, byte timeFormat) {
+        int hours = secondsOfDay / 3600;
+        int minutes = secondsOfDay / 60 % 60;
+        StringBuilder time = new StringBuilder(8);
+        appendTwoDigits(time, hours).append(':');
+        appendTwoDigits(time, minutes);
+        if (timeFormat == TIME_HH_MM_SS) appendTwoDigits(time.append(':'), secondsOfDay % 60);
+        return time.toString();
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder builder, int value) {
+        return builder.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
     }
 
     /**
@@ -43,9 +219,18 @@ public class FireEvent {
      * @return The event timestamp.
      */
     public String getTime() {
-        return time;
+        return timeFormat == TIME_RAW ? rawValue(RAW_TIME) : formatTime(secondsOfDay, timeFormat);
     }
 
+    /**
+     * @return The event time in seconds since midnight, or -1 if the time is not a time of day.
+     */
+    public int getSecondsOfDay() {
+        return secondsOfDay;
+    }
+
+    byte getTimeFormat() { return timeFormat; }
+
     /**
      * Gets the ID of the fire zone.
      *
@@ -61,18 +246,34 @@ public class FireEvent {
      * @return The event type (FIRE_DETECTED or DRONE_REQUEST).
      */
     public String getEventType() {
-        return eventType;
+        return eventType == Type.OTHER ? rawValue(RAW_TYPE) : eventType.name();
     }
 
+    /**
+     * @return The event type as an enum, OTHER if it is not a known type.
+     */
+    public Type getType() { return eventType; }
+
     /**
      * Gets the severity level of the fire.
      *
      * @return The severity level (High, Moderate, Low).
      */
     public String getSeverity() {
-        return severity;
+        String original = rawValue(RAW_SEVERITY);
+        return original != null || severity == Severity.OTHER ? original : severity.label;
     }
 
+    /**
+     * @return The severity as an enum, OTHER if it is not a known severity.
+     */
+    public Severity getSeverityLevel() { return severity; }
+
+    /**
+     * @return The failure as an enum, OTHER if it is not a known failure.
+     */
+    public Failure getFailure() { return failure; }
+
     /**
      * Gets the unique fire ID.
      *
@@ -91,6 +292,15 @@ public class FireEvent {
         this.remainingWaterNeeded -= agentAmount;
     }
 
+    /**
+     * Sets the water this fire still needs, such as the share of it a drone was sent to deliver.
+     *
+     * @param water The amount of water still required.
+     */
+    public void setRemainingWaterNeeded(int water){
+        this.remainingWaterNeeded = water;
+    }
+
     /**
      * Gets the remaining water needed to put out the fire.
      *
@@ -105,8 +315,53 @@ public class FireEvent {
      *
      * @return The String state of the fire
      */
-    public String getState(){ return state; }
+    public String getState(){ return state.name(); }
+
+    /**
+     * @return The state of the fire as an enum
+     */
+    public State getFireState(){ return state; }
 
+    /**
+     * @param state The new state of the fire
+     */
+    public void setFireState(State state){ this.state = state; }
+
+    /**
+     * Gets the trace ID that correlates the fire across subsystems
+     *
+     * @return The trace ID, or null if the fire is not traced
+     */
+    public String getTraceId(){
+        if (!traced) return null;
+        String original = rawValue(RAW_TRACE);
+        if (original != null) return original;
+        String hex = Long.toHexString(traceId);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    /**
+     * Sets the trace ID that is carried in every message for this fire
+     *
+     * @param traceId The trace ID, or null to stop tracing the fire
+     */
+    public void setTraceId(String traceId){
+        this.traced = traceId != null;
+        if (raw != null) raw[RAW_TRACE] = null;
+        if (traceId != null && traceId.length() == 16) {
+            try {
+                this.traceId = Long.parseUnsignedLong(traceId, 16);
+                return;
+            } catch (NumberFormatException ignored) { }
+        }
+        if (traceId != null) keepRaw(RAW_TRACE, traceId);
+    }
+
+    boolean isTraced() { return traced; }
+
+    long getTraceBits() { return traceId; }
+
+    String[] getRawValues() { return raw; }
 
     /**
      *  Returns if the fire has a failure status
@@ -114,7 +369,7 @@ public class FireEvent {
      * @return Bool of the failure status
      */
     public boolean getFailureFlag(){
-        return Objects.equals(failure, "FAULT");
+        return failure == Failure.FAULT;
     }
 
     /**
@@ -123,19 +378,7 @@ public class FireEvent {
      * @return The amount of water required to extinguish the fire.
      */
     public int getWaterRequired() {
-        switch (severity.toUpperCase()){
-            case "HIGH":
-                return 30; // High severity needs 30L
-
-            case "MODERATE":
-                return 20; // Moderate severity needs 20L
-
-            case "LOW":
-                return 10; // Low severity needs 10L
-
-            default:
-                return 0;
-        }
+        return severity.getWaterRequired();
     }
 
     /**
@@ -145,14 +388,16 @@ public class FireEvent {
      */
     @Override
     public String toString() {
+        String traceValue = getTraceId();
         return "FireEvent{" + '\'' +
                 "ID=" + fireID + '\'' +
-                ", time='" + time + '\'' +
+                ", time='" + getTime() + '\'' +
                 ", zoneId=" + zoneId +
-                ", eventType='" + eventType + '\'' +
-                ", severity='" + severity + '\'' +
-                ", state='" + state + '\'' +
-                ", failure='"+ failure + '\'' +
+                ", eventType='" + getEventType() + '\'' +
+                ", severity='" + getSeverity() + '\'' +
+                ", state='" + getState() + '\'' +
+                ", failure='"+ (failure == Failure.OTHER ? rawValue(RAW_FAILURE) : failure.label) + '\'' +
+                (traceValue != null ? ", trace='" + traceValue + '\'' : "") +
                 '}';
     }
 }
@@ -0,0 +1,181 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A packed store of fire events, three longs per fire instead of a FireEvent object with its strings,
+ * so the Scheduler can hold a million pending or historical fires in about 24 MB.
+ * Fires are appended and keep their index. A reusable View reads a fire in place without creating
+ * objects, and get materializes a FireEvent when one is needed. The rare fires with values that
+ * have no compact form keep their original strings on the side.
+ *
+ * Every method is synchronized. Views read without locking, so they are meant for the thread that
+ * owns the store or for scans that tolerate a fire being updated while it is read.
+ */
+public class FireEventStore {
+    private static final int WORDS_PER_FIRE = 3;
+
+    // Layout of the second word of a fire
+    private static final int SECONDS_BITS = 17;
+    private static final int TIME_FORMAT_SHIFT = 17;
+    private static final int TYPE_SHIFT = 19;
+    private static final int SEVERITY_SHIFT = 21;
+    private static final int FAILURE_SHIFT = 24;
+    private static final int STATE_SHIFT = 27;
+    private static final int TRACED_SHIFT = 28;
+    private static final int WATER_SHIFT = 32;
+
+    private static final FireEvent.Type[] TYPES = FireEvent.Type.values();
+    private static final FireEvent.Severity[] SEVERITIES = FireEvent.Severity.values();
+    private static final FireEvent.Failure[] FAILURES = FireEvent.Failure.values();
+    private static final FireEvent.State[] STATES = FireEvent.State.values();
+
+    private long[] words;
+    private int size;
+    private final IntIntMap indexByFireID;
+    private final Map<Integer, String[]> rawValues = new HashMap<>();
+
+    /**
+     * @param expectedFires the number of fires to allocate room for, the store grows past it
+     */
+    public FireEventStore(int expectedFires) {
+        words = new long[Math.max(1, expectedFires) * WORDS_PER_FIRE];
+        indexByFireID = new IntIntMap(expectedFires);
+    }
+
+    public FireEventStore() {
+        this(1024);
+    }
+
+    /**
+     * Appends a fire. A fire added again with the same ID, such as a HANDOFF, gets a new index and
+     * becomes the one indexOf finds.
+     *
+     * @param fire the fire to add
+     * @return the index of the fire in the store
+     */
+    public synchronized int add(FireEvent fire) {
+        if ((size + 1) * WORDS_PER_FIRE > words.length) {
+            long[] grown = new long[words.length * 2];
+            System.arraycopy(words, 0, grown, 0, size * WORDS_PER_FIRE);
+            words = grown;
+        }
+        int index = size++;
+        int base = index * WORDS_PER_FIRE;
+        words[base] = (long) fire.getFireID() << 32 | (fire.getZoneId() & 0xFFFFFFFFL);
+        words[base + 1] = (fire.getSecondsOfDay() < 0 ? 0 : fire.getSecondsOfDay())
+                | (long) fire.getTimeFormat() << TIME_FORMAT_SHIFT
+                | (long) fire.getType().ordinal() << TYPE_SHIFT
+                | (long) fire.getSeverityLevel().ordinal() << SEVERITY_SHIFT
+                | (long) fire.getFailure().ordinal() << FAILURE_SHIFT
+                | (long) fire.getFireState().ordinal() << STATE_SHIFT
+                | (fire.isTraced() ? 1L : 0L) << TRACED_SHIFT
+                | (long) fire.getRemainingWaterNeeded() << WATER_SHIFT;
+        words[base + 2] = fire.getTraceBits();
+        if (fire.getRawValues() != null) rawValues.put(index, fire.getRawValues().clone());
+        indexByFireID.put(fire.getFireID(), index);
+        return index;
+    }
+
+    /**
+     * @param fireID the ID of a fire
+     * @return the index of the latest fire added with the ID, or -1 if there is none
+     */
+    public synchronized int indexOf(int fireID) {
+        return indexByFireID.get(fireID);
+    }
+
+    /**
+     * @return the number of fires in the store
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param index the index of a fire
+     * @param state the new state of the fire
+     */
+    public synchronized void setState(int index, FireEvent.State state) {
+        int word = checkIndex(index) * WORDS_PER_FIRE + 1;
+        words[word] = (words[word] & ~(1L << STATE_SHIFT)) | (long) state.ordinal() << STATE_SHIFT;
+    }
+
+    /**
+     * @param index the index of a fire
+     * @param water the water still needed to extinguish the fire, in litres
+     */
+    public synchronized void setRemainingWaterNeeded(int index, int water) {
+        int word = checkIndex(index) * WORDS_PER_FIRE + 1;
+        words[word] = (words[word] & 0xFFFFFFFFL) | (long) water << WATER_SHIFT;
+    }
+
+    /**
+     * @param index the index of a fire
+     * @return a new FireEvent with the fire's current values
+     */
+    public synchronized FireEvent get(int index) {
+        int base = checkIndex(index) * WORDS_PER_FIRE;
+        long second = words[base + 1];
+        byte timeFormat = (byte) ((second >>> TIME_FORMAT_SHIFT) & 0x3);
+        return new FireEvent((int) (words[base] >>> 32), (int) words[base],
+                timeFormat == FireEvent.TIME_RAW ? -1 : (int) (second & ((1 << SECONDS_BITS) - 1)), timeFormat,
+                TYPES[(int) (second >>> TYPE_SHIFT) & 0x3], SEVERITIES[(int) (second >>> SEVERITY_SHIFT) & 0x7],
+                FAILURES[(int) (second >>> FAILURE_SHIFT) & 0x7], STATES[(int) (second >>> STATE_SHIFT) & 0x1],
+                (int) (second >> WATER_SHIFT), ((second >>> TRACED_SHIFT) & 1) != 0, words[base + 2],
+                rawValues.get(index));
+    }
+
+    /**
+     * @return the bytes used by the packed fires, not counting the side table of original strings
+     */
+    public synchronized long getPackedBytes() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    /**
+     * @return a new view over this store, which can be moved between fires and reused
+     */
+    public View view() {
+        return new View();
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("No fire at index " + index);
+        return index;
+    }
+
+    /**
+     * A flyweight over one fire of the store, read in place.
+     */
+    public class View {
+        private int base;
+
+        /**
+         * @param index the index of the fire to read
+         * @return this view
+         */
+        public View moveTo(int index) {
+            base = checkIndex(index) * WORDS_PER_FIRE;
+            return this;
+        }
+
+        public int getFireID() { return (int) (words[base] >>> 32); }
+
+        public int getZoneId() { return (int) words[base]; }
+
+        public int getSecondsOfDay() {
+            long second = words[base + 1];
+            return ((second >>> TIME_FORMAT_SHIFT) & 0x3) == FireEvent.TIME_RAW ? -1 : (int) (second & ((1 << SECONDS_BITS) - 1));
+        }
+
+        public FireEvent.Severity getSeverity() { return SEVERITIES[(int) (words[base + 1] >>> SEVERITY_SHIFT) & 0x7]; }
+
+        public FireEvent.Failure getFailure() { return FAILURES[(int) (words[base + 1] >>> FAILURE_SHIFT) & 0x7]; }
+
+        public FireEvent.State getState() { return STATES[(int) (words[base + 1] >>> STATE_SHIFT) & 0x1]; }
+
+        public int getRemainingWaterNeeded() { return (int) (words[base + 1] >> WATER_SHIFT); }
+
+        public int getWaterRequired() { return getSeverity().getWaterRequired(); }
+    }
+}
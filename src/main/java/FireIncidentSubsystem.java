@@ -1,7 +1,6 @@
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.net.*;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
@@ -15,10 +14,11 @@ import java.time.format.DateTimeParseException;
  */
 public class FireIncidentSubsystem implements Runnable {
     private final String csvFilePath;
-    private final int SCHEDULER_PORT = 7000;
+    private final int SCHEDULER_PORT = DeploymentConfig.get().getSchedulerPort();
     private int nextFireID = 1;
-    private static final int PORT = 8000;
+    private final int PORT = DeploymentConfig.get().getFirePortBase();
     private final List<Thread> rpcThreads = new ArrayList<>();
+    private final Transport.Factory transports;
 
     private FireEvent prevFireEvent;
     private static final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm:ss");
@@ -29,7 +29,18 @@ public class FireIncidentSubsystem implements Runnable {
      * @param csvFilePath The path to the CSV file containing fire event data.
      */
     public FireIncidentSubsystem(String csvFilePath) {
+        this(csvFilePath, Transport.UDP);
+    }
+
+    /**
+     * Constructor to initialize the FireIncidentSubsystem with a CSV file path and the transport to report fires through.
+     *
+     * @param csvFilePath The path to the CSV file containing fire event data.
+     * @param transports opens the endpoint of each fire report, UDP or in-memory
+     */
+    public FireIncidentSubsystem(String csvFilePath, Transport.Factory transports) {
         this.csvFilePath = csvFilePath;
+        this.transports = transports;
         prevFireEvent = null;
     }
 
@@ -67,22 +78,12 @@ public class FireIncidentSubsystem implements Runnable {
     * to be reported via RPC.
     * @return A new, unstarted {@link Thread} which, when its {@code start()} method is called,
     * will execute the RPC send and receive logic for the given fire event.
-    * @throws UnknownHostException If the local host IP address cannot be determined by
-    * {@link InetAddress#getLocalHost()}, which is used to set
-    * the destination address for the initial DatagramPacket.
     */
-    private Thread getThread(FireEvent fireEvent) throws UnknownHostException {
+    private Thread getThread(FireEvent fireEvent) {
         String newFireReport = "NEW FIRE: " + fireEvent;
-        byte[] dataBuffer = newFireReport.getBytes();
-        DatagramPacket dataPacket = new DatagramPacket(dataBuffer, dataBuffer.length, InetAddress.getLocalHost(), SCHEDULER_PORT);
-
-        byte[] replyBuffer = new byte[200];
-        DatagramPacket replyPacket = new DatagramPacket(replyBuffer, replyBuffer.length);
-
-        // Create and start a new thread for each RPC send
-        //new Thread(() -> rpc_send(dataPacket, replyPacket, fireEvent)).start();
 
-        return new Thread(() -> rpc_send(dataPacket, replyPacket, fireEvent));
+        // Create a new thread for each RPC send
+        return new Thread(() -> rpc_send(newFireReport, fireEvent));
     }
 
     /**
@@ -141,7 +142,7 @@ public class FireIncidentSubsystem implements Runnable {
 
             } catch (InterruptedException ignored) { }
         } else if (timeDifference.isNegative()) {
-            System.out.println("Warning: Current event time is before previous event time.");
+            Log.warn(() -> "Current event time is before previous event time.");
         }
     }
 
@@ -159,58 +160,56 @@ public class FireIncidentSubsystem implements Runnable {
         String severity = parts[3];
         String failure = parts[4];
 
-        // Create the new fire event
+        // Create the new fire event, with the trace ID carried in all of its messages
         FireEvent newFire = new FireEvent(nextFireID, time, zoneId, eventType, severity, failure);
+        newFire.setTraceId(Tracer.newTraceId());
         nextFireID++;
         return newFire;
     }
 
     /**
      * RPC send method that sends data and waits for a synchronous reply.
-     * @param dataPacket The data to send
-     * @param replyPacket The reply from the server
+     * @param data The fire report to send
+     * @param fireEvent The fire being reported
      */
-    private void rpc_send(DatagramPacket dataPacket, DatagramPacket replyPacket, FireEvent fireEvent) {
-        try {
-            double startResponseTime = System.currentTimeMillis();
-            int fireID = fireEvent.getFireID();
-            int port = PORT + fireID;
-            DatagramSocket sendReceiveSocket = new DatagramSocket(port);
+    private void rpc_send(String data, FireEvent fireEvent) {
+        int fireID = fireEvent.getFireID();
+        int port = PORT + fireID;
+        try (Transport sendReceiveTransport = transports.open(port)) {
+            long startResponseTime = System.nanoTime();
+            long reportStart = Tracer.now();
 
             // STEP 1: Send data to Scheduler
-            sendReceiveSocket.send(dataPacket);
-            String data = new String(dataPacket.getData(), 0, dataPacket.getLength());
-            Print.blue("[FireIncidentSubsystem -> Scheduler] Sent request [FIRE " + fireID + "]: " + data);
+            sendReceiveTransport.send(data, SCHEDULER_PORT);
+            Log.info(Log.Color.BLUE, () -> "[FireIncidentSubsystem -> Scheduler] Sent request [FIRE " + fireID + "]: " + data);
 
             // STEP 2: Wait to receive ack from scheduler
-            byte[] ackBuffer = new byte[200];
-            DatagramPacket ackPacket = new DatagramPacket(ackBuffer, ackBuffer.length);
-            sendReceiveSocket.receive(ackPacket);
-            String ackData = new String(ackPacket.getData(), 0, ackPacket.getLength());
-            System.out.println("[FireIncidentSubsystem <- Scheduler] Got Scheduler reply [FIRE " + fireID + "]: " + ackData);
+            String ackData = sendReceiveTransport.receiveText();
+            Log.info(() -> "[FireIncidentSubsystem <- Scheduler] Got Scheduler reply [FIRE " + fireID + "]: " + ackData);
+            MetricsLogger.logEvent("FIRE " + fireID, MetricCode.FIRE_REPORTED.name(), 1, "Fire reported to the Scheduler");
+            Tracer.span(fireEvent.getTraceId(), fireID, "FIRE_INCIDENT_SUBSYSTEM", "report", reportStart, Tracer.now());
 
             // STEP 3: Send request to scheduler for the drone reply
             String request = "REQUEST CONFIRMATION: [FIRE " + fireID + "]:" + fireEvent;
-            byte[] requestBuffer = request.getBytes();
 
-            // Datagram packet to send request
-            double startExtinguishTime = System.currentTimeMillis(); // start time to extinguish fire
-            DatagramPacket requestPacket = new DatagramPacket(requestBuffer, requestBuffer.length, InetAddress.getLocalHost(), SCHEDULER_PORT);
-            sendReceiveSocket.send(requestPacket);
+            // Send the request
+            long startExtinguishTime = System.nanoTime(); // start time to extinguish fire
+            long confirmationStart = Tracer.now();
+            sendReceiveTransport.send(request, SCHEDULER_PORT);
 
             // STEP 4: Wait to receive the server's response passed back through the host
-            sendReceiveSocket.receive(replyPacket);
-            String reply = new String(replyPacket.getData(), 0, replyPacket.getLength());
-            double endTime = System.currentTimeMillis(); // end time of extinguished fire and response time
-            double extinguishedTime = endTime - startExtinguishTime;
-            double responseTime = endTime - startResponseTime;
+            String reply = sendReceiveTransport.receiveText();
+            long endTime = System.nanoTime(); // end time of extinguished fire and response time
+            long extinguishedTime = endTime - startExtinguishTime;
+            long responseTime = endTime - startResponseTime;
+            Tracer.span(fireEvent.getTraceId(), fireID, "FIRE_INCIDENT_SUBSYSTEM", "wait for confirmation", confirmationStart, Tracer.now());
 
             // record specific fire
-            MetricsLogger.logEvent("FIRE " + fireID, "FIRE_EXTINGUISHED", extinguishedTime,"Time taken to extinguish fire (ms)");
+            MetricsLogger.logLatency("FIRE " + fireID, MetricCode.FIRE_EXTINGUISHED, extinguishedTime,"Time taken to extinguish fire (ms)");
 
             // record FireIncidentSubsystem's response time
-            MetricsLogger.logEvent("FIRE_INCIDENT_SUBSYSTEM", "FIRE_RESPONSE", responseTime, "Response time of FireIncidentSubsystem (ms)");
-            Print.green("[Drone -> Scheduler -> FireIncidentSubsystem] Got Drone Reply [FIRE " + fireID + "]: " + reply);
+            MetricsLogger.logLatency("FIRE_INCIDENT_SUBSYSTEM", MetricCode.FIRE_RESPONSE, responseTime, "Response time of FireIncidentSubsystem (ms)");
+            Log.info(Log.Color.GREEN, () -> "[Drone -> Scheduler -> FireIncidentSubsystem] Got Drone Reply [FIRE " + fireID + "]: " + reply);
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -225,15 +224,18 @@ public class FireIncidentSubsystem implements Runnable {
         return rpcThreads;
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         // Start logging daemon
         MetricsLogger.startDaemon();
+        LatencyMetrics.startIntervalReporterIfConfigured();
+        LiveMetrics.startIfConfigured();
+        Tracer.startIfConfigured("fire-incident");
 
         // CSV file path containing fire event data
         String csvFilePath = "src/main/java/fire_events.csv";
 
         // Initialize FireIncidentSubsystem
-        FireIncidentSubsystem fireIncidentSubsystem = new FireIncidentSubsystem(csvFilePath);
+        FireIncidentSubsystem fireIncidentSubsystem = new FireIncidentSubsystem(csvFilePath, DeploymentConfig.get().getTransports());
 
         // Start Thread
         Thread fireIncidentThread = new Thread(fireIncidentSubsystem, "FIRE");
@@ -250,6 +252,10 @@ public class FireIncidentSubsystem implements Runnable {
             e.printStackTrace();
         }
 
+        // make sure every logged event is in the event log before analyzing it
+        MetricsLogger.flush();
+        Log.flush();
+
         LogAnalyzer analyzer = new LogAnalyzer();
         analyzer.analyzeMetrics();
 
@@ -0,0 +1,112 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The Scheduler's central record of the water each fire still needs. A fire that needs more than one
+ * drone can carry is split into shares dispatched to several drones at once; each share is a fire
+ * request with " water=N" appended, and the fire is put out when the water delivered by all of its
+ * shares reaches what it needs.
+ *
+ * Every method is synchronized.
+ */
+public class FireLedger {
+    private static final Pattern SHARE_PATTERN = Pattern.compile(" water=(\\d+)");
+
+    private final Map<Integer, int[]> fires = new HashMap<>(); // fire ID -> {water needed, water delivered}
+
+    /**
+     * @param fireRequest a fire request
+     * @param water the water the drone sent the request should deliver
+     * @return the request for a share of the fire
+     */
+    public static String withShare(String fireRequest, int water) {
+        return fireRequest + " water=" + water;
+    }
+
+    /**
+     * @param fireRequest a fire request, which may be a share
+     * @return the request for the whole fire
+     */
+    public static String withoutShare(String fireRequest) {
+        return SHARE_PATTERN.matcher(fireRequest).replaceAll("");
+    }
+
+    /**
+     * @param data a message carrying a fire request
+     * @return the water of the share in the message, or -1 if it is not a share
+     */
+    public static int parseShare(String data) {
+        Matcher matcher = SHARE_PATTERN.matcher(data);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    /**
+     * Splits the water a fire needs evenly across a number of drones, without giving any drone more
+     * than it can carry unless there are not enough drones.
+     *
+     * @param water the water the fire needs
+     * @param capacity the water one drone carries
+     * @param drones the most drones the fire may be split across
+     * @return the water of each share, at least one share
+     */
+    public static int[] split(int water, int capacity, int drones) {
+        int count = Math.max(1, Math.min(drones, (water + capacity - 1) / capacity));
+        int[] shares = new int[count];
+        for (int i = 0; i < count; i++) {
+            shares[i] = water / count + (i < water % count ? 1 : 0);
+        }
+        return shares;
+    }
+
+    /**
+     * Starts tracking a fire, unless it is already tracked.
+     *
+     * @param fireID the fire
+     * @param water the water the fire needs
+     */
+    public synchronized void open(int fireID, int water) {
+        fires.putIfAbsent(fireID, new int[]{water, 0});
+    }
+
+    /**
+     * Records water delivered to a fire.
+     *
+     * @param fireID the fire
+     * @param water the water delivered
+     * @return true if this delivery put the fire out, or if the fire is not tracked
+     */
+    public synchronized boolean deliver(int fireID, int water) {
+        int[] fire = fires.get(fireID);
+        if (fire == null) return true;
+        boolean wasOut = fire[1] >= fire[0];
+        fire[1] += water;
+        return !wasOut && fire[1] >= fire[0];
+    }
+
+    /**
+     * @param fireID the fire
+     * @return the water the fire still needs, 0 if it is out or not tracked
+     */
+    public synchronized int getRemaining(int fireID) {
+        int[] fire = fires.get(fireID);
+        return fire == null ? 0 : Math.max(0, fire[0] - fire[1]);
+    }
+
+    /**
+     * Stops tracking a fire, once it is confirmed out.
+     *
+     * @param fireID the fire
+     */
+    public synchronized void close(int fireID) {
+        fires.remove(fireID);
+    }
+
+    /**
+     * @return the number of fires tracked
+     */
+    public synchronized int size() {
+        return fires.size();
+    }
+}
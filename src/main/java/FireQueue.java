@@ -0,0 +1,202 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The queue of fires waiting for a drone, served earliest deadline first. A fire's deadline is the
+ * time it was first reported plus a response budget for its severity, so High fires are served
+ * first, but a Low fire that has waited long enough moves ahead of newer High fires and cannot starve.
+ * Deadlines are fixed when a fire is added, so the queue is a binary heap: adding and taking a fire
+ * are O(log n) and nothing is re-sorted as fires age.
+ *
+ * A fire taken after its deadline is counted as a deadline miss for its severity. The budgets are
+ * set in seconds with -Ddeadline.high, -Ddeadline.moderate and -Ddeadline.low.
+ */
+public class FireQueue {
+    private static final FireEvent.Severity[] SEVERITIES = FireEvent.Severity.values();
+
+    private final long[] budgetNanos = new long[SEVERITIES.length];
+    private final LongAdder[] misses = new LongAdder[SEVERITIES.length];
+    private long[] deadlines = new long[16];
+    private long[] sequences = new long[16];
+    private byte[] severities = new byte[16];
+    private String[] requests = new String[16];
+    private int size;
+    private long nextSequence;
+
+    /**
+     * Creates a queue with the budgets set by system properties, 30 s for High fires, 60 s for
+     * Moderate fires and 120 s for Low fires by default.
+     */
+    public FireQueue() {
+        this(TimeUnit.SECONDS.toNanos(Long.getLong("deadline.high", 30)),
+                TimeUnit.SECONDS.toNanos(Long.getLong("deadline.moderate", 60)),
+                TimeUnit.SECONDS.toNanos(Long.getLong("deadline.low", 120)));
+    }
+
+    /**
+     * @param highNanos the response budget of High fires
+     * @param moderateNanos the response budget of Moderate fires
+     * @param lowNanos the response budget of Low fires, also used for fires of unknown severity
+     */
+    public FireQueue(long highNanos, long moderateNanos, long lowNanos) {
+        budgetNanos[FireEvent.Severity.HIGH.ordinal()] = highNanos;
+        budgetNanos[FireEvent.Severity.MODERATE.ordinal()] = moderateNanos;
+        budgetNanos[FireEvent.Severity.LOW.ordinal()] = lowNanos;
+        budgetNanos[FireEvent.Severity.OTHER.ordinal()] = lowNanos;
+        for (int i = 0; i < misses.length; i++) {
+            misses[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Adds a fire. Fires with the same deadline are served in the order they were added.
+     *
+     * @param fireRequest the message to send to the drone assigned the fire
+     * @param severity the severity of the fire
+     * @param reportedAtNanos when the fire was first reported, from System.nanoTime(), which is kept
+     *                        when a fire is handed off so the handoff does not lose its place
+     */
+    public synchronized void add(String fireRequest, FireEvent.Severity severity, long reportedAtNanos) {
+        if (size == requests.length) {
+            int capacity = size * 2;
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            sequences = Arrays.copyOf(sequences, capacity);
+            severities = Arrays.copyOf(severities, capacity);
+            requests = Arrays.copyOf(requests, capacity);
+        }
+        int index = size++;
+        deadlines[index] = deadlineFor(severity, reportedAtNanos);
+        sequences[index] = nextSequence++;
+        severities[index] = (byte) severity.ordinal();
+        requests[index] = fireRequest;
+        siftUp(index);
+        notifyAll();
+    }
+
+    /**
+     * @param severity the severity of a fire
+     * @param reportedAtNanos when the fire was first reported, from System.nanoTime()
+     * @return the deadline the fire would have in this queue
+     */
+    public long deadlineFor(FireEvent.Severity severity, long reportedAtNanos) {
+        return reportedAtNanos + budgetNanos[severity.ordinal()];
+    }
+
+    /**
+     * Removes the fire with the earliest deadline, waiting for one to be added if the queue is empty.
+     *
+     * @return the message to send to the drone assigned the fire
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized String take() throws InterruptedException {
+        while (size == 0) {
+            wait();
+        }
+        return removeFirst(System.nanoTime());
+    }
+
+    /**
+     * @return the fire with the earliest deadline, which is removed, or null if the queue is empty
+     */
+    public synchronized String poll() {
+        return size == 0 ? null : removeFirst(System.nanoTime());
+    }
+
+    /**
+     * @return the number of fires waiting
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the deadline of the next fire to be taken, from System.nanoTime(), or -1 if the queue is empty
+     */
+    public synchronized long peekDeadline() {
+        return size == 0 ? -1 : deadlines[0];
+    }
+
+    /**
+     * @return the number of fires taken after their deadline
+     */
+    public long getDeadlineMisses(FireEvent.Severity severity) {
+        return misses[severity.ordinal()].sum();
+    }
+
+    /**
+     * @return the number of fires taken after their deadline, per severity
+     */
+    public Map<String, Long> getDeadlineMisses() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (FireEvent.Severity severity : SEVERITIES) {
+            counts.put(severity.name(), getDeadlineMisses(severity));
+        }
+        return counts;
+    }
+
+    private String removeFirst(long nowNanos) {
+        String request = requests[0];
+        long late = nowNanos - deadlines[0];
+        FireEvent.Severity severity = SEVERITIES[severities[0]];
+        size--;
+        move(size, 0);
+        requests[size] = null;
+        if (size > 0) siftDown(0);
+        if (late > 0) {
+            misses[severity.ordinal()].increment();
+            Log.warn(() -> "[Scheduler] " + severity + " fire dispatched " + TimeUnit.NANOSECONDS.toMillis(late)
+                    + "ms after its deadline");
+        }
+        return request;
+    }
+
+    private boolean before(int a, int b) {
+        return deadlines[a] != deadlines[b] ? deadlines[a] < deadlines[b] : sequences[a] < sequences[b];
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!before(index, parent)) return;
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            if (left < size && before(left, smallest)) smallest = left;
+            if (left + 1 < size && before(left + 1, smallest)) smallest = left + 1;
+            if (smallest == index) return;
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void move(int from, int to) {
+        deadlines[to] = deadlines[from];
+        sequences[to] = sequences[from];
+        severities[to] = severities[from];
+        requests[to] = requests[from];
+    }
+
+    private void swap(int a, int b) {
+        long deadline = deadlines[a];
+        deadlines[a] = deadlines[b];
+        deadlines[b] = deadline;
+        long sequence = sequences[a];
+        sequences[a] = sequences[b];
+        sequences[b] = sequence;
+        byte severity = severities[a];
+        severities[a] = severities[b];
+        severities[b] = severity;
+        String request = requests[a];
+        requests[a] = requests[b];
+        requests[b] = request;
+    }
+}
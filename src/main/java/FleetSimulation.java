@@ -0,0 +1,329 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * An in-process, discrete-event model of the fleet, for scheduling experiments. A fire trace is played
+ * against a simplified fleet: a fire waits, earliest deadline first, for a free drone, which flies to the
+ * centre of the fire's zone, drops what agent it has and shuttles to base to refill until the fire is out,
+ * then refills before going idle if it ran dry. Time is simulated, so a trace of hours runs in milliseconds.
+ *
+ * The model leaves out three rules of the real Scheduler: large fires are not split into shares across idle
+ * drones, a drone that runs dry keeps its fire rather than handing the rest to a nearer idle drone, and
+ * drones flying to a fire are never re-tasked to a more severe one. Results compare fleet sizes, capacities,
+ * speeds and the dispatch policies below against each other, not against the Scheduler's own figures.
+ *
+ * A simulation holds no static state and opens no sockets: the zones, trace and parameters are its own, so
+ * any number of simulations can run side by side.
+ */
+public class FleetSimulation {
+    private static final FireEvent.Severity[] SEVERITIES = FireEvent.Severity.values();
+
+    /**
+     * How a free drone is picked for a fire.
+     */
+    public enum Policy {
+        /** The free drone that checked in first, as the Scheduler dispatched before drones had positions. */
+        FIRST_IDLE,
+        /** The free drone nearest to the fire's zone. */
+        NEAREST,
+        /** The free drone nearest to the fire's zone, with idle drones moved by a PrepositionEngine. */
+        PREPOSITION
+    }
+
+    /**
+     * The parameters of a simulation.
+     */
+    public static final class Config {
+        final int drones;
+        final int agentCapacity;
+        final double speed;
+        final Policy policy;
+        double prepositionInterval = 30;
+        double prepositionHalfLife = 600;
+        double prepositionBudget = 2000;
+        double[] deadlineSeconds = {30, 60, 120, 120}; // per severity, as the FireQueue defaults
+
+        /**
+         * @param drones the size of the fleet
+         * @param agentCapacity the agent a drone carries, in litres
+         * @param speed the speed of a drone, in metres per second
+         * @param policy how a free drone is picked for a fire
+         */
+        public Config(int drones, int agentCapacity, double speed, Policy policy) {
+            if (drones <= 0 || agentCapacity <= 0 || speed <= 0) {
+                throw new IllegalArgumentException("Drones, agent capacity and speed must be positive");
+            }
+            this.drones = drones;
+            this.agentCapacity = agentCapacity;
+            this.speed = speed;
+            this.policy = policy;
+        }
+
+        /**
+         * Sets the pre-positioning parameters, used by the PREPOSITION policy.
+         *
+         * @return this configuration
+         */
+        public Config prepositioning(double interval, double halfLife, double budget) {
+            this.prepositionInterval = interval;
+            this.prepositionHalfLife = halfLife;
+            this.prepositionBudget = budget;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "drones=" + drones + " capacity=" + agentCapacity + " speed=" + speed + " policy=" + policy;
+        }
+    }
+
+    /**
+     * The outcome of a simulation. Arrays are indexed by fire, in trace order.
+     */
+    public static final class Result {
+        final double[] dispatchDistances; // from the drone to the fire when it was dispatched
+        final double[] extinguishSeconds; // from the fire's report to its last drop
+        final double travelled;           // by the whole fleet, including refills and staging flights
+        final double stagingDistance;     // flown by idle drones to staging points
+        final double makespanSeconds;     // from the first report to the last fire put out
+        final int deadlineMisses;
+
+        Result(double[] dispatchDistances, double[] extinguishSeconds, double travelled, double stagingDistance,
+               double makespanSeconds, int deadlineMisses) {
+            this.dispatchDistances = dispatchDistances;
+            this.extinguishSeconds = extinguishSeconds;
+            this.travelled = travelled;
+            this.stagingDistance = stagingDistance;
+            this.makespanSeconds = makespanSeconds;
+            this.deadlineMisses = deadlineMisses;
+        }
+
+        public int getFires() { return dispatchDistances.length; }
+
+        /**
+         * @return fires put out per hour of simulated time
+         */
+        public double getThroughputPerHour() {
+            return makespanSeconds <= 0 ? 0 : getFires() * 3600 / makespanSeconds;
+        }
+
+        public double getMeanExtinguishSeconds() { return mean(extinguishSeconds); }
+
+        public double getExtinguishSecondsPercentile(double p) { return percentile(extinguishSeconds, p); }
+
+        public double getMeanDispatchDistance() { return mean(dispatchDistances); }
+
+        public double getDispatchDistancePercentile(double p) { return percentile(dispatchDistances, p); }
+
+        public double getTravelled() { return travelled; }
+
+        public double getStagingDistance() { return stagingDistance; }
+
+        public int getDeadlineMisses() { return deadlineMisses; }
+
+        private static double mean(double[] values) {
+            double total = 0;
+            for (double value : values) total += value;
+            return values.length == 0 ? 0 : total / values.length;
+        }
+
+        private static double percentile(double[] values, double p) {
+            if (values.length == 0) return 0;
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, (int) Math.ceil(p * sorted.length) - 1)];
+        }
+    }
+
+    private final ZoneDistances distances;
+    private final double[][] fires; // {time (s), zone ID, severity ordinal}, by time
+    private final Config config;
+
+    /**
+     * @param zones the zones of the trace, not including the base
+     * @param fires the fires of the trace, from parseTrace
+     * @param config the parameters of the simulation
+     */
+    public FleetSimulation(Map<Integer, Zone> zones, List<double[]> fires, Config config) {
+        List<Zone> all = new ArrayList<>(zones.values());
+        if (!zones.containsKey(DroneSubsystem.BASE_ZONE.getID())) all.add(DroneSubsystem.BASE_ZONE);
+        this.distances = new ZoneDistances(all, config.speed);
+        this.fires = fires.toArray(new double[0][]);
+        this.config = config;
+    }
+
+    /**
+     * Parses the lines of a trace in the format of fire_events.csv. Times are made relative to the first fire,
+     * and lines in zones that are not known are skipped.
+     *
+     * @param lines the lines of the trace
+     * @param zones the known zones
+     * @param repeat how many times the trace is played back to back
+     * @return the fires as {time (s), zone ID, severity ordinal}
+     */
+    public static List<double[]> parseTrace(List<String> lines, Map<Integer, Zone> zones, int repeat) {
+        List<double[]> once = new ArrayList<>();
+        for (String line : lines) {
+            String[] parts = line.trim().split(",");
+            if (parts.length < 5) continue;
+            String[] clock = parts[0].split(":");
+            double time = Integer.parseInt(clock[0]) * 3600 + Integer.parseInt(clock[1]) * 60 + Integer.parseInt(clock[2]);
+            int zoneID = Integer.parseInt(parts[1]);
+            if (!zones.containsKey(zoneID)) continue;
+            once.add(new double[]{time, zoneID, FireEvent.Severity.parse(parts[3]).ordinal()});
+        }
+        List<double[]> fires = new ArrayList<>();
+        if (once.isEmpty()) return fires;
+        double start = once.get(0)[0];
+        double span = once.get(once.size() - 1)[0] - start + 60; // a minute between repetitions
+        for (int r = 0; r < repeat; r++) {
+            for (double[] fire : once) {
+                fires.add(new double[]{fire[0] - start + r * span, fire[1], fire[2]});
+            }
+        }
+        return fires;
+    }
+
+    /**
+     * Runs the simulation.
+     *
+     * @return the outcome
+     */
+    public Result run() {
+        int droneCount = config.drones;
+        int base = distances.indexOf(DroneSubsystem.BASE_ZONE.getID());
+        double[] xs = new double[droneCount];
+        double[] ys = new double[droneCount];
+        double[] agent = new double[droneCount];
+        double[] freeAt = new double[droneCount];
+        double[][] staging = new double[droneCount][]; // {from x, from y, to x, to y, start} of a staging flight
+        Arrays.fill(agent, config.agentCapacity);
+
+        PrepositionEngine engine = config.policy == Policy.PREPOSITION
+                ? new PrepositionEngine(distances, config.prepositionHalfLife, config.prepositionBudget) : null;
+        double nextRound = config.prepositionInterval;
+
+        double[] dispatchDistances = new double[fires.length];
+        double[] extinguishSeconds = new double[fires.length];
+        double travelled = 0, stagingDistance = 0, lastOut = 0;
+        int misses = 0;
+        // Waiting fires by deadline, then by trace order: {deadline, fire index}
+        PriorityQueue<double[]> waiting = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Double.compare(a[0], b[0])
+                : Double.compare(a[1], b[1]));
+        int next = 0;
+        double clock = 0;
+
+        while (next < fires.length || !waiting.isEmpty()) {
+            double arrival = next < fires.length ? fires[next][0] : Double.POSITIVE_INFINITY;
+            double free = Double.POSITIVE_INFINITY;
+            if (!waiting.isEmpty()) {
+                for (double time : freeAt) free = Math.min(free, time);
+                free = Math.max(clock, free);
+            }
+            double now = Math.min(arrival, free);
+            clock = now;
+
+            // Pre-positioning rounds due by now, over the drones free at the time
+            while (engine != null && nextRound <= now) {
+                int[] ids = new int[droneCount];
+                double[] idleX = new double[droneCount];
+                double[] idleY = new double[droneCount];
+                int idle = 0;
+                for (int d = 0; d < droneCount; d++) {
+                    if (freeAt[d] > nextRound) continue;
+                    settle(d, nextRound, xs, ys, staging);
+                    ids[idle] = d;
+                    idleX[idle] = xs[d];
+                    idleY[idle] = ys[d];
+                    idle++;
+                }
+                for (PrepositionEngine.Move move : engine.plan(Arrays.copyOf(ids, idle), Arrays.copyOf(idleX, idle),
+                        Arrays.copyOf(idleY, idle), nextRound)) {
+                    staging[move.droneID] = new double[]{xs[move.droneID], ys[move.droneID], move.x, move.y, nextRound};
+                    stagingDistance += move.distance;
+                    travelled += move.distance;
+                }
+                nextRound += config.prepositionInterval;
+            }
+
+            if (arrival <= free) {
+                double[] fire = fires[next];
+                if (engine != null) engine.recordFire((int) fire[1], now);
+                waiting.add(new double[]{fire[0] + config.deadlineSeconds[(int) fire[2]], next});
+                next++;
+                continue;
+            }
+
+            // A drone is free and a fire is waiting: the most urgent fire goes to the drone the policy picks
+            double[] entry = waiting.poll();
+            int f = (int) entry[1];
+            double[] fire = fires[f];
+            if (now > entry[0]) misses++;
+            int zone = distances.indexOf((int) fire[1]);
+            double fireX = distances.centerX(zone);
+            double fireY = distances.centerY(zone);
+            int best = -1;
+            double bestDistance = Double.POSITIVE_INFINITY;
+            for (int d = 0; d < droneCount; d++) {
+                if (freeAt[d] > now) continue;
+                settle(d, now, xs, ys, staging);
+                double distance = Math.hypot(fireX - xs[d], fireY - ys[d]);
+                if (config.policy == Policy.FIRST_IDLE) {
+                    best = d;
+                    bestDistance = distance;
+                    break;
+                }
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = d;
+                }
+            }
+            staging[best] = null;
+            dispatchDistances[f] = bestDistance;
+
+            // Fly there, then shuttle to base until the fire is out, and refill if the drone ran dry
+            double flown = bestDistance;
+            double remaining = SEVERITIES[(int) fire[2]].getWaterRequired();
+            double toBase = distances.distanceAt(zone, base);
+            while (true) {
+                double drop = Math.min(agent[best], remaining);
+                agent[best] -= drop;
+                remaining -= drop;
+                if (remaining <= 0) break;
+                flown += 2 * toBase;
+                agent[best] = config.agentCapacity;
+            }
+            double out = now + flown / config.speed;
+            extinguishSeconds[f] = out - fire[0];
+            lastOut = Math.max(lastOut, out);
+            xs[best] = fireX;
+            ys[best] = fireY;
+            if (agent[best] == 0) {
+                flown += toBase;
+                agent[best] = config.agentCapacity;
+                xs[best] = distances.centerX(base);
+                ys[best] = distances.centerY(base);
+            }
+            travelled += flown;
+            freeAt[best] = now + flown / config.speed;
+        }
+        double makespan = fires.length == 0 ? 0 : lastOut - fires[0][0];
+        return new Result(dispatchDistances, extinguishSeconds, travelled, stagingDistance, makespan, misses);
+    }
+
+    /**
+     * Moves a drone to where its staging flight has got it to by a time.
+     */
+    private void settle(int drone, double time, double[] xs, double[] ys, double[][] staging) {
+        double[] flight = staging[drone];
+        if (flight == null) return;
+        double length = Math.hypot(flight[2] - flight[0], flight[3] - flight[1]);
+        double fraction = Math.min(1.0, (time - flight[4]) * config.speed / Math.max(1e-9, length));
+        xs[drone] = flight[0] + (flight[2] - flight[0]) * fraction;
+        ys[drone] = flight[1] + (flight[3] - flight[1]) * fraction;
+        if (fraction >= 1.0) staging[drone] = null;
+    }
+}
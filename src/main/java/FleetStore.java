@@ -0,0 +1,368 @@
+import java.net.InetAddress;
+import java.util.Arrays;
+
+/**
+ * The state of a drone fleet kept as parallel primitive arrays (struct of arrays) instead of one
+ * object per drone, so that dispatch can scan very large fleets quickly and without garbage.
+ * Each drone keeps the index it was registered at. Registration is serialized, updates to a drone
+ * take one of a fixed set of striped locks, and scans read without locking and then claim the
+ * chosen drone with compareAndSetState, retrying if another thread claimed it first.
+ * DroneStatus remains the object handed to callers, created from a drone's index with toStatus.
+ */
+public class FleetStore {
+    /** State codes, one per state reported by drones or set by the Scheduler. */
+    public static final byte IDLE = 0, USED = 1, EN_ROUTE = 2, DROPPING_AGENT = 3, REFILLING = 4,
+            COMPLETE = 5, FAULTED = 6, UNKNOWN = 7;
+    private static final String[] STATE_NAMES = {"IDLE", "USED", "EN_ROUTE", "DROPPING_AGENT", "REFILLING",
+            "COMPLETE", "FAULTED", "UNKNOWN"};
+    private static final int STRIPES = 64;
+
+    /**
+     * Scores a drone for a dispatch decision from its primitive fields.
+     */
+    public interface DroneScorer {
+        /**
+         * @return the score of the drone, the highest score wins, or Double.NEGATIVE_INFINITY (or NaN)
+         * if the drone must not be chosen
+         */
+        double score(int droneID, byte state, double x, double y, int agentLevel);
+    }
+
+    /** Prefers the drone registered first among the idle drones. */
+    public static final DroneScorer FIRST_IDLE = (droneID, state, x, y, agentLevel) ->
+            state == IDLE ? 0 : Double.NEGATIVE_INFINITY;
+
+    private final Object registrationLock = new Object();
+    private final Object[] stripes = new Object[STRIPES];
+    private final IntIntMap indexByID;
+    private volatile int size;
+
+    private int[] ids;
+    private int[] ports;
+    private int[] controlPorts;
+    private InetAddress[] addresses;
+    private byte[] states;
+    private double[] xs;
+    private double[] ys;
+    private int[] agentLevels;
+    private int[] assignedFires;
+
+    /**
+     * @param expectedDrones the number of drones to allocate room for, the store grows past it
+     */
+    public FleetStore(int expectedDrones) {
+        int capacity = Math.max(1, expectedDrones);
+        ids = new int[capacity];
+        ports = new int[capacity];
+        controlPorts = new int[capacity];
+        addresses = new InetAddress[capacity];
+        states = new byte[capacity];
+        xs = new double[capacity];
+        ys = new double[capacity];
+        agentLevels = new int[capacity];
+        assignedFires = new int[capacity];
+        indexByID = new IntIntMap(capacity);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * @param name a state as written in drone messages, such as IDLE or EN_ROUTE
+     * @return the state code, UNKNOWN if the state is not known
+     */
+    public static byte stateCode(String name) {
+        for (byte code = 0; code < STATE_NAMES.length; code++) {
+            if (STATE_NAMES[code].equals(name)) return code;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * @param code a state code
+     * @return the state as written in drone messages
+     */
+    public static String stateName(byte code) {
+        return STATE_NAMES[code];
+    }
+
+    /**
+     * Registers a drone, or updates its port and state if it is already registered. A registered drone that
+     * has been sent a fire (USED) keeps that state until its COMPLETE, PARTIAL or FAULT is handled, so a
+     * READY that crossed the fire cannot make it dispatchable a second time.
+     *
+     * @return the drone's index, which stays the same for as long as the store exists
+     */
+    public int register(int droneID, int port, byte state) {
+        synchronized (registrationLock) {
+            int index = indexByID.get(droneID);
+            if (index == IntIntMap.MISSING) {
+                index = size;
+                if (index == ids.length) grow();
+                synchronized (stripeOf(index)) {
+                    ids[index] = droneID;
+                    ports[index] = port;
+                    controlPorts[index] = 0;
+                    addresses[index] = null;
+                    states[index] = state;
+                    agentLevels[index] = -1;
+                    assignedFires[index] = -1;
+                }
+                indexByID.put(droneID, index);
+                size = index + 1;
+                return index;
+            }
+            synchronized (stripeOf(index)) {
+                ports[index] = port;
+                if (states[index] != USED) states[index] = state;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Registers a batch of drones under one hold of the registration lock, growing the arrays at most
+     * once up front. A drone that is already registered gets its ports and address updated and keeps
+     * its state, so announcing a fleet again never disturbs a drone in the middle of a mission, unless
+     * its state is UNKNOWN, which it leaves for the given state.
+     *
+     * @param count the number of drones in the arrays
+     * @param controlPorts the drones' control ports, 0 for a drone without one
+     * @param state the state new drones are registered in
+     * @param address the host the drones run on, or null if it is not known
+     * @return the number of drones that were not registered before, or were UNKNOWN and are now in the state
+     */
+    public int registerAll(int count, int[] ids, int[] ports, int[] controlPorts, byte state, InetAddress address) {
+        synchronized (registrationLock) {
+            while (size + count > this.ids.length) grow();
+            int added = 0;
+            for (int i = 0; i < count; i++) {
+                int index = indexByID.get(ids[i]);
+                if (index == IntIntMap.MISSING) {
+                    index = size;
+                    synchronized (stripeOf(index)) {
+                        this.ids[index] = ids[i];
+                        this.ports[index] = ports[i];
+                        this.controlPorts[index] = controlPorts[i];
+                        addresses[index] = address;
+                        states[index] = state;
+                        agentLevels[index] = -1;
+                        assignedFires[index] = -1;
+                    }
+                    indexByID.put(ids[i], index);
+                    size = index + 1;
+                    added++;
+                    continue;
+                }
+                synchronized (stripeOf(index)) {
+                    this.ports[index] = ports[i];
+                    if (controlPorts[i] != 0) this.controlPorts[index] = controlPorts[i];
+                    if (address != null) addresses[index] = address;
+                    if (states[index] == UNKNOWN && state != UNKNOWN) {
+                        states[index] = state;
+                        added++;
+                    }
+                }
+            }
+            return added;
+        }
+    }
+
+    /**
+     * Doubles every array, with every stripe held so no update is written to the old arrays.
+     */
+    private void grow() {
+        growLocked(0);
+    }
+
+    private void growLocked(int stripe) {
+        if (stripe < STRIPES) {
+            synchronized (stripes[stripe]) {
+                growLocked(stripe + 1);
+            }
+            return;
+        }
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        ports = Arrays.copyOf(ports, capacity);
+        controlPorts = Arrays.copyOf(controlPorts, capacity);
+        addresses = Arrays.copyOf(addresses, capacity);
+        states = Arrays.copyOf(states, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        agentLevels = Arrays.copyOf(agentLevels, capacity);
+        assignedFires = Arrays.copyOf(assignedFires, capacity);
+    }
+
+    private Object stripeOf(int index) {
+        return stripes[index & (STRIPES - 1)];
+    }
+
+    /**
+     * @return the index of the drone, or -1 if it is not registered
+     */
+    public int indexOf(int droneID) {
+        synchronized (registrationLock) {
+            return indexByID.get(droneID);
+        }
+    }
+
+    /**
+     * @return the number of registered drones
+     */
+    public int size() {
+        return size;
+    }
+
+    public void setState(int index, byte state) {
+        synchronized (stripeOf(index)) {
+            states[index] = state;
+        }
+    }
+
+    /**
+     * Sets a drone's state only if it is still in the expected state.
+     *
+     * @return true if the state was changed
+     */
+    public boolean compareAndSetState(int index, byte expected, byte state) {
+        synchronized (stripeOf(index)) {
+            if (states[index] != expected) return false;
+            states[index] = state;
+            return true;
+        }
+    }
+
+    public void setPosition(int index, double x, double y) {
+        synchronized (stripeOf(index)) {
+            xs[index] = x;
+            ys[index] = y;
+        }
+    }
+
+    /**
+     * @param controlPort the port the drone takes RETASK requests on, or 0 if it has none
+     */
+    public void setControlPort(int index, int controlPort) {
+        synchronized (stripeOf(index)) {
+            controlPorts[index] = controlPort;
+        }
+    }
+
+    /**
+     * @param address the host the drone last checked in from, resolved once per check-in rather than per message
+     */
+    public void setAddress(int index, InetAddress address) {
+        synchronized (stripeOf(index)) {
+            addresses[index] = address;
+        }
+    }
+
+    public void setAgentLevel(int index, int agentLevel) {
+        synchronized (stripeOf(index)) {
+            agentLevels[index] = agentLevel;
+        }
+    }
+
+    /**
+     * @param fireID the fire assigned to the drone, or -1 if it has none
+     */
+    public void setAssignedFire(int index, int fireID) {
+        synchronized (stripeOf(index)) {
+            assignedFires[index] = fireID;
+        }
+    }
+
+    public int getDroneID(int index) { return ids[index]; }
+
+    public int getPort(int index) { return ports[index]; }
+
+    /**
+     * @return the port the drone takes RETASK and REPOSITION requests on, or 0 if it has none
+     */
+    public int getControlPort(int index) { return controlPorts[index]; }
+
+    /**
+     * @return the host the drone last checked in from, or null if it is not known
+     */
+    public InetAddress getAddress(int index) { return addresses[index]; }
+
+    public byte getState(int index) { return states[index]; }
+
+    public double getX(int index) { return xs[index]; }
+
+    public double getY(int index) { return ys[index]; }
+
+    /**
+     * @return the drone's agent level, or -1 if it has not been reported
+     */
+    public int getAgentLevel(int index) { return agentLevels[index]; }
+
+    /**
+     * @return the fire assigned to the drone, or -1 if it has none
+     */
+    public int getAssignedFire(int index) { return assignedFires[index]; }
+
+    /**
+     * Finds the drone with the highest score. Ties go to the drone registered first.
+     * The scan takes no locks, so the result must be claimed with compareAndSetState.
+     *
+     * @return the index of the best drone, or -1 if every drone was rejected
+     */
+    public int findBest(DroneScorer scorer) {
+        int count = size;
+        int[] ids = this.ids;
+        byte[] states = this.states;
+        double[] xs = this.xs;
+        double[] ys = this.ys;
+        int[] agentLevels = this.agentLevels;
+        int best = -1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            double score = scorer.score(ids[i], states[i], xs[i], ys[i], agentLevels[i]);
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the best drone and moves it to a new state, retrying if another thread changes the
+     * drone's state first.
+     *
+     * @return the index of the claimed drone, or -1 if no drone could be chosen
+     */
+    public int claimBest(DroneScorer scorer, byte claimedState) {
+        while (true) {
+            int best = findBest(scorer);
+            if (best < 0) return -1;
+            byte seen = states[best];
+            if (scorer.score(ids[best], seen, xs[best], ys[best], agentLevels[best]) > Double.NEGATIVE_INFINITY
+                    && compareAndSetState(best, seen, claimedState)) {
+                return best;
+            }
+        }
+    }
+
+    /**
+     * @return the number of drones in a state
+     */
+    public int countInState(byte state) {
+        int count = 0;
+        int total = size;
+        byte[] states = this.states;
+        for (int i = 0; i < total; i++) {
+            if (states[i] == state) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return a DroneStatus with the drone's current ID, port and state
+     */
+    public DroneStatus toStatus(int index) {
+        return new DroneStatus(ids[index], ports[index], STATE_NAMES[states[index]], null);
+    }
+}
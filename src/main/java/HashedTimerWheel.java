@@ -0,0 +1,148 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * A hashed timer wheel of deadlines keyed by an int, such as a drone ID. Each key has at most one
+ * deadline, and scheduling a key again moves its deadline. Scheduling and cancelling are O(1), and
+ * each tick only visits the timers hashed to one slot, so thousands of timers cost little per tick.
+ * A timer fires at most one tick after its deadline, never before it.
+ *
+ * Every method is synchronized, and expired keys are handed to the callback after the lock is released.
+ */
+public class HashedTimerWheel {
+    private final long tickNanos;
+    private final long startNanos;
+    private final Timer[] slots;
+    private final int mask;
+    private final Map<Integer, Timer> timers = new HashMap<>();
+    private long currentTick; // the next tick to process
+    private int[] expired = new int[16];
+
+    /**
+     * A timer, linked into the list of its slot.
+     */
+    private static final class Timer {
+        final int key;
+        long deadlineNanos;
+        long remainingRounds;
+        int slot;
+        Timer previous, next;
+
+        Timer(int key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * @param tickNanos the length of a tick, the precision of the timers
+     * @param slotCount the number of slots, rounded up to a power of two
+     * @param startNanos the time of the first tick, from System.nanoTime()
+     */
+    public HashedTimerWheel(long tickNanos, int slotCount, long startNanos) {
+        if (tickNanos <= 0) throw new IllegalArgumentException("The tick must be positive");
+        int size = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+        this.tickNanos = tickNanos;
+        this.startNanos = startNanos;
+        this.slots = new Timer[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Sets the deadline of a key, replacing any deadline it already has.
+     *
+     * @param key the key to expire
+     * @param deadlineNanos the time the key expires, from System.nanoTime()
+     */
+    public synchronized void schedule(int key, long deadlineNanos) {
+        Timer timer = timers.get(key);
+        if (timer == null) {
+            timer = new Timer(key);
+            timers.put(key, timer);
+        } else {
+            unlink(timer);
+        }
+        long targetTick = Math.max(currentTick, Math.floorDiv(deadlineNanos - startNanos, tickNanos));
+        timer.deadlineNanos = deadlineNanos;
+        timer.remainingRounds = (targetTick - currentTick) / slots.length;
+        timer.slot = (int) (targetTick & mask);
+        timer.next = slots[timer.slot];
+        if (timer.next != null) timer.next.previous = timer;
+        slots[timer.slot] = timer;
+    }
+
+    /**
+     * @param key a key
+     * @return true if the key had a deadline, which is removed
+     */
+    public synchronized boolean cancel(int key) {
+        Timer timer = timers.remove(key);
+        if (timer == null) return false;
+        unlink(timer);
+        return true;
+    }
+
+    /**
+     * @param key a key
+     * @return the deadline of the key, or -1 if it has none
+     */
+    public synchronized long getDeadline(int key) {
+        Timer timer = timers.get(key);
+        return timer == null ? -1 : timer.deadlineNanos;
+    }
+
+    /**
+     * @return the number of keys with a deadline
+     */
+    public synchronized int size() {
+        return timers.size();
+    }
+
+    /**
+     * Processes every tick that has ended by the given time and expires the keys whose deadline has passed.
+     *
+     * @param nowNanos the current time, from System.nanoTime()
+     * @param onExpired called with each expired key, after the key is removed from the wheel
+     * @return the number of keys that expired
+     */
+    public int advance(long nowNanos, IntConsumer onExpired) {
+        int[] keys;
+        int count = 0;
+        synchronized (this) {
+            long lastTick = Math.floorDiv(nowNanos - startNanos, tickNanos) - 1;
+            for (; currentTick <= lastTick; currentTick++) {
+                Timer timer = slots[(int) (currentTick & mask)];
+                while (timer != null) {
+                    Timer next = timer.next;
+                    if (timer.remainingRounds == 0) {
+                        unlink(timer);
+                        timers.remove(timer.key);
+                        if (count == expired.length) expired = Arrays.copyOf(expired, count * 2);
+                        expired[count++] = timer.key;
+                    } else {
+                        timer.remainingRounds--;
+                    }
+                    timer = next;
+                }
+            }
+            if (count == 0) return 0;
+            keys = Arrays.copyOf(expired, count);
+        }
+        for (int i = 0; i < count; i++) {
+            onExpired.accept(keys[i]);
+        }
+        return count;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.previous != null) {
+            timer.previous.next = timer.next;
+        } else {
+            slots[timer.slot] = timer.next;
+        }
+        if (timer.next != null) timer.next.previous = timer.previous;
+        timer.previous = null;
+        timer.next = null;
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A Transport endpoint that lives in the JVM. Endpoints of one Network find each other by port, and each
+ * endpoint's inbox is a lock-free queue: sending copies the message into a pooled buffer on the receiver's
+ * queue and unparks it if it is waiting, so no message ever goes through the operating system. Messages
+ * between two endpoints arrive in the order they were sent, and messages to a port with no open endpoint are
+ * dropped, as with UDP.
+ */
+public class InMemoryTransport implements Transport {
+    private final Network network;
+    private final int port;
+    private final Queue<Message> inbox = new ConcurrentLinkedQueue<>();
+    private final Queue<Thread> receivers = new ConcurrentLinkedQueue<>();
+    private volatile int timeoutMillis;
+    private volatile boolean closed;
+
+    /**
+     * A set of in-memory endpoints that can reach each other, the in-JVM equivalent of the local host.
+     * Separate networks are isolated, so several systems can run side by side on the same ports.
+     */
+    public static final class Network implements Transport.Factory {
+        private static final int FIRST_EPHEMERAL_PORT = 49152;
+
+        private final Map<Integer, InMemoryTransport> endpoints = new ConcurrentHashMap<>();
+        private final AtomicInteger nextEphemeralPort = new AtomicInteger(FIRST_EPHEMERAL_PORT);
+
+        @Override
+        public Transport open(int port) throws IOException {
+            if (port != 0) {
+                InMemoryTransport endpoint = new InMemoryTransport(this, port);
+                if (endpoints.putIfAbsent(port, endpoint) != null) {
+                    throw new BindException("Port " + port + " is already in use");
+                }
+                return endpoint;
+            }
+            while (true) {
+                int ephemeral = nextEphemeralPort.getAndIncrement();
+                if (ephemeral > 65535) throw new BindException("No free ports left");
+                InMemoryTransport endpoint = new InMemoryTransport(this, ephemeral);
+                if (endpoints.putIfAbsent(ephemeral, endpoint) == null) return endpoint;
+            }
+        }
+
+        /**
+         * @return the number of open endpoints
+         */
+        public int size() {
+            return endpoints.size();
+        }
+    }
+
+    private InMemoryTransport(Network network, int port) {
+        this.network = network;
+        this.port = port;
+    }
+
+    @Override
+    public int getLocalPort() {
+        return port;
+    }
+
+    @Override
+    public void send(byte[] data, int length, int toPort) throws IOException {
+        if (closed) throw new SocketException("Socket is closed");
+        InMemoryTransport receiver = network.endpoints.get(toPort);
+        if (receiver == null) return;
+        Message message = BufferPool.SHARED.acquire();
+        int kept = Math.min(length, MAX_MESSAGE);
+        System.arraycopy(data, 0, message.getData(), 0, kept);
+        receiver.inbox.offer(message.received(kept, port));
+        Thread waiting = receiver.receivers.peek();
+        if (waiting != null) LockSupport.unpark(waiting);
+    }
+
+    /**
+     * Sends to a port of this network, every endpoint being on the one host.
+     */
+    @Override
+    public void send(byte[] data, int length, InetAddress host, int toPort) throws IOException {
+        send(data, length, toPort);
+    }
+
+    @Override
+    public Message receive() throws IOException {
+        Message message = inbox.poll();
+        if (message != null) return message;
+
+        long timeout = timeoutMillis;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        Thread current = Thread.currentThread();
+        receivers.add(current);
+        try {
+            while (true) {
+                // Registered before polling again, so a message sent from here on unparks this thread
+                message = inbox.poll();
+                if (message != null) return message;
+                if (closed) throw new SocketException("Socket closed");
+                if (timeout == 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) throw new SocketTimeoutException("Receive timed out");
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+        } finally {
+            receivers.remove(current);
+            // Another receiver may have been passed over while this one was the head of the queue
+            if (!inbox.isEmpty()) {
+                Thread next = receivers.peek();
+                if (next != null) LockSupport.unpark(next);
+            }
+        }
+    }
+
+    @Override
+    public void setTimeout(int millis) {
+        timeoutMillis = millis;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        network.endpoints.remove(port, this);
+        for (Thread receiver : receivers) {
+            LockSupport.unpark(receiver);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from int keys to int values, without boxing.
+ * Used to map IDs such as fire and drone IDs to their index in a primitive store.
+ * It is not thread-safe, callers synchronize as they do for the store it indexes.
+ */
+public class IntIntMap {
+    /** The value returned for keys that are not in the map. */
+    public static final int MISSING = -1;
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * @param expectedSize the number of keys to size the table for
+     */
+    public IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * @param key the key, any int except Integer.MIN_VALUE
+     * @return the value of the key, or MISSING if the key is not in the map
+     */
+    public int get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int current = keys[slot];
+            if (current == key) return values[slot];
+            if (current == EMPTY) return MISSING;
+        }
+    }
+
+    /**
+     * Adds a key or replaces its value.
+     *
+     * @param key the key, any int except Integer.MIN_VALUE
+     * @param value the value
+     */
+    public void put(int key, int value) {
+        if (key == EMPTY) throw new IllegalArgumentException("Integer.MIN_VALUE cannot be used as a key");
+        if ((size + 1) * 2 > keys.length) grow();
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                size++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of keys in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-memory, mergeable, high-dynamic-range histogram of non-negative long values.
+ * Values below 256 are counted exactly, larger values are counted in log-linear buckets with
+ * 128 sub-buckets per power of two, which bounds the relative error of any reported value to under 1%.
+ * Values up to 2^44 (about 4.8 hours in nanoseconds) are tracked, larger values are counted in the
+ * last bucket while the exact maximum is still kept.
+ * Recording is lock-free and safe from any number of threads.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_VALUE_BITS = 44;
+    private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 2) * SUB_BUCKET_HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value.
+     *
+     * @param value the value to record, negative values are counted as 0
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax;
+        while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) { }
+    }
+
+    /**
+     * Adds every value recorded in another histogram to this one.
+     *
+     * @param other the histogram to merge in
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) counts.addAndGet(i, count);
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        sum.addAndGet(other.sum.get());
+        long otherMax = other.max.get();
+        long currentMax;
+        while (otherMax > (currentMax = max.get()) && !max.compareAndSet(currentMax, otherMax)) { }
+    }
+
+    /**
+     * Moves everything recorded so far into a new histogram and resets this one, so that
+     * periodic calls return the values recorded during each interval.
+     *
+     * @return a histogram of the values recorded since the previous interval snapshot
+     */
+    public LatencyHistogram intervalSnapshot() {
+        LatencyHistogram interval = new LatencyHistogram();
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = counts.getAndSet(i, 0);
+            if (count != 0) {
+                interval.counts.set(i, count);
+                total += count;
+            }
+        }
+        totalCount.addAndGet(-total);
+        interval.totalCount.set(total);
+        interval.sum.set(sum.getAndSet(0));
+        interval.max.set(max.getAndSet(0));
+        return interval;
+    }
+
+    /**
+     * @return a copy of this histogram that is not affected by later recordings
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * Returns the value at a percentile of the recorded values.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the percentile, or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(midpointOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() { return totalCount.get(); }
+
+    /**
+     * @return the total of the recorded values
+     */
+    public long getSum() { return sum.get(); }
+
+    /**
+     * @return the exact largest recorded value
+     */
+    public long getMax() { return max.get(); }
+
+    /**
+     * @return the mean of the recorded values, or 0 if nothing has been recorded
+     */
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * Maps a value to its bucket.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int index = (magnitude + 1) * SUB_BUCKET_HALF + (int) ((value >>> magnitude) - SUB_BUCKET_HALF);
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * @return the value in the middle of a bucket's range
+     */
+    static long midpointOf(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+        int magnitude = index / SUB_BUCKET_HALF - 1;
+        long lowest = (long) (index % SUB_BUCKET_HALF + SUB_BUCKET_HALF) << magnitude;
+        return lowest + ((1L << magnitude) >> 1);
+    }
+}
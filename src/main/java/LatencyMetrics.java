@@ -0,0 +1,109 @@
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Keeps an in-process LatencyHistogram for every metric code. Values are recorded into the current
+ * interval, and taking an interval snapshot folds that interval into the cumulative histogram, so both
+ * per-interval and whole-run percentiles are available without recording twice.
+ */
+public class LatencyMetrics {
+    private static final double[] REPORTED_PERCENTILES = {50, 90, 99, 99.9};
+
+    private static final Map<MetricCode, LatencyHistogram> intervals = new EnumMap<>(MetricCode.class);
+    private static final Map<MetricCode, LatencyHistogram> cumulative = new EnumMap<>(MetricCode.class);
+
+    static {
+        for (MetricCode code : MetricCode.values()) {
+            intervals.put(code, new LatencyHistogram());
+            cumulative.put(code, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Records a value for a metric code.
+     *
+     * @param code the metric code
+     * @param value the value in nanoseconds, or centimetres for distances
+     */
+    public static void record(MetricCode code, long value) {
+        intervals.get(code).record(value);
+    }
+
+    /**
+     * Returns the values recorded since the previous interval snapshot of this code and starts a new interval.
+     *
+     * @param code the metric code
+     * @return the histogram of the finished interval
+     */
+    public static LatencyHistogram intervalSnapshot(MetricCode code) {
+        LatencyHistogram interval = intervals.get(code).intervalSnapshot();
+        cumulative.get(code).merge(interval);
+        return interval;
+    }
+
+    /**
+     * @param code the metric code
+     * @return a histogram of every value recorded for the code so far
+     */
+    public static LatencyHistogram cumulativeSnapshot(MetricCode code) {
+        LatencyHistogram snapshot = cumulative.get(code).copy();
+        snapshot.merge(intervals.get(code));
+        return snapshot;
+    }
+
+    /**
+     * Formats a histogram as "n=.. p50=.. p90=.. p99=.. p999=.. max=.." in the code's reporting unit.
+     *
+     * @param code the metric code the histogram belongs to
+     * @param histogram the histogram to format
+     * @return the formatted summary
+     */
+    public static String summarize(MetricCode code, LatencyHistogram histogram) {
+        StringBuilder summary = new StringBuilder("n=").append(histogram.getCount());
+        for (double percentile : REPORTED_PERCENTILES) {
+            String label = percentile == 99.9 ? "p999" : "p" + (int) percentile;
+            summary.append(String.format(" %s=%.3f", label, code.toReported(histogram.getValueAtPercentile(percentile))));
+        }
+        summary.append(String.format(" max=%.3f %s", code.toReported(histogram.getMax()), code.getUnit()));
+        return summary.toString();
+    }
+
+    /**
+     * Starts a daemon thread that prints the percentiles of every code that saw values during each interval,
+     * followed by the fleet's drone state metrics.
+     *
+     * @param periodMillis the length of an interval in milliseconds
+     */
+    public static void startIntervalReporter(long periodMillis) {
+        Thread reporter = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(periodMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (MetricCode code : MetricCode.values()) {
+                    LatencyHistogram interval = intervalSnapshot(code);
+                    if (code.hasPercentiles() && interval.getCount() > 0) {
+                        System.out.println("[METRICS] " + code + " " + summarize(code, interval));
+                    }
+                }
+                if (DroneStateMetrics.getTotalTransitions() > 0) {
+                    System.out.println("[METRICS] DRONE_STATES " + DroneStateMetrics.summarize());
+                }
+            }
+        }, "METRICS_REPORTER");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    /**
+     * Starts the interval reporter if the metrics.interval system property is set to a period in milliseconds.
+     */
+    public static void startIntervalReporterIfConfigured() {
+        String period = System.getProperty("metrics.interval");
+        if (period != null) {
+            startIntervalReporter(Long.parseLong(period));
+        }
+    }
+}
@@ -0,0 +1,349 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The LiveMetrics class keeps windowed metrics over the most recent events while the system runs,
+ * instead of waiting for LogAnalyzer to scan the whole log after the run.
+ * Each metric is kept in a ring of one-second buckets, so adding an event is O(1) and buckets older
+ * than the window are expired as the ring wraps. It tracks the fire throughput, the event rate,
+ * the number of fires reported but not yet extinguished, the Scheduler response time, and each
+ * drone's response time and queue wait.
+ *
+ * It can subscribe to the MetricsLogger of the running process (enabled with -Dlive.interval=ms and
+ * optionally -Dlive.window=seconds), or tail an event log written by another process:
+ *
+ * Usage: java LiveMetrics [log file] [refresh ms] [window seconds]
+ */
+public class LiveMetrics implements MetricsLogger.EventListener, LogAnalyzer.EventSink {
+    private static final String DEFAULT_LOG_FILE = "src/main/java/event-log.txt";
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int TAIL_BUFFER_SIZE = 1 << 20;
+    private static final long TAIL_POLL_MILLIS = 200;
+
+    private final int windowSeconds;
+    private final SlidingWindow events;
+    private final SlidingWindow extinguished;
+    private final SlidingWindow schedulerResponse;
+    private final Map<String, DroneWindows> drones = new TreeMap<>();
+    private long firesReported;
+    private long firesExtinguished;
+
+    /**
+     * @param windowSeconds the number of most recent seconds the metrics cover
+     */
+    public LiveMetrics(int windowSeconds) {
+        if (windowSeconds < 1) throw new IllegalArgumentException("The window must be at least one second");
+        this.windowSeconds = windowSeconds;
+        this.events = new SlidingWindow(windowSeconds);
+        this.extinguished = new SlidingWindow(windowSeconds);
+        this.schedulerResponse = new SlidingWindow(windowSeconds);
+    }
+
+    /**
+     * Starts live metrics for this process if -Dlive.interval is set to a refresh period in milliseconds.
+     * The window defaults to 60 seconds and can be set with -Dlive.window.
+     */
+    public static void startIfConfigured() {
+        long refreshMillis = Long.getLong("live.interval", 0);
+        if (refreshMillis <= 0) return;
+        attach(Integer.getInteger("live.window", 60), refreshMillis);
+    }
+
+    /**
+     * Subscribes live metrics to every event logged by this process and prints a summary periodically.
+     *
+     * @param windowSeconds the number of most recent seconds the metrics cover
+     * @param refreshMillis the time between summaries
+     * @return the live metrics
+     */
+    public static LiveMetrics attach(int windowSeconds, long refreshMillis) {
+        LiveMetrics metrics = new LiveMetrics(windowSeconds);
+        MetricsLogger.addListener(metrics);
+        metrics.startReporter(refreshMillis, System::currentTimeMillis);
+        return metrics;
+    }
+
+    /**
+     * Adds an event logged by this process.
+     */
+    @Override
+    public void onEvent(long timestampMillis, String entity, String eventCode, double value) {
+        MetricCode code = MetricCode.parse(eventCode);
+        add(timestampMillis, entity, code, value);
+    }
+
+    /**
+     * Adds an event parsed from a tailed event log.
+     */
+    @Override
+    public void add(MetricCode code, ByteBuffer buffer, int lineStart, int entityStart, int entityEnd, double value) {
+        long millisOfDay = LogAnalyzer.parseMillisOfDay(buffer, lineStart);
+        if (millisOfDay < 0) return;
+        String entity = null;
+        if (code == MetricCode.DRONE_RESPONSE || code == MetricCode.QUEUE_WAIT) {
+            byte[] bytes = new byte[entityEnd - entityStart];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(entityStart + i);
+            }
+            entity = new String(bytes, StandardCharsets.UTF_8);
+        }
+        add(toEpochMillis(millisOfDay, System.currentTimeMillis()), entity, code, value);
+    }
+
+    /**
+     * Adds one event to the windows it belongs to.
+     *
+     * @param timestampMillis the time the event was logged, in milliseconds since the epoch
+     * @param entity the entity that logged the event
+     * @param code the metric code of the event, or null if the event is not a metric
+     * @param value the metric value
+     */
+    public synchronized void add(long timestampMillis, String entity, MetricCode code, double value) {
+        long second = timestampMillis / 1000;
+        events.add(second, 1);
+        if (code == null) return;
+
+        switch (code) {
+            case FIRE_REPORTED:
+                firesReported++;
+                break;
+            case FIRE_EXTINGUISHED:
+                firesExtinguished++;
+                extinguished.add(second, value);
+                break;
+            case SCHEDULER_RESPONSE:
+                schedulerResponse.add(second, value);
+                break;
+            case DRONE_RESPONSE:
+                if (entity != null) droneWindows(entity).response.add(second, value);
+                break;
+            case QUEUE_WAIT:
+                if (entity != null) droneWindows(entity).queueWait.add(second, value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private DroneWindows droneWindows(String entity) {
+        DroneWindows windows = drones.get(entity);
+        if (windows == null) {
+            windows = new DroneWindows(windowSeconds);
+            drones.put(entity, windows);
+        }
+        return windows;
+    }
+
+    /**
+     * @return the number of fires reported but not yet extinguished
+     */
+    public synchronized long getFiresInFlight() {
+        return Math.max(0, firesReported - firesExtinguished);
+    }
+
+    /**
+     * @param nowMillis the current time, in milliseconds since the epoch
+     * @return the fires extinguished per second over the window ending now
+     */
+    public synchronized double getFireThroughput(long nowMillis) {
+        return (double) extinguished.snapshot(nowMillis / 1000).count / windowSeconds;
+    }
+
+    /**
+     * @param nowMillis the current time, in milliseconds since the epoch
+     * @return the events logged per second over the window ending now
+     */
+    public synchronized double getEventRate(long nowMillis) {
+        return (double) events.snapshot(nowMillis / 1000).count / windowSeconds;
+    }
+
+    /**
+     * Summarizes the window ending at the given time.
+     *
+     * @param nowMillis the current time, in milliseconds since the epoch
+     * @return one line for the whole system followed by one line per drone seen in the window
+     */
+    public synchronized String summarize(long nowMillis) {
+        long now = nowMillis / 1000;
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("[LIVE] last %ds: %.2f fires/s, %.1f events/s, fires in flight: %d, scheduler %s",
+                windowSeconds, getFireThroughput(nowMillis), getEventRate(nowMillis), getFiresInFlight(),
+                schedulerResponse.snapshot(now)));
+        for (Map.Entry<String, DroneWindows> entry : drones.entrySet()) {
+            Snapshot response = entry.getValue().response.snapshot(now);
+            Snapshot queueWait = entry.getValue().queueWait.snapshot(now);
+            if (response.count == 0 && queueWait.count == 0) continue;
+            summary.append(String.format("%n  %s: response %s, queue wait %s", entry.getKey(), response, queueWait));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Prints a summary of the window periodically on a daemon thread.
+     */
+    private void startReporter(long refreshMillis, LongSupplier clock) {
+        Thread reporter = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(refreshMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                System.out.println(summarize(clock.getAsLong()));
+            }
+        }, "LIVE_METRICS");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    /**
+     * Converts a time of day from the event log to the closest matching time since the epoch,
+     * assuming the event was logged no more than a few hours in the future of now.
+     */
+    static long toEpochMillis(long millisOfDay, long nowMillis) {
+        ZoneId zone = ZoneId.systemDefault();
+        long midnight = LocalDate.now(zone).atStartOfDay(zone).toInstant().toEpochMilli();
+        long millis = midnight + millisOfDay;
+        if (millis - nowMillis > DAY_MILLIS / 2) millis -= DAY_MILLIS; // logged before midnight
+        return millis;
+    }
+
+    /**
+     * Follows an event log as it is written, adding every new complete line. If the log is truncated,
+     * which happens when a subsystem restarts, it is followed again from the beginning.
+     *
+     * @param logFile the event log to follow
+     */
+    public void tail(String logFile) throws IOException, InterruptedException {
+        ByteBuffer buffer = ByteBuffer.allocate(TAIL_BUFFER_SIZE);
+        long position = 0;
+        try (FileChannel channel = FileChannel.open(Paths.get(logFile), StandardOpenOption.READ)) {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (channel.size() < position) {
+                    position = 0;
+                    buffer.clear();
+                }
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    Thread.sleep(TAIL_POLL_MILLIS);
+                    continue;
+                }
+                position += read;
+
+                // parse the complete lines and keep the partial last line for the next read
+                int end = buffer.position();
+                int parsed = LogAnalyzer.parseLines(buffer, 0, end, this, end == buffer.capacity());
+                buffer.position(parsed);
+                buffer.limit(end);
+                buffer.compact();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String logFile = args.length > 0 ? args[0] : DEFAULT_LOG_FILE;
+        long refreshMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        int windowSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+
+        LiveMetrics metrics = new LiveMetrics(windowSeconds);
+        metrics.startReporter(refreshMillis, System::currentTimeMillis);
+        metrics.tail(logFile);
+    }
+
+    /**
+     * The windows kept for each drone.
+     */
+    private static class DroneWindows {
+        private final SlidingWindow response;
+        private final SlidingWindow queueWait;
+
+        private DroneWindows(int windowSeconds) {
+            this.response = new SlidingWindow(windowSeconds);
+            this.queueWait = new SlidingWindow(windowSeconds);
+        }
+    }
+
+    /**
+     * The count, sum and maximum of the values added in each of the most recent seconds.
+     * A bucket is reset when the ring wraps around to it in a later second.
+     */
+    static class SlidingWindow {
+        private final long[] seconds;
+        private final long[] counts;
+        private final double[] sums;
+        private final double[] maxima;
+
+        SlidingWindow(int windowSeconds) {
+            seconds = new long[windowSeconds];
+            counts = new long[windowSeconds];
+            sums = new double[windowSeconds];
+            maxima = new double[windowSeconds];
+            Arrays.fill(seconds, Long.MIN_VALUE);
+        }
+
+        /**
+         * Adds a value to the bucket of a second.
+         *
+         * @param second the second the value was logged in
+         * @param value the value
+         */
+        void add(long second, double value) {
+            int bucket = (int) Math.floorMod(second, (long) seconds.length);
+            if (seconds[bucket] != second) {
+                if (seconds[bucket] > second) return; // older than the window
+                seconds[bucket] = second;
+                counts[bucket] = 0;
+                sums[bucket] = 0;
+                maxima[bucket] = Double.NEGATIVE_INFINITY;
+            }
+            counts[bucket]++;
+            sums[bucket] += value;
+            maxima[bucket] = Math.max(maxima[bucket], value);
+        }
+
+        /**
+         * @param now the current second
+         * @return the totals of the buckets within the window ending at the current second
+         */
+        Snapshot snapshot(long now) {
+            Snapshot snapshot = new Snapshot();
+            for (int bucket = 0; bucket < seconds.length; bucket++) {
+                if (seconds[bucket] > now - seconds.length && seconds[bucket] <= now) {
+                    snapshot.count += counts[bucket];
+                    snapshot.sum += sums[bucket];
+                    snapshot.max = Math.max(snapshot.max, maxima[bucket]);
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * The totals of a window at one point in time.
+     */
+    static class Snapshot {
+        long count;
+        double sum;
+        double max;
+
+        double mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        @Override
+        public String toString() {
+            if (count == 0) return "n=0";
+            return String.format("n=%d mean=%.2f ms max=%.2f ms", count, mean(), max);
+        }
+    }
+}
@@ -0,0 +1,450 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The LoadTestHarness class puts a real Scheduler under sustained load over loopback.
+ * It starts a Scheduler in-process, a fleet of simulated drone clients and a pool of concurrent
+ * fire reporters that speak the same UDP protocol as DroneSubsystem and FireIncidentSubsystem.
+ * Fires are offered at a target rate and the harness reports achieved throughput, latency
+ * percentiles per message type, lost or hung requests, and the Scheduler's thread count, heap and
+ * interval p99 response time over time. With transport=memory the Scheduler and every client share an
+ * InMemoryTransport network instead of UDP, which takes the kernel out of the measurement, and with
+ * transport=shm they talk through SharedMemoryTransport rings.
+ *
+ * Usage: java LoadTestHarness [drones=N] [reporters=N] [rate=FIRES_PER_SEC] [duration=SEC]
+ *                             [timeout=MS] [faultRate=0..1] [service=MS] [sample=MS] [csv=PATH]
+ *                             [transport=udp|memory|shm]
+ */
+public class LoadTestHarness {
+    private static final int SCHEDULER_PORT = DeploymentConfig.get().getSchedulerPort();
+    private static final String THREAD_PREFIX = "LOAD-";
+    private static final Pattern FIRE_ID = Pattern.compile("ID=(\\d+)'");
+    private static final String[] SEVERITIES = {"High", "Moderate", "Low"};
+    private static final DateTimeFormatter FIRE_TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    /**
+     * The request/reply exchanges measured by the harness, named after the Scheduler's commands.
+     */
+    enum MessageType { IDLE, FIRE, COMPLETE, CONFIRMATION, FAULT }
+
+    // Harness configuration
+    private final int droneCount;
+    private final int reporterCount;
+    private final double targetRate;
+    private final long durationMillis;
+    private final int timeoutMillis;
+    private final double faultRate;
+    private final long serviceMillis;
+    private final long sampleMillis;
+    private final String csvPath;
+
+    private final Transport.Factory transports;
+    private final Map<MessageType, LatencyRecorder> recorders = new EnumMap<>(MessageType.class);
+    private final Map<Integer, Long> faultSentAt = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<FireEvent> pendingFires = new LinkedBlockingQueue<>();
+    private final List<Sample> samples = new ArrayList<>();
+    private final AtomicInteger nextFireID = new AtomicInteger(1);
+    private final AtomicLong firesOffered = new AtomicLong();
+    private final AtomicLong firesConfirmed = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * Creates a harness from command line style key=value arguments.
+     *
+     * @param args the harness arguments, any missing key falls back to its default
+     * @throws IOException if the harness cannot be configured
+     */
+    public LoadTestHarness(String[] args) throws IOException {
+        Map<String, String> options = new ConcurrentHashMap<>();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length == 2) {
+                options.put(parts[0].trim(), parts[1].trim());
+            }
+        }
+        this.droneCount     = Integer.parseInt(options.getOrDefault("drones", "1000"));
+        this.reporterCount  = Integer.parseInt(options.getOrDefault("reporters", "64"));
+        this.targetRate     = Double.parseDouble(options.getOrDefault("rate", "50"));
+        this.durationMillis = Long.parseLong(options.getOrDefault("duration", "30")) * 1000;
+        this.timeoutMillis  = Integer.parseInt(options.getOrDefault("timeout", "10000"));
+        this.faultRate      = Double.parseDouble(options.getOrDefault("faultRate", "0.05"));
+        this.serviceMillis  = Long.parseLong(options.getOrDefault("service", "0"));
+        this.sampleMillis   = Long.parseLong(options.getOrDefault("sample", "1000"));
+        this.csvPath        = options.get("csv");
+        String transport    = options.getOrDefault("transport", "udp");
+        this.transports     = transport.equals("memory") ? new InMemoryTransport.Network()
+                : transport.equals("shm") ? new SharedMemoryTransport.Network() : Transport.UDP;
+
+        for (MessageType type : MessageType.values()) {
+            recorders.put(type, new LatencyRecorder());
+        }
+    }
+
+    /**
+     * Runs a full load test: starts the Scheduler, the simulated fleet and the reporters,
+     * drives fires at the target rate for the configured duration and prints the report.
+     *
+     * @return the number of lost or hung requests observed
+     * @throws InterruptedException if the harness is interrupted while waiting on its workers
+     */
+    public long run() throws InterruptedException {
+        // Step 1: Start the real Scheduler on its usual port
+        Thread schedulerThread = new Thread(new Scheduler(transports), "SCHEDULER");
+        schedulerThread.setDaemon(true);
+        schedulerThread.start();
+
+        // Step 2: Start the simulated drones and the fire reporters
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < droneCount; i++) {
+            workers.add(startWorker(new SimulatedDrone(10_000 + i), THREAD_PREFIX + "DRONE-" + i));
+        }
+        for (int i = 0; i < reporterCount; i++) {
+            workers.add(startWorker(new FireReporter(), THREAD_PREFIX + "REPORTER-" + i));
+        }
+        Thread sampler = startWorker(this::sampleLoop, THREAD_PREFIX + "SAMPLER");
+
+        // Step 3: Offer fires at the target rate until the duration elapses
+        long startNanos = System.nanoTime();
+        long periodNanos = (long) (1_000_000_000L / targetRate);
+        long endNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long nextLaunch = startNanos;
+        Random random = new Random(42);
+        while (System.nanoTime() < endNanos) {
+            long now = System.nanoTime();
+            if (now < nextLaunch) {
+                TimeUnit.NANOSECONDS.sleep(Math.min(nextLaunch - now, 1_000_000L));
+                continue;
+            }
+            pendingFires.add(newFire(random));
+            firesOffered.incrementAndGet();
+            nextLaunch += periodNanos;
+        }
+        long offerNanos = System.nanoTime() - startNanos;
+
+        // Step 4: Let in-flight fires drain for one timeout, then stop every worker
+        long drainDeadline = System.currentTimeMillis() + timeoutMillis;
+        while (firesConfirmed.get() < firesOffered.get() - pendingFires.size()
+                && System.currentTimeMillis() < drainDeadline) {
+            Thread.sleep(50);
+        }
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(timeoutMillis);
+        }
+        sampler.join(sampleMillis * 2);
+
+        return report(offerNanos);
+    }
+
+    /**
+     * Creates a new fire with a random zone and severity and a unique ID.
+     *
+     * @param random the random source used for the zone, severity and fault marker
+     * @return the fire event to report
+     */
+    private FireEvent newFire(Random random) {
+        int fireID = nextFireID.getAndIncrement();
+        int zoneId = 1 + random.nextInt(5);
+        String severity = SEVERITIES[random.nextInt(SEVERITIES.length)];
+        String failure = random.nextDouble() < faultRate ? "FAULT" : "None";
+        String time = LocalTime.now().format(FIRE_TIME);
+        return new FireEvent(fireID, time, zoneId, "FIRE_DETECTED", severity, failure);
+    }
+
+    private Thread startWorker(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Periodically samples achieved throughput, the number of non-harness (Scheduler) threads and heap usage.
+     */
+    private void sampleLoop() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long start = System.nanoTime();
+        long lastConfirmed = 0;
+        while (running) {
+            try {
+                Thread.sleep(sampleMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            int schedulerThreads = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (!thread.getName().startsWith(THREAD_PREFIX)) {
+                    schedulerThreads++;
+                }
+            }
+            long confirmed = firesConfirmed.get();
+            LatencyHistogram schedulerInterval = LatencyMetrics.intervalSnapshot(MetricCode.SCHEDULER_RESPONSE);
+            Sample sample = new Sample((System.nanoTime() - start) / 1_000_000, confirmed - lastConfirmed,
+                    schedulerThreads, memory.getHeapMemoryUsage().getUsed(), schedulerInterval.getValueAtPercentile(99));
+            lastConfirmed = confirmed;
+            synchronized (samples) {
+                samples.add(sample);
+            }
+        }
+    }
+
+    /**
+     * Prints the load test report and optionally writes the time series as CSV.
+     *
+     * @param offerNanos how long fires were offered for
+     * @return the number of lost or hung requests across all message types
+     */
+    private long report(long offerNanos) {
+        double seconds = offerNanos / 1e9;
+        long failures = 0;
+        StringBuilder out = new StringBuilder();
+        out.append("-------LOAD TEST REPORT -------\n");
+        out.append(String.format("Drones: %d, Reporters: %d, Target rate: %.1f fires/s, Duration: %.1f s%n",
+                droneCount, reporterCount, targetRate, seconds));
+        out.append(String.format("Fires offered: %d, confirmed: %d, never started: %d%n",
+                firesOffered.get(), firesConfirmed.get(), pendingFires.size()));
+        out.append(String.format("Achieved throughput: %.2f fires/s (offered %.2f fires/s)%n",
+                firesConfirmed.get() / seconds, firesOffered.get() / seconds));
+
+        out.append(String.format("%n%-13s %8s %8s %10s %10s %10s %10s%n",
+                "TYPE", "OK", "LOST", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)"));
+        for (MessageType type : MessageType.values()) {
+            LatencyRecorder recorder = recorders.get(type);
+            LatencyHistogram histogram = recorder.histogram;
+            failures += recorder.lost.get();
+            out.append(String.format("%-13s %8d %8d %10.3f %10.3f %10.3f %10.3f%n", type, histogram.getCount(),
+                    recorder.lost.get(), histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                    histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMax() / 1e6));
+        }
+        out.append(String.format("Outstanding IDLE requests at shutdown: %d%n", recorders.get(MessageType.IDLE).outstanding.get()));
+
+        out.append(String.format("%n%10s %12s %16s %12s %16s%n", "t(ms)", "fires/s", "SchedThreads", "heap(MB)", "SchedP99(ms)"));
+        synchronized (samples) {
+            for (Sample sample : samples) {
+                out.append(String.format("%10d %12.1f %16d %12.1f %16.3f%n", sample.elapsedMillis,
+                        sample.confirmed * 1000.0 / sampleMillis, sample.threads, sample.heapBytes / 1048576.0,
+                        sample.schedulerP99Nanos / 1e6));
+            }
+        }
+        System.out.print(out);
+        writeCsv();
+        return failures;
+    }
+
+    private void writeCsv() {
+        if (csvPath == null) return;
+        try (FileWriter writer = new FileWriter(csvPath, false)) {
+            writer.write("elapsed_ms,confirmed,scheduler_threads,heap_bytes,scheduler_p99_ns\n");
+            synchronized (samples) {
+                for (Sample sample : samples) {
+                    writer.write(sample.elapsedMillis + "," + sample.confirmed + "," + sample.threads + "," + sample.heapBytes
+                            + "," + sample.schedulerP99Nanos + "\n");
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing load test CSV: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param data a Scheduler message containing a serialized FireEvent
+     * @return the ID of the fire in the message, or -1 if none
+     */
+    private static int parseFireID(String data) {
+        Matcher matcher = FIRE_ID.matcher(data);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    /**
+     * Records request latencies for one message type along with lost and outstanding requests.
+     */
+    static class LatencyRecorder {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final AtomicLong lost = new AtomicLong();
+        final AtomicLong outstanding = new AtomicLong();
+
+        void record(long nanos) {
+            histogram.record(nanos);
+        }
+    }
+
+    /**
+     * One point of the harness time series.
+     */
+    private static class Sample {
+        final long elapsedMillis;
+        final long confirmed;
+        final int threads;
+        final long heapBytes;
+        final long schedulerP99Nanos;
+
+        Sample(long elapsedMillis, long confirmed, int threads, long heapBytes, long schedulerP99Nanos) {
+            this.elapsedMillis = elapsedMillis;
+            this.confirmed = confirmed;
+            this.threads = threads;
+            this.heapBytes = heapBytes;
+            this.schedulerP99Nanos = schedulerP99Nanos;
+        }
+    }
+
+    /**
+     * A simulated drone that checks in as IDLE, services every assigned fire instantly
+     * (or after the configured service time) and reports COMPLETE, or FAULT for faulty fires.
+     */
+    private class SimulatedDrone implements Runnable {
+        private final int droneID;
+
+        SimulatedDrone(int droneID) {
+            this.droneID = droneID;
+        }
+
+        @Override
+        public void run() {
+            try (Transport socket = transports.open(0)) {
+                socket.setTimeout(250);
+                int port = socket.getLocalPort();
+                String tag = "[DRONE: " + droneID + "][PORT: " + port + "]";
+
+                while (running) {
+                    // IDLE: check in and wait for a fire, which only arrives once one has been reported
+                    long start = System.nanoTime();
+                    send(socket, tag + "[STATE: IDLE] READY: Ready to service any new fires");
+                    recorders.get(MessageType.IDLE).outstanding.incrementAndGet();
+                    String fire = receive(socket, "NEW FIRE", Long.MAX_VALUE);
+                    if (fire == null) return;
+                    recorders.get(MessageType.IDLE).outstanding.decrementAndGet();
+                    recorders.get(MessageType.IDLE).record(System.nanoTime() - start);
+
+                    int fireID = parseFireID(fire);
+                    Long faultedAt = faultSentAt.remove(fireID);
+                    if (faultedAt != null && fire.contains("HANDOFF")) {
+                        recorders.get(MessageType.FAULT).record(System.nanoTime() - faultedAt);
+                    }
+
+                    // FAULT: the Scheduler sends no reply, latency is measured until another drone picks up the HANDOFF
+                    if (fire.contains("failure='FAULT'")) {
+                        faultSentAt.put(fireID, System.nanoTime());
+                        send(socket, tag + "[STATE: FAULTED] FAULT: This Fire has failed with " + fire.substring(fire.indexOf("FireEvent")));
+                        continue;
+                    }
+
+                    if (serviceMillis > 0) {
+                        Thread.sleep(serviceMillis);
+                    }
+
+                    // COMPLETE: report the fire as extinguished and wait for the Scheduler's acknowledgement
+                    start = System.nanoTime();
+                    send(socket, tag + "[STATE: COMPLETE] COMPLETED: Fire has been extinguished " + fire.substring(fire.indexOf("FireEvent")));
+                    if (receive(socket, "FIRE EXTINGUISHED", timeoutMillis) == null) {
+                        recorders.get(MessageType.COMPLETE).lost.incrementAndGet();
+                    } else {
+                        recorders.get(MessageType.COMPLETE).record(System.nanoTime() - start);
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                if (running) System.err.println(Thread.currentThread().getName() + " stopped: " + e);
+            }
+        }
+    }
+
+    /**
+     * A fire reporter that takes fires offered by the pacer, reports them to the Scheduler
+     * and waits for the confirmation that they are out, as FireIncidentSubsystem.rpc_send does.
+     */
+    private class FireReporter implements Runnable {
+        @Override
+        public void run() {
+            try (Transport socket = transports.open(0)) {
+                socket.setTimeout(250);
+
+                while (running) {
+                    FireEvent fireEvent = pendingFires.poll(100, TimeUnit.MILLISECONDS);
+                    if (fireEvent == null) continue;
+
+                    // FIRE: report the new fire and wait for the acknowledgement
+                    long start = System.nanoTime();
+                    send(socket, "NEW FIRE: " + fireEvent);
+                    if (receive(socket, "NEW FIRE RECEIVED", timeoutMillis) == null) {
+                        recorders.get(MessageType.FIRE).lost.incrementAndGet();
+                        continue;
+                    }
+                    recorders.get(MessageType.FIRE).record(System.nanoTime() - start);
+
+                    // CONFIRMATION: wait until a drone has put the fire out
+                    start = System.nanoTime();
+                    send(socket, "REQUEST CONFIRMATION: [FIRE " + fireEvent.getFireID() + "]:" + fireEvent);
+                    if (receive(socket, "HAS BEEN EXTINGUISHED", timeoutMillis) == null) {
+                        recorders.get(MessageType.CONFIRMATION).lost.incrementAndGet();
+                        continue;
+                    }
+                    recorders.get(MessageType.CONFIRMATION).record(System.nanoTime() - start);
+                    firesConfirmed.incrementAndGet();
+                }
+            } catch (IOException | InterruptedException e) {
+                if (running) System.err.println(Thread.currentThread().getName() + " stopped: " + e);
+            }
+        }
+    }
+
+    private void send(Transport socket, String data) throws IOException {
+        socket.send(data, SCHEDULER_PORT);
+    }
+
+    /**
+     * Waits for a reply containing the expected marker, discarding stale replies to earlier timed out requests.
+     *
+     * @param socket the endpoint to receive on
+     * @param expected text the reply must contain
+     * @param timeoutMillis how long to wait, Long.MAX_VALUE to wait until the harness stops
+     * @return the reply, or null on timeout or shutdown
+     */
+    private String receive(Transport socket, String expected, long timeoutMillis) throws IOException {
+        long deadline = timeoutMillis == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + timeoutMillis;
+        while (running && System.currentTimeMillis() < deadline) {
+            String data;
+            try {
+                data = socket.receiveText();
+            } catch (SocketTimeoutException e) {
+                continue;
+            }
+            if (data.contains(expected)) {
+                return data;
+            }
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Start logging daemon, the Scheduler logs its response times while under load
+        MetricsLogger.startDaemon();
+
+        LoadTestHarness harness;
+        try {
+            harness = new LoadTestHarness(args);
+        } catch (SocketException e) {
+            System.err.println("Could not start load test: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        long failures = harness.run();
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The Log class is the console output of the subsystems. Messages are only built when their level
+ * is enabled, since they are passed as suppliers, and are then handed to a background thread that
+ * renders them with ANSI colours and writes them to standard output. Callers never wait on the
+ * console: if the bounded queue is full the message is dropped and counted instead.
+ *
+ * The level is set with -Dlog.level=DEBUG|INFO|WARN|ERROR|OFF (INFO by default). -Dlog.quiet=true
+ * is the performance mode, it only lets warnings and errors through, so the message passing in the
+ * hot paths does no formatting at all. Colours are turned off with -Dlog.color=false.
+ */
+public class Log {
+    /**
+     * The severity of a message, a message is written if its level is at least the configured level.
+     */
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    /**
+     * The colour a message is rendered in.
+     */
+    public enum Color {
+        NONE(""),
+        BLUE("\u001B[34m"),
+        GREEN("\u001B[32m"),
+        YELLOW("\u001B[33m"),
+        RED("\u001B[31m");
+
+        private final String ansi;
+
+        Color(String ansi) {
+            this.ansi = ansi;
+        }
+    }
+
+    private static final String ANSI_RESET = "\u001B[0m";
+    private static final int QUEUE_CAPACITY = 1 << 13;
+    private static final Entry FLUSH_MARKER = new Entry(Color.NONE, "");
+
+    private static volatile Level level = configuredLevel();
+    private static final boolean colors = !"false".equalsIgnoreCase(System.getProperty("log.color"));
+    private static final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final Object flushLock = new Object();
+    private static long written = 0;
+    private static long flushRequests = 0;
+
+    static {
+        Thread writer = new Thread(Log::writeLoop, "CONSOLE");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush));
+    }
+
+    private static Level configuredLevel() {
+        if (Boolean.getBoolean("log.quiet")) return Level.WARN;
+        try {
+            return Level.valueOf(System.getProperty("log.level", "INFO").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    /**
+     * @param newLevel the lowest level that is written from now on
+     */
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    /**
+     * @return the lowest level that is written
+     */
+    public static Level getLevel() {
+        return level;
+    }
+
+    /**
+     * @param messageLevel the level of a message
+     * @return true if messages of the level are written
+     */
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel.ordinal() >= level.ordinal() && messageLevel != Level.OFF;
+    }
+
+    public static void debug(Supplier<String> message) {
+        log(Level.DEBUG, Color.NONE, message);
+    }
+
+    public static void info(Supplier<String> message) {
+        log(Level.INFO, Color.NONE, message);
+    }
+
+    public static void info(Color color, Supplier<String> message) {
+        log(Level.INFO, color, message);
+    }
+
+    /**
+     * Writes a warning, rendered in yellow.
+     */
+    public static void warn(Supplier<String> message) {
+        log(Level.WARN, Color.YELLOW, message);
+    }
+
+    /**
+     * Writes an error, rendered in red.
+     */
+    public static void error(Supplier<String> message) {
+        log(Level.ERROR, Color.RED, message);
+    }
+
+    /**
+     * Builds a message if its level is enabled and queues it for the console.
+     *
+     * @param messageLevel the level of the message
+     * @param color the colour to render the message in
+     * @param message builds the message, only called if the level is enabled
+     */
+    public static void log(Level messageLevel, Color color, Supplier<String> message) {
+        if (!isEnabled(messageLevel)) return;
+        if (!queue.offer(new Entry(color, message.get()))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of messages dropped because the console could not keep up
+     */
+    public static long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Waits until every message queued before the call has been written to the console.
+     */
+    public static void flush() {
+        long request;
+        synchronized (flushLock) {
+            request = ++flushRequests;
+        }
+        try {
+            // the marker is queued behind every earlier message, so it is written last
+            if (!queue.offer(FLUSH_MARKER, 1, TimeUnit.SECONDS)) return;
+            synchronized (flushLock) {
+                long deadline = System.currentTimeMillis() + 1000;
+                while (written < request && System.currentTimeMillis() < deadline) {
+                    flushLock.wait(100);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes queued messages in batches until the process exits.
+     */
+    private static void writeLoop() {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        long reportedDrops = 0;
+        while (true) {
+            try {
+                Entry entry = queue.take();
+                int flushes = 0;
+                do {
+                    if (entry == FLUSH_MARKER) {
+                        flushes++;
+                    } else {
+                        render(out, entry);
+                    }
+                } while ((entry = queue.poll()) != null);
+
+                long drops = dropped.get();
+                if (drops != reportedDrops) {
+                    render(out, new Entry(Color.YELLOW, "[Log] dropped " + (drops - reportedDrops) + " messages, the console could not keep up"));
+                    reportedDrops = drops;
+                }
+                out.flush();
+
+                if (flushes > 0) {
+                    synchronized (flushLock) {
+                        written += flushes;
+                        flushLock.notifyAll();
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Console output failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void render(Writer out, Entry entry) throws IOException {
+        if (colors && entry.color != Color.NONE) {
+            out.write(entry.color.ansi);
+            out.write(entry.message);
+            out.write(ANSI_RESET);
+        } else {
+            out.write(entry.message);
+        }
+        out.write(System.lineSeparator());
+    }
+
+    /**
+     * A message waiting to be written.
+     */
+    private static class Entry {
+        private final Color color;
+        private final String message;
+
+        private Entry(Color color, String message) {
+            this.color = color;
+            this.message = message;
+        }
+    }
+}
@@ -1,185 +1,590 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
+/**
+ * The LogAnalyzer class reads the event log and writes a performance report to the metrics log.
+ * The event log is memory-mapped and split into line-aligned chunks that are parsed in parallel on a
+ * fork-join pool. Each chunk is scanned byte by byte into primitive per-entity accumulators and
+ * per-code histograms, which are merged pairwise, so memory use does not grow with the size of the log.
+ * A binary log written by ColumnarEventLog is recognised by its first bytes and scanned a block at a time,
+ * reading only the entity, code and value columns.
+ */
 public class LogAnalyzer {
-    private static final String LOG_FILE = "src/main/java/event-log.txt";
+    private static final String LOG_FILE = "binary".equalsIgnoreCase(System.getProperty("metrics.format"))
+            ? "src/main/java/event-log.evlog" : "src/main/java/event-log.txt";
     private static final String METRICS_FILE = "src/main/java/metrics-log.txt";
-    private ArrayList<Double> schedulerTimes = new ArrayList<>();
-    private ArrayList<Double> fireTimes = new ArrayList<>();
-    private Map<String, List<Double>> droneTimes = new HashMap<>();
-    private Map<String, Double> extinguishedTimes = new HashMap<>();
-    private Map<String, List<Double>> distanceTravelled = new HashMap<>();
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final long MAX_CHUNK_SIZE = 64L << 20;
+    private static final MetricCode[] CODES = MetricCode.values();
+    private static final byte[][] CODE_NAMES = new byte[CODES.length][];
+
+    static {
+        for (MetricCode code : CODES) {
+            CODE_NAMES[code.ordinal()] = code.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private Accumulator totals = new Accumulator();
+
+    /**
+     * Analyzes the event log file and calculates for average response times, busy times,
+     * waiting times, throughput, and utilization
+     */
+    public void analyzeMetrics() {
+        analyzeMetrics(LOG_FILE);
+    }
+
+    /**
+     * Analyzes the given event log and writes the performance report to the metrics log.
+     *
+     * @param logFile the path of the event log to analyze
+     */
+    public void analyzeMetrics(String logFile) {
+        totals = scanLog(logFile);
+        writeMetricsLog();
+    }
 
     /**
-     * Reads the event log file and returns its contents as a list of log entries
+     * Scans a whole event log in parallel.
      *
-     * @return list of string log entries
+     * @param logFile the path of the event log
+     * @return the merged accumulators of every line in the log
      */
-    private List<String> readLogsFromFile() {
-        List<String> logs = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(LOG_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                logs.add(line);
+    static Accumulator scanLog(String logFile) {
+        if (ColumnarEventLog.isColumnar(Paths.get(logFile))) return scanColumnarLog(logFile);
+        try (FileChannel channel = FileChannel.open(Paths.get(logFile), StandardOpenOption.READ)) {
+            long[] boundaries = splitIntoChunks(channel);
+            if (boundaries.length < 2) return new Accumulator();
+            return ForkJoinPool.commonPool().invoke(new ChunkTask(channel, boundaries, 0, boundaries.length - 1));
+        } catch (NoSuchFileException e) {
+            System.err.println("Event log not found: " + logFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return new Accumulator();
+    }
+
+    /**
+     * Scans a binary event log, reading only the columns the report needs. The code of every dictionary
+     * string is looked up once, not once per event.
+     *
+     * @param logFile the path of the binary event log
+     * @return the accumulators of every event in the log
+     */
+    static Accumulator scanColumnarLog(String logFile) {
+        Accumulator accumulator = new Accumulator();
+        try (ColumnarEventLog.Reader reader = new ColumnarEventLog.Reader(Paths.get(logFile),
+                ColumnarEventLog.ENTITIES | ColumnarEventLog.CODES | ColumnarEventLog.VALUES)) {
+            MetricCode[] codes = new MetricCode[0];
+            ByteBuffer[] entities = new ByteBuffer[0];
+            int resolved = 0;
+            while (reader.next()) {
+                if (reader.getSymbolCount() > resolved) {
+                    codes = Arrays.copyOf(codes, reader.getSymbolCount());
+                    entities = Arrays.copyOf(entities, reader.getSymbolCount());
+                    for (; resolved < reader.getSymbolCount(); resolved++) {
+                        codes[resolved] = MetricCode.parse(reader.symbol(resolved));
+                        entities[resolved] = ByteBuffer.wrap(reader.symbolBytes(resolved));
+                    }
+                }
+                // strings that missed the writer's full dictionary are stored as is
+                int code = reader.getCode();
+                MetricCode metric = code >= 0 ? codes[code] : MetricCode.parse(reader.getCodeName());
+                if (metric == null) continue;
+                int entity = reader.getEntity();
+                ByteBuffer name = entity >= 0 ? entities[entity]
+                        : ByteBuffer.wrap(reader.getEntityName().getBytes(StandardCharsets.UTF_8));
+                accumulator.add(metric, name, 0, 0, name.limit(), reader.getValue());
             }
+        } catch (NoSuchFileException e) {
+            System.err.println("Event log not found: " + logFile);
         } catch (IOException e) {
             e.printStackTrace();
         }
-        return logs;
+        return accumulator;
     }
 
     /**
-     * Analyzes the event log file and calculates for average response times, busy times,
-     * waiting times, throughput, and utilization
+     * Splits the log into chunks that each end just after a newline.
+     *
+     * @param channel the open event log
+     * @return the chunk boundaries, chunk i spans [boundaries[i], boundaries[i + 1])
      */
-    public void analyzeMetrics() {
-        List<String> logs = readLogsFromFile();
-        // clear previous data
-        schedulerTimes.clear();
-        fireTimes.clear();
-        extinguishedTimes.clear();
-        distanceTravelled.clear();
-        droneTimes.clear();
+    private static long[] splitIntoChunks(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long target = size / (ForkJoinPool.getCommonPoolParallelism() * 4L);
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, target));
 
-        for (String log: logs){
-            String[] parts = log.split(",");
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = 0;
+        while (position < size) {
+            long end = Math.min(size, position + chunkSize);
+
+            // move the boundary forward to just after the next newline
+            while (end < size) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                if (read <= 0) { end = size; break; }
+                int newline = -1;
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') { newline = i; break; }
+                }
+                if (newline >= 0) { end += newline + 1; break; }
+                end += read;
+            }
+            boundaries.add(Math.min(end, size));
+            position = end;
+        }
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
 
-            String entity = parts[1].trim();
-            String eventCode = parts[2].trim();
-            double value = Double.parseDouble(parts[3].trim());
+    /**
+     * Parses a range of chunks, splitting the range in half until a single chunk is left.
+     */
+    private static class ChunkTask extends RecursiveTask<Accumulator> {
+        private static final long serialVersionUID = 1L;
 
-            // collect distance required to reach target fire zone
-            if (eventCode.equals("DRONE_TRAVELS")){
-                // if drone entity not captured yet, create map and its array list
-                distanceTravelled.putIfAbsent(entity, new ArrayList<>());
+        private final FileChannel channel;
+        private final long[] boundaries;
+        private final int from, to;
 
-                // append if drone entity already exists in map
-                distanceTravelled.get(entity).add(value);
+        ChunkTask(FileChannel channel, long[] boundaries, int from, int to) {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+        }
 
-                // collect response times of Scheduler
-            } else if (eventCode.equals("SCHEDULER_RESPONSE")){
-                schedulerTimes.add(value);
+        @Override
+        protected Accumulator compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                ChunkTask left = new ChunkTask(channel, boundaries, from, middle);
+                left.fork();
+                Accumulator right = new ChunkTask(channel, boundaries, middle, to).compute();
+                Accumulator merged = left.join();
+                merged.merge(right);
+                return merged;
+            }
 
-                // collect response times of FireIncidentSubsystem
-            } else if (eventCode.equals("FIRE_RESPONSE")){
-                fireTimes.add(value);
+            Accumulator accumulator = new Accumulator();
+            long start = boundaries[from];
+            long length = boundaries[to] - start;
+            if (length == 0) return accumulator;
+            try {
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                parseLines(chunk, 0, (int) length, accumulator, boundaries[to] == channel.size());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return accumulator;
+        }
+    }
 
-                // collect response times of each drone
-            } else if (eventCode.equals("DRONE_RESPONSE")){
-                // if drone entity not captured yet, create map and its array list
-                droneTimes.putIfAbsent(entity, new ArrayList<>());
+    /**
+     * Parses every complete line in a buffer range into an accumulator.
+     *
+     * @param buffer the bytes of the log
+     * @param from the index of the first byte of the first line
+     * @param to the index just past the last byte to parse
+     * @param sink the sink to add each event to
+     * @param endOfLog true if the range ends the log, so a last line without a newline is complete
+     * @return the index just past the last parsed line, where parsing should resume
+     */
+    static int parseLines(ByteBuffer buffer, int from, int to, EventSink sink, boolean endOfLog) {
+        int[] commas = new int[4];
+        int lineStart = from;
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                parseLine(buffer, lineStart, i, commas, sink);
+                lineStart = i + 1;
+            }
+        }
+        // the last line of the log may not end with a newline
+        if (lineStart < to && endOfLog) {
+            parseLine(buffer, lineStart, to, commas, sink);
+            lineStart = to;
+        }
+        return lineStart;
+    }
 
-                // append if drone entity already exists in map
-                droneTimes.get(entity).add(value);
+    /**
+     * Receives the metric events parsed from the event log.
+     */
+    interface EventSink {
+        /**
+         * @param code the metric code of the event
+         * @param buffer the bytes of the log
+         * @param lineStart the index of the first byte of the event's line
+         * @param entityStart the index of the first byte of the entity
+         * @param entityEnd the index just past the last byte of the entity
+         * @param value the metric value
+         */
+        void add(MetricCode code, ByteBuffer buffer, int lineStart, int entityStart, int entityEnd, double value);
+    }
 
-            // collect extinguished fire times
-            } else if (eventCode.equals("FIRE_EXTINGUISHED")) {
-                extinguishedTimes.put(entity, value);
+    /**
+     * Parses the "HH:mm:ss.SSS" timestamp at the start of a line.
+     *
+     * @param buffer the bytes of the log
+     * @param lineStart the index of the first byte of the line
+     * @return the time of day in milliseconds, or -1 if the line does not start with a timestamp
+     */
+    static long parseMillisOfDay(ByteBuffer buffer, int lineStart) {
+        if (buffer.limit() - lineStart < 12) return -1;
+        int[] fields = {0, 0, 0, 0};
+        int[] widths = {2, 2, 2, 3};
+        int position = lineStart;
+        for (int f = 0; f < fields.length; f++) {
+            for (int d = 0; d < widths[f]; d++) {
+                byte b = buffer.get(position++);
+                if (b < '0' || b > '9') return -1;
+                fields[f] = fields[f] * 10 + (b - '0');
             }
+            position++; // skip the ':' or '.' separator
         }
-        calculateMetrics();
+        return ((fields[0] * 60L + fields[1]) * 60L + fields[2]) * 1000L + fields[3];
     }
 
     /**
-     * Calculates various performance metrics related to the system
-     * It computes:
-     * - The total time taken to extinguish fires
-     * - The average response times for Scheduler, FireIncidentSubsystem, and all drones
-     * - The average response time for each individual drone
+     * Parses one "timestamp, entity, code, value, details" line, skipping malformed lines
+     * and codes that are not metrics.
      */
-    private void calculateMetrics(){
-        double totalExtinguishedTime = 0.0;
-        Map<String, Double> avgDroneTimes = new HashMap<>();
+    private static void parseLine(ByteBuffer buffer, int start, int end, int[] commas, EventSink sink) {
+        // find the separators of the entity, code and value fields
+        int found = 0;
+        for (int i = start; i < end && found < 4; i++) {
+            if (buffer.get(i) == ',') commas[found++] = i;
+        }
+        if (found < 3) return;
+        int valueEnd = found == 4 ? commas[3] : end;
+
+        MetricCode code = matchCode(buffer, commas[1] + 1, commas[2]);
+        if (code == null) return;
 
-        // calculate for total fire extinguishing time
-        for (double extinguishedTime: extinguishedTimes.values()){
-            totalExtinguishedTime += extinguishedTime;
+        double value = parseDouble(buffer, commas[2] + 1, valueEnd);
+        if (Double.isNaN(value)) return;
+
+        int entityStart = skipSpaces(buffer, commas[0] + 1, commas[1]);
+        int entityEnd = trimSpaces(buffer, entityStart, commas[1]);
+        sink.add(code, buffer, start, entityStart, entityEnd, value);
+    }
+
+    private static MetricCode matchCode(ByteBuffer buffer, int start, int end) {
+        start = skipSpaces(buffer, start, end);
+        end = trimSpaces(buffer, start, end);
+        for (int c = 0; c < CODES.length; c++) {
+            byte[] name = CODE_NAMES[c];
+            if (name.length != end - start) continue;
+            int i = 0;
+            while (i < name.length && buffer.get(start + i) == name[i]) i++;
+            if (i == name.length) return CODES[c];
         }
+        return null;
+    }
 
-        // calculate average response time for Scheduler
-        double avgSchedulerTime = schedulerTimes.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+    /**
+     * Parses a decimal number as written by Double.toString, including exponents.
+     *
+     * @return the number, or NaN if the field is not a number
+     */
+    static double parseDouble(ByteBuffer buffer, int start, int end) {
+        start = skipSpaces(buffer, start, end);
+        end = trimSpaces(buffer, start, end);
+        if (start == end) return Double.NaN;
 
-        // calculate average response time for FireIncidentSubsystem
-        double avgFireTime = fireTimes.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        boolean negative = buffer.get(start) == '-';
+        if (negative) start++;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        int i = start;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits += mantissa == 0 ? 0 : 1;
+                    if (fraction) scale--;
+                } else if (!fraction) {
+                    scale++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (i < end) {
+            byte b = buffer.get(i);
+            if (b != 'E' && b != 'e') return Double.NaN;
+            i++;
+            boolean negativeExponent = i < end && buffer.get(i) == '-';
+            if (negativeExponent || (i < end && buffer.get(i) == '+')) i++;
+            int exponent = 0;
+            if (i == end) return Double.NaN;
+            for (; i < end; i++) {
+                byte e = buffer.get(i);
+                if (e < '0' || e > '9') return Double.NaN;
+                exponent = exponent * 10 + (e - '0');
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        double value = scale >= 0 ? mantissa * Math.pow(10, scale) : mantissa / Math.pow(10, -scale);
+        return negative ? -value : value;
+    }
+
+    private static int skipSpaces(ByteBuffer buffer, int start, int end) {
+        while (start < end && buffer.get(start) == ' ') start++;
+        return start;
+    }
+
+    private static int trimSpaces(ByteBuffer buffer, int start, int end) {
+        while (end > start && (buffer.get(end - 1) == ' ' || buffer.get(end - 1) == '\r')) end--;
+        return end;
+    }
 
-        // calculate average response time of each drone
-        for (Map.Entry<String, List<Double>> entry: droneTimes.entrySet()){
-            String droneId = entry.getKey();
-            List<Double> times = entry.getValue();
+    /**
+     * Primitive statistics of the values one entity logged for one metric code.
+     */
+    static class EntityStats {
+        long count;
+        double sum;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double last;
 
-            // calculating drone's average
-            double avgTime = times.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        void add(double value) {
+            count++;
+            sum += value;
+            if (value < min) min = value;
+            if (value > max) max = value;
+            last = value;
+        }
 
-            avgDroneTimes.put(droneId, avgTime);
+        /**
+         * Merges the statistics of a later part of the log into these.
+         */
+        void merge(EntityStats later) {
+            if (later.count == 0) return;
+            count += later.count;
+            sum += later.sum;
+            min = Math.min(min, later.min);
+            max = Math.max(max, later.max);
+            last = later.last;
         }
 
-        // calculate overall average drone response time
-        double overallDroneResponseTime = avgDroneTimes.values().stream()
-                .mapToDouble(Double::doubleValue)
-                .average()
-                .orElse(0);
+        double mean() { return count == 0 ? 0 : sum / count; }
+    }
+
+    /**
+     * An open-addressing table from entity name bytes to their statistics, so parsing a line
+     * does not create a String unless the entity has not been seen before.
+     */
+    static class EntityTable {
+        private byte[][] keys = new byte[16][];
+        private int[] hashes = new int[16];
+        private EntityStats[] stats = new EntityStats[16];
+        private int size = 0;
 
-        writeMetricsLog(totalExtinguishedTime, avgDroneTimes, overallDroneResponseTime, avgSchedulerTime, avgFireTime);
+        EntityStats get(ByteBuffer buffer, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int mask = keys.length - 1;
+            int slot = mix(hash) & mask;
+            while (keys[slot] != null) {
+                if (hashes[slot] == hash && matches(keys[slot], buffer, start, end)) return stats[slot];
+                slot = (slot + 1) & mask;
+            }
+            byte[] key = new byte[end - start];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = buffer.get(start + i);
+            }
+            return insert(key, hash, slot, new EntityStats());
+        }
+
+        void merge(EntityTable later) {
+            for (int i = 0; i < later.keys.length; i++) {
+                if (later.keys[i] == null) continue;
+                byte[] key = later.keys[i];
+                get(ByteBuffer.wrap(key), 0, key.length).merge(later.stats[i]);
+            }
+        }
+
+        /**
+         * @return the statistics of every entity ordered by name
+         */
+        Map<String, EntityStats> toSortedMap() {
+            Map<String, EntityStats> sorted = new TreeMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) sorted.put(new String(keys[i], StandardCharsets.UTF_8), stats[i]);
+            }
+            return sorted;
+        }
+
+        private EntityStats insert(byte[] key, int hash, int slot, EntityStats value) {
+            keys[slot] = key;
+            hashes[slot] = hash;
+            stats[slot] = value;
+            if (++size * 2 > keys.length) grow();
+            return value;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            int[] oldHashes = hashes;
+            EntityStats[] oldStats = stats;
+            keys = new byte[oldKeys.length * 2][];
+            hashes = new int[oldKeys.length * 2];
+            stats = new EntityStats[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null) continue;
+                int slot = mix(oldHashes[i]) & mask;
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                stats[slot] = oldStats[i];
+            }
+        }
 
+        private static boolean matches(byte[] key, ByteBuffer buffer, int start, int end) {
+            if (key.length != end - start) return false;
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buffer.get(start + i)) return false;
+            }
+            return true;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
     }
 
     /**
-     * Writes the calculated performance metrics to a log file. It also clears the
-     * previous file's content at startup
-     * @param totalExtinguishedTime The total time taken to extinguish all fires
-     * @param avgDroneTimes A map containing the average response times of each drone
-     * @param overallDroneResponseTime The overall average response time of all drones
-     * @param avgSchedulerTime The average response time of the Scheduler
-     * @param avgFireTime The average response time of the FireIncidentSubsystem
+     * Per-code histograms and per-entity statistics of a part of the event log.
      */
-    private void writeMetricsLog(double totalExtinguishedTime, Map<String, Double> avgDroneTimes, double overallDroneResponseTime, double avgSchedulerTime, double avgFireTime){
-        // to overwrite the previous file entry
-        try (FileWriter writer = new FileWriter(METRICS_FILE, false)){
-            writer.write("");
-        } catch (IOException e){
-            System.err.println("Error overwriting file: " + e.getMessage());
+    static class Accumulator implements EventSink {
+        final LatencyHistogram[] histograms = new LatencyHistogram[CODES.length];
+        final EntityTable[] entities = new EntityTable[CODES.length];
+        long lines = 0;
+
+        Accumulator() {
+            for (int c = 0; c < CODES.length; c++) {
+                histograms[c] = new LatencyHistogram();
+                entities[c] = new EntityTable();
+            }
+        }
+
+        @Override
+        public void add(MetricCode code, ByteBuffer buffer, int lineStart, int entityStart, int entityEnd, double value) {
+            lines++;
+            histograms[code.ordinal()].record(code.toRecorded(value));
+            entities[code.ordinal()].get(buffer, entityStart, entityEnd).add(value);
+        }
+
+        /**
+         * Merges the accumulators of a later part of the log into this one.
+         */
+        void merge(Accumulator later) {
+            lines += later.lines;
+            for (int c = 0; c < CODES.length; c++) {
+                histograms[c].merge(later.histograms[c]);
+                entities[c].merge(later.entities[c]);
+            }
+        }
+
+        LatencyHistogram histogram(MetricCode code) { return histograms[code.ordinal()]; }
+
+        Map<String, EntityStats> entities(MetricCode code) { return entities[code.ordinal()].toSortedMap(); }
+
+        /**
+         * @return the mean of every value logged for a code, across all entities
+         */
+        double mean(MetricCode code) {
+            long count = 0;
+            double sum = 0;
+            for (EntityStats stats : entities(code).values()) {
+                count += stats.count;
+                sum += stats.sum;
+            }
+            return count == 0 ? 0 : sum / count;
         }
+    }
 
-        // write calculated metrics into log
-        try(FileWriter writer = new FileWriter(METRICS_FILE, true)){
+    /**
+     * Writes the calculated performance metrics to the metrics log, overwriting the previous report.
+     * It reports:
+     * - The time taken to extinguish each fire, and in total
+     * - The average response times for Scheduler, FireIncidentSubsystem, and each drone
+     * - The percentiles of every metric code
+     * - The distance each drone travelled to each zone
+     */
+    private void writeMetricsLog(){
+        try(FileWriter writer = new FileWriter(METRICS_FILE, false)){
 
             writer.write("-------PERFORMANCE METRICS -------\n");
 
-            // write each extinguished time
+            // write each extinguished time, the last one logged for each fire
             writer.write("Time to Extinguish Each Fire Incident:\n");
-            for (Map.Entry<String, Double> entry : extinguishedTimes.entrySet()) {
-                String entity = entry.getKey();
-                double extinguishedTime = Math.round(entry.getValue() * 100.0) / 100.0;
-                writer.write(entity + ": " + extinguishedTime + " ms\n");
+            double totalExtinguishedTime = 0.0;
+            for (Map.Entry<String, EntityStats> entry : totals.entities(MetricCode.FIRE_EXTINGUISHED).entrySet()) {
+                double extinguishedTime = entry.getValue().last;
+                totalExtinguishedTime += extinguishedTime;
+                writer.write(entry.getKey() + ": " + round(extinguishedTime) + " ms\n");
             }
+            writer.write("Total Extinguishing Time: " + round(totalExtinguishedTime) + " ms\n");
 
-            writer.write("Total Extinguishing Time: " + totalExtinguishedTime + " ms\n");
-
-            // write each drone's response time
+            // write each drone's average response time
             writer.write("\nDrone Response Times:\n");
-            for (Map.Entry<String, Double> entry : avgDroneTimes.entrySet()) {
-                String droneId = entry.getKey();
-                double avgTime = Math.round(entry.getValue() * 100.0) / 100.0;
-                writer.write(droneId + ": " + avgTime + " ms\n");
+            double droneAverageSum = 0.0;
+            Map<String, EntityStats> droneTimes = totals.entities(MetricCode.DRONE_RESPONSE);
+            for (Map.Entry<String, EntityStats> entry : droneTimes.entrySet()) {
+                droneAverageSum += entry.getValue().mean();
+                writer.write(entry.getKey() + ": " + round(entry.getValue().mean()) + " ms\n");
             }
+            double overallDroneResponseTime = droneTimes.isEmpty() ? 0 : droneAverageSum / droneTimes.size();
 
-            writer.write("\nOverall Average Drone Response Time: " + Math.round(overallDroneResponseTime * 100.0) / 100.0 + " ms\n");
-            writer.write("Average Scheduler Response Time: " + Math.round(avgSchedulerTime * 100.0) / 100.0 + " ms\n");
-            writer.write("Average Fire Incident Response Time: " + Math.round(avgFireTime * 100.0) / 100.0 + " ms\n");
+            writer.write("\nOverall Average Drone Response Time: " + round(overallDroneResponseTime) + " ms\n");
+            writer.write("Average Scheduler Response Time: " + round(totals.mean(MetricCode.SCHEDULER_RESPONSE)) + " ms\n");
+            writer.write("Average Fire Incident Response Time: " + round(totals.mean(MetricCode.FIRE_RESPONSE)) + " ms\n");
+
+            // write the tail of every metric, SLAs are on the percentiles rather than the averages
+            writer.write("\nPercentiles for Each Metric:\n");
+            for (MetricCode code : CODES) {
+                if (!code.hasPercentiles()) continue;
+                writer.write(code + ": " + LatencyMetrics.summarize(code, totals.histogram(code)) + "\n");
+            }
 
-            // write each drone's required distance to travel to target zone
+            // write the distance each drone travelled to each target zone
             writer.write("\nDistance Required for Each Drone to Travel to Target:\n");
-            writer.write("(where each index of distance array represents nth time the drone visits zone x)\n");
-            for (Map.Entry<String, List<Double>> entry: distanceTravelled.entrySet()){
-                String droneId = entry.getKey();
-                List<Double> distances = entry.getValue();
-                writer.write(droneId + ": " + distances + " m\n");
+            for (Map.Entry<String, EntityStats> entry : totals.entities(MetricCode.DRONE_TRAVELS).entrySet()) {
+                EntityStats distances = entry.getValue();
+                writer.write(entry.getKey() + ": " + distances.count + " trips, mean " + round(distances.mean())
+                        + " m, min " + round(distances.min) + " m, max " + round(distances.max) + " m\n");
             }
 
             writer.flush();
@@ -187,4 +592,23 @@ public class LogAnalyzer {
             System.err.println("Error writing logs: " + e.getMessage());
         }
     }
+
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+
+    /**
+     * Analyzes an event log and reports how long the scan took.
+     *
+     * @param args optionally the path of the event log, defaults to the simulation's event log
+     */
+    public static void main(String[] args) {
+        String logFile = args.length > 0 ? args[0] : LOG_FILE;
+        long start = System.nanoTime();
+        LogAnalyzer analyzer = new LogAnalyzer();
+        analyzer.analyzeMetrics(logFile);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("Analyzed %d metric events from %s in %.1f ms, report written to %s%n",
+                analyzer.totals.lines, logFile, elapsed / 1e6, METRICS_FILE);
+    }
 }
@@ -0,0 +1,93 @@
+/**
+ * The metric codes written to the event log, along with how their values are stored in a LatencyHistogram.
+ * Response times are logged in milliseconds and recorded in nanoseconds, travel distances are logged
+ * in metres and recorded in centimetres. Count codes mark that something happened and are not
+ * reported as percentiles.
+ */
+public enum MetricCode {
+    SCHEDULER_RESPONSE(Kind.TIME),
+    DRONE_RESPONSE(Kind.TIME),
+    FIRE_RESPONSE(Kind.TIME),
+    FIRE_EXTINGUISHED(Kind.TIME),
+    DRONE_TRAVELS(Kind.DISTANCE),
+    QUEUE_WAIT(Kind.TIME),
+    FIRE_REPORTED(Kind.COUNT);
+
+    /**
+     * What the value of a metric measures.
+     */
+    public enum Kind { TIME, DISTANCE, COUNT }
+
+    private final Kind kind;
+
+    MetricCode(Kind kind) {
+        this.kind = kind;
+    }
+
+    /**
+     * @return what the metric's value measures
+     */
+    public Kind getKind() { return kind; }
+
+    /**
+     * @return true if the metric is a duration
+     */
+    public boolean isTime() { return kind == Kind.TIME; }
+
+    /**
+     * @return true if the metric's values are summarized as percentiles
+     */
+    public boolean hasPercentiles() { return kind != Kind.COUNT; }
+
+    /**
+     * @return the unit of the values in the event log and in reports
+     */
+    public String getUnit() {
+        switch (kind) {
+            case TIME: return "ms";
+            case DISTANCE: return "m";
+            default: return "";
+        }
+    }
+
+    /**
+     * Converts a value as written in the event log to the unit recorded in histograms.
+     *
+     * @param logValue the value in milliseconds or metres
+     * @return the value in nanoseconds or centimetres
+     */
+    public long toRecorded(double logValue) {
+        switch (kind) {
+            case TIME: return Math.round(logValue * 1_000_000.0);
+            case DISTANCE: return Math.round(logValue * 100.0);
+            default: return Math.round(logValue);
+        }
+    }
+
+    /**
+     * Converts a histogram value back to the unit used in the event log and in reports.
+     *
+     * @param recorded the value in nanoseconds or centimetres
+     * @return the value in milliseconds or metres
+     */
+    public double toReported(long recorded) {
+        switch (kind) {
+            case TIME: return recorded / 1_000_000.0;
+            case DISTANCE: return recorded / 100.0;
+            default: return recorded;
+        }
+    }
+
+    /**
+     * Looks up a metric code by name without throwing for unknown codes.
+     *
+     * @param name the code as written in the event log
+     * @return the metric code, or null if the name is not a known code
+     */
+    public static MetricCode parse(String name) {
+        for (MetricCode code : values()) {
+            if (code.name().equals(name)) return code;
+        }
+        return null;
+    }
+}
@@ -1,81 +1,434 @@
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * The MetricsLogger class is responsible for logging events to a file. It maintains a queue of
- * log messages and writes them to a file periodically using a daemon thread
+ * The MetricsLogger class is responsible for logging events to a file. Events are stored as primitive
+ * records in a preallocated multi-producer/single-consumer ring buffer, and a single background daemon
+ * thread formats them lazily into a persistent buffered file channel.
+ * The entity, code and details strings of an event are dictionary encoded, so logging a previously seen
+ * string does not allocate and the hot path never takes a lock.
+ * A log file ending in .evlog is written in the binary, columnar format of ColumnarEventLog instead of as
+ * text; -Dmetrics.format=binary makes that the default log.
  */
 public class MetricsLogger {
 
-    private static final List<String> logQueue = new ArrayList<>();
-    private static final String LOG_FILE = "src/main/java/event-log.txt";
-    private static final Object lock = new Object();
+    private static final String LOG_FILE = "binary".equalsIgnoreCase(System.getProperty("metrics.format"))
+            ? "src/main/java/event-log.evlog" : "src/main/java/event-log.txt";
+    private static final String BINARY_SUFFIX = ".evlog";
+    private static final long BLOCK_FLUSH_MILLIS = 1000; // longest a partial block waits while the ring is idle
+    private static final int CAPACITY = 1 << 16; // ring slots, must be a power of two
+    private static final int MASK = CAPACITY - 1;
+    private static final int MAX_SYMBOLS = 1 << 16; // distinct strings kept in the dictionary
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+    private static final int RELEASE_BATCH = 1024; // events drained before slots are handed back to producers
+
+    // Ring buffer of primitive records, one column per field
+    private static final long[] timestamps = new long[CAPACITY];
+    private static final int[] entitySymbols = new int[CAPACITY];
+    private static final int[] codeSymbols = new int[CAPACITY];
+    private static final int[] detailSymbols = new int[CAPACITY];
+    private static final double[] values = new double[CAPACITY];
+    // the strings of an event, only kept once the dictionary is full
+    private static final String[] overflowEntities = new String[CAPACITY];
+    private static final String[] overflowCodes = new String[CAPACITY];
+    private static final String[] overflowDetails = new String[CAPACITY];
+    private static final AtomicLongArray published = new AtomicLongArray(CAPACITY); // sequence published in each slot
+    private static final AtomicLong tail = new AtomicLong(); // next sequence to be claimed by a producer
+    private static volatile long head = 0; // next sequence to be consumed by the writer
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile long clockMillis = System.currentTimeMillis(); // coarse clock ticked by the writer
+
+    // Dictionary of the strings used by events
+    private static final ConcurrentHashMap<String, Integer> dictionary = new ConcurrentHashMap<>();
+    private static volatile byte[][] symbols = new byte[256][];
+    private static volatile String[] symbolNames = new String[256];
+    private static int symbolCount = 0;
+    private static int symbolLimit = MAX_SYMBOLS; // lowered by tests to act as if the dictionary were full
+
+    // Subscribers notified by the writer thread of every event it drains
+    private static final CopyOnWriteArrayList<EventListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Writer state, only touched by the daemon thread once started
+    private static volatile Thread writer;
+    private static FileChannel channel;
+    private static ColumnarEventLog.BlockWriter columnar; // set instead of the channel for a binary log
+    private static long blockStartMillis;
+    private static final ByteBuffer out = ByteBuffer.allocateDirect(1 << 16);
+    private static final byte[] scratch = new byte[32];
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            published.set(i, -1);
+        }
+    }
 
     /**
-     * Starts the logging daemon that periodically flushes logs to a file.
+     * Starts the logging daemon that writes logged events to the default event log.
      * This method ensures the log file is also overwritten at startup
      */
     public static void startDaemon(){
+        startDaemon(LOG_FILE);
+    }
+
+    /**
+     * Starts the logging daemon that writes logged events to the given file.
+     * This method ensures the log file is also overwritten at startup
+     *
+     * @param logFile the path of the event log to write
+     */
+    public static synchronized void startDaemon(String logFile){
+        if (writer != null) return;
 
-        // to overwrite the previous file entry
-        try (FileWriter writer = new FileWriter(LOG_FILE, false)){
-            writer.write("");
+        // to overwrite the previous file entry and keep the channel open for the life of the process
+        try {
+            if (logFile.endsWith(BINARY_SUFFIX)) {
+                columnar = new ColumnarEventLog.BlockWriter(Paths.get(logFile), ColumnarEventLog.BLOCK_ROWS);
+            } else {
+                channel = FileChannel.open(Paths.get(logFile), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                channel.close();
+                channel = FileChannel.open(Paths.get(logFile), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
         } catch (IOException e){
             System.err.println("Error overwriting file: " + e.getMessage());
+            return;
         }
 
-        // creating a background daemon thread to flush periodically
-        Thread logFlusher = new Thread(() -> {
-            while (true){
-                try{
-                    Thread.sleep(2000);
-                    flushLogs();
-                } catch (InterruptedException ignored){}
-            }
-        });
-        logFlusher.setDaemon(true);
-        logFlusher.start();
+        // creating a background daemon thread that drains the ring buffer
+        Thread logWriter = new Thread(MetricsLogger::writeLoop, "METRICS_LOGGER");
+        logWriter.setDaemon(true);
+        writer = logWriter;
+        logWriter.start();
+
+        // write anything still queued when the process exits
+        Runtime.getRuntime().addShutdownHook(new Thread(MetricsLogger::flush));
     }
 
     /**
-     * Logs an event by adding it to the queue and printing it to the console
+     * Logs an event by publishing it to the ring buffer. If the ring is full the caller waits for the
+     * writer to make room, or the event is dropped when no writer has been started
      * @param entity The thread/shared resource creating the event
      * @param eventCode The identifier describing the event
      * @param value The metric value
      * @param details Additional details about the event
      */
     public static void logEvent(String entity, String eventCode, double value, String details){
-        String timestamp = new SimpleDateFormat("HH:mm:ss.SSS").format(new Date());
-        String event = timestamp + ", " + entity + ", " + eventCode + ", " + value + ", " + details;
-        synchronized (lock) {
-            logQueue.add(event);
+        // reading the system clock costs more than the rest of this method, use the writer's clock when it runs
+        long timestamp = writer != null ? clockMillis : System.currentTimeMillis();
+
+        // claim a slot, waiting while the ring is full
+        long sequence;
+        while (true) {
+            sequence = tail.get();
+            if (sequence - head >= CAPACITY) {
+                // nothing will make room without a live writer, so never wait on one that has died
+                Thread current = writer;
+                if (current == null || !current.isAlive()) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                Thread.onSpinWait();
+                Thread.yield();
+                continue;
+            }
+            if (tail.compareAndSet(sequence, sequence + 1)) break;
         }
+
+        int slot = (int) sequence & MASK;
+        timestamps[slot] = timestamp;
+        entitySymbols[slot] = symbol(entity);
+        codeSymbols[slot] = symbol(eventCode);
+        values[slot] = value;
+        detailSymbols[slot] = symbol(details);
+        overflowEntities[slot] = entitySymbols[slot] < 0 ? entity : null;
+        overflowCodes[slot] = codeSymbols[slot] < 0 ? eventCode : null;
+        overflowDetails[slot] = detailSymbols[slot] < 0 ? details : null;
+        published.lazySet(slot, sequence);
     }
 
     /**
-     * Writes all queued logs to the log file and clears the queue.
-     * This method is periodically called by the daemon thread
+     * Records a duration in the metric code's latency histogram and logs it in milliseconds.
+     * @param entity The thread/shared resource creating the event
+     * @param code The metric being measured
+     * @param nanos The measured duration in nanoseconds, taken with System.nanoTime
+     * @param details Additional details about the event
+     */
+    public static void logLatency(String entity, MetricCode code, long nanos, String details){
+        LatencyMetrics.record(code, nanos);
+        logEvent(entity, code.name(), nanos / 1_000_000.0, details);
+    }
+
+    /**
+     * Records a value in the metric code's histogram and logs it as is.
+     * @param entity The thread/shared resource creating the event
+     * @param code The metric being measured
+     * @param value The metric value in the code's unit (milliseconds or metres)
+     * @param details Additional details about the event
      */
-    private static void flushLogs(){
-        List<String> logsToWrite;
-        synchronized (lock) {
-            if (logQueue.isEmpty()) return;
-            logsToWrite = new ArrayList<>(logQueue);
-            logQueue.clear();
+    public static void logMetric(String entity, MetricCode code, double value, String details){
+        LatencyMetrics.record(code, code.toRecorded(value));
+        logEvent(entity, code.name(), value, details);
+    }
+
+    /**
+     * Receives every logged event on the logging daemon thread, after it has been written.
+     * Implementations must be quick, they hold up the writer.
+     */
+    public interface EventListener {
+        /**
+         * @param timestampMillis the time the event was logged, in milliseconds since the epoch
+         * @param entity The thread/shared resource that created the event
+         * @param eventCode The identifier describing the event
+         * @param value The metric value
+         */
+        void onEvent(long timestampMillis, String entity, String eventCode, double value);
+    }
+
+    /**
+     * Subscribes a listener to every event logged from now on. Events are only delivered while
+     * the logging daemon is running
+     * @param listener the listener to add
+     */
+    public static void addListener(EventListener listener){
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to stop notifying
+     */
+    public static void removeListener(EventListener listener){
+        listeners.remove(listener);
+    }
+
+    private static void notifyListeners(long timestamp, int slot){
+        String[] names = symbolNames;
+        int entity = entitySymbols[slot];
+        int code = codeSymbols[slot];
+        double value = values[slot];
+        String entityName = entity >= 0 ? names[entity] : overflowEntities[slot];
+        String codeName = code >= 0 ? names[code] : overflowCodes[slot];
+        for (EventListener listener : listeners) {
+            try {
+                listener.onEvent(timestamp, entityName, codeName, value);
+            } catch (RuntimeException e) {
+                System.err.println("Metrics listener failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * Waits until every event logged before this call has been written to the log file.
+     * Returns immediately if the logging daemon has not been started
+     */
+    public static void flush(){
+        if (writer == null || Thread.currentThread() == writer) return;
+        long target = tail.get();
+        while (head < target && writer.isAlive()) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        synchronized (out) {
+            writeOut();
         }
+    }
 
-        try(FileWriter writer = new FileWriter(LOG_FILE, true)){
+    /**
+     * @return the number of events dropped because the ring buffer was full and no writer was running
+     */
+    public static long getDroppedCount(){
+        return dropped.get();
+    }
 
-            for (String log: logsToWrite){
-                writer.write(log + "\n");
+    /**
+     * Makes the dictionary act as full at its current size, or lifts that, so a test can log strings that
+     * miss the dictionary without filling the one every later event shares.
+     *
+     * @param full true to take no more strings, false to take them up to the real limit again
+     */
+    static void setDictionaryFull(boolean full){
+        synchronized (dictionary) {
+            symbolLimit = full ? symbolCount : MAX_SYMBOLS;
+        }
+    }
+
+    /**
+     * Maps a string to its dictionary symbol, registering it on first use.
+     *
+     * @param value the string to encode
+     * @return the symbol, or -1 if the dictionary is full and the string has to be kept as is
+     */
+    private static int symbol(String value){
+        if (value == null) value = "null";
+        Integer symbol = dictionary.get(value);
+        if (symbol != null) return symbol;
+
+        synchronized (dictionary) {
+            symbol = dictionary.get(value);
+            if (symbol != null) return symbol;
+            if (symbolCount >= symbolLimit) return -1;
+
+            byte[][] table = symbols;
+            String[] names = symbolNames;
+            if (symbolCount == table.length) {
+                table = Arrays.copyOf(table, table.length * 2);
+                names = Arrays.copyOf(names, names.length * 2);
+            }
+            table[symbolCount] = value.getBytes(StandardCharsets.UTF_8);
+            names[symbolCount] = value;
+            symbols = table;
+            symbolNames = names;
+            dictionary.put(value, symbolCount);
+            return symbolCount++;
+        }
+    }
+
+    /**
+     * Drains published events in order, formatting them into the output buffer or adding them to the binary log's block.
+     * This method is run by the daemon thread
+     */
+    private static void writeLoop(){
+        long cachedHour = Long.MIN_VALUE;
+        long offset = 0;
+        long sequence = head;
+        while (true){
+            clockMillis = System.currentTimeMillis();
+            synchronized (out) {
+                // drain a batch of published events, releasing their slots to producers as a group
+                int drained = 0;
+                while (drained < RELEASE_BATCH) {
+                    int slot = (int) sequence & MASK;
+                    if (published.get(slot) != sequence) break;
+
+                    long timestamp = timestamps[slot];
+                    if (timestamp / 3_600_000L != cachedHour) {
+                        cachedHour = timestamp / 3_600_000L;
+                        offset = TimeZone.getDefault().getOffset(timestamp);
+                    }
+                    if (columnar != null) {
+                        addToBlock(timestamp, slot);
+                    } else {
+                        if (out.remaining() < 512) {
+                            writeOut();
+                        }
+                        formatEvent(timestamp + offset, slot);
+                    }
+                    if (!listeners.isEmpty()) {
+                        notifyListeners(timestamp, slot);
+                    }
+                    overflowEntities[slot] = null;
+                    overflowCodes[slot] = null;
+                    overflowDetails[slot] = null;
+                    sequence++;
+                    drained++;
+                }
+                head = sequence;
+
+                if (drained == RELEASE_BATCH) continue;
+
+                // ring is empty, write what has been formatted and wait for more events
+                if (columnar == null) {
+                    writeOut();
+                } else if (clockMillis - blockStartMillis >= BLOCK_FLUSH_MILLIS) {
+                    writeBlock();
+                }
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Adds one event to the binary log's current block, writing the block first if it is full.
+     */
+    private static void addToBlock(long timestamp, int slot){
+        if (columnar.isFull()) {
+            writeBlock();
+        }
+        if (columnar.getPendingRows() == 0) {
+            blockStartMillis = clockMillis;
+        }
+        columnar.add(timestamp * 1_000_000L, entitySymbols[slot], overflowEntities[slot], codeSymbols[slot], overflowCodes[slot],
+                values[slot], detailSymbols[slot], overflowDetails[slot]);
+    }
+
+    /**
+     * Writes the events added to the binary log's current block.
+     */
+    private static void writeBlock(){
+        try {
+            columnar.writeBlock(symbols);
+        } catch (IOException e){
+            System.err.println("Error writing logs: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Formats one event as "HH:mm:ss.SSS, entity, code, value, details" into the output buffer.
+     */
+    private static void formatEvent(long localMillis, int slot){
+        long millisOfDay = Math.floorMod(localMillis, 86_400_000L);
+        putDigits((int) (millisOfDay / 3_600_000L), 2);
+        out.put((byte) ':');
+        putDigits((int) (millisOfDay / 60_000L % 60), 2);
+        out.put((byte) ':');
+        putDigits((int) (millisOfDay / 1000L % 60), 2);
+        out.put((byte) '.');
+        putDigits((int) (millisOfDay % 1000L), 3);
+
+        putSymbol(entitySymbols[slot], overflowEntities[slot]);
+        putSymbol(codeSymbols[slot], overflowCodes[slot]);
+        out.put((byte) ',').put((byte) ' ');
+        String number = Double.toString(values[slot]);
+        for (int i = 0; i < number.length(); i++) {
+            out.put((byte) number.charAt(i));
+        }
+        putSymbol(detailSymbols[slot], overflowDetails[slot]);
+        out.put((byte) '\n');
+    }
+
+    private static void putSymbol(int symbol, String raw){
+        out.put((byte) ',').put((byte) ' ');
+        byte[] bytes = symbol >= 0 ? symbols[symbol] : String.valueOf(raw).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > out.remaining() - 64) {
+            writeOut();
+        }
+        out.put(bytes, 0, Math.min(bytes.length, out.remaining() - 64));
+    }
+
+    private static void putDigits(int value, int width){
+        for (int i = width - 1; i >= 0; i--) {
+            scratch[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        out.put(scratch, 0, width);
+    }
+
+    /**
+     * Writes the formatted output buffer to the log file.
+     */
+    private static void writeOut(){
+        if (columnar != null) {
+            writeBlock();
+            return;
+        }
+        if (out.position() == 0) return;
+        out.flip();
+        try {
+            while (out.hasRemaining()) {
+                channel.write(out);
             }
-            writer.flush();
         } catch (IOException e){
             System.err.println("Error writing logs: " + e.getMessage());
         }
+        out.clear();
     }
 }
@@ -0,0 +1,98 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * The MetricsLoggerBenchmark class measures the cost of MetricsLogger.logEvent on the calling thread.
+ * It reports the nanoseconds per call and the bytes allocated per call once the logger has warmed up,
+ * for one or more concurrent producer threads. Bursts that fit in the ring buffer show the cost on the
+ * caller, while the sustained run is bounded by how fast the writer drains the ring to disk.
+ * The events are written to a temporary log file, as text or in the binary format, which is then scanned
+ * the way LogAnalyzer reads it.
+ *
+ * Usage: java MetricsLoggerBenchmark [threads] [iterations per thread] [text|binary]
+ */
+public class MetricsLoggerBenchmark {
+    private static final String ENTITY = "SCHEDULER";
+    private static final String CODE = "SCHEDULER_RESPONSE";
+    private static final String DETAILS = "Response time of Scheduler (ms) [STATE: IDLE]";
+    private static final int BURST_EVENTS = 1 << 15; // half of the logger's ring buffer
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+
+        boolean binary = args.length > 2 && args[2].equals("binary");
+        File logFile = File.createTempFile("metrics-benchmark", binary ? ".evlog" : ".txt");
+        logFile.deleteOnExit();
+        MetricsLogger.startDaemon(logFile.getPath());
+
+        // Warm up so the dictionary is populated and the hot path is compiled
+        runProducers(threads, iterations / 4, new long[threads], new long[threads]);
+        MetricsLogger.flush();
+
+        // Bursts that never fill the ring, flushing in between
+        int burst = BURST_EVENTS / threads;
+        long[] nanos = new long[threads];
+        long[] allocated = new long[threads];
+        long burstNanos = 0;
+        long burstAllocated = 0;
+        int bursts = Math.max(1, iterations / burst);
+        for (int b = 0; b < bursts; b++) {
+            runProducers(threads, burst, nanos, allocated);
+            MetricsLogger.flush();
+            burstNanos += sum(nanos);
+            burstAllocated += sum(allocated);
+        }
+        report("burst", threads, (long) bursts * burst * threads, burstNanos, burstAllocated);
+
+        // Sustained logging, where producers wait on the writer once the ring is full
+        runProducers(threads, iterations, nanos, allocated);
+        MetricsLogger.flush();
+        report("sustained", threads, (long) iterations * threads, sum(nanos), sum(allocated));
+
+        System.out.printf("Log file: %d bytes, dropped events: %d%n", logFile.length(), MetricsLogger.getDroppedCount());
+
+        long start = System.nanoTime();
+        LogAnalyzer.Accumulator scanned = LogAnalyzer.scanLog(logFile.getPath());
+        System.out.printf("Scanned %d events in %.1f ms%n", scanned.lines, (System.nanoTime() - start) / 1e6);
+    }
+
+    private static void report(String name, int threads, long calls, long nanos, long allocated) {
+        System.out.printf("%-9s threads: %d, calls: %d, logEvent: %.1f ns/call, %.3f bytes allocated/call%n",
+                name, threads, calls, (double) nanos / calls, (double) allocated / calls);
+    }
+
+    private static long sum(long[] values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    /**
+     * Runs the producer threads, each recording its elapsed time and allocated bytes.
+     */
+    private static void runProducers(int threads, int iterations, long[] nanos, long[] allocated) throws InterruptedException {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            producers[t] = new Thread(() -> {
+                long threadId = Thread.currentThread().getId();
+                long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    MetricsLogger.logEvent(ENTITY, CODE, i, DETAILS);
+                }
+                nanos[index] = System.nanoTime() - start;
+                allocated[index] = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            }, "PRODUCER " + t);
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+    }
+}
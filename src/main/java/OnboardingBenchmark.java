@@ -0,0 +1,86 @@
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The OnboardingBenchmark class measures how long a Scheduler takes to be ready to dispatch to a large fleet,
+ * the two ways drones can come to wait for a fire: each drone checking in with its own READY, which the
+ * Scheduler parses and hands a thread of its own, or a host announcing all its drones as waiting in
+ * DroneDiscovery registration frames. Each run starts a fresh Scheduler and stops the clock once every drone
+ * is IDLE, so the next fires can be sent to it, or after the timeout.
+ *
+ * Usage: java OnboardingBenchmark [drones=N] [transports=memory,udp] [timeout=SECONDS]
+ */
+public class OnboardingBenchmark {
+    private static final int FIRST_DRONE = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length == 2) options.put(parts[0].trim(), parts[1].trim());
+        }
+        int drones = Integer.parseInt(options.getOrDefault("drones", "2000"));
+        long timeoutNanos = Long.parseLong(options.getOrDefault("timeout", "30")) * 1_000_000_000L;
+
+        System.out.printf("%-8s %-10s %8s %12s %10s %14s%n", "transport", "onboarding", "drones", "idle",
+                "messages", "time(ms)");
+        for (String name : options.getOrDefault("transports", "memory,udp").split(",")) {
+            for (boolean batched : new boolean[]{false, true}) {
+                Transport.Factory transports = name.trim().equals("udp") ? Transport.UDP : new InMemoryTransport.Network();
+                Scheduler scheduler = new Scheduler(transports);
+                Thread schedulerThread = new Thread(scheduler, "SCHEDULER");
+                schedulerThread.setDaemon(true);
+                schedulerThread.start();
+
+                long start = System.nanoTime();
+                int messages = batched ? announce(transports, drones) : checkIn(transports, drones);
+                while (scheduler.getIdleDrones() < drones && System.nanoTime() - start < timeoutNanos) {
+                    Thread.sleep(0, 100_000);
+                }
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("%-8s %-10s %8d %12d %10d %14.1f%n", name.trim(), batched ? "frames" : "READY",
+                        drones, scheduler.getIdleDrones(), messages, elapsed / 1_000_000.0);
+
+                scheduler.shutdown();
+                schedulerThread.join();
+            }
+        }
+        // The handlers of the READY check-ins, and the announced drones' dispatcher, still wait for fires
+        System.exit(0);
+    }
+
+    /**
+     * Sends one READY per drone, the way a drone checks in when it starts.
+     *
+     * @return the number of messages sent
+     */
+    private static int checkIn(Transport.Factory transports, int drones) throws IOException {
+        int schedulerPort = DeploymentConfig.get().getSchedulerPort();
+        try (Transport drone = transports.open(0)) {
+            for (int i = 0; i < drones; i++) {
+                drone.send("[DRONE: " + (FIRST_DRONE + i) + "][PORT: " + (10_000 + i % 50_000)
+                        + "][STATE: IDLE][CTRL: " + drone.getLocalPort() + "] READY: Ready to service any new fires", schedulerPort);
+            }
+        }
+        return drones;
+    }
+
+    /**
+     * Announces every drone as waiting in registration frames.
+     *
+     * @return the number of messages sent
+     */
+    private static int announce(Transport.Factory transports, int drones) throws IOException {
+        int[] ids = new int[drones];
+        int[] ports = new int[drones];
+        int[] controlPorts = new int[drones];
+        for (int i = 0; i < drones; i++) {
+            ids[i] = FIRST_DRONE + i;
+            ports[i] = 10_000 + i % 50_000;
+        }
+        try (Transport host = transports.open(0)) {
+            return DroneDiscovery.announce(ids, ports, controlPorts, true, host, DeploymentConfig.get().getSchedulerPort());
+        }
+    }
+}
@@ -0,0 +1,249 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Decides where idle drones should wait so the next fire is close to one of them. Each zone keeps a
+ * fire rate that decays exponentially with a configurable half-life, updated from the incident
+ * stream. A planning round picks staging points among the zone centroids that minimise the
+ * rate-weighted distance from each zone to its nearest staging point (a greedy k-median with swap
+ * improvement, over a bounded number of points and candidate sites), then moves the nearest idle
+ * drones to them. The moves of a round are limited by an idle budget: the total distance idle drones
+ * may fly to reposition.
+ *
+ * Times are in seconds on the caller's clock, so the engine can be driven by the Scheduler or by a
+ * replayed trace. Every method is synchronized.
+ */
+public class PrepositionEngine {
+    private static final double SETTLED_DISTANCE = 1.0; // drones this close to a staging point are not moved
+    private static final int MAX_STAGING_POINTS = 32;   // staging points picked per round, however many drones are idle
+    private static final int MAX_CANDIDATES = 64;       // busiest zones considered as staging points
+    private static final int MAX_SWAP_PASSES = 10;      // swap improvement stops after this many passes
+
+    private final ZoneDistances distances;
+    private final double[] rates;
+    private final double[] ratesAt;
+    private final double decayPerSecond;
+    private final double budget;
+
+    /**
+     * A repositioning flight for an idle drone.
+     */
+    public static final class Move {
+        public final int droneID;
+        public final double x, y, distance;
+
+        Move(int droneID, double x, double y, double distance) {
+            this.droneID = droneID;
+            this.x = x;
+            this.y = y;
+            this.distance = distance;
+        }
+
+        @Override
+        public String toString() {
+            return "[DRONE " + droneID + " -> (" + x + ", " + y + "), " + Math.round(distance) + "m]";
+        }
+    }
+
+    /**
+     * @param distances the distances between the zones fires are reported in, shared with the caller
+     * @param halfLifeSeconds the time after which a fire counts half as much towards its zone's rate
+     * @param budget the total distance idle drones may fly to reposition in one planning round
+     */
+    public PrepositionEngine(ZoneDistances distances, double halfLifeSeconds, double budget) {
+        this.distances = distances;
+        rates = new double[distances.size()];
+        ratesAt = new double[distances.size()];
+        this.decayPerSecond = Math.log(2) / halfLifeSeconds;
+        this.budget = budget;
+    }
+
+    /**
+     * Counts a fire towards its zone's rate.
+     *
+     * @param zoneID the zone of the fire
+     * @param timeSeconds when the fire was reported
+     */
+    public synchronized void recordFire(int zoneID, double timeSeconds) {
+        int zone = indexOf(zoneID);
+        if (zone < 0) return;
+        rates[zone] = decayed(zone, timeSeconds) + 1;
+        ratesAt[zone] = timeSeconds;
+    }
+
+    /**
+     * @return the decayed fire count of a zone at a time, 0 for an unknown zone
+     */
+    public synchronized double getRate(int zoneID, double timeSeconds) {
+        int zone = indexOf(zoneID);
+        return zone < 0 ? 0 : decayed(zone, timeSeconds);
+    }
+
+    /**
+     * Picks up to k staging points among the zone centroids, minimising the rate-weighted distance from
+     * every zone to its nearest staging point. At most MAX_STAGING_POINTS are picked, and only the
+     * MAX_CANDIDATES busiest zones are considered as sites, so a round costs the same however many drones
+     * are idle.
+     *
+     * @return the staging points as {x, y} pairs, none if no fire has been recorded
+     */
+    public synchronized double[][] stagingPoints(int k, double timeSeconds) {
+        int zones = distances.size();
+        double[] weights = new double[zones];
+        int active = 0;
+        for (int z = 0; z < zones; z++) {
+            weights[z] = decayed(z, timeSeconds);
+            if (weights[z] > 0) active++;
+        }
+        k = Math.min(Math.min(k, active), MAX_STAGING_POINTS);
+        if (k <= 0) return new double[0][];
+
+        // The zones that pay the cost, and the busiest of them as candidate sites
+        int[] weighted = new int[active];
+        for (int z = 0, i = 0; z < zones; z++) {
+            if (weights[z] > 0) weighted[i++] = z;
+        }
+        int[] candidates = busiest(weighted, weights, Math.min(active, MAX_CANDIDATES));
+
+        // Greedy: add the site that lowers the cost most, keeping each zone's distance to its nearest site
+        int[] sites = new int[k];
+        boolean[] chosen = new boolean[zones];
+        double[] nearest = new double[active];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        for (int s = 0; s < k; s++) {
+            int best = -1;
+            double bestCost = Double.POSITIVE_INFINITY;
+            for (int candidate : candidates) {
+                if (chosen[candidate]) continue;
+                double cost = costWith(candidate, nearest, weighted, weights);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = candidate;
+                }
+            }
+            sites[s] = best;
+            chosen[best] = true;
+            for (int i = 0; i < active; i++) {
+                nearest[i] = Math.min(nearest[i], distances.distanceAt(weighted[i], best));
+            }
+        }
+
+        // Swap sites in and out while that helps, pricing each swap against the other sites' distances
+        double current = costWith(-1, nearest, weighted, weights);
+        double[] others = new double[active];
+        boolean improved = true;
+        for (int pass = 0; improved && pass < MAX_SWAP_PASSES; pass++) {
+            improved = false;
+            for (int s = 0; s < k; s++) {
+                for (int i = 0; i < active; i++) {
+                    double other = Double.POSITIVE_INFINITY;
+                    for (int t = 0; t < k; t++) {
+                        if (t != s) other = Math.min(other, distances.distanceAt(weighted[i], sites[t]));
+                    }
+                    others[i] = other;
+                }
+                for (int candidate : candidates) {
+                    if (chosen[candidate]) continue;
+                    double cost = costWith(candidate, others, weighted, weights);
+                    if (cost < current - 1e-9) {
+                        current = cost;
+                        chosen[sites[s]] = false;
+                        chosen[candidate] = true;
+                        sites[s] = candidate;
+                        improved = true;
+                    }
+                }
+            }
+        }
+
+        double[][] points = new double[k][];
+        for (int s = 0; s < k; s++) {
+            points[s] = new double[]{distances.centerX(sites[s]), distances.centerY(sites[s])};
+        }
+        return points;
+    }
+
+    /**
+     * Plans a round of repositioning. Staging points are filled by the nearest idle drone, shortest flights
+     * first, until every point is covered or the idle budget is spent. Drones not moved stay where they are.
+     *
+     * @param droneIDs the idle drones
+     * @param xs the x position of each idle drone
+     * @param ys the y position of each idle drone
+     * @param timeSeconds the current time
+     * @return the flights to make
+     */
+    public synchronized List<Move> plan(int[] droneIDs, double[] xs, double[] ys, double timeSeconds) {
+        List<Move> moves = new ArrayList<>();
+        double[][] points = stagingPoints(droneIDs.length, timeSeconds);
+        if (points.length == 0) return moves;
+
+        // Every (drone, point) pair, shortest first
+        int pairs = droneIDs.length * points.length;
+        double[] distances = new double[pairs];
+        Integer[] order = new Integer[pairs];
+        for (int d = 0; d < droneIDs.length; d++) {
+            for (int p = 0; p < points.length; p++) {
+                int pair = d * points.length + p;
+                distances[pair] = Math.hypot(points[p][0] - xs[d], points[p][1] - ys[d]);
+                order[pair] = pair;
+            }
+        }
+        Arrays.sort(order, Comparator.comparingDouble(pair -> distances[pair]));
+
+        boolean[] droneUsed = new boolean[droneIDs.length];
+        boolean[] pointCovered = new boolean[points.length];
+        double spent = 0;
+        for (int pair : order) {
+            int d = pair / points.length;
+            int p = pair % points.length;
+            if (droneUsed[d] || pointCovered[p]) continue;
+            if (distances[pair] > SETTLED_DISTANCE) {
+                if (spent + distances[pair] > budget) continue;
+                spent += distances[pair];
+                moves.add(new Move(droneIDs[d], points[p][0], points[p][1], distances[pair]));
+            }
+            droneUsed[d] = true;
+            pointCovered[p] = true;
+        }
+        return moves;
+    }
+
+    /**
+     * @param site a zone to add as a staging point, or -1 for none
+     * @param nearest each weighted zone's distance to its nearest staging point without the site
+     * @return the rate-weighted distance from every zone to its nearest staging point
+     */
+    private double costWith(int site, double[] nearest, int[] weighted, double[] weights) {
+        double total = 0;
+        for (int i = 0; i < weighted.length; i++) {
+            double distance = site < 0 ? nearest[i] : Math.min(nearest[i], distances.distanceAt(weighted[i], site));
+            total += weights[weighted[i]] * distance;
+        }
+        return total;
+    }
+
+    /**
+     * @return the count zones with the highest weights, in zone order
+     */
+    private static int[] busiest(int[] zones, double[] weights, int count) {
+        if (count == zones.length) return zones;
+        Integer[] byWeight = new Integer[zones.length];
+        for (int i = 0; i < zones.length; i++) byWeight[i] = zones[i];
+        Arrays.sort(byWeight, Comparator.comparingDouble((Integer zone) -> weights[zone]).reversed());
+        int[] busiest = new int[count];
+        for (int i = 0; i < count; i++) busiest[i] = byWeight[i];
+        Arrays.sort(busiest);
+        return busiest;
+    }
+
+    private double decayed(int zone, double timeSeconds) {
+        return rates[zone] * Math.exp(-decayPerSecond * Math.max(0, timeSeconds - ratesAt[zone]));
+    }
+
+    private int indexOf(int zoneID) {
+        return distances.indexOf(zoneID);
+    }
+}
@@ -0,0 +1,42 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The PrepositionReplay class evaluates the pre-positioning engine on a fire trace in the format of
+ * fire_events.csv. The trace is played twice as a FleetSimulation, once with idle drones left where they
+ * finished and once with the PrepositionEngine moving them between fires, and the travel distance of each
+ * dispatch is compared. Both runs send each fire to the nearest free drone.
+ *
+ * Usage: java PrepositionReplay [trace=PATH] [zones=PATH] [drones=N] [interval=SEC] [halfLife=SEC]
+ *                               [budget=METRES] [repeat=N]
+ */
+public class PrepositionReplay {
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length == 2) options.put(parts[0].trim(), parts[1].trim());
+        }
+        Map<Integer, Zone> zones = Scheduler.loadZonesFromCSV(options.getOrDefault("zones", "src/main/java/sample_zone.csv"));
+        List<double[]> fires = FleetSimulation.parseTrace(
+                Files.readAllLines(Paths.get(options.getOrDefault("trace", "src/main/java/fire_events.csv"))), zones,
+                Integer.parseInt(options.getOrDefault("repeat", "1")));
+        int drones = Integer.parseInt(options.getOrDefault("drones", "3"));
+
+        System.out.printf("%-15s %10s %12s %12s %14s%n", "mode", "dispatches", "mean (m)", "p95 (m)", "staging (m)");
+        for (FleetSimulation.Policy policy : new FleetSimulation.Policy[]{FleetSimulation.Policy.NEAREST, FleetSimulation.Policy.PREPOSITION}) {
+            FleetSimulation.Config config = new FleetSimulation.Config(drones, DroneSubsystem.MAX_AGENT_CAP, DroneSubsystem.SPEED, policy)
+                    .prepositioning(Double.parseDouble(options.getOrDefault("interval", "30")),
+                            Double.parseDouble(options.getOrDefault("halfLife", "600")),
+                            Double.parseDouble(options.getOrDefault("budget", "2000")));
+            FleetSimulation.Result result = new FleetSimulation(zones, fires, config).run();
+            System.out.printf("%-15s %10d %12.1f %12.1f %14.1f%n", policy == FleetSimulation.Policy.PREPOSITION ? "prepositioned" : "baseline",
+                    result.getFires(), result.getMeanDispatchDistance(), result.getDispatchDistancePercentile(0.95),
+                    result.getStagingDistance());
+        }
+    }
+}
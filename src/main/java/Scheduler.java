@@ -1,9 +1,10 @@
 import java.io.*;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.*;
 
 /**
@@ -12,14 +13,68 @@ import java.util.regex.*;
  * communication
  */
 class Scheduler implements Runnable{
-    private static final int RECEIVE_PORT = 7000;
-    private DatagramSocket receiveSocket, sendSocket;
-    private BoundedBuffer fireToDroneBuffer, droneToFireBuffer;
-    private final LinkedList<DroneStatus> drones = new LinkedList<>();  // Changed to LinkedList
+    private final Transport.Factory transports;
+    private Transport receiveTransport, sendTransport;
+    private final Map<Integer, Integer> completedFires = new HashMap<>(); // fire ID -> completions not yet confirmed
+    private final FireLedger fireLedger = new FireLedger(); // water each fire still needs, across its shares
+    private final FireQueue fireQueue = new FireQueue(); // fires waiting for a drone, earliest deadline first
+    private final Map<Integer, Long> reportedAt = new ConcurrentHashMap<>(); // fire ID -> time first reported (ns)
+    private final FleetStore fleet = new FleetStore(64); // every drone that has checked in, one entry per drone
+    private final Semaphore announcedDrones = new Semaphore(0); // drones a discovery frame made IDLE, each owed a dispatch
     private Thread receiveThread;
     private String state;
     private static final String zoneFilePath = "src//main/java/sample_zone.csv";
     private static Map<Integer, Zone> zoneMap = Scheduler.loadZonesFromCSV(zoneFilePath);
+    private static final ZoneDistances distances = withBase(zoneMap); // zone centre to zone centre, base included
+    private static final Pattern FIRE_ID_PATTERN = Pattern.compile("ID=(\\d+)");
+    private static final Pattern ZONE_ID_PATTERN = Pattern.compile("zoneId=(\\d+)");
+    private final Map<Integer, Long> queuedAt = new ConcurrentHashMap<>(); // fire ID -> time it was queued (ns)
+    private final SchedulerMetrics metrics = new SchedulerMetrics();
+    private final FireEventStore fireHistory = new FireEventStore(); // every fire reported, in compact form
+    private static final Pattern FAILURE_PATTERN = Pattern.compile("failure='[^']*'");
+    private static final Pattern CONTROL_PORT_PATTERN = Pattern.compile("\\[CTRL: (\\d+)]");
+    private static final Pattern PARTIAL_PATTERN = Pattern.compile("PARTIAL: delivered=(\\d+) remaining=(\\d+)");
+    private static final double MIN_RETASK_REMAINING_SECONDS = 1.0; // drones about to land are not re-tasked
+    private static final int CONTROL_TIMEOUT_MILLIS = 500;
+    private static final FireEvent.Severity[] SEVERITIES = FireEvent.Severity.values();
+    private final Object preemptionLock = new Object(); // one re-tasking decision at a time
+    private static final long TIMER_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long HEARTBEAT_TIMEOUT_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("drone.heartbeat.timeout", 5000));
+    private static final double MISSION_SLACK = 1.5; // allowance over the expected mission time
+    private final HashedTimerWheel missionTimers = new HashedTimerWheel(TIMER_TICK_NANOS, 512, System.nanoTime());
+    private final Map<Integer, Mission> missions = new ConcurrentHashMap<>(); // drone ID -> fire it is working on
+    private static final long PREPOSITION_INTERVAL_MILLIS =
+            TimeUnit.SECONDS.toMillis(Long.getLong("preposition.interval", 30));
+    private final PrepositionEngine prepositioning = new PrepositionEngine(distances,
+            Long.getLong("preposition.halfLife", 600), Long.getLong("preposition.budget", 2000));
+
+    /**
+     * A fire assigned to a drone, with the time the drone is expected to have finished it by, and the
+     * flight to the fire's zone the Scheduler expects the drone to be making.
+     */
+    private static final class Mission {
+        final String fireRequest;
+        final FireEvent.Severity severity;
+        final Zone targetZone; // the zone of the fire, null if it is not known
+        final long etaDeadlineNanos;
+        final double originX, originY, targetX, targetY;
+        final long departNanos, arriveNanos;
+
+        Mission(String fireRequest, FireEvent.Severity severity, Zone targetZone, long etaDeadlineNanos, double originX,
+                double originY, double targetX, double targetY, long departNanos, long arriveNanos) {
+            this.fireRequest = fireRequest;
+            this.severity = severity;
+            this.targetZone = targetZone;
+            this.etaDeadlineNanos = etaDeadlineNanos;
+            this.originX = originX;
+            this.originY = originY;
+            this.targetX = targetX;
+            this.targetY = targetY;
+            this.departNanos = departNanos;
+            this.arriveNanos = arriveNanos;
+        }
+    }
 
     /**
      * Creates a new host by:
@@ -29,14 +84,22 @@ class Scheduler implements Runnable{
      * Initialize a bounded buffer to hold processed commands from server
      */
     public Scheduler() {
+        this(Transport.UDP);
+    }
+
+    /**
+     * Creates a Scheduler that talks to the other subsystems through the given transport
+     * @param transports opens the Scheduler's endpoints, UDP or in-memory
+     */
+    public Scheduler(Transport.Factory transports) {
+        this.transports = transports;
         try {
-            receiveSocket           = new DatagramSocket(RECEIVE_PORT); // Receiving socket for all request
-            sendSocket              = new DatagramSocket(); // For sending all packets
-            fireToDroneBuffer       = new BoundedBuffer(); // Holds all unprocessed fire reports
-            droneToFireBuffer       = new BoundedBuffer(); // Holds all responses from drones
-            this.state              = "WAITING_TO_RECEIVE";
+            receiveTransport        = transports.open(DeploymentConfig.get().getSchedulerPort()); // Receiving endpoint for all request
+            sendTransport           = transports.open(0); // For sending all packets
+            setState("WAITING_TO_RECEIVE");
+            metrics.watch(fireQueue);
 
-        } catch (SocketException e) {
+        } catch (IOException e) {
             e.printStackTrace();
             System.exit(1);
         }
@@ -44,22 +107,35 @@ class Scheduler implements Runnable{
 
     @Override
     public void run() {
-        System.out.println(this + " Ready to receive new messages");
+        Log.info(() -> this + " Ready to receive new messages");
+        startMissionTimer();
+        startPrepositioning();
+        startAnnouncedDispatch();
         while(true) {
-            DatagramPacket requestPacket;
+            Transport.Message requestPacket;
             try {
                 // Step 1: Wait to Receive any messages
-                byte[] droneRequestBuffer = new byte[1000];
-                requestPacket = new DatagramPacket(droneRequestBuffer, droneRequestBuffer.length);
-                receiveSocket.receive(requestPacket);
+                requestPacket = receiveTransport.receive();
             } catch (IOException e) {
+                if (receiveTransport.isClosed()) return;
                 throw new RuntimeException(e);
             }
 
+            // A discovery frame only touches the fleet, so it is registered here rather than given a thread
+            if (DroneDiscovery.isFrame(requestPacket.getData(), requestPacket.getLength())) {
+                try (Transport.Message frame = requestPacket) {
+                    DroneDiscovery.accept(frame.getData(), frame.getLength(), frame.getFromAddress(), this::registerDrones);
+                }
+                continue;
+            }
+
             receiveThread = new Thread(new Runnable() {
                 @Override
                 public void run() {
-                    RCP_Receive(requestPacket);
+                    // The request's buffer goes back to the pool once it is handled and answered
+                    try (Transport.Message request = requestPacket) {
+                        RCP_Receive(request);
+                    }
                 }
             });
             receiveThread.start();
@@ -67,100 +143,103 @@ class Scheduler implements Runnable{
     }
 
     /**
-     * Handles incoming UDP packets and processes them based on the command type.
+     * Stops receiving messages, so run() returns. Handlers already running finish on their own
+     */
+    public void shutdown() {
+        receiveTransport.close();
+        sendTransport.close();
+    }
+
+    /**
+     * Handles incoming messages and processes them based on the command type.
      * This method is responsible for managing communication between the Scheduler,
      * drones, and the fire incident subsystem.
-     * @param requestPacket The incoming DatagramPacket containing the request data
+     * @param requestPacket The incoming message containing the request data
      */
-    private void RCP_Receive(DatagramPacket requestPacket){
+    private void RCP_Receive(Transport.Message requestPacket){
+        metrics.handlerStarted();
         try{
-            double startTime = System.currentTimeMillis();
+            long startTime = System.nanoTime();
+            long traceStart = Tracer.now();
             int port;
             int fireID;
             // Step 2: Parse what they want
-            String requestData            = new String(requestPacket.getData(), 0, requestPacket.getLength());
-            EventStatus eventStatus       = handleEvent(requestData);
+            String requestData            = requestPacket.text();
+            EventStatus eventStatus       = handleEvent(requestData, requestPacket.getFromAddress());
 
             switch(eventStatus.getCommand()) {
                 // NEW DRONE READY TO EXTINGUISH ANY AVAILABLE FIRE
                 case "IDLE":
-                    this.state = "DISPATCH_DRONE";
-                    System.out.println(this + "[Scheduler <- Drone] DRONE CHECK-IN " + requestData);
-                    String fireRequest;
-                    // Step 3 (READY): Check for any unassigned fires. If there is a fire reply with fire
-                    fireRequest = fireToDroneBuffer.removeFirst().toString();
-
-                    byte[] fireRequestBuffer = fireRequest.getBytes();
-
-                    // Select an available drone to handle the fire
-                    DroneStatus selectedDrone = null;
-                    while (selectedDrone == null){
-                        selectedDrone = getAvailableDrone();
-                    }
-
-                    if (fireRequest.contains("HANDOFF")) {
-                        String regex = "zoneId=(\\d+)";
-                        Pattern pattern = Pattern.compile(regex);
-                        Matcher matcher = pattern.matcher(fireRequest);
-                        if (matcher.find()) {
-                            try {
-                                int zoneID = Integer.parseInt(matcher.group(1));
-                                Print.yellow(this + " Previously faulted fire from zone " + zoneID + " HANDOFF to [DRONE " + selectedDrone.getDroneID() + "]");
-                            } catch (NumberFormatException ignored) { }
-                        }
-                    }
-
-                    // Create a packet sending the drone the fire to extinguish
-                    DatagramPacket assignDroneFirePacket = new DatagramPacket(fireRequestBuffer,
-                                                                    fireRequestBuffer.length,
-                                                                    InetAddress.getLocalHost(),
-                                                                    selectedDrone.getPort());
-
-                    System.out.println(this + "[Scheduler -> Drone] Reply for [DRONE " + selectedDrone.getDroneID() + "] request with: " + fireRequest);
-                    sendSocket.send(assignDroneFirePacket);
+                    setState("DISPATCH_DRONE");
+                    Log.info(() -> this + "[Scheduler <- Drone] DRONE CHECK-IN " + requestData);
+                    dispatchNextFire();
                     break;
 
                 // DRONE INDICATING IT HAS COMPLETED EXTINGUISHING FIRE
                 case "COMPLETE":
-                    this.state = "NOTIFY_FIRE_EXTINGUISHED";
-                    // Step 3 (COMPLETE): Add to droneToFireBuffer
+                    setState("NOTIFY_FIRE_EXTINGUISHED");
+                    // Step 3 (COMPLETE): Record the completion for the fire's confirmation
                     fireID = Integer.parseInt(requestData.replaceAll(".*ID=(\\d+).*", "$1"));
-                    droneToFireBuffer.addLast(fireID);
+                    int completedFireID = fireID;
+                    Mission finished = endMission(eventStatus.getDroneStatus().getDroneID());
+                    if (finished == null) {
+                        // The share was handed off to another drone, which delivers it instead
+                        Log.warn(() -> "[Scheduler] Completion of fire " + completedFireID + " arrived after its mission expired");
+                    } else {
+                        metrics.assignmentEnded();
+                        int share = FireLedger.parseShare(finished.fireRequest);
+                        boolean out = fireLedger.deliver(fireID, share >= 0 ? share : fireLedger.getRemaining(fireID));
+                        int historyIndex = fireHistory.indexOf(fireID);
+                        if (historyIndex >= 0) {
+                            fireHistory.setRemainingWaterNeeded(historyIndex, fireLedger.getRemaining(fireID));
+                        }
+                        if (out) {
+                            fireCompleted(fireID);
+                            metrics.completionBuffered();
+                        } else {
+                            Log.info(() -> this + " Fire " + completedFireID + " still needs "
+                                    + fireLedger.getRemaining(completedFireID) + "L from its other drones");
+                        }
+                    }
 
-                    // Update the drone's state to READY again
-                    updateDroneState(eventStatus.getDroneStatus().getDroneID(), "IDLE");
+                    // The drone is done with the fire, but only its READY makes it dispatchable again: a fire sent
+                    // before then would be read as the reply to this COMPLETE
+                    updateDroneState(eventStatus.getDroneStatus().getDroneID(), "COMPLETE");
+                    int completedIndex = fleet.indexOf(eventStatus.getDroneStatus().getDroneID());
+                    if (completedIndex >= 0) fleet.setAssignedFire(completedIndex, -1);
 
                     // Step 4 (COMPLETE): Send ACK
                     String ack = "FIRE EXTINGUISHED: FireID=" + fireID;
-                    byte[] droneReply = ack.getBytes();
                     port = eventStatus.getDroneStatus().getPort();
-                    DatagramPacket droneFireCompletePacket = new DatagramPacket(droneReply,
-                            droneReply.length,
-                            InetAddress.getLocalHost(),
-                            port);
-                    System.out.println(this + "[Scheduler -> Drone] reply from COMPLETE request: " + ack);
-                    sendSocket.send(droneFireCompletePacket);
+                    Log.info(() -> this + "[Scheduler -> Drone] reply from COMPLETE request: " + ack);
+                    sendToDrone(eventStatus.getDroneStatus().getDroneID(), ack, port);
+                    Tracer.span(Tracer.parseTraceId(requestData), fireID, "SCHEDULER", "complete", traceStart, Tracer.now());
                     break;
 
                 case "FIRE":
-                    this.state = "NEW_FIRE";
+                    setState("NEW_FIRE");
 
-                    // Step 3 (FireEvent): Add fire to buffer and Sort the fireToDroneBuffer
-                    this.addSortFires(requestData);
+                    FireEvent reportedFire = FireEvent.parse(requestData);
+                    if (reportedFire != null) {
+                        fireHistory.add(reportedFire);
+                        prepositioning.recordFire(reportedFire.getZoneId(), System.nanoTime() / 1e9);
+                    }
+
+                    // Step 3 (FireEvent): Re-task a drone to the fire if that pays off, otherwise add the fire
+                    // to the queue of fires waiting for a drone
+                    if (reportedFire == null || !preempt(requestData, reportedFire)) {
+                        this.addSortFires(requestData);
+                    }
+                    Tracer.span(Tracer.parseTraceId(requestData), parseFireID(requestData), "SCHEDULER", "queue", traceStart, Tracer.now());
 
                     // Step 4 (FireEvent): Send Ack
                     String acknowledgment = "NEW FIRE RECEIVED: " + requestData;
-                    byte[] acknowledgmentBuffer = (acknowledgment).getBytes();
-                    DatagramPacket acknowledgementPacket = new DatagramPacket(acknowledgmentBuffer,
-                            acknowledgmentBuffer.length,
-                            InetAddress.getLocalHost(),
-                            requestPacket.getPort());
-                    Print.green(this + "[Scheduler -> FireIncidentSubsystem] Sent acknowledgement: " + acknowledgment + " to " + InetAddress.getLocalHost() + ":" + requestPacket.getPort());
-                    sendSocket.send(acknowledgementPacket);
+                    Log.info(Log.Color.GREEN, () -> this + "[Scheduler -> FireIncidentSubsystem] Sent acknowledgement: " + acknowledgment + " to port " + requestPacket.getFromPort());
+                    sendTransport.reply(requestPacket, acknowledgment);
                     break;
 
                 case "CONFIRMATION":
-                    this.state = "CONFIRM_FIRE_EXTINGUISHED";
+                    setState("CONFIRM_FIRE_EXTINGUISHED");
                     // Fire Incident Subsystem waiting for confirmation fire is out.
                     String pattern = "FireEvent\\{'ID=(\\d+)'";
                     Pattern regex = Pattern.compile(pattern);
@@ -171,36 +250,133 @@ class Scheduler implements Runnable{
                         fireID = Integer.parseInt(matcher.group(1));
                     }
 
-                    droneToFireBuffer.removeFireEventByID(fireID);
+                    awaitCompletion(fireID);
+                    reportedAt.remove(fireID);
+                    fireLedger.close(fireID);
+                    metrics.completionConfirmed();
+                    int historyIndex = fireHistory.indexOf(fireID);
+                    if (historyIndex >= 0) {
+                        fireHistory.setState(historyIndex, FireEvent.State.EXTINGUISHED);
+                    }
 
+                    int confirmedFireID = fireID;
                     String confirmation = "FIRE [ID:" + fireID + "] HAS BEEN EXTINGUISHED ";
-                    byte[] confirmReply = confirmation.getBytes();
-                    DatagramPacket droneAcknowledgementPacket = new DatagramPacket(confirmReply,
-                            confirmReply.length,
-                            InetAddress.getLocalHost(),
-                            requestPacket.getPort());
-                    Print.green(this + "[Scheduler -> FireIncidentSubsystem] Fire: " + fireID + " is out: " + confirmation);
-                    sendSocket.send(droneAcknowledgementPacket);
-
+                    Log.info(Log.Color.GREEN, () -> this + "[Scheduler -> FireIncidentSubsystem] Fire: " + confirmedFireID + " is out: " + confirmation);
+                    sendTransport.reply(requestPacket, confirmation);
+                    Tracer.span(Tracer.parseTraceId(requestData), fireID, "SCHEDULER", "confirmation", traceStart, Tracer.now());
                     break;
                 case "FAULT":
-                    Print.red("[Scheduler <- Drone] " + requestData);
+                    Log.error(() -> "[Scheduler <- Drone] " + requestData);
+                    int faultedDroneID = eventStatus.getDroneStatus().getDroneID();
+                    updateDroneState(faultedDroneID, "FAULTED");
+                    Mission faulted = endMission(faultedDroneID);
+                    if (faulted == null) {
+                        // The mission already expired and its fire was handed off
+                        break;
+                    }
+                    metrics.assignmentEnded();
                     String unfaultedFireEvent = extractFireEvent(requestData).replace("FAULT", "HANDOFF");
-                    Print.yellow("[Scheduler] Adding fire back to list " + unfaultedFireEvent);
+                    Tracer.instant(Tracer.parseTraceId(requestData), parseFireID(unfaultedFireEvent), "SCHEDULER", "fault");
+                    requeueFire(unfaultedFireEvent, FireLedger.parseShare(faulted.fireRequest));
+                    break;
+
+                case "HEARTBEAT":
+                    // A drone on a mission is alive: it may take longer than expected before it is given up on
+                    int liveDroneID = eventStatus.getDroneStatus().getDroneID();
+                    Mission mission = missions.get(liveDroneID);
+                    if (mission != null) {
+                        missionTimers.schedule(liveDroneID,
+                                Math.max(mission.etaDeadlineNanos, System.nanoTime() + HEARTBEAT_TIMEOUT_NANOS));
+                    }
+                    break;
 
-                    // Reset the fire to no trigger a fault for the next drone
-                    this.addSortFires("NEW FIRE: "+ unfaultedFireEvent);
+                case "PARTIAL":
+                    setState("PARTIAL_PROGRESS");
+                    // A drone ran out of agent before its share of a fire was delivered
+                    String decision = handlePartial(eventStatus.getDroneStatus().getDroneID(), requestData);
+                    Log.info(() -> this + "[Scheduler -> Drone] reply from PARTIAL request: " + decision);
+                    sendToDrone(eventStatus.getDroneStatus().getDroneID(), decision, eventStatus.getDroneStatus().getPort());
+                    Tracer.span(Tracer.parseTraceId(requestData), parseFireID(requestData), "SCHEDULER", "partial", traceStart, Tracer.now());
                     break;
 
                 case "ERROR":
-                    this.state = "ERROR";
-                    System.out.println(this + " SOMETHING WENT WRONG!!!");
+                    setState("ERROR");
+                    Log.error(() -> this + " SOMETHING WENT WRONG!!!");
                     break;
             }
-            double endTime = System.currentTimeMillis();
-            double responseTime = (endTime - startTime);
-            MetricsLogger.logEvent("SCHEDULER", "SCHEDULER_RESPONSE", responseTime, "Response time of Scheduler (ms) [STATE: " + eventStatus.getCommand() + "]");
-        } catch(IOException ignored) { }
+            long responseTime = System.nanoTime() - startTime;
+            if (!eventStatus.getCommand().equals("HEARTBEAT")) {
+                // Heartbeats get no reply and take microseconds, they would drown the response time of real requests
+                MetricsLogger.logLatency("SCHEDULER", MetricCode.SCHEDULER_RESPONSE, responseTime, "Response time of Scheduler (ms) [STATE: " + eventStatus.getCommand() + "]");
+            }
+            metrics.messageHandled(eventStatus.getCommand(), responseTime);
+        } catch(IOException ignored) {
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            metrics.handlerFinished();
+        }
+    }
+
+    /**
+     * Waits for the next fire in the queue and sends it to the best idle drone. Done once for every READY, and
+     * once for every drone a discovery frame registers as waiting in place of its READY.
+     */
+    private void dispatchNextFire() throws InterruptedException, IOException {
+        // Step 3 (READY): Check for any unassigned fires. If there is a fire reply with fire
+        metrics.droneHandlerWaiting();
+        String fireRequest = fireQueue.take();
+        metrics.droneHandlerAssigned();
+        metrics.fireDequeued();
+
+        // Select an available drone to handle the fire
+        DroneStatus selectedDrone = null;
+        while (selectedDrone == null){
+            selectedDrone = getAvailableDrone(fireRequest);
+        }
+        int selectedDroneID = selectedDrone.getDroneID();
+        startMission(selectedDroneID, fireRequest);
+
+        // Record how long the fire waited in the queue for this drone
+        int queuedFireID = parseFireID(fireRequest);
+        Long queuedTime = queuedAt.remove(queuedFireID);
+        if (queuedTime != null) {
+            long waited = System.nanoTime() - queuedTime;
+            MetricsLogger.logLatency("DRONE " + selectedDrone.getDroneID(), MetricCode.QUEUE_WAIT,
+                    waited, "Time the fire waited for a drone (ms)");
+            long now = Tracer.now();
+            Tracer.span(Tracer.parseTraceId(fireRequest), queuedFireID, "SCHEDULER",
+                    fireRequest.contains("HANDOFF") ? "handoff wait for drone" : "wait for drone",
+                    now - waited / 1000, now);
+        }
+
+        if (fireRequest.contains("HANDOFF")) {
+            String regex = "zoneId=(\\d+)";
+            Pattern pattern = Pattern.compile(regex);
+            Matcher matcher = pattern.matcher(fireRequest);
+            if (matcher.find()) {
+                try {
+                    int zoneID = Integer.parseInt(matcher.group(1));
+                    Log.warn(() -> this + " Previously faulted fire from zone " + zoneID + " HANDOFF to [DRONE " + selectedDroneID + "]");
+                } catch (NumberFormatException ignored) { }
+            }
+        }
+
+        // Send the drone the fire to extinguish
+        Log.info(() -> this + "[Scheduler -> Drone] Reply for [DRONE " + selectedDroneID + "] request with: " + fireRequest);
+        sendToDrone(selectedDroneID, fireRequest, selectedDrone.getPort());
+        metrics.assignmentStarted();
+    }
+
+    /**
+     * Sends to a port of a drone, on the host it last checked in from
+     * @param droneID the drone
+     * @param message the message
+     * @param port the drone's port
+     */
+    private void sendToDrone(int droneID, String message, int port) throws IOException {
+        int index = fleet.indexOf(droneID);
+        sendTransport.send(message, index < 0 ? null : fleet.getAddress(index), port);
     }
 
 /**
@@ -212,35 +388,61 @@ class Scheduler implements Runnable{
  * @return EventStatus An object representing the event type and associated details.
  */
     public EventStatus handleEvent(String data) {
+        return handleEvent(data, null);
+    }
+
+    /**
+     * Parses the incoming data as handleEvent(String) does, recording the host of a drone that checks in
+     * so replies and control requests reach it wherever it runs.
+     *
+     * @param data The incoming data string to be parsed.
+     * @param from the host the data came from, or null if the transport has only the one host
+     * @return EventStatus An object representing the event type and associated details.
+     */
+    public EventStatus handleEvent(String data, InetAddress from) {
         String pattern = "\\[DRONE: (\\d+)]\\[PORT: (\\d+)]\\[STATE: ([^]]+)]";
         Pattern regex = Pattern.compile(pattern);
         Matcher matcher = regex.matcher(data);
 
         // Drone event
         if (matcher.find()) {
-            // Drone faulting
-            if (data.contains("FAULT")){
-                return new EventStatus("FAULT");
-            }
-
             int droneID = Integer.parseInt(matcher.group(1));
             int port = Integer.parseInt(matcher.group(2));
             String state = matcher.group(3);
+            DroneStatus newDrone = new DroneStatus(droneID, port, state, null);
+
+            // Drone on a mission reporting it is alive, which needs no reply
+            if (data.contains("HEARTBEAT")) {
+                return new EventStatus("HEARTBEAT", newDrone);
+            }
+            metrics.droneState(droneID, state);
+
+            // Drone reporting progress on a fire it ran out of agent for
+            if (data.contains("PARTIAL:")) {
+                return new EventStatus("PARTIAL", newDrone);
+            }
+
+            // Drone faulting
+            if (data.contains("FAULT")){
+                return new EventStatus("FAULT", newDrone);
+            }
 
             // If not a fault, handle the drone event
-            DroneStatus newDrone = new DroneStatus(droneID, port, state, null);
-            synchronized (drones) {
-                // Check if the drone already exists
-                for (DroneStatus existingDrone : drones) {
-                    if (existingDrone.getDroneID() == newDrone.getDroneID()) {
-                        // Drone has COMPLETED its fire service
-                        if (newDrone.getState().equals("COMPLETE")) {
-                            return new EventStatus("COMPLETE", newDrone);
-                        }
-                    }
-                }
-                // Drone does not exist, new drone: register it to the list of drones
-                drones.add(newDrone);
+            // Drone has COMPLETED its fire service
+            if (state.equals("COMPLETE") && fleet.indexOf(droneID) >= 0) {
+                return new EventStatus("COMPLETE", newDrone);
+            }
+            // Register a new drone, or record the new port and state of a drone checking in again
+            int index = fleet.register(droneID, port, FleetStore.stateCode(state));
+            if (from != null) fleet.setAddress(index, from);
+            Matcher control = CONTROL_PORT_PATTERN.matcher(data);
+            if (control.find()) {
+                fleet.setControlPort(index, Integer.parseInt(control.group(1)));
+            }
+            if (fleet.getState(index) == FleetStore.USED) {
+                // A READY that crossed the fire sent to the drone, which reads that fire as its reply
+                Log.warn(() -> "[Scheduler] [DRONE " + droneID + "] checked in while it has a fire, ignoring its READY");
+                return new EventStatus("STALE", newDrone);
             }
             // Create and return a new event to handle a ready drone
             return new EventStatus("IDLE");
@@ -260,27 +462,131 @@ class Scheduler implements Runnable{
     }
 
     public String extractFireEvent(String data) {
-        String pattern = "(FireEvent\\{'ID=\\d+', time='[^']+', zoneId=\\d+, eventType='[^']+', severity='[^']+', state='[^']+', failure='[^']+'\\})";
-        Pattern regex = Pattern.compile(pattern);
-        Matcher matcher = regex.matcher(data);
+        Matcher matcher = FireEvent.FIRE_EVENT_PATTERN.matcher(data);
 
         if (matcher.find()) {
-            return matcher.group(1); // Return only the FireEvent part
+            return matcher.group(); // Return only the FireEvent part
         }
         return "Could not find fire event."; // No match found
     }
 
+    /**
+     * Moves the Scheduler to a new state, which is also published to its metrics
+     * @param state the new state
+     */
+    private void setState(String state) {
+        this.state = state;
+        metrics.setState(state);
+    }
+
+    /**
+     * @return every fire reported to this Scheduler, including the handoffs of faulted fires
+     */
+    public FireEventStore getFireHistory() {
+        return fireHistory;
+    }
+
+    /**
+     * Registers the drones of a discovery frame. Drones that are not waiting for a fire are registered as
+     * UNKNOWN, never dispatched until their READY shows they are. Drones waiting for a fire are registered as
+     * IDLE, and each is owed the dispatch its READY would have had, unless the Scheduler already knew it in a
+     * state other than UNKNOWN: such a drone keeps its state.
+     *
+     * @param waiting true if the drones are waiting for a fire, without a READY of their own
+     * @param from the host the drones run on, or null if it is not known
+     * @return the number of drones that were new, or that are now waiting
+     */
+    int registerDrones(int count, int[] ids, int[] ports, int[] controlPorts, boolean waiting, InetAddress from) {
+        int added = fleet.registerAll(count, ids, ports, controlPorts, waiting ? FleetStore.IDLE : FleetStore.UNKNOWN, from);
+        if (waiting) announcedDrones.release(added);
+        Log.info(() -> this + " Discovered " + count + " drones, " + added + (waiting ? " now waiting for a fire" : " new"));
+        return added;
+    }
+
+    /**
+     * Starts the thread that dispatches fires for the drones discovery frames registered as waiting, one fire for
+     * each, as the handler of each drone's READY would have
+     */
+    private void startAnnouncedDispatch() {
+        Thread thread = new Thread(() -> {
+            while (true) {
+                try {
+                    announcedDrones.acquire();
+                    dispatchNextFire();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    Log.warn(() -> this + " Could not send a fire to an announced drone: " + e.getMessage());
+                }
+            }
+        }, "SCHEDULER_ANNOUNCED_DISPATCH");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the number of drones registered with this Scheduler
+     */
+    public int getFleetSize() {
+        return fleet.size();
+    }
+
+    /**
+     * @return the number of drones waiting for a fire, which the next fires are dispatched to
+     */
+    public int getIdleDrones() {
+        return fleet.countInState(FleetStore.IDLE);
+    }
+
+    /**
+     * @return the instrumentation of this Scheduler, which can be read without taking its locks
+     */
+    public SchedulerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param data a message containing a serialized FireEvent
+     * @return the ID of the fire in the message, or -1 if there is none
+     */
+    private static int parseFireID(String data) {
+        Matcher matcher = FIRE_ID_PATTERN.matcher(data);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
     /**
      * @return The available drone from the list of drones and changes its state to "USED"
      */
     public synchronized DroneStatus getAvailableDrone(){
-        for (DroneStatus drone: drones){
-            if (drone.getState().equals("IDLE")){
-                this.updateDroneState(drone.getDroneID(), "USED");
-                return drone;
-            }
-        }
-        return null;
+        int index = fleet.claimBest(FleetStore.FIRST_IDLE, FleetStore.USED);
+        if (index < 0) return null;
+        metrics.droneState(fleet.getDroneID(index), "USED");
+        return fleet.toStatus(index);
+    }
+
+    /**
+     * @param fireRequest the fire to assign
+     * @return The idle drone nearest to the fire's zone, or the first idle drone if the zone is unknown, and
+     * changes its state to "USED"
+     */
+    public synchronized DroneStatus getAvailableDrone(String fireRequest) {
+        Matcher matcher = ZONE_ID_PATTERN.matcher(fireRequest);
+        Zone zone = matcher.find() ? zoneMap.get(Integer.parseInt(matcher.group(1))) : null;
+        if (zone == null) return getAvailableDrone();
+        int index = fleet.claimBest(nearestIdle(zone), FleetStore.USED);
+        if (index < 0) return null;
+        metrics.droneState(fleet.getDroneID(index), "USED");
+        return fleet.toStatus(index);
+    }
+
+    /**
+     * @return a scorer preferring the idle drone nearest to the centre of a zone
+     */
+    private static FleetStore.DroneScorer nearestIdle(Zone zone) {
+        double centerX = (zone.getStartX() + zone.getEndX()) / 2;
+        double centerY = (zone.getStartY() + zone.getEndY()) / 2;
+        return (droneID, state, x, y, agentLevel) ->
+                state == FleetStore.IDLE ? -Math.hypot(x - centerX, y - centerY) : Double.NEGATIVE_INFINITY;
     }
 
     /**
@@ -289,64 +595,456 @@ class Scheduler implements Runnable{
      * @param newState The new state that the drone needs to update to
      */
     public void updateDroneState(int droneID, String newState) {
-        synchronized (drones) {
-            for (DroneStatus drone : drones) {
-                if (drone.getDroneID() == droneID) {
-                    drone.setState(newState);
+        metrics.droneState(droneID, newState);
+        int index = fleet.indexOf(droneID);
+        if (index >= 0) fleet.setState(index, FleetStore.stateCode(newState));
+    }
+
+    /**
+     * Records the fire a drone was sent to, and starts the timer the drone must finish it or report it is alive by.
+     * The deadline allows for the expected travel, including the trips to base to refill, plus the heartbeat timeout.
+     * @param droneID the drone assigned to the fire
+     * @param fireRequest the fire sent to the drone
+     */
+    void startMission(int droneID, String fireRequest) {
+        startMission(droneID, fireRequest, false);
+    }
+
+    /**
+     * Records the fire a drone was sent to, or keeps after running out of agent, and starts its mission timer.
+     * @param droneID the drone assigned to the fire
+     * @param fireRequest the fire sent to the drone
+     * @param refilling true if the drone is at the fire's zone with no agent left, so it flies to base and back
+     *                  before it drops again, and is not flying to the fire until it leaves base
+     */
+    private void startMission(int droneID, String fireRequest, boolean refilling) {
+        long now = System.nanoTime();
+        long depart = now;
+        double travelled = 0;
+        double originX = 0, originY = 0, targetX = 0, targetY = 0, flight = 0;
+        FireEvent fire = FireEvent.parse(fireRequest);
+        int index = fleet.indexOf(droneID);
+        Matcher matcher = ZONE_ID_PATTERN.matcher(fireRequest);
+        Zone zone = matcher.find() ? zoneMap.get(Integer.parseInt(matcher.group(1))) : null;
+        if (index >= 0) {
+            fleet.setAssignedFire(index, parseFireID(fireRequest));
+            originX = targetX = fleet.getX(index);
+            originY = targetY = fleet.getY(index);
+            if (zone != null) {
+                targetX = (zone.getStartX() + zone.getEndX()) / 2;
+                targetY = (zone.getStartY() + zone.getEndY()) / 2;
+                int water = fire == null ? 0 : fire.getRemainingWaterNeeded();
+                int loads = (water + DroneSubsystem.MAX_AGENT_CAP - 1) / DroneSubsystem.MAX_AGENT_CAP;
+                double toBase = distances.distance(zone, DroneSubsystem.BASE_ZONE);
+                if (refilling) {
+                    // Every load, the first included, costs a round trip to base
+                    originX = (DroneSubsystem.BASE_ZONE.getStartX() + DroneSubsystem.BASE_ZONE.getEndX()) / 2;
+                    originY = (DroneSubsystem.BASE_ZONE.getStartY() + DroneSubsystem.BASE_ZONE.getEndY()) / 2;
+                    depart = now + (long) (toBase / DroneSubsystem.SPEED * 1e9);
+                    flight = toBase;
+                    travelled = Math.max(1, loads) * 2 * toBase;
+                } else {
+                    flight = Math.hypot(targetX - originX, targetY - originY);
+                    travelled = flight + Math.max(0, loads - 1) * 2 * toBase;
                 }
+                fleet.setPosition(index, targetX, targetY);
             }
         }
+        long etaNanos = (long) (travelled / DroneSubsystem.SPEED * 1e9 * MISSION_SLACK);
+        long deadline = now + etaNanos + HEARTBEAT_TIMEOUT_NANOS;
+        long arrival = depart + (long) (flight / DroneSubsystem.SPEED * 1e9);
+        missions.put(droneID, new Mission(fireRequest, fire == null ? FireEvent.Severity.OTHER : fire.getSeverityLevel(),
+                zone, deadline, originX, originY, targetX, targetY, depart, arrival));
+        missionTimers.schedule(droneID, deadline);
     }
 
     /**
-     * Add the fire to the buffer and sort the buffer to optimize the selection
-     * @param requestData the request for a new fire
+     * Decides whether to re-task a drone flying to a less severe fire to a new fire, and re-tasks it.
+     * Only done when no drone is idle and the new fire would be next in the queue. For each candidate the gain
+     * is the time the new fire would save over waiting for the soonest busy drone to reach it, weighted by its
+     * severity, less the delay to the displaced fire, weighted by its own severity. The candidate with the
+     * largest positive gain is asked to take the fire.
+     * @param fireRequest the request for the new fire
+     * @param fire the new fire
+     * @return true if a drone took the new fire, which then must not be queued
      */
-    public synchronized void addSortFires(String requestData) {
-        synchronized (fireToDroneBuffer){
-            // Add the fire request to the buffer
-            fireToDroneBuffer.addLast(requestData);
-
-            // Sort the buffer
-            BoundedBuffer sortedFireBuffer  = new BoundedBuffer();
-            List<String> fireEvents         = new ArrayList<>();
-            List<String> severityOrder      = Arrays.asList("High", "Moderate", "Low");
-            int count                       = fireToDroneBuffer.getCount();
-
-            if (count > 1) {
-                for (int i = 0; i < count; i++) {
-                    Object event = fireToDroneBuffer.removeFirst();
-                    if (event instanceof String) {
-                        fireEvents.add((String) event);
-                    }
+    private boolean preempt(String fireRequest, FireEvent fire) {
+        Zone zone = zoneMap.get(fire.getZoneId());
+        long now = System.nanoTime();
+        if (zone == null || fleet.countInState(FleetStore.IDLE) > 0) return false;
+        if (fireQueue.size() > 0 && fireQueue.peekDeadline() <= fireQueue.deadlineFor(fire.getSeverityLevel(), now)) {
+            return false;
+        }
+        double fireX = (zone.getStartX() + zone.getEndX()) / 2;
+        double fireY = (zone.getStartY() + zone.getEndY()) / 2;
+        int weight = severityWeight(fire.getSeverityLevel());
+
+        synchronized (preemptionLock) {
+            // The soonest a busy drone could reach the new fire after landing at its current one, in seconds
+            double expectedWait = Double.POSITIVE_INFINITY;
+            for (Mission mission : missions.values()) {
+                double remaining = Math.max(0, mission.arriveNanos - now) / 1e9;
+                double onward = mission.targetZone != null ? distances.distance(mission.targetZone, zone)
+                        : Math.hypot(fireX - mission.targetX, fireY - mission.targetY);
+                expectedWait = Math.min(expectedWait, remaining + onward / DroneSubsystem.SPEED);
+            }
+
+            int bestDrone = -1;
+            double bestGain = 0, bestX = 0, bestY = 0;
+            for (Map.Entry<Integer, Mission> entry : missions.entrySet()) {
+                Mission mission = entry.getValue();
+                double remaining = (mission.arriveNanos - now) / 1e9;
+                if (now < mission.departNanos) continue; // still flying to base to refill, not to its fire
+                if (remaining < MIN_RETASK_REMAINING_SECONDS || severityWeight(mission.severity) >= weight) continue;
+                int index = fleet.indexOf(entry.getKey());
+                if (index < 0 || fleet.getControlPort(index) == 0) continue;
+
+                double progress = 1 - remaining * 1e9 / Math.max(1, mission.arriveNanos - mission.departNanos);
+                double x = mission.originX + (mission.targetX - mission.originX) * progress;
+                double y = mission.originY + (mission.targetY - mission.originY) * progress;
+                double toFire = Math.hypot(fireX - x, fireY - y) / DroneSubsystem.SPEED;
+                double gain = weight * (expectedWait - toFire)
+                        - severityWeight(mission.severity) * Math.max(0, expectedWait - remaining);
+                if (gain > bestGain) {
+                    bestGain = gain;
+                    bestDrone = entry.getKey();
+                    bestX = x;
+                    bestY = y;
                 }
+            }
+            return bestDrone >= 0 && retask(bestDrone, fireRequest, fire, bestX, bestY);
+        }
+    }
 
-                // Sorting algorithm for the fire events
-                Collections.sort(fireEvents, new Comparator<String>() {
-                    public int compare(String e1, String e2) {
-                        Pattern pattern = Pattern.compile("severity='(High|Moderate|Low)'");
-                        Matcher matcher1 = pattern.matcher(e1);
-                        Matcher matcher2 = pattern.matcher(e2);
-                        int rank1 = severityOrder.size();
-                        int rank2 = severityOrder.size();
-                        if (matcher1.find()) {
-                            rank1 = severityOrder.indexOf(matcher1.group(1));
-                        }
-                        if (matcher2.find()) {
-                            rank2 = severityOrder.indexOf(matcher2.group(1));
-                        }
-                        return rank1 - rank2;
-                    }
-                });
+    /**
+     * Asks a drone to drop the fire it is flying to and take a new one. If it accepts, the new fire becomes its
+     * mission and the displaced fire is queued again, keeping its deadline
+     * @param droneID the drone
+     * @param fireRequest the request for the new fire
+     * @param fire the new fire
+     * @param x the estimated x position of the drone
+     * @param y the estimated y position of the drone
+     * @return true if the drone accepted
+     */
+    private boolean retask(int droneID, String fireRequest, FireEvent fire, double x, double y) {
+        int index = fleet.indexOf(droneID);
+        String fireEvent = extractFireEvent(fireRequest);
+        if (!sendControl(droneID, "RETASK: " + fireEvent, "RETASK ACCEPTED")) return false;
+
+        Mission displaced = missions.get(droneID);
+        fleet.setPosition(index, x, y);
+        reportedAt.putIfAbsent(fire.getFireID(), System.nanoTime());
+        fireLedger.open(fire.getFireID(), fire.getRemainingWaterNeeded());
+        startMission(droneID, FireLedger.withShare("NEW FIRE: " + fireEvent, fire.getRemainingWaterNeeded()));
+        metrics.retasked();
+        Log.warn(() -> this + " Re-tasked [DRONE " + droneID + "] to " + fire.getSeverityLevel() + " fire " + fire.getFireID()
+                + (displaced != null ? ", queueing " + extractFireEvent(displaced.fireRequest) + " again" : ""));
+        Tracer.instant(fire.getTraceId(), fire.getFireID(), "SCHEDULER", "retask [DRONE " + droneID + "]");
+        if (displaced != null) {
+            Tracer.instant(Tracer.parseTraceId(displaced.fireRequest), parseFireID(displaced.fireRequest), "SCHEDULER", "displaced");
+            addSortFires(displaced.fireRequest);
+        }
+        return true;
+    }
+
+    /**
+     * Sends a request to a drone's control channel and waits for its answer
+     * @param droneID the drone
+     * @param request the request
+     * @param accepted the text of the answer if the drone accepts
+     * @return true if the drone accepted in time
+     */
+    private boolean sendControl(int droneID, String request, String accepted) {
+        int index = fleet.indexOf(droneID);
+        if (index < 0 || fleet.getControlPort(index) == 0) return false;
+        try (Transport controlTransport = transports.open(0)) {
+            controlTransport.setTimeout(CONTROL_TIMEOUT_MILLIS);
+            controlTransport.send(request, fleet.getAddress(index), fleet.getControlPort(index));
+            String reply = controlTransport.receiveText();
+            if (!reply.contains(accepted)) {
+                Log.info(() -> this + "[Scheduler <- Drone] " + reply);
+                return false;
+            }
+            return true;
+        } catch (SocketTimeoutException e) {
+            Log.warn(() -> this + " [DRONE " + droneID + "] did not answer " + request.substring(0, request.indexOf(':')));
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
 
-                //System.out.println("SORTED FIRE EVENT LIST: " + fireEvents);
-                for (String event : fireEvents) {
-                    sortedFireBuffer.addLast(event);
+    /**
+     * Starts the thread that moves idle drones to the staging points of the pre-positioning engine, unless
+     * -Dpreposition.interval is 0
+     */
+    private void startPrepositioning() {
+        if (PREPOSITION_INTERVAL_MILLIS <= 0) return;
+        Thread thread = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(PREPOSITION_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
                 }
+                preposition();
+            }
+        }, "SCHEDULER_PREPOSITION");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs a round of pre-positioning: every idle drone with a control channel is a candidate, and each planned
+     * move is sent as a REPOSITION request. The fleet records the drone at its staging point once it accepts.
+     * @return the number of drones moved
+     */
+    int preposition() {
+        int size = fleet.size();
+        int[] ids = new int[size];
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        int idle = 0;
+        for (int i = 0; i < size; i++) {
+            if (fleet.getState(i) != FleetStore.IDLE || fleet.getControlPort(i) == 0) continue;
+            ids[idle] = fleet.getDroneID(i);
+            xs[idle] = fleet.getX(i);
+            ys[idle] = fleet.getY(i);
+            idle++;
+        }
+        if (idle == 0) return 0;
+        List<PrepositionEngine.Move> moves = prepositioning.plan(Arrays.copyOf(ids, idle), Arrays.copyOf(xs, idle),
+                Arrays.copyOf(ys, idle), System.nanoTime() / 1e9);
+        int moved = 0;
+        for (PrepositionEngine.Move move : moves) {
+            if (!sendControl(move.droneID, "REPOSITION: x=" + move.x + " y=" + move.y, "REPOSITION ACCEPTED")) continue;
+            int index = fleet.indexOf(move.droneID);
+            if (index >= 0) fleet.setPosition(index, move.x, move.y);
+            metrics.repositioned();
+            moved++;
+            Log.info(() -> this + " Pre-positioning " + move);
+        }
+        return moved;
+    }
+
+    /**
+     * @return how much a fire's response time counts in re-tasking decisions, higher for more severe fires
+     */
+    private static int severityWeight(FireEvent.Severity severity) {
+        return SEVERITIES.length - 1 - severity.ordinal();
+    }
+
+    /**
+     * @param droneID the drone
+     * @return the time the drone's mission expires unless it finishes or reports it is alive, from
+     * System.nanoTime(), or -1 if the drone has no mission
+     */
+    long getMissionDeadline(int droneID) {
+        return missionTimers.getDeadline(droneID);
+    }
+
+    /**
+     * Stops the mission timer of a drone that completed or faulted
+     * @param droneID the drone
+     * @return the drone's mission, or null if it had none or its mission already expired
+     */
+    private Mission endMission(int droneID) {
+        missionTimers.cancel(droneID);
+        Mission mission = missions.remove(droneID);
+        int index = fleet.indexOf(droneID);
+        if (index >= 0) fleet.setAssignedFire(index, -1);
+        return mission;
+    }
+
+    /**
+     * Starts the thread that advances the mission timers
+     */
+    private void startMissionTimer() {
+        Thread timer = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(TimeUnit.NANOSECONDS.toMillis(TIMER_TICK_NANOS));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                missionTimers.advance(System.nanoTime(), this::missionExpired);
+            }
+        }, "SCHEDULER_MISSION_TIMER");
+        timer.setDaemon(true);
+        timer.start();
+    }
+
+    /**
+     * Gives up on a drone that neither finished its fire nor reported it is alive in time: the drone is marked
+     * FAULTED and its fire is handed off to another drone, as if the drone had reported a FAULT
+     * @param droneID the drone whose mission expired
+     */
+    void missionExpired(int droneID) {
+        Mission mission = missions.remove(droneID);
+        if (mission == null) return;
+        Log.error(() -> "[Scheduler] [DRONE " + droneID + "] missed its mission deadline, assuming it is lost");
+        updateDroneState(droneID, "FAULTED");
+        int index = fleet.indexOf(droneID);
+        if (index >= 0) fleet.setAssignedFire(index, -1);
+        metrics.assignmentEnded();
+        metrics.missionExpired();
+        String fireEvent = extractFireEvent(mission.fireRequest);
+        Tracer.instant(Tracer.parseTraceId(fireEvent), parseFireID(fireEvent), "SCHEDULER", "mission expired");
+        requeueFire(FAILURE_PATTERN.matcher(fireEvent).replaceFirst("failure='HANDOFF'"), FireLedger.parseShare(mission.fireRequest));
+    }
+
+    /**
+     * Records the water a drone delivered before running out of agent, and decides who delivers the rest of its
+     * share. The remainder is handed off, as for a FAULT, if an idle drone can reach the fire before the drone could
+     * refill at base and fly back; otherwise the drone keeps it.
+     * @param droneID the drone that ran out of agent
+     * @param requestData the drone's PARTIAL report
+     * @return the reply to the drone, PARTIAL RELEASE if it must drop the fire or PARTIAL CONTINUE if it keeps it
+     */
+    private String handlePartial(int droneID, String requestData) {
+        Matcher matcher = PARTIAL_PATTERN.matcher(requestData);
+        if (!matcher.find()) return "PARTIAL CONTINUE";
+        int delivered = Integer.parseInt(matcher.group(1));
+        int remaining = Integer.parseInt(matcher.group(2));
+        int fireID = parseFireID(requestData);
+        FireEvent fire = FireEvent.parse(requestData);
+
+        boolean out = fireLedger.deliver(fireID, delivered);
+        int historyIndex = fireHistory.indexOf(fireID);
+        if (historyIndex >= 0) {
+            fireHistory.setRemainingWaterNeeded(historyIndex, fireLedger.getRemaining(fireID));
+        }
+        Mission mission = missions.get(droneID);
+        if (mission == null) {
+            // The mission expired and its share was already handed off
+            release(droneID);
+            return "PARTIAL RELEASE";
+        }
+        if (out || remaining <= 0) {
+            release(droneID);
+            metrics.assignmentEnded();
+            fireCompleted(fireID);
+            metrics.completionBuffered();
+            return "PARTIAL RELEASE";
+        }
+
+        Zone zone = fire == null ? null : zoneMap.get(fire.getZoneId());
+        if (zone != null) {
+            double centerX = (zone.getStartX() + zone.getEndX()) / 2;
+            double centerY = (zone.getStartY() + zone.getEndY()) / 2;
+            double refillSeconds = 2 * distances.distance(zone, DroneSubsystem.BASE_ZONE) / DroneSubsystem.SPEED;
+            int idle = fleet.findBest(nearestIdle(zone));
+            if (idle >= 0 && Math.hypot(fleet.getX(idle) - centerX, fleet.getY(idle) - centerY) / DroneSubsystem.SPEED < refillSeconds) {
+                release(droneID);
+                metrics.assignmentEnded();
+                Log.warn(() -> this + " [DRONE " + droneID + "] is refilling, handing off " + remaining + "L of fire " + fireID);
+                String handoff = FAILURE_PATTERN.matcher(extractFireEvent(requestData)).replaceFirst("failure='HANDOFF'");
+                requeueFire(handoff, remaining);
+                return "PARTIAL RELEASE";
+            }
+        }
+
+        // The drone refills and delivers the rest of its share itself, leaving from the zone it is at
+        startMission(droneID, FireLedger.withShare(FireLedger.withoutShare(mission.fireRequest), remaining), true);
+        return "PARTIAL CONTINUE";
+    }
+
+    /**
+     * Ends a drone's part in a fire after its PARTIAL: it flies to base to refill and checks in with READY from there
+     * @param droneID the drone
+     */
+    private void release(int droneID) {
+        endMission(droneID);
+        updateDroneState(droneID, "REFILLING");
+        int index = fleet.indexOf(droneID);
+        if (index >= 0) {
+            fleet.setPosition(index, (DroneSubsystem.BASE_ZONE.getStartX() + DroneSubsystem.BASE_ZONE.getEndX()) / 2,
+                    (DroneSubsystem.BASE_ZONE.getStartY() + DroneSubsystem.BASE_ZONE.getEndY()) / 2);
+        }
+    }
+
+    /**
+     * Puts a fire a drone could not finish back in the queue, to be handed off to another drone
+     * @param handoffFireEvent the fire, marked as a HANDOFF
+     * @param water the water of the share the drone was sent, or -1 if it was sent the whole fire
+     */
+    private void requeueFire(String handoffFireEvent, int water) {
+        Log.warn(() -> "[Scheduler] Adding fire back to list " + handoffFireEvent);
+        FireEvent handoff = FireEvent.parse(handoffFireEvent);
+        if (handoff != null) {
+            fireHistory.add(handoff);
+        }
+        // Reset the fire to no trigger a fault for the next drone
+        String handoffRequest = "NEW FIRE: " + handoffFireEvent;
+        this.addSortFires(water >= 0 ? FireLedger.withShare(handoffRequest, water) : handoffRequest);
+    }
+
+    /**
+     * @return the water each fire still needs, across the shares of the drones fighting it
+     */
+    public FireLedger getFireLedger() {
+        return fireLedger;
+    }
 
-                // Set the buffer to the sorted buffer
-                this.fireToDroneBuffer = sortedFireBuffer;
+    /**
+     * @return the drones known to this Scheduler, which dispatch policies can scan without taking its locks
+     */
+    public FleetStore getFleet() {
+        return fleet;
+    }
+
+    /**
+     * Records that a drone has extinguished a fire, waking the confirmation waiting for it
+     * @param fireID the fire
+     */
+    private void fireCompleted(int fireID) {
+        synchronized (completedFires) {
+            completedFires.merge(fireID, 1, Integer::sum);
+            completedFires.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until a drone has extinguished a fire, and consumes the completion
+     * @param fireID the fire
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void awaitCompletion(int fireID) throws InterruptedException {
+        synchronized (completedFires) {
+            while (!completedFires.containsKey(fireID)) {
+                completedFires.wait();
             }
+            completedFires.computeIfPresent(fireID, (id, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    /**
+     * Add the fire to the queue of fires waiting for a drone. The queue serves the fire with the earliest
+     * deadline first, where a fire's deadline is when it was first reported plus a budget for its severity.
+     * A new fire that needs more water than one drone carries is split into shares for as many of the idle
+     * drones as it takes, so they put it out together in one wave instead of one drone refilling in between.
+     * @param requestData the request for a new fire, or for a share of a fire being handed off
+     */
+    public synchronized void addSortFires(String requestData) {
+        long now = System.nanoTime();
+        int fireID = parseFireID(requestData);
+        queuedAt.put(fireID, now);
+        Long firstReported = reportedAt.putIfAbsent(fireID, now);
+        long reported = firstReported == null ? now : firstReported;
+        FireEvent fire = FireEvent.parse(requestData);
+        FireEvent.Severity severity = fire == null ? FireEvent.Severity.OTHER : fire.getSeverityLevel();
+        if (fire == null || FireLedger.parseShare(requestData) >= 0) {
+            metrics.fireQueued();
+            fireQueue.add(requestData, severity, reported);
+            return;
+        }
+
+        int water = fire.getRemainingWaterNeeded();
+        fireLedger.open(fireID, water);
+        int freeDrones = fleet.countInState(FleetStore.IDLE) - fireQueue.size();
+        for (int share : FireLedger.split(water, DroneSubsystem.MAX_AGENT_CAP, freeDrones)) {
+            metrics.fireQueued();
+            fireQueue.add(FireLedger.withShare(requestData, share), severity, reported);
         }
     }
 
@@ -389,6 +1087,23 @@ class Scheduler implements Runnable{
         return "[SCHEDULER][STATE: " + this.state + "]";
     }
 
+    /**
+     * @return the distances between the centres of the zones and the base
+     */
+    public static ZoneDistances getDistances() {
+        return distances;
+    }
+
+    /**
+     * @param zones the zones fires are reported in
+     * @return the distance matrix of the zones and the base
+     */
+    private static ZoneDistances withBase(Map<Integer, Zone> zones) {
+        List<Zone> all = new ArrayList<>(zones.values());
+        if (!zones.containsKey(DroneSubsystem.BASE_ZONE.getID())) all.add(DroneSubsystem.BASE_ZONE);
+        return new ZoneDistances(all, DroneSubsystem.SPEED);
+    }
+
     /**
      * @param zoneId The ID of the zone to retrieve.
      * @return Zone The Zone object corresponding to the given ID, or null if the zone ID is not found.
@@ -397,12 +1112,26 @@ class Scheduler implements Runnable{
         return zoneMap.get(zoneId);
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         // Start logging daemon
         MetricsLogger.startDaemon();
+        LatencyMetrics.startIntervalReporterIfConfigured();
+        LiveMetrics.startIfConfigured();
+        Tracer.startIfConfigured("scheduler");
 
         // Initialize the Scheduler, responsible for managing communication between subsystems
-        Scheduler scheduler = new Scheduler();
+        Scheduler scheduler = new Scheduler(DeploymentConfig.get().getTransports());
+        scheduler.getMetrics().expose();
+        DeploymentConfig config = DeploymentConfig.get();
+        if (config.isMulticastDiscovery()) {
+            try {
+                DroneDiscovery.listen(config, scheduler::registerDrones);
+            } catch (IOException e) {
+                // Frames sent to the Scheduler's port are still registered, and every drone still checks in with READY
+                Log.error(() -> scheduler + " Could not join discovery group " + config.getDiscoveryGroup().getHostAddress()
+                        + ", drones announced to it are only known once they check in: " + e.getMessage());
+            }
+        }
 
         // Start Thread
         Thread schedulerThread = new Thread(scheduler, "SCHEDULER");
@@ -0,0 +1,332 @@
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The SchedulerMetrics class is the instrumentation surface of a running Scheduler.
+ * The Scheduler updates atomic gauges and counters as it handles messages, and they are read
+ * through JMX (SchedulerMetricsMXBean) or an optional HTTP endpoint in Prometheus text format,
+ * so looking inside the Scheduler never takes its locks or waits on its buffers.
+ *
+ * Run the Scheduler with -Dmetrics.http.port=<port> to serve the metrics at http://localhost:<port>/metrics.
+ */
+public class SchedulerMetrics implements SchedulerMetricsMXBean {
+    /** The message types handled by the Scheduler, as returned by Scheduler.handleEvent. */
+    static final String[] MESSAGE_TYPES = {"IDLE", "COMPLETE", "FIRE", "CONFIRMATION", "FAULT", "HEARTBEAT", "PARTIAL", "ERROR"};
+    private static final String OBJECT_NAME = "Scheduler:type=SchedulerMetrics";
+    private static final long RATE_PERIOD_MILLIS = 5000;
+
+    private volatile String state = "WAITING_TO_RECEIVE";
+    private final AtomicInteger queuedFires = new AtomicInteger();
+    private final AtomicInteger awaitingConfirmation = new AtomicInteger();
+    private final AtomicInteger inFlightAssignments = new AtomicInteger();
+    private final AtomicInteger activeHandlers = new AtomicInteger();
+    private final AtomicInteger waitingDroneHandlers = new AtomicInteger();
+    private final Map<Integer, String> droneStates = new ConcurrentHashMap<>();
+    private final LongAdder expiredMissions = new LongAdder();
+    private final LongAdder retasks = new LongAdder();
+    private final LongAdder repositions = new LongAdder();
+    private volatile FireQueue fireQueue;
+
+    private final LongAdder[] messageCounts = new LongAdder[MESSAGE_TYPES.length];
+    private final LatencyHistogram[] responseTimes = new LatencyHistogram[MESSAGE_TYPES.length];
+    private final long[] previousCounts = new long[MESSAGE_TYPES.length];
+    private final double[] messageRates = new double[MESSAGE_TYPES.length];
+    private volatile long ratesSampledAt = System.nanoTime();
+
+    public SchedulerMetrics() {
+        for (int i = 0; i < MESSAGE_TYPES.length; i++) {
+            messageCounts[i] = new LongAdder();
+            responseTimes[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records that a message was handled.
+     *
+     * @param type the message type, as returned by Scheduler.handleEvent
+     * @param nanos the time taken to handle the message
+     */
+    public void messageHandled(String type, long nanos) {
+        int index = indexOf(type);
+        if (index < 0) return;
+        messageCounts[index].increment();
+        responseTimes[index].record(nanos);
+    }
+
+    void setState(String state) { this.state = state; }
+
+    void handlerStarted() { activeHandlers.incrementAndGet(); }
+
+    void handlerFinished() { activeHandlers.decrementAndGet(); }
+
+    void fireQueued() { queuedFires.incrementAndGet(); }
+
+    void fireDequeued() { queuedFires.decrementAndGet(); }
+
+    void droneHandlerWaiting() { waitingDroneHandlers.incrementAndGet(); }
+
+    void droneHandlerAssigned() { waitingDroneHandlers.decrementAndGet(); }
+
+    void assignmentStarted() { inFlightAssignments.incrementAndGet(); }
+
+    void assignmentEnded() { inFlightAssignments.decrementAndGet(); }
+
+    void completionBuffered() { awaitingConfirmation.incrementAndGet(); }
+
+    void completionConfirmed() { awaitingConfirmation.decrementAndGet(); }
+
+    void droneState(int droneID, String droneState) { droneStates.put(droneID, droneState); }
+
+    void missionExpired() { expiredMissions.increment(); }
+
+    void retasked() { retasks.increment(); }
+
+    void repositioned() { repositions.increment(); }
+
+    void watch(FireQueue fireQueue) { this.fireQueue = fireQueue; }
+
+    @Override
+    public String getState() { return state; }
+
+    @Override
+    public int getQueuedFires() { return queuedFires.get(); }
+
+    @Override
+    public int getAwaitingConfirmation() { return awaitingConfirmation.get(); }
+
+    @Override
+    public int getInFlightAssignments() { return inFlightAssignments.get(); }
+
+    @Override
+    public long getExpiredMissions() { return expiredMissions.sum(); }
+
+    @Override
+    public long getRetasks() { return retasks.sum(); }
+
+    @Override
+    public long getRepositions() { return repositions.sum(); }
+
+    @Override
+    public Map<String, Long> getDeadlineMisses() {
+        FireQueue queue = fireQueue;
+        return queue == null ? new TreeMap<>() : queue.getDeadlineMisses();
+    }
+
+    @Override
+    public int getActiveHandlers() { return activeHandlers.get(); }
+
+    @Override
+    public int getWaitingDroneHandlers() { return waitingDroneHandlers.get(); }
+
+    @Override
+    public Map<String, Integer> getDroneStateCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (String droneState : droneStates.values()) {
+            counts.merge(droneState, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getMessageCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (int i = 0; i < MESSAGE_TYPES.length; i++) {
+            counts.put(MESSAGE_TYPES[i], messageCounts[i].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getMessageRates() {
+        Map<String, Double> rates = new TreeMap<>();
+        synchronized (messageRates) {
+            for (int i = 0; i < MESSAGE_TYPES.length; i++) {
+                rates.put(MESSAGE_TYPES[i], messageRates[i]);
+            }
+        }
+        return rates;
+    }
+
+    @Override
+    public Map<String, Double> getResponseTimeP50Millis() { return responseTimePercentile(50); }
+
+    @Override
+    public Map<String, Double> getResponseTimeP99Millis() { return responseTimePercentile(99); }
+
+    @Override
+    public double getResponseTimeMillis(String type, double percentile) {
+        int index = indexOf(type);
+        if (index < 0) throw new IllegalArgumentException("Unknown message type: " + type);
+        return responseTimes[index].getValueAtPercentile(percentile) / 1_000_000.0;
+    }
+
+    private Map<String, Double> responseTimePercentile(double percentile) {
+        Map<String, Double> values = new TreeMap<>();
+        for (int i = 0; i < MESSAGE_TYPES.length; i++) {
+            values.put(MESSAGE_TYPES[i], responseTimes[i].getValueAtPercentile(percentile) / 1_000_000.0);
+        }
+        return values;
+    }
+
+    /**
+     * Recomputes the per-type rates from the counts handled since the previous sample.
+     * Called periodically by the rate sampler thread.
+     */
+    void sampleRates() {
+        long now = System.nanoTime();
+        double seconds = (now - ratesSampledAt) / 1e9;
+        if (seconds <= 0) return;
+        synchronized (messageRates) {
+            for (int i = 0; i < MESSAGE_TYPES.length; i++) {
+                long count = messageCounts[i].sum();
+                messageRates[i] = (count - previousCounts[i]) / seconds;
+                previousCounts[i] = count;
+            }
+        }
+        ratesSampledAt = now;
+    }
+
+    private static int indexOf(String type) {
+        for (int i = 0; i < MESSAGE_TYPES.length; i++) {
+            if (MESSAGE_TYPES[i].equals(type)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Formats every metric in the Prometheus text exposition format.
+     *
+     * @return the metrics, one sample per line
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        gauge(out, "scheduler_queued_fires", "Fires waiting in the queue for a drone", getQueuedFires());
+        gauge(out, "scheduler_awaiting_confirmation", "Extinguished fires waiting to be confirmed", getAwaitingConfirmation());
+        gauge(out, "scheduler_inflight_assignments", "Fires assigned to a drone that has not completed or faulted", getInFlightAssignments());
+        out.append("# HELP scheduler_expired_missions_total Missions given up on after the drone stopped responding\n# TYPE scheduler_expired_missions_total counter\n");
+        out.append("scheduler_expired_missions_total ").append(getExpiredMissions()).append('\n');
+        out.append("# HELP scheduler_retasks_total En-route drones re-tasked to a more severe fire\n# TYPE scheduler_retasks_total counter\n");
+        out.append("scheduler_retasks_total ").append(getRetasks()).append('\n');
+        out.append("# HELP scheduler_repositions_total Idle drones moved to a staging point\n# TYPE scheduler_repositions_total counter\n");
+        out.append("scheduler_repositions_total ").append(getRepositions()).append('\n');
+        out.append("# HELP scheduler_deadline_misses_total Fires dispatched after their deadline per severity\n# TYPE scheduler_deadline_misses_total counter\n");
+        for (Map.Entry<String, Long> entry : getDeadlineMisses().entrySet()) {
+            out.append("scheduler_deadline_misses_total{severity=\"").append(entry.getKey()).append("\"} ").append(entry.getValue()).append('\n');
+        }
+        gauge(out, "scheduler_active_handlers", "Threads currently handling a message", getActiveHandlers());
+        gauge(out, "scheduler_waiting_drone_handlers", "IDLE handlers waiting for a fire to assign", getWaitingDroneHandlers());
+
+        out.append("# HELP scheduler_state The state the Scheduler last moved to\n# TYPE scheduler_state gauge\n");
+        out.append("scheduler_state{state=\"").append(getState()).append("\"} 1\n");
+
+        out.append("# HELP scheduler_drones Drones per last reported state\n# TYPE scheduler_drones gauge\n");
+        for (Map.Entry<String, Integer> entry : getDroneStateCounts().entrySet()) {
+            out.append("scheduler_drones{state=\"").append(entry.getKey()).append("\"} ").append(entry.getValue()).append('\n');
+        }
+
+        out.append("# HELP scheduler_messages_total Messages handled per type\n# TYPE scheduler_messages_total counter\n");
+        for (Map.Entry<String, Long> entry : getMessageCounts().entrySet()) {
+            out.append("scheduler_messages_total{type=\"").append(entry.getKey()).append("\"} ").append(entry.getValue()).append('\n');
+        }
+
+        out.append("# HELP scheduler_message_rate Messages handled per second over the last sampling period\n# TYPE scheduler_message_rate gauge\n");
+        for (Map.Entry<String, Double> entry : getMessageRates().entrySet()) {
+            out.append("scheduler_message_rate{type=\"").append(entry.getKey()).append("\"} ").append(entry.getValue()).append('\n');
+        }
+
+        out.append("# HELP scheduler_response_seconds Message handling time per type\n# TYPE scheduler_response_seconds summary\n");
+        for (int i = 0; i < MESSAGE_TYPES.length; i++) {
+            LatencyHistogram histogram = responseTimes[i];
+            for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+                out.append("scheduler_response_seconds{type=\"").append(MESSAGE_TYPES[i])
+                        .append("\",quantile=\"").append(quantile).append("\"} ")
+                        .append(histogram.getValueAtPercentile(quantile * 100) / 1e9).append('\n');
+            }
+            out.append("scheduler_response_seconds_sum{type=\"").append(MESSAGE_TYPES[i]).append("\"} ")
+                    .append(histogram.getSum() / 1e9).append('\n');
+            out.append("scheduler_response_seconds_count{type=\"").append(MESSAGE_TYPES[i]).append("\"} ")
+                    .append(histogram.getCount()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, starts sampling the message rates,
+     * and serves them over HTTP if the metrics.http.port system property is set.
+     */
+    public void expose() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.err.println("Could not register Scheduler metrics MBean: " + e.getMessage());
+        }
+
+        Thread sampler = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(RATE_PERIOD_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                sampleRates();
+            }
+        }, "METRICS_RATES");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        Integer port = Integer.getInteger("metrics.http.port");
+        if (port != null) {
+            try {
+                startHttpEndpoint(port);
+            } catch (IOException e) {
+                System.err.println("Could not start metrics endpoint on port " + port + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Serves the metrics in Prometheus text format at /metrics. Requests are handled on the server's
+     * dispatcher thread, which is not a daemon, so the endpoint keeps the process running until the
+     * returned server is stopped. It listens on the configured bind.address, or only on loopback if
+     * none is configured, so the metrics are not exposed to the network by default.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @return the running server
+     */
+    public HttpServer startHttpEndpoint(int port) throws IOException {
+        InetAddress bindAddress = DeploymentConfig.get().getBindAddress();
+        HttpServer server = HttpServer.create(new InetSocketAddress(
+                bindAddress != null ? bindAddress : InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        System.out.println("[SchedulerMetrics] Serving metrics at http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + "/metrics");
+        return server;
+    }
+}
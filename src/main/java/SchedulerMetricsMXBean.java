@@ -0,0 +1,90 @@
+import java.util.Map;
+
+/**
+ * The management interface of SchedulerMetrics, registered with the platform MBean server as
+ * "Scheduler:type=SchedulerMetrics". Every attribute is read from atomic gauges, so reading it never
+ * takes the Scheduler's locks.
+ */
+public interface SchedulerMetricsMXBean {
+    /**
+     * @return the state the Scheduler last moved to
+     */
+    String getState();
+
+    /**
+     * @return the number of fires waiting in the queue for a drone
+     */
+    int getQueuedFires();
+
+    /**
+     * @return the number of extinguished fires waiting for the FireIncidentSubsystem to confirm them
+     */
+    int getAwaitingConfirmation();
+
+    /**
+     * @return the number of fires assigned to a drone that has not completed or faulted yet
+     */
+    int getInFlightAssignments();
+
+    /**
+     * @return the number of missions given up on because the drone stopped sending heartbeats, whose fires were handed off
+     */
+    long getExpiredMissions();
+
+    /**
+     * @return the number of drones re-tasked mid-flight to a more severe fire
+     */
+    long getRetasks();
+
+    /**
+     * @return the number of idle drones moved to a staging point by the pre-positioning engine
+     */
+    long getRepositions();
+
+    /**
+     * @return the number of fires dispatched to a drone after their deadline, per severity
+     */
+    Map<String, Long> getDeadlineMisses();
+
+    /**
+     * @return the number of threads currently handling a message
+     */
+    int getActiveHandlers();
+
+    /**
+     * @return the number of IDLE handlers waiting for a fire to assign
+     */
+    int getWaitingDroneHandlers();
+
+    /**
+     * @return the number of drones per state, as last reported by each drone
+     */
+    Map<String, Integer> getDroneStateCounts();
+
+    /**
+     * @return the number of messages handled per message type
+     */
+    Map<String, Long> getMessageCounts();
+
+    /**
+     * @return the messages handled per second per message type, over the last sampling period
+     */
+    Map<String, Double> getMessageRates();
+
+    /**
+     * @return the median handling time per message type, in milliseconds
+     */
+    Map<String, Double> getResponseTimeP50Millis();
+
+    /**
+     * @return the 99th percentile handling time per message type, in milliseconds
+     */
+    Map<String, Double> getResponseTimeP99Millis();
+
+    /**
+     * @param type the message type, such as IDLE or FIRE
+     * @param percentile the percentile, between 0 and 100
+     * @return the handling time of the message type at the percentile, in milliseconds
+     */
+    double getResponseTimeMillis(String type, double percentile);
+}
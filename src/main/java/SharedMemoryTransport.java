@@ -0,0 +1,505 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A Transport endpoint for processes on the same host, over memory-mapped files. Every pair of endpoints
+ * that talk gets a single-producer/single-consumer ring buffer per direction, a file in the network's
+ * directory (on /dev/shm where there is one) named after the receiving port, the sending port and the
+ * sending endpoint, so a message is a copy into shared memory and a release store of the ring's head.
+ * An endpoint holds a lock on the file of its port while it is open, which is how senders tell a bound
+ * port from a dead one. The port file also holds a count of the rings ever made for the port, which a sender
+ * bumps once its new ring is in place, so a receiver only lists the directory when that count has moved.
+ *
+ * A receiver first polls its rings spinning, for -Dtransport.shm.spin microseconds (default 50), then parks
+ * with a growing timeout up to a millisecond, since another process has no way to unpark it; receivers in
+ * the sending JVM are unparked directly. On a single core it yields instead of spinning, so the sender can
+ * run. A sender whose ring is full waits for the receiver the same way, for up to a second, and then drops
+ * the message, as UDP drops on a full socket buffer.
+ */
+public class SharedMemoryTransport implements Transport {
+    static final int RING_CAPACITY = 1 << 16; // bytes of messages per ring, a power of two
+    private static final int MASK = RING_CAPACITY - 1;
+
+    // Ring file layout: each counter on a cache line of its own, so producer and consumer never share one
+    private static final int HEAD = 0;              // bytes ever written, written by the sender
+    private static final int TAIL = 64;             // bytes ever read, written by the receiver
+    private static final int RECEIVER_CLOSED = 128; // set by the receiver when it closes
+    private static final int SENDER_CLOSED = 192;   // set by the sender when it closes
+    private static final int DATA = 256;
+    private static final int RING_FILE_SIZE = DATA + RING_CAPACITY;
+    private static final int PADDING = -1;          // length of the filler before a record that wraps around
+
+    // Port file layout
+    private static final int RINGS_MADE = 0;        // rings senders have made for the port, bumped by each sender
+    private static final int PORT_FILE_SIZE = 64;
+
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(Long.getLong("transport.shm.spin", 50));
+    private static final boolean MULTI_CORE = Runtime.getRuntime().availableProcessors() > 1;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SEND_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int FIRST_EPHEMERAL_PORT = 49152;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    /** The endpoints open in this JVM, by port file, so senders can unpark them and ports are bound once. */
+    private static final Map<Path, SharedMemoryTransport> LOCAL = new ConcurrentHashMap<>();
+
+    private final Network network;
+    private final int port;
+    private final Path portFile;
+    private final String name = Long.toHexString(ThreadLocalRandom.current().nextLong()); // tells apart endpoints reusing a port
+    private FileChannel portChannel;
+    private FileLock portLock;
+    private MappedByteBuffer portBuffer;
+
+    private final Map<Integer, Ring> outbound = new ConcurrentHashMap<>();
+    private final List<Ring> inbound = new CopyOnWriteArrayList<>();
+    private final Set<Path> known = new HashSet<>();
+    private final Object receiveLock = new Object();
+    private volatile Thread receiver;
+    private long ringsSeen = -1; // the port file's count of rings when the directory was last listed
+    private int nextRing;
+    private volatile int timeoutMillis;
+    private volatile boolean closed;
+
+    /**
+     * The endpoints of one directory, the shared memory equivalent of the local host. Every process that opens
+     * a Network on the same directory can reach the others' endpoints by port.
+     */
+    public static final class Network implements Transport.Factory {
+        private final Path directory;
+
+        /**
+         * A network in the directory given by -Dtransport.shm.dir, by default on /dev/shm where there is one
+         * and in the temporary directory otherwise.
+         */
+        public Network() throws IOException {
+            this(defaultDirectory());
+        }
+
+        public Network(Path directory) throws IOException {
+            this.directory = Files.createDirectories(directory).toAbsolutePath();
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        @Override
+        public Transport open(int port) throws IOException {
+            if (port != 0) return bind(port);
+            for (int attempt = 0; attempt < 100; attempt++) {
+                try {
+                    return bind(ThreadLocalRandom.current().nextInt(FIRST_EPHEMERAL_PORT, 65536));
+                } catch (BindException e) {
+                    // Taken, try another
+                }
+            }
+            throw new BindException("No free ports found in " + directory);
+        }
+
+        private SharedMemoryTransport bind(int port) throws IOException {
+            SharedMemoryTransport endpoint = new SharedMemoryTransport(this, port);
+            if (LOCAL.putIfAbsent(endpoint.portFile, endpoint) != null) {
+                throw new BindException("Port " + port + " is already in use");
+            }
+            try {
+                endpoint.bind();
+            } catch (IOException e) {
+                LOCAL.remove(endpoint.portFile, endpoint);
+                throw e;
+            }
+            return endpoint;
+        }
+
+        /**
+         * @return true if an endpoint, in this or another process, has the port open
+         */
+        boolean isBound(Path portFile) throws IOException {
+            if (LOCAL.containsKey(portFile)) return true;
+            // Not this JVM's, so probing the lock cannot release one of ours
+            try (FileChannel channel = FileChannel.open(portFile, StandardOpenOption.WRITE)) {
+                FileLock probe = channel.tryLock();
+                if (probe == null) return true;
+                probe.release();
+                return false;
+            } catch (NoSuchFileException e) {
+                return false;
+            } catch (OverlappingFileLockException e) {
+                return true;
+            }
+        }
+
+        private static Path defaultDirectory() {
+            String directory = System.getProperty("transport.shm.dir");
+            if (directory != null) return Paths.get(directory);
+            Path shm = Paths.get("/dev/shm");
+            return (Files.isDirectory(shm) ? shm : Paths.get(System.getProperty("java.io.tmpdir"))).resolve("firefighting");
+        }
+    }
+
+    /**
+     * One direction between two endpoints, mapped by both. Only one thread at a time may offer and only
+     * one may poll.
+     */
+    private static final class Ring {
+        final Path path;
+        final MappedByteBuffer buffer;
+        final int peerPort;
+        final Path peerPortFile;
+
+        Ring(Path path, MappedByteBuffer buffer, int peerPort, Path peerPortFile) {
+            this.path = path;
+            this.buffer = buffer;
+            this.peerPort = peerPort;
+            this.peerPortFile = peerPortFile;
+        }
+
+        static Ring map(Path path, int peerPort, Path peerPortFile, boolean create) throws IOException {
+            try (FileChannel channel = create
+                    ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (!create && channel.size() != RING_FILE_SIZE) return null;
+                // The mapping outlives the channel
+                return new Ring(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, RING_FILE_SIZE), peerPort, peerPortFile);
+            }
+        }
+
+        /**
+         * @return false if the ring has no room for the message
+         */
+        boolean offer(byte[] data, int length) {
+            long head = (long) LONGS.get(buffer, HEAD);
+            int record = align(4 + length);
+            int offset = (int) (head & MASK);
+            int toEnd = RING_CAPACITY - offset;
+            int needed = record <= toEnd ? record : toEnd + record;
+            if (RING_CAPACITY - (head - (long) LONGS.getAcquire(buffer, TAIL)) < needed) return false;
+
+            if (record > toEnd) {
+                buffer.putInt(DATA + offset, PADDING);
+                head += toEnd;
+                offset = 0;
+            }
+            buffer.putInt(DATA + offset, length);
+            buffer.put(DATA + offset + 4, data, 0, length);
+            LONGS.setRelease(buffer, HEAD, head + record);
+            return true;
+        }
+
+        /**
+         * @return the next message, or null if the ring is empty
+         */
+        Message poll() {
+            long tail = (long) LONGS.get(buffer, TAIL);
+            if (tail == (long) LONGS.getAcquire(buffer, HEAD)) return null;
+
+            int offset = (int) (tail & MASK);
+            int length = buffer.getInt(DATA + offset);
+            if (length == PADDING) {
+                tail += RING_CAPACITY - offset;
+                offset = 0;
+                length = buffer.getInt(DATA);
+            }
+            Message message = BufferPool.SHARED.acquire();
+            buffer.get(DATA + offset + 4, message.getData(), 0, length);
+            LONGS.setRelease(buffer, TAIL, tail + align(4 + length));
+            return message.received(length, peerPort);
+        }
+
+        boolean isEmpty() {
+            return (long) LONGS.getAcquire(buffer, TAIL) == (long) LONGS.getAcquire(buffer, HEAD);
+        }
+
+        boolean isClosed(int flag) {
+            return (int) INTS.getAcquire(buffer, flag) != 0;
+        }
+
+        void close(int flag) {
+            INTS.setRelease(buffer, flag, 1);
+        }
+
+        private static int align(int bytes) {
+            return (bytes + 3) & ~3;
+        }
+    }
+
+    private SharedMemoryTransport(Network network, int port) {
+        this.network = network;
+        this.port = port;
+        this.portFile = network.directory.resolve(port + ".port");
+    }
+
+    private void bind() throws IOException {
+        portChannel = FileChannel.open(portFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            portLock = portChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            portLock = null;
+        }
+        if (portLock == null) {
+            portChannel.close();
+            throw new BindException("Port " + port + " is already in use");
+        }
+        portBuffer = portChannel.map(FileChannel.MapMode.READ_WRITE, 0, PORT_FILE_SIZE);
+
+        // Rings left by an earlier endpoint on this port: tell their senders it is gone, then remove them
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(network.directory, port + ".*.ring")) {
+            for (Path path : stale) {
+                Ring ring = Ring.map(path, 0, null, false);
+                if (ring != null) ring.close(RECEIVER_CLOSED);
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Override
+    public int getLocalPort() {
+        return port;
+    }
+
+    @Override
+    public void send(byte[] data, int length, int toPort) throws IOException {
+        if (closed) throw new SocketException("Socket is closed");
+        Ring ring = outbound.get(toPort);
+        if (ring != null && ring.isClosed(RECEIVER_CLOSED)) {
+            outbound.remove(toPort, ring);
+            Files.deleteIfExists(ring.path);
+            ring = null;
+        }
+        if (ring == null) {
+            ring = connect(toPort);
+            if (ring == null) return; // Nobody has the port open
+        }
+
+        int kept = Math.min(length, MAX_MESSAGE);
+        synchronized (ring) {
+            if (!ring.offer(data, kept)) {
+                long start = System.nanoTime();
+                long park = MIN_PARK_NANOS;
+                do {
+                    long waited = System.nanoTime() - start;
+                    if (waited > SEND_TIMEOUT_NANOS || ring.isClosed(RECEIVER_CLOSED) || closed) return;
+                    if (waited < SPIN_NANOS) {
+                        spin();
+                    } else {
+                        LockSupport.parkNanos(this, park);
+                        park = Math.min(park * 2, MAX_PARK_NANOS);
+                    }
+                } while (!ring.offer(data, kept));
+            }
+        }
+        wake(ring.peerPortFile);
+    }
+
+    /**
+     * Sends to a port of this network, every endpoint being on the one host.
+     */
+    @Override
+    public void send(byte[] data, int length, InetAddress host, int toPort) throws IOException {
+        send(data, length, toPort);
+    }
+
+    private synchronized Ring connect(int toPort) throws IOException {
+        Ring ring = outbound.get(toPort);
+        if (ring != null) return ring;
+        Path peerPortFile = network.directory.resolve(toPort + ".port");
+        if (!network.isBound(peerPortFile)) return null;
+
+        // Built under a temporary name, so the receiver never maps a half-created ring
+        String fileName = toPort + "." + port + "." + name;
+        Path temporary = network.directory.resolve(fileName + ".tmp");
+        Path path = network.directory.resolve(fileName + ".ring");
+        ring = Ring.map(temporary, toPort, peerPortFile, true);
+        ring = new Ring(path, ring.buffer, toPort, peerPortFile);
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        outbound.put(toPort, ring);
+        announceRing(peerPortFile);
+        wake(peerPortFile);
+        return ring;
+    }
+
+    /**
+     * Bumps the count of rings in a receiver's port file, so the receiver lists the directory for the new ring.
+     */
+    private static void announceRing(Path peerPortFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(peerPortFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer counts = channel.map(FileChannel.MapMode.READ_WRITE, 0, PORT_FILE_SIZE);
+            LONGS.getAndAdd(counts, RINGS_MADE, 1L);
+        } catch (NoSuchFileException e) {
+            // The receiver closed, and its rings go with it
+        }
+    }
+
+    /**
+     * Unparks the receiver of a port if it is in this JVM, otherwise it finds the message when it next polls.
+     */
+    private static void wake(Path portFile) {
+        SharedMemoryTransport peer = LOCAL.get(portFile);
+        if (peer == null) return;
+        Thread waiting = peer.receiver;
+        if (waiting != null) LockSupport.unpark(waiting);
+    }
+
+    @Override
+    public Message receive() throws IOException {
+        synchronized (receiveLock) {
+            receiver = Thread.currentThread();
+            try {
+                long timeout = timeoutMillis;
+                long start = System.nanoTime();
+                long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+                long park = MIN_PARK_NANOS;
+                while (true) {
+                    if (closed) throw new SocketException("Socket closed");
+                    Message message = poll();
+                    if (message != null) return message;
+
+                    long rings = (long) LONGS.getAcquire(portBuffer, RINGS_MADE);
+                    if (rings != ringsSeen) {
+                        ringsSeen = rings;
+                        if (scan()) continue;
+                    }
+                    long now = System.nanoTime();
+                    if (timeout != 0 && now - deadline >= 0) throw new SocketTimeoutException("Receive timed out");
+                    if (now - start < SPIN_NANOS) {
+                        spin();
+                    } else {
+                        long wait = timeout == 0 ? park : Math.min(park, deadline - now);
+                        LockSupport.parkNanos(this, wait);
+                        park = Math.min(park * 2, MAX_PARK_NANOS);
+                    }
+                }
+            } finally {
+                receiver = null;
+            }
+        }
+    }
+
+    /**
+     * Waits a moment without giving up the thread's turn, or hands the only core to the thread being waited on.
+     */
+    private static void spin() {
+        if (MULTI_CORE) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Takes the next message from the inbound rings in turn, dropping the rings of senders that have closed
+     * once they are drained.
+     */
+    private Message poll() throws IOException {
+        int count = inbound.size();
+        for (int i = 0; i < count; i++) {
+            int index = (nextRing + i) % count;
+            Ring ring = inbound.get(index);
+            Message message = ring.poll();
+            if (message != null) {
+                nextRing = index + 1;
+                return message;
+            }
+            // Checked before emptiness, as the sender closes only after its last message is in
+            if (ring.isClosed(SENDER_CLOSED) && ring.isEmpty()) {
+                inbound.remove(index);
+                known.remove(ring.path);
+                Files.deleteIfExists(ring.path);
+                return poll();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Maps the rings senders have created for this port since the last scan.
+     *
+     * @return true if there were any
+     */
+    private boolean scan() throws IOException {
+        boolean found = false;
+        try (DirectoryStream<Path> rings = Files.newDirectoryStream(network.directory, port + ".*.ring")) {
+            for (Path path : rings) {
+                if (known.contains(path)) continue;
+                String[] parts = path.getFileName().toString().split("\\.");
+                Ring ring;
+                try {
+                    ring = Ring.map(path, Integer.parseInt(parts[1]), null, false);
+                } catch (NoSuchFileException | NumberFormatException e) {
+                    continue;
+                }
+                if (ring == null) continue;
+                known.add(path);
+                inbound.add(ring);
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void setTimeout(int millis) throws IOException {
+        if (closed) throw new SocketException("Socket is closed");
+        timeoutMillis = millis;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (Ring ring : inbound) {
+            ring.close(RECEIVER_CLOSED);
+            try {
+                Files.deleteIfExists(ring.path);
+            } catch (IOException ignored) {
+            }
+        }
+        // The receivers remove these once they have read what is left in them
+        for (Ring ring : outbound.values()) {
+            ring.close(SENDER_CLOSED);
+        }
+        try {
+            Files.deleteIfExists(portFile);
+            portLock.release();
+            portChannel.close();
+        } catch (IOException ignored) {
+        }
+        LOCAL.remove(portFile, this);
+        Thread waiting = receiver;
+        if (waiting != null) LockSupport.unpark(waiting);
+    }
+}
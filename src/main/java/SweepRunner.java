@@ -0,0 +1,177 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The SweepRunner class runs scheduling experiments over a grid of parameters. Every combination of fleet
+ * size, agent capacity, speed and dispatch policy is played against every trace as its own FleetSimulation,
+ * in-process and with nothing shared between runs, on a fork-join pool across all cores. A summary of each
+ * run (throughput, mean and p99 extinguish time, dispatch and total distance travelled) is written as CSV
+ * and as JSON, one row or object per run, in grid order.
+ *
+ * Usage: java SweepRunner [traces=PATH,...] [zones=PATH] [drones=N,...] [capacity=L,...] [speed=M_PER_S,...]
+ *                         [policy=FIRST_IDLE|NEAREST|PREPOSITION,...] [repeat=N] [threads=N] [out=PREFIX]
+ */
+public class SweepRunner {
+    private static final String[] COLUMNS = {"trace", "drones", "capacity", "speed", "policy", "fires",
+            "throughput_per_hour", "mean_extinguish_s", "p99_extinguish_s", "mean_dispatch_m", "p99_dispatch_m",
+            "travelled_m", "staging_m", "deadline_misses", "runtime_ms"};
+
+    /**
+     * One combination of parameters and trace, and its outcome once run.
+     */
+    static final class Run {
+        final String trace;
+        final FleetSimulation.Config config;
+        FleetSimulation.Result result;
+        long runtimeNanos;
+
+        Run(String trace, FleetSimulation.Config config) {
+            this.trace = trace;
+            this.config = config;
+        }
+
+        /**
+         * @return the values of the run, in the order of COLUMNS
+         */
+        Object[] values() {
+            return new Object[]{trace, config.drones, config.agentCapacity, config.speed, config.policy,
+                    result.getFires(), result.getThroughputPerHour(), result.getMeanExtinguishSeconds(),
+                    result.getExtinguishSecondsPercentile(0.99), result.getMeanDispatchDistance(),
+                    result.getDispatchDistancePercentile(0.99), result.getTravelled(), result.getStagingDistance(),
+                    result.getDeadlineMisses(), runtimeNanos / 1_000_000};
+        }
+    }
+
+    /**
+     * Runs every combination of the parameters against every trace.
+     *
+     * @param traces the fires of each trace, by trace name
+     * @param zones the zones of the traces
+     * @param configs the parameter combinations
+     * @param threads the parallelism of the fork-join pool
+     * @return the runs with their results, traces outermost, in the order given
+     * @throws InterruptedException if interrupted while waiting for the runs
+     */
+    static List<Run> sweep(Map<String, List<double[]>> traces, Map<Integer, Zone> zones,
+                           List<FleetSimulation.Config> configs, int threads) throws InterruptedException {
+        List<Run> runs = new ArrayList<>();
+        List<Callable<Run>> tasks = new ArrayList<>();
+        for (Map.Entry<String, List<double[]>> trace : traces.entrySet()) {
+            for (FleetSimulation.Config config : configs) {
+                Run run = new Run(trace.getKey(), config);
+                runs.add(run);
+                tasks.add(() -> {
+                    long start = System.nanoTime();
+                    run.result = new FleetSimulation(zones, trace.getValue(), config).run();
+                    run.runtimeNanos = System.nanoTime() - start;
+                    return run;
+                });
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<Run> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A simulation failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return runs;
+    }
+
+    /**
+     * Writes the runs as CSV, one row per run after a header row.
+     */
+    static void writeCsv(List<Run> runs, String path) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(path))) {
+            out.println(String.join(",", COLUMNS));
+            for (Run run : runs) {
+                Object[] values = run.values();
+                StringBuilder row = new StringBuilder();
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) row.append(',');
+                    row.append(format(values[i]));
+                }
+                out.println(row);
+            }
+        }
+    }
+
+    /**
+     * Writes the runs as a JSON array, one object per run keyed by the CSV column names.
+     */
+    static void writeJson(List<Run> runs, String path) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(path))) {
+            out.println("[");
+            for (int r = 0; r < runs.size(); r++) {
+                Object[] values = runs.get(r).values();
+                StringBuilder object = new StringBuilder("  {");
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) object.append(", ");
+                    object.append('"').append(COLUMNS[i]).append("\": ");
+                    boolean text = values[i] instanceof String || values[i] instanceof Enum;
+                    String value = format(values[i]);
+                    object.append(text ? "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"" : value);
+                }
+                out.println(object.append(r < runs.size() - 1 ? "}," : "}"));
+            }
+            out.println("]");
+        }
+    }
+
+    private static String format(Object value) {
+        return value instanceof Double ? String.format(Locale.ROOT, "%.2f", (Double) value) : String.valueOf(value);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length == 2) options.put(parts[0].trim(), parts[1].trim());
+        }
+        Map<Integer, Zone> zones = Scheduler.loadZonesFromCSV(options.getOrDefault("zones", "src/main/java/sample_zone.csv"));
+        int repeat = Integer.parseInt(options.getOrDefault("repeat", "1"));
+        Map<String, List<double[]>> traces = new LinkedHashMap<>();
+        for (String trace : options.getOrDefault("traces", "src/main/java/fire_events.csv").split(",")) {
+            traces.put(trace, FleetSimulation.parseTrace(Files.readAllLines(Paths.get(trace)), zones, repeat));
+        }
+
+        List<FleetSimulation.Config> configs = new ArrayList<>();
+        for (String drones : options.getOrDefault("drones", "1,2,4,8").split(",")) {
+            for (String capacity : options.getOrDefault("capacity", String.valueOf(DroneSubsystem.MAX_AGENT_CAP)).split(",")) {
+                for (String speed : options.getOrDefault("speed", String.valueOf(DroneSubsystem.SPEED)).split(",")) {
+                    for (String policy : options.getOrDefault("policy", "FIRST_IDLE,NEAREST,PREPOSITION").split(",")) {
+                        configs.add(new FleetSimulation.Config(Integer.parseInt(drones.trim()),
+                                Integer.parseInt(capacity.trim()), Double.parseDouble(speed.trim()),
+                                FleetSimulation.Policy.valueOf(policy.trim().toUpperCase())));
+                    }
+                }
+            }
+        }
+
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        long start = System.nanoTime();
+        List<Run> runs = sweep(traces, zones, configs, threads);
+        String prefix = options.getOrDefault("out", "sweep");
+        writeCsv(runs, prefix + ".csv");
+        writeJson(runs, prefix + ".json");
+        System.out.printf("%d runs on %d threads in %d ms, written to %s.csv and %s.json%n", runs.size(), threads,
+                (System.nanoTime() - start) / 1_000_000, prefix, prefix);
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The Tracer records the lifecycle of each fire as spans, one per stage, correlated across the
+ * subsystems by the trace ID the FireIncidentSubsystem gives each fire. The trace ID travels in
+ * every message for the fire as part of the serialized FireEvent.
+ *
+ * Spans are written in the Chrome trace event format, which chrome://tracing and ui.perfetto.dev open.
+ * Each fire is shown as its own process with one row per subsystem (FIRE_INCIDENT_SUBSYSTEM, SCHEDULER,
+ * DRONE n), and timestamps are wall-clock microseconds so the files of all subsystems line up.
+ * Tracing is off unless -Dtrace.dir is set, in which case every process writes
+ * trace-[process]-[pid].json to that directory. The files can be merged into one:
+ *
+ * Usage: java Tracer [merged output] [trace files...]
+ */
+public class Tracer {
+    private static final Pattern TRACE_PATTERN = Pattern.compile("trace='([0-9a-f]+)'");
+    private static final long FLUSH_PERIOD_MILLIS = 500;
+    private static final long EPOCH_MICROS = System.currentTimeMillis() * 1000;
+    private static final long NANO_BASE = System.nanoTime();
+
+    private static volatile boolean enabled = false;
+    private static final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+    private static final Set<String> namedLanes = ConcurrentHashMap.newKeySet();
+    private static Writer writer;
+    private static boolean firstEvent = true;
+
+    /**
+     * Starts tracing this process if the trace.dir system property is set.
+     *
+     * @param processName the name of the process, used in the trace file name
+     */
+    public static void startIfConfigured(String processName) {
+        String directory = System.getProperty("trace.dir");
+        if (directory != null) {
+            start(new File(directory, "trace-" + processName + "-" + ProcessHandle.current().pid() + ".json").getPath());
+        }
+    }
+
+    /**
+     * Starts tracing this process to a file, replacing anything already in it.
+     *
+     * @param path the trace file to write
+     */
+    public static synchronized void start(String path) {
+        if (enabled) return;
+        try {
+            File file = new File(path);
+            if (file.getParentFile() != null) file.getParentFile().mkdirs();
+            writer = new BufferedWriter(new FileWriter(file, false));
+            writer.write("[");
+        } catch (IOException e) {
+            System.err.println("Could not open trace file " + path + ": " + e.getMessage());
+            return;
+        }
+        enabled = true;
+
+        Thread flusher = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(FLUSH_PERIOD_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                flush();
+            }
+        }, "TRACER");
+        flusher.setDaemon(true);
+        flusher.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Tracer::close));
+    }
+
+    /**
+     * @return true if spans are being recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return a new random trace ID of 16 hex digits
+     */
+    public static String newTraceId() {
+        return String.format("%016x", ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * @param message a message containing a serialized FireEvent
+     * @return the trace ID of the fire in the message, or null if it has none
+     */
+    public static String parseTraceId(String message) {
+        Matcher matcher = TRACE_PATTERN.matcher(message);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * @return the current time in microseconds since the epoch, with nanoTime precision
+     */
+    public static long now() {
+        return EPOCH_MICROS + (System.nanoTime() - NANO_BASE) / 1000;
+    }
+
+    /**
+     * Records a completed stage of a fire. Nothing is recorded if tracing is off or the fire has no trace ID.
+     *
+     * @param traceId the trace ID of the fire
+     * @param fireID the ID of the fire
+     * @param lane the subsystem the stage ran in, such as SCHEDULER or DRONE 100
+     * @param name the name of the stage
+     * @param startMicros the start of the stage, from now()
+     * @param endMicros the end of the stage, from now()
+     */
+    public static void span(String traceId, int fireID, String lane, String name, long startMicros, long endMicros) {
+        if (!enabled || traceId == null) return;
+        nameLane(traceId, fireID, lane);
+        pending.add("{\"name\":\"" + name + "\",\"cat\":\"fire\",\"ph\":\"X\",\"ts\":" + startMicros
+                + ",\"dur\":" + Math.max(0, endMicros - startMicros) + ",\"pid\":" + fireID + ",\"tid\":" + laneId(lane)
+                + ",\"args\":{\"trace\":\"" + traceId + "\"}}");
+    }
+
+    /**
+     * Records a moment in the life of a fire, such as a fault, that has no duration.
+     *
+     * @param traceId the trace ID of the fire
+     * @param fireID the ID of the fire
+     * @param lane the subsystem the event happened in
+     * @param name the name of the event
+     */
+    public static void instant(String traceId, int fireID, String lane, String name) {
+        if (!enabled || traceId == null) return;
+        nameLane(traceId, fireID, lane);
+        pending.add("{\"name\":\"" + name + "\",\"cat\":\"fire\",\"ph\":\"i\",\"s\":\"t\",\"ts\":" + now()
+                + ",\"pid\":" + fireID + ",\"tid\":" + laneId(lane) + ",\"args\":{\"trace\":\"" + traceId + "\"}}");
+    }
+
+    /**
+     * Names the fire's process and the lane's thread the first time a lane is used for a fire.
+     */
+    private static void nameLane(String traceId, int fireID, String lane) {
+        if (namedLanes.add(fireID + "/")) {
+            pending.add("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":" + fireID
+                    + ",\"args\":{\"name\":\"FIRE " + fireID + " [trace " + traceId + "]\"}}");
+            pending.add("{\"name\":\"process_sort_index\",\"ph\":\"M\",\"pid\":" + fireID
+                    + ",\"args\":{\"sort_index\":" + fireID + "}}");
+        }
+        if (namedLanes.add(fireID + "/" + lane)) {
+            pending.add("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + fireID + ",\"tid\":" + laneId(lane)
+                    + ",\"args\":{\"name\":\"" + lane + "\"}}");
+        }
+    }
+
+    private static int laneId(String lane) {
+        return lane.hashCode() & 0x7fffffff;
+    }
+
+    /**
+     * Writes every recorded span to the trace file.
+     */
+    public static synchronized void flush() {
+        if (writer == null) return;
+        try {
+            String event;
+            while ((event = pending.poll()) != null) {
+                writer.write(firstEvent ? "\n" : ",\n");
+                writer.write(event);
+                firstEvent = false;
+            }
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Could not write trace: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the remaining spans and closes the trace file, which stays valid JSON.
+     */
+    public static synchronized void close() {
+        if (writer == null) return;
+        flush();
+        enabled = false;
+        try {
+            writer.write("\n]\n");
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Could not close trace: " + e.getMessage());
+        }
+        writer = null;
+    }
+
+    /**
+     * Merges the trace files of several processes into one.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java Tracer [merged output] [trace files...]");
+            return;
+        }
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(args[0]))) {
+            out.write("[");
+            boolean first = true;
+            for (int i = 1; i < args.length; i++) {
+                for (String line : Files.readAllLines(Paths.get(args[i]))) {
+                    String event = line.trim();
+                    if (event.endsWith(",")) event = event.substring(0, event.length() - 1);
+                    if (!event.startsWith("{")) continue;
+                    out.write(first ? "\n" : ",\n");
+                    out.write(event);
+                    first = false;
+                }
+            }
+            out.write("\n]\n");
+        }
+    }
+}
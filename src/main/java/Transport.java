@@ -0,0 +1,230 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An endpoint the subsystems exchange messages through. Endpoints are addressed by port, as in the UDP
+ * protocol the subsystems have always spoken (the Scheduler on 7000, drones on 6000 + ID, fire reports on
+ * 8000 + fire ID, see DeploymentConfig), so the protocol code only deals in ports and never in sockets or
+ * packets. A port is on the Scheduler's host unless a host is given, which only UDP needs, to reach a drone
+ * on another machine. Delivery has datagram semantics: a message to a port nobody has open is dropped.
+ *
+ * UDP is the transport between processes. SharedMemoryTransport connects processes on the same host
+ * through memory-mapped ring buffers instead, and InMemoryTransport runs the whole system in one JVM with no
+ * system calls, for benchmarks and deterministic tests.
+ */
+public interface Transport extends Closeable {
+    /** The largest message an endpoint receives, longer messages are cut off. */
+    int MAX_MESSAGE = 1000;
+
+    /** Opens UDP endpoints as set up by DeploymentConfig. */
+    Factory UDP = UdpTransport::new;
+
+    /**
+     * Opens endpoints of one kind of transport.
+     */
+    @FunctionalInterface
+    interface Factory {
+        /**
+         * @param port the port to receive on, or 0 for any free port
+         * @return a new endpoint
+         * @throws IOException if the port is in use or the endpoint cannot be opened
+         */
+        Transport open(int port) throws IOException;
+    }
+
+    /**
+     * A message received by an endpoint, or a buffer text is encoded into before it is sent. A message taken
+     * from a BufferPool goes back to it when closed, after which it must not be used; closing any other message
+     * does nothing.
+     */
+    final class Message implements AutoCloseable {
+        private final byte[] data;
+        private final BufferPool pool;
+        private int length;
+        private InetAddress fromAddress;
+        private int fromPort;
+        private boolean released;
+
+        public Message(byte[] data, int length, int fromPort) {
+            this.data = data;
+            this.length = length;
+            this.fromPort = fromPort;
+            this.pool = null;
+        }
+
+        Message(BufferPool pool) {
+            this.data = new byte[MAX_MESSAGE];
+            this.pool = pool;
+        }
+
+        public byte[] getData() { return data; }
+
+        public int getLength() { return length; }
+
+        /**
+         * @return the port of the endpoint that sent the message, to reply to
+         */
+        public int getFromPort() { return fromPort; }
+
+        /**
+         * @return the host the message was sent from, or null if the transport has only the one host
+         */
+        public InetAddress getFromAddress() { return fromAddress; }
+
+        /**
+         * @return the message as text
+         */
+        public String text() {
+            return new String(data, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Records what a transport received into the buffer.
+         *
+         * @return this message
+         */
+        Message received(int length, int fromPort) {
+            return received(length, null, fromPort);
+        }
+
+        Message received(int length, InetAddress fromAddress, int fromPort) {
+            this.length = length;
+            this.fromAddress = fromAddress;
+            this.fromPort = fromPort;
+            return this;
+        }
+
+        /**
+         * Fills the buffer with text as UTF-8, cut off at the size of the buffer. The protocol is ASCII, which is
+         * copied a character at a time without going through an encoder.
+         *
+         * @return the number of bytes written
+         */
+        int encode(String text) {
+            int count = Math.min(text.length(), data.length);
+            int i = 0;
+            while (i < count) {
+                char c = text.charAt(i);
+                if (c >= 0x80) break;
+                data[i++] = (byte) c;
+            }
+            if (i < count) {
+                byte[] rest = text.substring(i).getBytes(StandardCharsets.UTF_8);
+                int kept = Math.min(rest.length, data.length - i);
+                System.arraycopy(rest, 0, data, i, kept);
+                i += kept;
+            }
+            return length = i;
+        }
+
+        void reset() {
+            length = 0;
+            fromAddress = null;
+            fromPort = 0;
+            released = false;
+        }
+
+        @Override
+        public void close() {
+            if (pool == null || released) return;
+            released = true;
+            pool.release(this);
+        }
+    }
+
+    /**
+     * @return the port the endpoint receives on
+     */
+    int getLocalPort();
+
+    /**
+     * Sends a message, without waiting for it to be received. The data may be reused once send returns.
+     *
+     * @param data the message
+     * @param length the number of bytes of data to send
+     * @param port the port of the endpoint to send to
+     * @throws IOException if the endpoint is closed or the message cannot be sent
+     */
+    void send(byte[] data, int length, int port) throws IOException;
+
+    /**
+     * Sends a message to a port on a given host.
+     *
+     * @param host the host to send to, or null for the Scheduler's host; transports with only the one host
+     *             ignore it
+     * @see #send(byte[], int, int)
+     */
+    void send(byte[] data, int length, InetAddress host, int port) throws IOException;
+
+    /**
+     * Sends a text message.
+     *
+     * @param message the message
+     * @param port the port of the endpoint to send to
+     * @throws IOException if the endpoint is closed or the message cannot be sent
+     */
+    default void send(String message, int port) throws IOException {
+        send(message, null, port);
+    }
+
+    /**
+     * Sends a text message to a port on a given host.
+     *
+     * @param host the host to send to, or null for the Scheduler's host
+     * @throws IOException if the endpoint is closed or the message cannot be sent
+     */
+    default void send(String message, InetAddress host, int port) throws IOException {
+        try (Message buffer = BufferPool.SHARED.acquire()) {
+            send(buffer.getData(), buffer.encode(message), host, port);
+        }
+    }
+
+    /**
+     * Sends a text message back to where a request came from.
+     *
+     * @param request the request, still open
+     * @throws IOException if the endpoint is closed or the message cannot be sent
+     */
+    default void reply(Message request, String message) throws IOException {
+        send(message, request.getFromAddress(), request.getFromPort());
+    }
+
+    /**
+     * Waits for the next message. The message may be in a pooled buffer, which the caller closes once done
+     * with it.
+     *
+     * @return the message
+     * @throws java.net.SocketTimeoutException if the timeout passes first
+     * @throws IOException if the endpoint is closed, or closes while waiting
+     */
+    Message receive() throws IOException;
+
+    /**
+     * Waits for the next message and releases its buffer once it is read as text.
+     *
+     * @return the message as text
+     * @throws java.net.SocketTimeoutException if the timeout passes first
+     * @throws IOException if the endpoint is closed, or closes while waiting
+     */
+    default String receiveText() throws IOException {
+        try (Message message = receive()) {
+            return message.text();
+        }
+    }
+
+    /**
+     * @param millis how long receive waits for a message, 0 to wait forever
+     * @throws IOException if the endpoint is closed
+     */
+    void setTimeout(int millis) throws IOException;
+
+    boolean isClosed();
+
+    /**
+     * Closes the endpoint, waking any thread waiting to receive.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The TransportBenchmark class measures request/reply round trips over each transport, the pattern of
+ * DroneSubsystem.rpc_send: one endpoint sends a message the size of a drone status report and waits for the
+ * echo from another. The echo runs on its own thread, or in another process started with the echo argument,
+ * which is how shared memory is meant to be used. Round-trip percentiles are reported in microseconds after
+ * a warm-up, with the bytes the client and an in-process echo allocate per round trip.
+ *
+ * Usage: java TransportBenchmark [transports=udp,memory,shm] [roundTrips=N] [size=BYTES] [peer=PORT]
+ *        java TransportBenchmark echo [transport=udp|shm] [port=PORT]
+ */
+public class TransportBenchmark {
+    private static final int ECHO_PORT = 9100;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length == 2) options.put(parts[0].trim(), parts[1].trim());
+        }
+        int port = Integer.parseInt(options.getOrDefault("port", options.getOrDefault("peer", String.valueOf(ECHO_PORT))));
+        if (args.length > 0 && args[0].equals("echo")) {
+            try (Transport endpoint = factory(options.getOrDefault("transport", "shm")).open(port)) {
+                System.out.println("Echoing on port " + port);
+                echo(endpoint);
+            }
+            return;
+        }
+
+        int roundTrips = Integer.parseInt(options.getOrDefault("roundTrips", "100000"));
+        byte[] request = new byte[Integer.parseInt(options.getOrDefault("size", "160"))];
+        Arrays.fill(request, (byte) 'x');
+        boolean remote = options.containsKey("peer");
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        System.out.printf("%-8s %12s %10s %10s %10s %10s %12s%n", "transport", "round trips", "p50(us)", "p99(us)",
+                "p999(us)", "max(us)", "alloc(B/rt)");
+        for (String name : options.getOrDefault("transports", remote ? "shm" : "udp,memory,shm").split(",")) {
+            Transport.Factory transports = factory(name.trim());
+            Transport server = remote ? null : transports.open(port);
+            Thread echo = null;
+            if (server != null) {
+                echo = new Thread(() -> echo(server), "ECHO");
+                echo.setDaemon(true);
+                echo.start();
+            }
+            try (Transport client = transports.open(0)) {
+                client.setTimeout(1000);
+                roundTrips(client, port, request, roundTrips / 10, null);
+                LatencyHistogram histogram = new LatencyHistogram();
+                long allocatedBefore = allocated(threads, echo);
+                roundTrips(client, port, request, roundTrips, histogram);
+                long allocated = allocated(threads, echo) - allocatedBefore;
+                System.out.printf("%-8s %12d %10.1f %10.1f %10.1f %10.1f %12.1f%n", name, histogram.getCount(),
+                        histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                        histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMax() / 1000.0,
+                        (double) allocated / roundTrips);
+            } finally {
+                if (server != null) server.close();
+                if (echo != null) echo.join();
+            }
+        }
+    }
+
+    private static Transport.Factory factory(String name) throws IOException {
+        switch (name) {
+            case "udp": return Transport.UDP;
+            case "memory": return new InMemoryTransport.Network();
+            case "shm": return new SharedMemoryTransport.Network();
+            default: throw new IllegalArgumentException("Unknown transport " + name);
+        }
+    }
+
+    /**
+     * @return the bytes allocated so far by this thread and the echo thread, if there is one
+     */
+    private static long allocated(com.sun.management.ThreadMXBean threads, Thread echo) {
+        long bytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        return echo == null ? bytes : bytes + threads.getThreadAllocatedBytes(echo.getId());
+    }
+
+    private static void roundTrips(Transport client, int port, byte[] request, int count, LatencyHistogram histogram) throws IOException {
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            client.send(request, request.length, port);
+            client.receive().close();
+            if (histogram != null) histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    private static void echo(Transport endpoint) {
+        try {
+            while (true) {
+                try (Transport.Message message = endpoint.receive()) {
+                    endpoint.send(message.getData(), message.getLength(), message.getFromPort());
+                }
+            }
+        } catch (SocketException e) {
+            // Closed
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
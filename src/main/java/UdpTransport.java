@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+
+/**
+ * A Transport endpoint over a UDP socket. Ports without a host are on the Scheduler's host, and received
+ * messages carry the address they came from so replies go back to the sender's machine.
+ */
+public class UdpTransport implements Transport {
+    private final DatagramSocket socket;
+    private final InetAddress defaultHost;
+    // One packet per direction, pointed at each buffer in turn instead of a packet per message
+    private final DatagramPacket sendPacket;
+    private final DatagramPacket receivePacket = new DatagramPacket(new byte[0], 0);
+
+    /**
+     * Opens an endpoint bound to the configured address, sending to the configured Scheduler host.
+     *
+     * @param port the port to receive on, or 0 for any free port
+     * @throws SocketException if the port is in use
+     */
+    public UdpTransport(int port) throws SocketException {
+        this(port, DeploymentConfig.get().getBindAddress(), DeploymentConfig.get().getSchedulerHost());
+    }
+
+    /**
+     * @param port the port to receive on, or 0 for any free port
+     * @param bindAddress the local address to receive on, or null for every interface
+     * @param defaultHost the host of ports sent to without a host
+     * @throws SocketException if the port is in use
+     */
+    public UdpTransport(int port, InetAddress bindAddress, InetAddress defaultHost) throws SocketException {
+        this.socket = new DatagramSocket(port, bindAddress);
+        this.defaultHost = defaultHost;
+        this.sendPacket = new DatagramPacket(new byte[0], 0, defaultHost, 0);
+    }
+
+    @Override
+    public int getLocalPort() {
+        return socket.getLocalPort();
+    }
+
+    @Override
+    public void send(byte[] data, int length, int port) throws IOException {
+        send(data, length, null, port);
+    }
+
+    @Override
+    public void send(byte[] data, int length, InetAddress host, int port) throws IOException {
+        synchronized (sendPacket) {
+            sendPacket.setData(data, 0, length);
+            sendPacket.setAddress(host != null ? host : defaultHost);
+            sendPacket.setPort(port);
+            socket.send(sendPacket);
+        }
+    }
+
+    @Override
+    public Message receive() throws IOException {
+        Message message = BufferPool.SHARED.acquire();
+        try {
+            synchronized (receivePacket) {
+                receivePacket.setData(message.getData());
+                socket.receive(receivePacket);
+                return message.received(receivePacket.getLength(), receivePacket.getAddress(), receivePacket.getPort());
+            }
+        } catch (IOException e) {
+            message.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void setTimeout(int millis) throws IOException {
+        socket.setSoTimeout(millis);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return socket.isClosed();
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Distances and flight times between the centres of a fixed set of zones, including the base, shared by
+ * dispatch and the drone simulation. The matrix is symmetric, so only its lower triangle is kept, as
+ * floats. Up to DENSE_LIMIT zones the triangle is computed once when the matrix is built; larger maps are
+ * split into square tiles of the triangle that are computed the first time a distance in them is asked for,
+ * so a map of many zones only pays for the pairs that dispatch actually looks at.
+ *
+ * The matrix is immutable once built apart from the lazily filled tiles, which are published atomically, so
+ * every method may be called from any thread.
+ */
+public class ZoneDistances {
+    static final int DENSE_LIMIT = 2048; // zones kept as one precomputed triangle, about 8 MB of floats
+    private static final int TILE = 64;
+
+    private final Zone[] zones;
+    private final IntIntMap indexes; // zone ID -> index in zones
+    private final double[] centerX, centerY;
+    private final double speed;
+    private final float[] triangle;                 // dense form: distance (i, j), j <= i, at i * (i + 1) / 2 + j
+    private final AtomicReferenceArray<float[]> tiles; // tiled form: tile (ti, tj), tj <= ti, at ti * (ti + 1) / 2 + tj
+
+    /**
+     * @param zones the zones, with the base given as a zone of its own, each with a distinct ID
+     * @param speed the speed of a drone, in metres per second, for flight times
+     */
+    public ZoneDistances(Collection<Zone> zones, double speed) {
+        this(zones, speed, DENSE_LIMIT);
+    }
+
+    /**
+     * @param zones the zones, with the base given as a zone of its own, each with a distinct ID
+     * @param speed the speed of a drone, in metres per second, for flight times
+     * @param denseLimit the most zones kept as one precomputed triangle, above which tiles are used
+     */
+    ZoneDistances(Collection<Zone> zones, double speed, int denseLimit) {
+        int count = zones.size();
+        this.zones = zones.toArray(new Zone[0]);
+        this.indexes = new IntIntMap(count);
+        this.centerX = new double[count];
+        this.centerY = new double[count];
+        this.speed = speed;
+        for (int i = 0; i < count; i++) {
+            Zone zone = this.zones[i];
+            if (indexes.get(zone.getID()) != IntIntMap.MISSING) {
+                throw new IllegalArgumentException("Zone " + zone.getID() + " is given twice");
+            }
+            indexes.put(zone.getID(), i);
+            centerX[i] = (zone.getStartX() + zone.getEndX()) / 2;
+            centerY[i] = (zone.getStartY() + zone.getEndY()) / 2;
+        }
+
+        if (count <= denseLimit) {
+            triangle = new float[count * (count + 1) / 2];
+            for (int i = 0, cell = 0; i < count; i++) {
+                for (int j = 0; j <= i; j++) {
+                    triangle[cell++] = (float) Math.hypot(centerX[i] - centerX[j], centerY[i] - centerY[j]);
+                }
+            }
+            tiles = null;
+        } else {
+            int side = (count + TILE - 1) / TILE;
+            triangle = null;
+            tiles = new AtomicReferenceArray<>(side * (side + 1) / 2);
+        }
+    }
+
+    /**
+     * @return the number of zones in the matrix
+     */
+    public int size() {
+        return zones.length;
+    }
+
+    /**
+     * @return true if distances are computed a tile at a time when first needed
+     */
+    public boolean isTiled() {
+        return tiles != null;
+    }
+
+    /**
+     * @param zoneID a zone
+     * @return the index of the zone in the matrix, or -1 if it is not in the matrix
+     */
+    public int indexOf(int zoneID) {
+        return indexes.get(zoneID);
+    }
+
+    public Zone zoneAt(int index) { return zones[index]; }
+
+    public double centerX(int index) { return centerX[index]; }
+
+    public double centerY(int index) { return centerY[index]; }
+
+    /**
+     * @param from the index of a zone
+     * @param to the index of a zone
+     * @return the distance between the centres of the zones, in metres
+     */
+    public float distanceAt(int from, int to) {
+        int i = Math.max(from, to);
+        int j = Math.min(from, to);
+        if (triangle != null) return triangle[i * (i + 1) / 2 + j];
+
+        int ti = i / TILE, tj = j / TILE;
+        int tileIndex = ti * (ti + 1) / 2 + tj;
+        float[] tile = tiles.get(tileIndex);
+        if (tile == null) {
+            tile = computeTile(ti, tj);
+            if (!tiles.compareAndSet(tileIndex, null, tile)) tile = tiles.get(tileIndex);
+        }
+        return tile[(i - ti * TILE) * TILE + (j - tj * TILE)];
+    }
+
+    /**
+     * @param fromZoneID a zone in the matrix
+     * @param toZoneID a zone in the matrix
+     * @return the distance between the centres of the zones, in metres
+     * @throws IllegalArgumentException if either zone is not in the matrix
+     */
+    public float distance(int fromZoneID, int toZoneID) {
+        return distanceAt(require(fromZoneID), require(toZoneID));
+    }
+
+    /**
+     * The distance between the centres of two zones, from the matrix if both are the zones it was built from,
+     * computed otherwise, such as for the point a drone stopped at between zones.
+     *
+     * @return the distance in metres
+     */
+    public double distance(Zone from, Zone to) {
+        int i = indexOf(from.getID());
+        int j = indexOf(to.getID());
+        if (i >= 0 && j >= 0 && zones[i].equals(from) && zones[j].equals(to)) return distanceAt(i, j);
+        return Math.hypot((to.getStartX() + to.getEndX()) / 2 - (from.getStartX() + from.getEndX()) / 2,
+                (to.getStartY() + to.getEndY()) / 2 - (from.getStartY() + from.getEndY()) / 2);
+    }
+
+    /**
+     * @return the time a drone takes to fly between the centres of two zones in the matrix, in seconds
+     * @throws IllegalArgumentException if either zone is not in the matrix
+     */
+    public double eta(int fromZoneID, int toZoneID) {
+        return distance(fromZoneID, toZoneID) / speed;
+    }
+
+    private int require(int zoneID) {
+        int index = indexes.get(zoneID);
+        if (index < 0) throw new IllegalArgumentException("Zone " + zoneID + " is not in the distance matrix");
+        return index;
+    }
+
+    private float[] computeTile(int ti, int tj) {
+        float[] tile = new float[TILE * TILE];
+        for (int i = ti * TILE, rowEnd = Math.min(zones.length, i + TILE); i < rowEnd; i++) {
+            for (int j = tj * TILE, columnEnd = Math.min(zones.length, j + TILE); j < columnEnd; j++) {
+                tile[(i - ti * TILE) * TILE + (j - tj * TILE)] =
+                        (float) Math.hypot(centerX[i] - centerX[j], centerY[i] - centerY[j]);
+            }
+        }
+        return tile;
+    }
+}
@@ -14,6 +14,16 @@ public class ModifiedScheduler extends Scheduler {
         this.fireToDroneBuffer = new BoundedBuffer();
     }
 
+    /**
+     * A ModifiedScheduler on its own transport, so it does not take the Scheduler's UDP port
+     * @param transports opens the Scheduler's endpoints
+     */
+    public ModifiedScheduler(Transport.Factory transports) {
+        super(transports);
+        this.drones = new ArrayList<>();
+        this.fireToDroneBuffer = new BoundedBuffer();
+    }
+
     public List<DroneStatus> getDrones(){
         return this.drones;
     }
@@ -137,6 +147,7 @@ public class ModifiedScheduler extends Scheduler {
 
     @Override
     public void updateDroneState(int droneID, String newState) {
+        super.updateDroneState(droneID, newState); // drones registered in the fleet itself
         synchronized (this.drones) {
             for (DroneStatus drone : this.drones) {
                 if (drone.getDroneID() == droneID) {
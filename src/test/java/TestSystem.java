@@ -2,7 +2,10 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -530,4 +533,879 @@ public class TestSystem {
         assertTrue(freshDrone.toString().contains("[STATE: IDLE]"),
                 "A newly created drone should have its state machine in the IDLE state, reflected in toString(). Actual: " + freshDrone.toString());
     }
+
+    // METRICS TESTS
+    @Test
+    void testLatencyHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000); // 1us to 100ms in nanoseconds
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000_000L, histogram.getMax(), "Max should be exact");
+        assertEquals(50_000_000, histogram.getValueAtPercentile(50), 50_000_000 * 0.01, "p50 should be within 1%");
+        assertEquals(99_000_000, histogram.getValueAtPercentile(99), 99_000_000 * 0.01, "p99 should be within 1%");
+        assertEquals(99_900_000, histogram.getValueAtPercentile(99.9), 99_900_000 * 0.01, "p999 should be within 1%");
+    }
+
+    @Test
+    void testLatencyHistogramMergeAndIntervalSnapshot() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        first.record(20);
+        second.record(5_000_000);
+
+        first.merge(second);
+        assertEquals(3, first.getCount(), "Merged histogram should hold every value");
+        assertEquals(5_000_000, first.getMax());
+
+        LatencyHistogram interval = first.intervalSnapshot();
+        assertEquals(3, interval.getCount(), "Interval snapshot should hold the values recorded so far");
+        assertEquals(0, first.getCount(), "Histogram should be empty after an interval snapshot");
+        assertEquals(0, first.getValueAtPercentile(99), "Empty histogram should report 0");
+    }
+
+    @Test
+    void testMetricCodeConversions() {
+        assertEquals(1_500_000L, MetricCode.SCHEDULER_RESPONSE.toRecorded(1.5), "Times are recorded in nanoseconds");
+        assertEquals(46098L, MetricCode.DRONE_TRAVELS.toRecorded(460.98), "Distances are recorded in centimetres");
+        assertEquals(1.5, MetricCode.SCHEDULER_RESPONSE.toReported(1_500_000L), 0.0001);
+        assertNull(MetricCode.parse("NOT_A_CODE"), "Unknown codes should not throw");
+    }
+
+    @Test
+    void testLogAnalyzerParsesLinesWithoutSplitting() {
+        String log = "20:25:20.321, DRONE 700, DRONE_RESPONSE, 473.0, Response time of DroneSubsystem (ms)\n"
+                + "20:25:20.403, [DRONE 700 -> ZONE 1], DRONE_TRAVELS, 460.98, Required distance to reach target fire (m)\n"
+                + "20:25:20.500, FIRE 1, FIRE_EXTINGUISHED, 1.2345E7, Time taken to extinguish fire (ms)\n"
+                + "20:25:20.600, DRONE 700, DRONE_RESPONSE, 27.0, Response time of DroneSubsystem (ms)";
+        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.wrap(log.getBytes());
+        LogAnalyzer.Accumulator accumulator = new LogAnalyzer.Accumulator();
+        LogAnalyzer.parseLines(buffer, 0, buffer.limit(), accumulator, true);
+
+        LogAnalyzer.EntityStats drone = accumulator.entities(MetricCode.DRONE_RESPONSE).get("DRONE 700");
+        assertNotNull(drone, "Drone entity should be accumulated");
+        assertEquals(2, drone.count, "Both drone responses, including the unterminated last line, should be counted");
+        assertEquals(250.0, drone.mean(), 0.0001);
+        assertEquals(460.98, accumulator.entities(MetricCode.DRONE_TRAVELS).get("[DRONE 700 -> ZONE 1]").last, 0.0001);
+        assertEquals(12_345_000.0, accumulator.entities(MetricCode.FIRE_EXTINGUISHED).get("FIRE 1").last, 0.0001,
+                "Exponent notation written by Double.toString should be parsed");
+    }
+
+    @Test
+    public void testLiveMetricsExpiresOldBuckets() {
+        LiveMetrics live = new LiveMetrics(10);
+        long start = 1_000_000_000L;
+        live.add(start, "FIRE 1", MetricCode.FIRE_REPORTED, 1);
+        live.add(start, "FIRE 2", MetricCode.FIRE_REPORTED, 1);
+        live.add(start + 500, "DRONE 100", MetricCode.QUEUE_WAIT, 40.0);
+        live.add(start + 2_000, "DRONE 100", MetricCode.DRONE_RESPONSE, 100.0);
+        live.add(start + 3_000, "FIRE 1", MetricCode.FIRE_EXTINGUISHED, 30_000.0);
+
+        assertEquals(1, live.getFiresInFlight(), "One of the two reported fires is still burning");
+        assertEquals(0.1, live.getFireThroughput(start + 5_000), 0.0001);
+        assertEquals(0.5, live.getEventRate(start + 5_000), 0.0001);
+        assertTrue(live.summarize(start + 5_000).contains("DRONE 100: response n=1 mean=100.00 ms"));
+
+        // Ten seconds after the first events, only the later events are still in the window
+        assertEquals(0.2, live.getEventRate(start + 10_000), 0.0001);
+        assertEquals(0.0, live.getEventRate(start + 20_000), 0.0001);
+        assertFalse(live.summarize(start + 20_000).contains("DRONE 100"));
+    }
+
+    @Test
+    public void testSchedulerMetricsExportsPrometheusText() {
+        SchedulerMetrics metrics = new SchedulerMetrics();
+        metrics.fireQueued();
+        metrics.fireQueued();
+        metrics.fireDequeued();
+        metrics.droneState(1, "IDLE");
+        metrics.droneState(2, "IDLE");
+        metrics.droneState(2, "USED");
+        metrics.messageHandled("FIRE", 2_000_000);
+        metrics.messageHandled("FIRE", 4_000_000);
+        metrics.messageHandled("UNKNOWN", 1_000_000);
+
+        assertEquals(1, metrics.getQueuedFires());
+        assertEquals(Integer.valueOf(1), metrics.getDroneStateCounts().get("USED"));
+        assertEquals(Long.valueOf(2), metrics.getMessageCounts().get("FIRE"));
+        assertEquals(4.0, metrics.getResponseTimeMillis("FIRE", 99), 0.05);
+
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("scheduler_queued_fires 1\n"));
+        assertTrue(text.contains("scheduler_drones{state=\"IDLE\"} 1\n"));
+        assertTrue(text.contains("scheduler_messages_total{type=\"FIRE\"} 2\n"));
+        assertTrue(text.contains("scheduler_response_seconds_count{type=\"FIRE\"} 2\n"));
+        assertTrue(text.contains("scheduler_response_seconds_sum{type=\"FIRE\"} 0.006\n"));
+    }
+
+    @Test
+    public void testTraceIdCarriedInFireMessages() {
+        FireEvent fire = new FireEvent(7, "10:00", 2, "FIRE_DETECTED", "Low", "NONE");
+        fire.setTraceId("00ab12cd34ef5678");
+        String message = "NEW FIRE: " + fire;
+
+        assertEquals("00ab12cd34ef5678", Tracer.parseTraceId(message));
+        assertEquals(fire.toString(), modScheduler.extractFireEvent("FAULT: " + fire));
+
+        FireEvent parsed = drone.parseDataToFireEvent(message);
+        assertNotNull(parsed);
+        assertEquals("00ab12cd34ef5678", parsed.getTraceId());
+
+        // Untraced fires keep the original message format
+        FireEvent untraced = new FireEvent(8, "10:00", 2, "FIRE_DETECTED", "Low", "NONE");
+        assertFalse(untraced.toString().contains("trace"));
+        assertNull(drone.parseDataToFireEvent("NEW FIRE: " + untraced).getTraceId());
+    }
+
+    @Test
+    public void testLogSkipsMessagesBelowLevel() {
+        Log.Level previous = Log.getLevel();
+        try {
+            Log.setLevel(Log.Level.WARN);
+            boolean[] built = {false, false};
+            Log.info(() -> { built[0] = true; return "info"; });
+            Log.warn(() -> { built[1] = true; return "warning"; });
+            assertFalse(built[0], "Disabled messages should not be built");
+            assertTrue(built[1]);
+            assertFalse(Log.isEnabled(Log.Level.DEBUG));
+            assertTrue(Log.isEnabled(Log.Level.ERROR));
+            Log.flush();
+        } finally {
+            Log.setLevel(previous);
+        }
+    }
+
+    @Test
+    public void testDroneStateMachineValidatesTransitionsAndRecordsDwell() {
+        DroneStateMachine machine = new DroneStateMachine(null);
+        assertEquals(DroneState.IDLE, machine.getState());
+        long start = System.nanoTime();
+        long enRouteBefore = DroneStateMetrics.getTransitions(DroneState.IDLE, DroneState.EN_ROUTE);
+
+        machine.setState(DroneState.EN_ROUTE, start + 1_000);
+        machine.setState(DroneState.DROPPING_AGENT, start + 4_000);
+        assertThrows(IllegalStateException.class, () -> machine.setState(DroneState.EN_ROUTE, start + 5_000),
+                "A drone dropping agent must complete, refill or fault before travelling again");
+
+        machine.setState(DroneState.COMPLETE, start + 5_000);
+        machine.setState(DroneState.IDLE, start + 5_000);
+        assertEquals(DroneState.IDLE, machine.getState());
+        assertEquals(4, machine.getTransitionCount());
+        assertEquals(3_000, machine.getDwellNanos(DroneState.EN_ROUTE));
+        assertEquals(1_000, machine.getDwellNanos(DroneState.DROPPING_AGENT));
+        long idle = machine.getDwellNanos(DroneState.IDLE);
+        assertEquals(4_000.0 / (4_000 + idle), machine.getUtilization(), 1e-9);
+        assertEquals(enRouteBefore + 1, DroneStateMetrics.getTransitions(DroneState.IDLE, DroneState.EN_ROUTE));
+    }
+
+    @Test
+    public void testFireEventCompactFieldsKeepOriginalFormat() {
+        FireEvent csvFire = new FireEvent(3, "14:03:59", 2, "FIRE_DETECTED", "Low", "None");
+        assertEquals("14:03:59", csvFire.getTime());
+        assertEquals(14 * 3600 + 3 * 60 + 59, csvFire.getSecondsOfDay());
+        assertEquals(FireEvent.Severity.LOW, csvFire.getSeverityLevel());
+
+        // Values without a compact form are written back exactly as they were given
+        FireEvent odd = new FireEvent(4, "2025-03-28 14:00:00", 5, "DRONE_REQUEST", "HIGH", "Fault");
+        assertEquals("2025-03-28 14:00:00", odd.getTime());
+        assertEquals("HIGH", odd.getSeverity());
+        assertEquals(30, odd.getWaterRequired());
+        assertFalse(odd.getFailureFlag());
+        assertEquals(odd.toString(), FireEvent.parse("NEW FIRE: " + odd).toString());
+    }
+
+    @Test
+    public void testFireEventStoreRoundTripsFires() {
+        FireEventStore store = new FireEventStore(2);
+        FireEvent traced = new FireEvent(1, "10:00", 3, "FIRE_DETECTED", "Moderate", "FAULT");
+        traced.setTraceId("00ab12cd34ef5678");
+        FireEvent odd = new FireEvent(2, "noon", 4, "TEST_EVENT", "Unknown", null);
+        FireEvent handoff = new FireEvent(1, "10:00", 3, "FIRE_DETECTED", "Moderate", "HANDOFF");
+
+        store.add(traced);
+        store.add(odd);
+        int handoffIndex = store.add(handoff);
+        assertEquals(3, store.size());
+        assertEquals(handoffIndex, store.indexOf(1), "The latest fire with an ID should be found");
+        assertEquals(traced.toString(), store.get(0).toString());
+        assertEquals(odd.toString(), store.get(1).toString());
+
+        store.setRemainingWaterNeeded(0, 5);
+        store.setState(0, FireEvent.State.EXTINGUISHED);
+        FireEventStore.View view = store.view().moveTo(0);
+        assertEquals(1, view.getFireID());
+        assertEquals(3, view.getZoneId());
+        assertEquals(600 * 60, view.getSecondsOfDay());
+        assertEquals(FireEvent.Severity.MODERATE, view.getSeverity());
+        assertEquals(FireEvent.Failure.FAULT, view.getFailure());
+        assertEquals(FireEvent.State.EXTINGUISHED, view.getState());
+        assertEquals(5, view.getRemainingWaterNeeded());
+        assertEquals(-1, view.moveTo(1).getSecondsOfDay());
+    }
+
+    @Test
+    public void testFleetStoreScansAndClaimsDrones() {
+        FleetStore fleet = new FleetStore(2);
+        for (int id = 1; id <= 100; id++) {
+            fleet.register(id, 6000 + id, id % 10 == 0 ? FleetStore.IDLE : FleetStore.EN_ROUTE);
+            fleet.setPosition(id - 1, id, 0);
+        }
+        assertEquals(0, fleet.register(1, 7001, FleetStore.EN_ROUTE), "A drone checking in again keeps its index");
+        assertEquals(100, fleet.size());
+        assertEquals(10, fleet.countInState(FleetStore.IDLE));
+        assertEquals(7001, fleet.getPort(0));
+
+        // Nearest idle drone to x = 47
+        FleetStore.DroneScorer nearest = (droneID, state, x, y, agentLevel) ->
+                state == FleetStore.IDLE ? -Math.abs(x - 47) : Double.NEGATIVE_INFINITY;
+        assertEquals(50, fleet.getDroneID(fleet.findBest(nearest)));
+        int claimed = fleet.claimBest(nearest, FleetStore.USED);
+        assertEquals(50, fleet.getDroneID(claimed));
+        assertEquals("USED", fleet.toStatus(claimed).getState());
+        assertEquals(40, fleet.getDroneID(fleet.claimBest(nearest, FleetStore.USED)), "A claimed drone is not chosen again");
+        assertFalse(fleet.compareAndSetState(claimed, FleetStore.IDLE, FleetStore.USED));
+        fleet.register(50, 6050, FleetStore.IDLE);
+        assertEquals(FleetStore.USED, fleet.getState(claimed), "A READY does not free a drone that has been sent a fire");
+        fleet.setState(claimed, FleetStore.COMPLETE);
+        fleet.register(50, 6050, FleetStore.IDLE);
+        assertEquals(FleetStore.IDLE, fleet.getState(claimed), "The READY after its COMPLETE does");
+        assertEquals(-1, fleet.findBest((droneID, state, x, y, agentLevel) -> Double.NEGATIVE_INFINITY));
+        assertEquals(FleetStore.UNKNOWN, FleetStore.stateCode("SLEEPING"));
+    }
+
+    @Test
+    public void testHashedTimerWheelExpiresMissionDeadlines() {
+        HashedTimerWheel wheel = new HashedTimerWheel(10, 8, 0);
+        List<Integer> expired = new ArrayList<>();
+        wheel.schedule(1, 25);
+        wheel.schedule(2, 205); // more than one turn of the wheel away
+        wheel.schedule(3, 25);
+        wheel.schedule(3, 95); // a heartbeat moves the deadline
+        wheel.schedule(4, 50);
+        assertTrue(wheel.cancel(4), "A completed mission cancels its timer");
+        assertEquals(3, wheel.size());
+
+        assertEquals(0, wheel.advance(29, expired::add), "Timers must not fire before their deadline");
+        assertEquals(1, wheel.advance(30, expired::add));
+        assertEquals(Integer.valueOf(1), expired.get(0));
+        wheel.advance(199, expired::add);
+        assertEquals(2, expired.size());
+        assertEquals(Integer.valueOf(3), expired.get(1));
+        assertEquals(205, wheel.getDeadline(2));
+        wheel.advance(210, expired::add);
+        assertEquals(Integer.valueOf(2), expired.get(2));
+        assertEquals(0, wheel.size());
+        assertEquals(-1, wheel.getDeadline(2));
+        assertFalse(wheel.cancel(2));
+    }
+
+    @Test
+    public void testExpiredMissionIsHandedOff() throws Exception {
+        InMemoryTransport.Network network = new InMemoryTransport.Network();
+        ModifiedScheduler scheduler = new ModifiedScheduler(network);
+        Thread schedulerThread = new Thread(scheduler);
+        schedulerThread.start();
+        try (Transport droneEndpoint = network.open(0)) {
+            droneEndpoint.setTimeout(2000);
+            int port = droneEndpoint.getLocalPort();
+            FireEvent fire = new FireEvent(61, "12:00", 3, "FIRE_DETECTED", "High", "None");
+            scheduler.getFireLedger().open(61, 30);
+            FleetStore fleet = scheduler.getFleet();
+            int index = fleet.register(903, port, FleetStore.USED);
+            scheduler.startMission(903, FireLedger.withShare("NEW FIRE: " + fire, 15));
+            assertTrue(scheduler.getMissionDeadline(903) > 0);
+
+            scheduler.missionExpired(903);
+            assertEquals(FleetStore.FAULTED, fleet.getState(index), "A drone that missed its deadline is assumed lost");
+            assertEquals(-1, fleet.getAssignedFire(index));
+            assertEquals(1, scheduler.getMetrics().getExpiredMissions());
+            assertEquals(1, scheduler.fireToDroneBuffer.getCount());
+            String handoff = (String) scheduler.fireToDroneBuffer.removeFirst();
+            assertTrue(handoff.contains("failure='HANDOFF'"), handoff);
+            assertEquals(15, FireLedger.parseShare(handoff), "The drone's share is handed off, not the whole fire");
+            scheduler.missionExpired(903);
+            assertEquals(0, scheduler.fireToDroneBuffer.getCount(), "A mission expires once");
+
+            // The lost drone turns up after all: its completion no longer counts, the handoff delivers the share
+            droneEndpoint.send("[DRONE: 903][PORT: " + port + "][STATE: COMPLETE] COMPLETED: Fire has been extinguished " + fire,
+                    DeploymentConfig.get().getSchedulerPort());
+            assertEquals("FIRE EXTINGUISHED: FireID=61", droneEndpoint.receiveText());
+            assertEquals(30, scheduler.getFireLedger().getRemaining(61), "A late COMPLETE delivers nothing");
+            assertEquals(0, scheduler.getMetrics().getAwaitingConfirmation());
+
+            droneEndpoint.send("[DRONE: 903][PORT: " + port + "][STATE: FAULTED] FAULT: This Fire has failed with " + fire,
+                    DeploymentConfig.get().getSchedulerPort());
+            long waitUntil = System.nanoTime() + 2_000_000_000L;
+            while (scheduler.getMetrics().getMessageCounts().get("FAULT") == 0 && System.nanoTime() < waitUntil) {
+                Thread.sleep(5);
+            }
+            assertEquals(1L, (long) scheduler.getMetrics().getMessageCounts().get("FAULT"));
+            assertEquals(0, scheduler.fireToDroneBuffer.getCount(), "A late FAULT does not hand the fire off again");
+        } finally {
+            scheduler.shutdown();
+            schedulerThread.join(2000);
+        }
+    }
+
+    @Test
+    public void testFireQueueServesEarliestDeadlineFirst() {
+        long second = 1_000_000_000L;
+        FireQueue queue = new FireQueue(30 * second, 60 * second, 120 * second);
+        long now = System.nanoTime();
+        queue.add("low (old)", FireEvent.Severity.LOW, now - 100 * second);    // due in 20 s
+        queue.add("moderate", FireEvent.Severity.MODERATE, now);              // due in 60 s
+        queue.add("high", FireEvent.Severity.HIGH, now);                      // due in 30 s
+        queue.add("high (late)", FireEvent.Severity.HIGH, now - 40 * second); // 10 s overdue
+        queue.add("high 2", FireEvent.Severity.HIGH, now);                    // same deadline as "high", added later
+
+        assertEquals(5, queue.size());
+        assertEquals("high (late)", queue.poll());
+        assertEquals("low (old)", queue.poll(), "A Low fire that waited long enough goes ahead of new High fires");
+        assertEquals("high", queue.poll());
+        assertEquals("high 2", queue.poll());
+        assertEquals("moderate", queue.poll());
+        assertNull(queue.poll());
+
+        assertEquals(1, queue.getDeadlineMisses(FireEvent.Severity.HIGH));
+        assertEquals(0, queue.getDeadlineMisses(FireEvent.Severity.LOW));
+        assertEquals(Long.valueOf(1), queue.getDeadlineMisses().get("HIGH"));
+    }
+
+    @Test
+    public void testRetaskInterruptsTravelToFire() throws InterruptedException {
+        ModifiedDroneSubsystem retaskedDrone = new ModifiedDroneSubsystem(998);
+        FireEvent highFire = new FireEvent(40, "12:00", 2, "FIRE_DETECTED", "High", "None");
+        assertFalse(retaskedDrone.retask(highFire), "A drone that is not flying to a fire rejects a re-task");
+
+        retaskedDrone.getStateMachine().setState(DroneState.EN_ROUTE);
+        Thread flight = new Thread(() -> retaskedDrone.simulateDroneTravel(Scheduler.getZone(3)));
+        flight.start();
+        Thread.sleep(200);
+        assertTrue(retaskedDrone.retask(highFire));
+        flight.join(2000);
+        assertFalse(flight.isAlive(), "The re-task should interrupt the flight");
+        assertEquals(-1, retaskedDrone.getCurrentZone().getID(), "The drone stops between zones");
+
+        assertTrue(retaskedDrone.applyRetask());
+        assertEquals(2, retaskedDrone.getNextDestination().getID());
+        assertFalse(retaskedDrone.applyRetask());
+    }
+
+    @Test
+    public void testFireLedgerSplitsWaterAcrossDrones() {
+        assertEquals("[15, 15]", java.util.Arrays.toString(FireLedger.split(30, 15, 5)), "A High fire goes to two drones");
+        assertEquals("[10, 10]", java.util.Arrays.toString(FireLedger.split(20, 15, 5)));
+        assertEquals("[30]", java.util.Arrays.toString(FireLedger.split(30, 15, 1)), "With one free drone the fire is not split");
+        assertEquals("[30]", java.util.Arrays.toString(FireLedger.split(30, 15, 0)));
+
+        String share = FireLedger.withShare("NEW FIRE: " + new FireEvent(7, "10:00", 2, "FIRE_DETECTED", "High", "None"), 15);
+        assertEquals(15, FireLedger.parseShare(share));
+        assertEquals(-1, FireLedger.parseShare("NEW FIRE: no share"));
+        assertEquals(7, FireEvent.parse(share).getFireID());
+        assertEquals(5, FireLedger.parseShare(FireLedger.withShare(FireLedger.withoutShare(share), 5)),
+                "The rest of a partially delivered share replaces the share");
+
+        FireLedger ledger = new FireLedger();
+        ledger.open(7, 30);
+        assertFalse(ledger.deliver(7, 15));
+        assertEquals(15, ledger.getRemaining(7));
+        assertTrue(ledger.deliver(7, 15), "The fire is out once the combined drops reach what it needs");
+        assertFalse(ledger.deliver(7, 15), "A fire is only put out once");
+        ledger.close(7);
+        assertEquals(0, ledger.size());
+    }
+
+    @Test
+    public void testPartialDeliveryContinuesOrHandsOff() throws Exception {
+        InMemoryTransport.Network network = new InMemoryTransport.Network();
+        ModifiedScheduler scheduler = new ModifiedScheduler(network);
+        Thread schedulerThread = new Thread(scheduler);
+        schedulerThread.start();
+        try (Transport droneEndpoint = network.open(0)) {
+            droneEndpoint.setTimeout(2000);
+            int port = droneEndpoint.getLocalPort();
+            Zone zone = Scheduler.getZone(5);
+            double centerX = (zone.getStartX() + zone.getEndX()) / 2;
+            double centerY = (zone.getStartY() + zone.getEndY()) / 2;
+            FireEvent fire = new FireEvent(60, "12:00", 5, "FIRE_DETECTED", "High", "None");
+            scheduler.getFireHistory().add(fire);
+            scheduler.getFireLedger().open(60, 30);
+            FleetStore fleet = scheduler.getFleet();
+            int index = fleet.register(901, port, FleetStore.USED);
+            scheduler.startMission(901, FireLedger.withShare("NEW FIRE: " + fire, 30));
+
+            // No idle drone can get there sooner, so the drone refills and comes back itself
+            droneEndpoint.send("[DRONE: 901][PORT: " + port + "][STATE: DROPPING_AGENT] PARTIAL: delivered=15 remaining=15 " + fire,
+                    DeploymentConfig.get().getSchedulerPort());
+            assertEquals("PARTIAL CONTINUE", droneEndpoint.receiveText());
+            assertEquals(15, scheduler.getFireLedger().getRemaining(60));
+            assertEquals(15, scheduler.getFireHistory().get(scheduler.getFireHistory().indexOf(60)).getRemainingWaterNeeded());
+            assertEquals(centerX, fleet.getX(index), 1e-9, "The drone is still at the zone when it turns back to base");
+            assertEquals(centerY, fleet.getY(index), 1e-9);
+            double roundTripNanos = 2 * Scheduler.getDistances().distance(zone, DroneSubsystem.BASE_ZONE) / DroneSubsystem.SPEED * 1e9;
+            assertTrue(scheduler.getMissionDeadline(901) - System.nanoTime() > roundTripNanos,
+                    "The continued mission allows for the flight to base and back");
+            assertEquals(0, scheduler.fireToDroneBuffer.getCount());
+
+            // An idle drone next to the fire takes the rest instead
+            int idle = fleet.register(902, 6902, FleetStore.IDLE);
+            fleet.setPosition(idle, centerX, centerY);
+            droneEndpoint.send("[DRONE: 901][PORT: " + port + "][STATE: DROPPING_AGENT] PARTIAL: delivered=10 remaining=5 " + fire,
+                    DeploymentConfig.get().getSchedulerPort());
+            assertEquals("PARTIAL RELEASE", droneEndpoint.receiveText());
+            assertEquals(5, scheduler.getFireLedger().getRemaining(60));
+            assertEquals(1, scheduler.fireToDroneBuffer.getCount());
+            String handoff = (String) scheduler.fireToDroneBuffer.removeFirst();
+            assertTrue(handoff.contains("failure='HANDOFF'"), handoff);
+            assertEquals(5, FireLedger.parseShare(handoff), "Only the undelivered water is handed off");
+            assertEquals(2, scheduler.getFireHistory().size(), "The handoff is recorded in the fire history");
+            assertEquals(FleetStore.REFILLING, fleet.getState(index));
+            assertEquals(-1, fleet.getAssignedFire(index));
+            assertEquals(-1, scheduler.getMissionDeadline(901));
+        } finally {
+            scheduler.shutdown();
+            schedulerThread.join(2000);
+        }
+    }
+
+    @Test
+    public void testPrepositionEngineStagesDronesNearFires() {
+        Map<Integer, Zone> zones = new HashMap<>();
+        zones.put(1, new Zone(1, 0, 0, 200, 200));
+        zones.put(2, new Zone(2, 1000, 0, 1200, 200));
+        zones.put(3, new Zone(3, 2000, 0, 2200, 200));
+        PrepositionEngine engine = new PrepositionEngine(new ZoneDistances(zones.values(), DroneSubsystem.SPEED), 600, 5000);
+        assertEquals(0, engine.stagingPoints(1, 0).length, "Nothing is staged before any fire");
+
+        engine.recordFire(1, 0);
+        engine.recordFire(3, 0);
+        engine.recordFire(3, 0);
+        engine.recordFire(3, 0);
+        assertEquals(1.5, engine.getRate(3, 600), 1e-9, "A fire counts half after one half-life");
+        assertEquals(2100.0, engine.stagingPoints(1, 0)[0][0], 1e-9, "One drone waits by the busiest zone");
+
+        List<PrepositionEngine.Move> moves = engine.plan(new int[]{1, 2}, new double[]{0, 100}, new double[]{0, 100}, 0);
+        assertEquals(1, moves.size(), "The drone already at a staging point stays");
+        assertEquals(1, moves.get(0).droneID);
+        assertEquals(2100.0, moves.get(0).x, 1e-9);
+
+        PrepositionEngine tightBudget = new PrepositionEngine(new ZoneDistances(zones.values(), DroneSubsystem.SPEED), 600, 1000);
+        tightBudget.recordFire(3, 0);
+        assertTrue(tightBudget.plan(new int[]{1}, new double[]{0}, new double[]{0}, 0).isEmpty(),
+                "A flight longer than the idle budget is not made");
+
+        Map<Integer, Zone> grid = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            grid.put(i, new Zone(i, (i % 20) * 500, (i / 20) * 500, (i % 20) * 500 + 400, (i / 20) * 500 + 400));
+        }
+        PrepositionEngine wide = new PrepositionEngine(new ZoneDistances(grid.values(), DroneSubsystem.SPEED), 600, 1e9);
+        for (int i = 0; i < 200; i++) wide.recordFire(i, 0);
+        int[] fleet = new int[20000];
+        double[] origin = new double[fleet.length];
+        for (int d = 0; d < fleet.length; d++) fleet[d] = d;
+        assertEquals(32, wide.stagingPoints(fleet.length, 0).length, "Staging points are capped however many drones idle");
+        assertEquals(32, wide.plan(fleet, origin, origin, 0).size(), "Every capped point is filled from a large fleet");
+
+        ModifiedDroneSubsystem stagedDrone = new ModifiedDroneSubsystem(997);
+        assertTrue(stagedDrone.reposition(100, 100), "An idle drone accepts a staging flight");
+        stagedDrone.getStateMachine().setState(DroneState.EN_ROUTE);
+        assertFalse(stagedDrone.reposition(100, 100), "A drone on a mission does not");
+    }
+
+    @Test
+    public void testZoneDistancesMatchDenseAndTiled() {
+        List<Zone> zones = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            zones.add(new Zone(i, i * 100, (i % 7) * 300, i * 100 + 50, (i % 7) * 300 + 80));
+        }
+        ZoneDistances dense = new ZoneDistances(zones, 10);
+        ZoneDistances tiled = new ZoneDistances(zones, 10, 100);
+        assertFalse(dense.isTiled());
+        assertTrue(tiled.isTiled(), "Maps above the dense limit are computed a tile at a time");
+        for (int i = 0; i < 150; i += 7) {
+            for (int j = 0; j < 150; j += 11) {
+                assertEquals(dense.distance(i, j), tiled.distance(j, i), 1e-3);
+            }
+        }
+        assertEquals(700.0, dense.distance(0, 7), 1e-3);
+        assertEquals(70.0, dense.eta(7, 0), 1e-3);
+        assertEquals(0.0, dense.distance(5, 5), 0.0);
+        assertThrows(IllegalArgumentException.class, () -> dense.distance(0, 999));
+
+        Zone between = new Zone(-1, 0, 0, 0, 0);
+        assertEquals(Math.hypot(25, 40), dense.distance(between, zones.get(0)), 1e-9,
+                "A point between zones is measured directly");
+        assertEquals(Math.hypot(1050, 250), Scheduler.getDistances().distance(DroneSubsystem.BASE_ZONE, Scheduler.getZone(3)), 1e-3);
+    }
+
+    @Test
+    public void testSweepRunsIsolatedFleetSimulations() throws InterruptedException {
+        Map<Integer, Zone> zones = new HashMap<>();
+        zones.put(1, new Zone(1, 0, 0, 200, 0));      // centre 100 m from base
+        zones.put(2, new Zone(2, 1000, 0, 1200, 0));  // centre 1100 m from base
+        List<double[]> fires = FleetSimulation.parseTrace(List.of("10:00:00,1,FIRE_DETECTED,Low,None",
+                "10:00:05,2,FIRE_DETECTED,High,None", "10:00:05,9,FIRE_DETECTED,High,None"), zones, 1);
+        assertEquals(2, fires.size(), "Fires in unknown zones are skipped");
+
+        FleetSimulation.Result one = new FleetSimulation(zones, fires,
+                new FleetSimulation.Config(1, 15, 10, FleetSimulation.Policy.NEAREST)).run();
+        assertEquals(10.0, one.extinguishSeconds[0], 1e-6, "100 m at 10 m/s");
+        // Free at 10 s with 5 L left, 100 s on to zone 2, then two refill trips of 220 s each
+        assertEquals(10 + 100 + 440 - 5, one.extinguishSeconds[1], 1e-3);
+        assertEquals(0, one.getDeadlineMisses(), "Dispatched 5 s after it was reported, within its deadline");
+
+        FleetSimulation.Result firstIdle = new FleetSimulation(zones, fires,
+                new FleetSimulation.Config(2, 15, 10, FleetSimulation.Policy.FIRST_IDLE)).run();
+        assertEquals(1100.0, firstIdle.dispatchDistances[1], 1e-3, "The second drone leaves from base");
+
+        List<FleetSimulation.Config> configs = List.of(new FleetSimulation.Config(1, 15, 10, FleetSimulation.Policy.NEAREST),
+                new FleetSimulation.Config(2, 30, 20, FleetSimulation.Policy.PREPOSITION));
+        Map<String, List<double[]>> traces = new LinkedHashMap<>();
+        traces.put("a", fires);
+        traces.put("b", fires.subList(0, 1));
+        List<SweepRunner.Run> runs = SweepRunner.sweep(traces, zones, configs, 2);
+        assertEquals(4, runs.size());
+        assertEquals("b", runs.get(3).trace, "Runs come back in grid order");
+        assertEquals(one.getMeanExtinguishSeconds(), runs.get(0).result.getMeanExtinguishSeconds(), 1e-9,
+                "A run in the pool matches the same run on its own");
+        assertEquals(1, runs.get(3).result.getFires());
+    }
+
+    @Test
+    public void testMetricsLoggerKeepsWritingOnceDictionaryIsFull() throws Exception {
+        java.io.File logFile = java.io.File.createTempFile("overflow", ".txt");
+        logFile.deleteOnExit();
+        MetricsLogger.startDaemon(logFile.getPath());
+        List<String> entities = java.util.Collections.synchronizedList(new ArrayList<>());
+        MetricsLogger.EventListener listener = (timestamp, entity, code, value) -> {
+            if (code.startsWith("OVERFLOW")) entities.add(entity);
+        };
+        MetricsLogger.addListener(listener);
+        // as if a long run logging "FIRE n" had filled the dictionary, without filling the one later tests share
+        MetricsLogger.setDictionaryFull(true);
+        try {
+            int events = 5_000;
+            for (int i = 0; i < events; i++) {
+                MetricsLogger.logEvent("FIRE " + i, "OVERFLOW_" + i, i, "Overflow " + i);
+            }
+            MetricsLogger.flush();
+            assertEquals(events, entities.size(), "The writer should survive strings that missed the dictionary");
+            assertEquals("FIRE " + (events - 1), entities.get(events - 1), "Entities are kept as is once the dictionary is full");
+        } finally {
+            MetricsLogger.setDictionaryFull(false);
+            MetricsLogger.removeListener(listener);
+        }
+        assertEquals(0, MetricsLogger.getDroppedCount());
+    }
+
+    @Test
+    public void testInMemoryTransportDeliversLikeLoopback() throws Exception {
+        InMemoryTransport.Network network = new InMemoryTransport.Network();
+        try (Transport a = network.open(0); Transport b = network.open(7100)) {
+            assertThrows(java.net.BindException.class, () -> network.open(7100));
+            a.send("first", 7100);
+            a.send("second", 7100);
+            a.send("nobody listening", 7101);
+            Transport.Message message = b.receive();
+            assertEquals("first", message.text());
+            assertEquals(a.getLocalPort(), message.getFromPort(), "Replies go back to the sender's port");
+            assertEquals("second", b.receive().text());
+
+            b.setTimeout(20);
+            assertThrows(java.net.SocketTimeoutException.class, b::receive);
+
+            b.setTimeout(0);
+            Thread closer = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                }
+                b.close();
+            });
+            closer.start();
+            assertThrows(java.net.SocketException.class, b::receive, "Closing wakes a blocked receiver");
+            closer.join();
+            assertEquals(1, network.size());
+        }
+        assertEquals(0, network.size());
+
+        Scheduler scheduler = new Scheduler(network);
+        Thread schedulerThread = new Thread(scheduler);
+        schedulerThread.start();
+        scheduler.shutdown();
+        schedulerThread.join(2000);
+        assertFalse(schedulerThread.isAlive(), "The Scheduler stops once its transport is closed");
+    }
+
+    @Test
+    public void testSharedMemoryTransportRingsBetweenEndpoints() throws Exception {
+        java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("shm-test");
+        SharedMemoryTransport.Network network = new SharedMemoryTransport.Network(directory);
+        try (Transport server = network.open(7200); Transport client = network.open(0)) {
+            assertThrows(java.net.BindException.class, () -> network.open(7200));
+            client.send("to nobody", 7201);
+            assertFalse(java.nio.file.Files.exists(directory.resolve("7201." + client.getLocalPort() + ".ring")),
+                    "No ring is made for a port nobody has open");
+
+            // Enough round trips to wrap both rings several times
+            server.setTimeout(1000);
+            client.setTimeout(1000);
+            byte[] request = new byte[900];
+            int laps = 4 * SharedMemoryTransport.RING_CAPACITY / request.length;
+            for (int i = 0; i < laps; i++) {
+                request[0] = (byte) i;
+                client.send(request, request.length, 7200);
+                Transport.Message message = server.receive();
+                assertEquals(request.length, message.getLength());
+                assertEquals((byte) i, message.getData()[0]);
+                assertEquals(client.getLocalPort(), message.getFromPort());
+                server.send("reply " + i, message.getFromPort());
+                assertEquals("reply " + i, client.receive().text());
+            }
+
+            server.setTimeout(20);
+            assertThrows(java.net.SocketTimeoutException.class, server::receive);
+            client.send("last words", 7200);
+            client.close();
+            assertEquals("last words", server.receive().text(), "Messages sent before closing are still delivered");
+        }
+        try (java.util.stream.Stream<java.nio.file.Path> left = java.nio.file.Files.list(directory)) {
+            assertEquals(0, left.count(), "Closed endpoints remove their files");
+        }
+        java.nio.file.Files.delete(directory);
+    }
+
+    @Test
+    public void testBufferPoolReusesReleasedMessages() throws Exception {
+        BufferPool pool = new BufferPool(1);
+        Transport.Message first = pool.acquire();
+        assertEquals(Transport.MAX_MESSAGE, first.getData().length);
+        assertEquals(5, first.encode("READY"));
+        assertEquals("READY", first.text());
+        Transport.Message second = pool.acquire();
+        first.close();
+        first.close();
+        second.close();
+        assertEquals(1, pool.getFree(), "Closing twice returns a buffer once, and the pool keeps at most its capacity");
+        assertSame(first, pool.acquire(), "A released buffer is handed out again");
+        assertEquals(0, first.getLength(), "A reused buffer starts empty");
+        assertEquals(2, pool.getAllocated());
+        assertEquals(1, pool.getReused());
+
+        assertEquals("zone \u00e9t\u00e9", new String(first.getData(), 0, first.encode("zone \u00e9t\u00e9"), java.nio.charset.StandardCharsets.UTF_8));
+        assertEquals(Transport.MAX_MESSAGE, first.encode("x".repeat(Transport.MAX_MESSAGE + 10)), "Text is cut off at the buffer");
+
+        InMemoryTransport.Network network = new InMemoryTransport.Network();
+        try (Transport a = network.open(0); Transport b = network.open(0)) {
+            a.send("HEARTBEAT", b.getLocalPort());
+            assertEquals("HEARTBEAT", b.receiveText());
+        }
+    }
+
+    @Test
+    public void testDeploymentConfigAndPeerAddresses() throws Exception {
+        java.util.Properties settings = new java.util.Properties();
+        DeploymentConfig defaults = new DeploymentConfig(settings);
+        assertEquals(7000, defaults.getSchedulerPort());
+        assertEquals(6000, defaults.getDronePortBase());
+        assertEquals(8000, defaults.getFirePortBase());
+        assertNull(defaults.getBindAddress(), "Endpoints bind to every interface by default");
+
+        settings.setProperty("scheduler.host", "127.0.0.1");
+        settings.setProperty("scheduler.port", "7300");
+        settings.setProperty("drone.port.base", "16000");
+        DeploymentConfig config = new DeploymentConfig(settings);
+        assertEquals(java.net.InetAddress.getByName("127.0.0.1"), config.getSchedulerHost());
+        assertEquals(7300, config.getSchedulerPort());
+        assertEquals(16000, config.getDronePortBase());
+        settings.setProperty("fire.port.base", "70000");
+        assertThrows(IllegalArgumentException.class, () -> new DeploymentConfig(settings));
+
+        // A reply goes back to the host and port the request came from
+        java.net.InetAddress loopback = java.net.InetAddress.getLoopbackAddress();
+        try (Transport scheduler = new UdpTransport(0, loopback, loopback);
+             Transport drone = new UdpTransport(0, loopback, loopback)) {
+            drone.setTimeout(1000);
+            scheduler.setTimeout(1000);
+            drone.send("READY", scheduler.getLocalPort());
+            try (Transport.Message request = scheduler.receive()) {
+                assertEquals(loopback, request.getFromAddress());
+                scheduler.reply(request, "NEW FIRE");
+            }
+            assertEquals("NEW FIRE", drone.receiveText());
+        }
+
+        FleetStore fleet = new FleetStore(1);
+        int index = fleet.register(1, 6001, FleetStore.IDLE);
+        assertNull(fleet.getAddress(index));
+        fleet.setAddress(index, loopback);
+        fleet.register(1, 6001, FleetStore.EN_ROUTE);
+        assertEquals(loopback, fleet.getAddress(index), "The address is kept until the drone checks in from elsewhere");
+    }
+
+    @Test
+    public void testDiscoveryFramesRegisterFleetInBatches() throws Exception {
+        int drones = DroneDiscovery.DRONES_PER_FRAME + 10;
+        int[] ids = new int[drones];
+        int[] ports = new int[drones];
+        int[] controlPorts = new int[drones];
+        for (int i = 0; i < drones; i++) {
+            ids[i] = 5000 + i;
+            ports[i] = 20000 + i;
+            controlPorts[i] = i % 2 == 0 ? 30000 + i : 0;
+        }
+
+        FleetStore fleet = new FleetStore(1);
+        int busy = fleet.register(5000, 6000, FleetStore.EN_ROUTE);
+        java.net.InetAddress loopback = java.net.InetAddress.getLoopbackAddress();
+        int[] added = new int[1];
+        InMemoryTransport.Network network = new InMemoryTransport.Network();
+        try (Transport scheduler = network.open(0); Transport host = network.open(0)) {
+            scheduler.setTimeout(1000);
+            assertEquals(2, DroneDiscovery.announce(ids, ports, controlPorts, false, host, scheduler.getLocalPort()));
+            for (int frame = 0; frame < 2; frame++) {
+                try (Transport.Message message = scheduler.receive()) {
+                    assertTrue(DroneDiscovery.isFrame(message.getData(), message.getLength()));
+                    DroneDiscovery.accept(message.getData(), message.getLength(), loopback,
+                            (count, frameIds, framePorts, frameControlPorts, waiting, from) -> added[0] +=
+                                    fleet.registerAll(count, frameIds, framePorts, frameControlPorts, FleetStore.UNKNOWN, from));
+                }
+            }
+        }
+
+        assertEquals(drones - 1, added[0]);
+        assertEquals(drones, fleet.size());
+        assertEquals(FleetStore.EN_ROUTE, fleet.getState(busy), "A drone already on a mission keeps its state");
+        assertEquals(20000, fleet.getPort(busy));
+        assertEquals(30000, fleet.getControlPort(busy));
+        int last = fleet.indexOf(5000 + drones - 1);
+        assertEquals(FleetStore.UNKNOWN, fleet.getState(last));
+        assertEquals(-1, fleet.claimBest(FleetStore.FIRST_IDLE, FleetStore.USED),
+                "A discovered drone is not dispatched before it checks in");
+        fleet.register(5000 + drones - 1, 20000 + drones - 1, FleetStore.IDLE);
+        assertEquals(last, fleet.claimBest(FleetStore.FIRST_IDLE, FleetStore.USED), "Its READY makes it dispatchable");
+        assertEquals(20000 + drones - 1, fleet.getPort(last));
+        assertEquals(loopback, fleet.getAddress(last));
+        assertFalse(DroneDiscovery.isFrame("[DRONE: 1] READY".getBytes(), 16), "Text messages are never frames");
+
+        java.util.Properties settings = new java.util.Properties();
+        assertFalse(new DeploymentConfig(settings).isMulticastDiscovery(), "Multicast discovery is opt-in");
+        settings.setProperty("discovery.group", "239.255.70.1");
+        assertTrue(new DeploymentConfig(settings).isMulticastDiscovery());
+
+        // The Scheduler registers what it discovers the same way
+        modScheduler.registerDrones(1, new int[]{7_000_001}, new int[]{21000}, new int[]{0}, false, loopback);
+        FleetStore schedulerFleet = modScheduler.getFleet();
+        assertEquals(FleetStore.UNKNOWN, schedulerFleet.getState(schedulerFleet.indexOf(7_000_001)));
+    }
+
+    @Test
+    public void testAnnouncedDroneIsDispatchedWithoutReady() throws Exception {
+        InMemoryTransport.Network network = new InMemoryTransport.Network();
+        Scheduler scheduler = new Scheduler(network);
+        Thread schedulerThread = new Thread(scheduler);
+        schedulerThread.start();
+        try (Transport reporter = network.open(0)) {
+            reporter.setTimeout(2000);
+            DroneSubsystem announcedDrone = new DroneSubsystem(990, network);
+            DroneDiscovery.startAnnouncing(List.of(announcedDrone), network, new DeploymentConfig(new java.util.Properties()));
+            assertTrue(announcedDrone.isAnnounced(), "A drone announced as waiting skips its first READY");
+
+            FireEvent fire = new FireEvent(62, "12:00", 1, "FIRE_DETECTED", "Low", "None");
+            reporter.send("NEW FIRE: " + fire, DeploymentConfig.get().getSchedulerPort());
+            assertTrue(reporter.receiveText().startsWith("NEW FIRE RECEIVED"));
+            FireEvent[] fetched = new FireEvent[1];
+            Thread fetch = new Thread(() -> fetched[0] = announcedDrone.fetchFireTask());
+            fetch.start();
+            fetch.join(2000);
+            assertFalse(fetch.isAlive(), "The announced drone should be sent the fire");
+            assertEquals(62, fetched[0].getFireID());
+            assertFalse(announcedDrone.isAnnounced(), "Once it has a fire the drone checks in with READY again");
+            assertEquals(0L, (long) scheduler.getMetrics().getMessageCounts().get("IDLE"), "No READY was sent");
+
+            FleetStore fleet = scheduler.getFleet();
+            assertEquals(FleetStore.USED, fleet.getState(fleet.indexOf(990)));
+            assertEquals(0, scheduler.registerDrones(1, new int[]{990}, new int[]{6990}, new int[]{0}, true, null),
+                    "Announcing a drone that has a fire again owes it no second dispatch");
+            assertEquals(FleetStore.USED, fleet.getState(fleet.indexOf(990)));
+            scheduler.registerDrones(1, new int[]{991}, new int[]{6991}, new int[]{0}, false, null);
+            assertEquals(1, scheduler.registerDrones(1, new int[]{991}, new int[]{6991}, new int[]{0}, true, null),
+                    "A known drone announced as waiting becomes dispatchable");
+            assertEquals(1, scheduler.getIdleDrones());
+        } finally {
+            scheduler.shutdown();
+            schedulerThread.join(2000);
+        }
+    }
+
+    @Test
+    public void testColumnarEventLogRoundTripsAndPrunes() throws Exception {
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("events", ".evlog");
+        byte[][] symbols = {"DRONE 700".getBytes(), "DRONE_RESPONSE".getBytes(), "Response time (ms)".getBytes(),
+                "FIRE 1".getBytes(), "FIRE_EXTINGUISHED".getBytes()};
+        long start = 1_700_000_000_000L * 1_000_000L;
+        try (ColumnarEventLog.BlockWriter writer = new ColumnarEventLog.BlockWriter(file, 2)) {
+            writer.add(start, 0, null, 1, null, 473.0, 2, null);
+            writer.add(start + 5_000_000L, 0, null, 1, null, 27.0, -1, "Not in the dictionary");
+            writer.writeBlock(symbols);
+            writer.add(start + 60_000_000_000L, 3, null, 4, null, 1.2345E7, 2, null);
+            // once the logger's dictionary is full, entities and codes are stored as is too
+            writer.add(start + 61_000_000_000L, -1, "FIRE 2", -1, "FIRE_EXTINGUISHED", 5.0, 2, null);
+            writer.writeBlock(symbols);
+        }
+        assertTrue(ColumnarEventLog.isColumnar(file));
+
+        try (ColumnarEventLog.Reader reader = new ColumnarEventLog.Reader(file, ColumnarEventLog.ALL_COLUMNS)) {
+            assertTrue(reader.next());
+            assertEquals(start, reader.getTimestampNanos());
+            assertEquals("DRONE 700", reader.symbol(reader.getEntity()));
+            assertEquals("DRONE_RESPONSE", reader.symbol(reader.getCode()));
+            assertEquals(473.0, reader.getValue());
+            assertEquals("Response time (ms)", reader.getDetails());
+            assertTrue(reader.next());
+            assertEquals(start + 5_000_000L, reader.getTimestampNanos());
+            assertEquals("Not in the dictionary", reader.getDetails());
+            assertTrue(reader.next());
+            assertEquals("FIRE 1", reader.symbol(reader.getEntity()));
+            assertTrue(reader.next());
+            assertEquals(-1, reader.getEntity());
+            assertEquals("FIRE 2", reader.getEntityName());
+            assertEquals("FIRE_EXTINGUISHED", reader.getCodeName());
+            assertFalse(reader.next());
+        }
+
+        // Only the asked for columns are decoded, and blocks outside the time range are skipped
+        try (ColumnarEventLog.Reader reader = new ColumnarEventLog.Reader(file, ColumnarEventLog.VALUES)) {
+            reader.setTimeRange(start + 1_000_000_000L, Long.MAX_VALUE);
+            assertTrue(reader.next());
+            assertEquals(1.2345E7, reader.getValue());
+            assertEquals(-1, reader.getCode());
+            assertNull(reader.getDetails());
+            assertTrue(reader.next());
+            assertFalse(reader.next());
+            assertEquals(1, reader.getBlocksSkipped());
+            assertEquals("FIRE_EXTINGUISHED", reader.symbol(4), "The dictionary of a skipped block is still read");
+        }
+
+        LogAnalyzer.Accumulator accumulator = LogAnalyzer.scanLog(file.toString());
+        assertEquals(2, accumulator.entities(MetricCode.DRONE_RESPONSE).get("DRONE 700").count);
+        assertEquals(250.0, accumulator.entities(MetricCode.DRONE_RESPONSE).get("DRONE 700").mean(), 0.0001);
+        assertEquals(12_345_000.0, accumulator.entities(MetricCode.FIRE_EXTINGUISHED).get("FIRE 1").last, 0.0001);
+        assertEquals(5.0, accumulator.entities(MetricCode.FIRE_EXTINGUISHED).get("FIRE 2").last, 0.0001,
+                "Events whose strings missed the dictionary are still analyzed");
+
+        // The text conversion parses back to the same events
+        java.io.StringWriter text = new java.io.StringWriter();
+        assertEquals(4, ColumnarEventLog.toText(file, text));
+        assertTrue(text.toString().contains(", FIRE 2, FIRE_EXTINGUISHED, 5.0, Response time (ms)\n"));
+        assertTrue(text.toString().contains(", DRONE 700, DRONE_RESPONSE, 27.0, Not in the dictionary\n"));
+        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.wrap(text.toString().getBytes());
+        LogAnalyzer.Accumulator parsed = new LogAnalyzer.Accumulator();
+        LogAnalyzer.parseLines(buffer, 0, buffer.limit(), parsed, true);
+        assertEquals(accumulator.lines, parsed.lines);
+        java.nio.file.Files.delete(file);
+    }
 }